@@ -0,0 +1,199 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Calendar;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * Generates the workbooks the benchmarks run on. The size of each fixture is given by the
+ * benchmark parameters, so that it can be changed from the JMH command line, e.g.
+ * <code>-p rows=100000</code>.
+ */
+public final class BenchmarkFixtures {
+    public static final String HSSF = "HSSF";
+    public static final String XSSF = "XSSF";
+    public static final String SXSSF = "SXSSF";
+
+    /**
+     * The number formats of the data columns, used in turn
+     */
+    private static final String[] FORMATS = {
+        "General", "#,##0.00", "yyyy-mm-dd hh:mm", "@", "0.0%", "$#,##0.00_);($#,##0.00)", "0.00E+00",
+    };
+
+    /**
+     * The number of distinct strings of the text columns
+     */
+    private static final int DISTINCT_STRINGS = 1000;
+
+    /**
+     * The number of rows of the lookup table of the formula fixture
+     */
+    public static final int LOOKUP_ROWS = 100;
+
+    private BenchmarkFixtures() {
+        // no instances of this class
+    }
+
+    /**
+     * @param format one of {@link #HSSF}, {@link #XSSF} or {@link #SXSSF}
+     * @return a new, empty workbook of the given format
+     */
+    public static Workbook createWorkbook(String format) {
+        if (HSSF.equals(format)) {
+            return new HSSFWorkbook();
+        }
+        if (XSSF.equals(format)) {
+            return new XSSFWorkbook();
+        }
+        if (SXSSF.equals(format)) {
+            return new SXSSFWorkbook();
+        }
+        throw new IllegalArgumentException("Unknown format: " + format);
+    }
+
+    /**
+     * Creates a workbook with one sheet of numbers, dates, percentages and shared strings, each
+     * column with its own number format.
+     */
+    public static Workbook createDataWorkbook(String format, int rows, int cols) {
+        Workbook wb = createWorkbook(format);
+        Sheet sheet = wb.createSheet("Data");
+        CellStyle[] styles = createStyles(wb);
+
+        Calendar date = Calendar.getInstance();
+        date.clear();
+        date.set(2014, Calendar.JANUARY, 1);
+        for (int r = 0; r < rows; r++) {
+            Row row = sheet.createRow(r);
+            for (int c = 0; c < cols; c++) {
+                Cell cell = row.createCell(c);
+                int type = c % FORMATS.length;
+                cell.setCellStyle(styles[type]);
+                switch (type) {
+                    case 2:
+                        date.add(Calendar.MINUTE, 17);
+                        cell.setCellValue(date);
+                        break;
+                    case 3:
+                        cell.setCellValue("Text value " + ((r * cols + c) % DISTINCT_STRINGS));
+                        break;
+                    case 4:
+                        cell.setCellValue((r % 1000) / 1000.0);
+                        break;
+                    default:
+                        cell.setCellValue(r * 1.5 + c);
+                        break;
+                }
+            }
+        }
+        return wb;
+    }
+
+    /**
+     * Creates a workbook of formulas, with a lookup table of {@link #LOOKUP_ROWS} rows on a second sheet.
+     * Each row of the first sheet has the columns
+     * <ul>
+     * <li>A: a number</li>
+     * <li>B: a formula depending on A of the same row</li>
+     * <li>C: a running total, depending on C of the previous row</li>
+     * <li>D: a VLOOKUP into the lookup table</li>
+     * <li>E: a SUMIF over the lookup table</li>
+     * <li>F: a text formula</li>
+     * </ul>
+     */
+    public static Workbook createFormulaWorkbook(String format, int rows) {
+        Workbook wb = createWorkbook(format);
+        Sheet sheet = wb.createSheet("Formulas");
+        Sheet lookup = wb.createSheet("Lookup");
+        for (int r = 0; r < LOOKUP_ROWS; r++) {
+            Row row = lookup.createRow(r);
+            row.createCell(0).setCellValue(r);
+            row.createCell(1).setCellValue("Key " + r);
+            row.createCell(2).setCellValue(r * 3.25);
+        }
+
+        String lookupRange = "Lookup!$A$1:$C$" + LOOKUP_ROWS;
+        for (int r = 0; r < rows; r++) {
+            int n = r + 1;
+            Row row = sheet.createRow(r);
+            row.createCell(0).setCellValue(r % LOOKUP_ROWS);
+            row.createCell(1).setCellFormula("A" + n + "*2+ROUND(A" + n + "/3,2)");
+            row.createCell(2).setCellFormula(r == 0 ? "B1" : "C" + r + "+B" + n);
+            row.createCell(3).setCellFormula("VLOOKUP(A" + n + "," + lookupRange + ",3,FALSE)");
+            row.createCell(4).setCellFormula("SUMIF(Lookup!$A$1:$A$" + LOOKUP_ROWS + ",\"<\"&A" + n
+                    + ",Lookup!$C$1:$C$" + LOOKUP_ROWS + ")");
+            row.createCell(5).setCellFormula("IF(D" + n + ">100,\"high\",CONCATENATE(\"low \",TEXT(D" + n + ",\"0.00\")))");
+        }
+        return wb;
+    }
+
+    /**
+     * Writes the workbook and returns the written bytes
+     */
+    public static byte[] toByteArray(Workbook wb) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        wb.write(out);
+        if (wb instanceof SXSSFWorkbook) {
+            ((SXSSFWorkbook) wb).dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static CellStyle[] createStyles(Workbook wb) {
+        DataFormat dataFormat = wb.createDataFormat();
+        CellStyle[] styles = new CellStyle[FORMATS.length];
+        for (int i = 0; i < FORMATS.length; i++) {
+            styles[i] = wb.createCellStyle();
+            styles[i].setDataFormat(dataFormat.getFormat(FORMATS[i]));
+        }
+        return styles;
+    }
+
+    /**
+     * Discards the written bytes, only counting them
+     */
+    public static final class CountingOutputStream extends OutputStream {
+        private long _count;
+
+        public void write(int b) {
+            _count++;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            _count += len;
+        }
+
+        public long getCount() {
+            return _count;
+        }
+    }
+}
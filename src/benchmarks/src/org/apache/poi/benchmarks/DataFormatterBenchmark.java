@@ -0,0 +1,70 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Formats all cells of a sheet of numbers, dates and strings with {@link DataFormatter#formatCellValue(Cell)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DataFormatterBenchmark {
+    @Param({BenchmarkFixtures.HSSF, BenchmarkFixtures.XSSF})
+    public String format;
+
+    @Param({"10000"})
+    public int rows;
+
+    @Param({"10"})
+    public int cols;
+
+    private Sheet sheet;
+
+    private DataFormatter formatter;
+
+    @Setup
+    public void setUp() {
+        sheet = BenchmarkFixtures.createDataWorkbook(format, rows, cols).getSheetAt(0);
+        formatter = new DataFormatter();
+    }
+
+    @Benchmark
+    public void formatCellValue(Blackhole bh) {
+        for (Row row : sheet) {
+            for (Cell cell : row) {
+                bh.consume(formatter.formatCellValue(cell));
+            }
+        }
+    }
+}
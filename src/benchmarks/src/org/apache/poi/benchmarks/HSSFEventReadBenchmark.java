@@ -0,0 +1,75 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reads all records of a .xls file through {@link HSSFEventFactory}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class HSSFEventReadBenchmark {
+    @Param({"10000"})
+    public int rows;
+
+    @Param({"10"})
+    public int cols;
+
+    private byte[] data;
+
+    @Setup
+    public void setUp() throws IOException {
+        data = BenchmarkFixtures.toByteArray(
+                BenchmarkFixtures.createDataWorkbook(BenchmarkFixtures.HSSF, rows, cols));
+    }
+
+    @Benchmark
+    public void read(final Blackhole bh) throws IOException {
+        HSSFRequest req = new HSSFRequest();
+        req.addListenerForAllRecords(new HSSFListener() {
+            public void processRecord(Record record) {
+                bh.consume(record);
+            }
+        });
+        NPOIFSFileSystem fs = new NPOIFSFileSystem(new ByteArrayInputStream(data));
+        try {
+            new HSSFEventFactory().processWorkbookEvents(req, fs.getRoot());
+        } finally {
+            fs.close();
+        }
+    }
+}
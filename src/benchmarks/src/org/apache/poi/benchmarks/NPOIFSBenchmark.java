@@ -0,0 +1,130 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.poifs.filesystem.DirectoryEntry;
+import org.apache.poi.poifs.filesystem.DocumentEntry;
+import org.apache.poi.poifs.filesystem.DocumentInputStream;
+import org.apache.poi.poifs.filesystem.Entry;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.util.TempFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Opens a POIFS file and reads all of its streams through {@link NPOIFSFileSystem}.
+ * Streams smaller than 4096 bytes are held in the mini stream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class NPOIFSBenchmark {
+    @Param({"100"})
+    public int streams;
+
+    @Param({"1000", "100000"})
+    public int streamSize;
+
+    @Param({"false", "true"})
+    public boolean memoryMapped;
+
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] data = new byte[streamSize];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+
+        NPOIFSFileSystem fs = new NPOIFSFileSystem();
+        DirectoryEntry dir = fs.getRoot().createDirectory("Streams");
+        for (int i = 0; i < streams; i++) {
+            (i % 2 == 0 ? fs.getRoot() : dir).createDocument("Stream" + i, new ByteArrayInputStream(data));
+        }
+        file = TempFile.createTempFile("poi-benchmark", ".ole2");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            fs.writeFilesystem(out);
+        } finally {
+            out.close();
+        }
+        fs.close();
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public int open() throws IOException {
+        NPOIFSFileSystem fs = new NPOIFSFileSystem(file, true, memoryMapped);
+        try {
+            return fs.getRoot().getEntryCount();
+        } finally {
+            fs.close();
+        }
+    }
+
+    @Benchmark
+    public long openAndRead() throws IOException {
+        NPOIFSFileSystem fs = new NPOIFSFileSystem(file, true, memoryMapped);
+        try {
+            return read(fs.getRoot(), new byte[4096]);
+        } finally {
+            fs.close();
+        }
+    }
+
+    private static long read(DirectoryEntry dir, byte[] buf) throws IOException {
+        long total = 0;
+        for (Iterator<Entry> entries = dir.getEntries(); entries.hasNext(); ) {
+            Entry entry = entries.next();
+            if (entry instanceof DirectoryEntry) {
+                total += read((DirectoryEntry) entry, buf);
+            } else if (entry instanceof DocumentEntry) {
+                DocumentInputStream in = new DocumentInputStream((DocumentEntry) entry);
+                try {
+                    int count;
+                    while ((count = in.read(buf)) > 0) {
+                        total += count;
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,110 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Reads the formatted cell values of a .xlsx file through {@link XSSFReader} and {@link XSSFSheetXMLHandler}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class XSSFEventReadBenchmark {
+    @Param({"10000"})
+    public int rows;
+
+    @Param({"10"})
+    public int cols;
+
+    private byte[] data;
+
+    @Setup
+    public void setUp() throws IOException {
+        data = BenchmarkFixtures.toByteArray(
+                BenchmarkFixtures.createDataWorkbook(BenchmarkFixtures.SXSSF, rows, cols));
+    }
+
+    @Benchmark
+    public void read(final Blackhole bh)
+            throws IOException, OpenXML4JException, SAXException, ParserConfigurationException {
+        OPCPackage pkg = OPCPackage.open(new ByteArrayInputStream(data));
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+            SheetContentsHandler handler = new SheetContentsHandler() {
+                public void startRow(int rowNum) {
+                    bh.consume(rowNum);
+                }
+                public void endRow() {
+                    // nothing to do
+                }
+                public void cell(String cellReference, String formattedValue) {
+                    bh.consume(cellReference);
+                    bh.consume(formattedValue);
+                }
+                public void headerFooter(String text, boolean isHeader, String tagName) {
+                    // nothing to do
+                }
+            };
+
+            SAXParserFactory saxFactory = SAXParserFactory.newInstance();
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            while (sheets.hasNext()) {
+                InputStream sheet = sheets.next();
+                try {
+                    XMLReader parser = saxFactory.newSAXParser().getXMLReader();
+                    parser.setContentHandler(new XSSFSheetXMLHandler(styles, strings, handler, false));
+                    parser.parse(new InputSource(sheet));
+                } finally {
+                    sheet.close();
+                }
+            }
+        } finally {
+            pkg.revert();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.hssf.eventusermodel.examples;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RecordFactory;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+
+/**
+ * Measures the throughput of record creation, through {@link RecordFactory#createRecords(InputStream)}
+ *  and through {@link HSSFEventFactory}, on a generated workbook of numbers and strings.
+ */
+public class RecordFactoryPerformanceTest {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: RecordFactoryPerformanceTest <rows> <cols> <iterations>");
+            System.exit(1);
+        }
+        int rows = Integer.parseInt(args[0]);
+        int cols = Integer.parseInt(args[1]);
+        int iterations = Integer.parseInt(args[2]);
+
+        byte[] workbook = createWorkbook(rows, cols);
+        byte[] stream = getWorkbookStream(workbook);
+
+        // warm up, and count the records
+        int records = RecordFactory.createRecords(new ByteArrayInputStream(stream)).size();
+        processEvents(workbook);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            List<Record> list = RecordFactory.createRecords(new ByteArrayInputStream(stream));
+            if (list.size() != records) throw new IllegalStateException();
+        }
+        report("RecordFactory.createRecords", records, iterations, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            if (processEvents(workbook) != records) throw new IllegalStateException();
+        }
+        report("HSSFEventFactory.processEvents", records, iterations, System.nanoTime() - start);
+    }
+
+    private static byte[] createWorkbook(int rows, int cols) throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFSheet sheet = wb.createSheet();
+        for (int r = 0; r < rows; r++) {
+            HSSFRow row = sheet.createRow(r);
+            for (int c = 0; c < cols; c++) {
+                if (c % 4 == 3) {
+                    row.createCell(c).setCellValue("Text " + (r % 100));
+                } else {
+                    row.createCell(c).setCellValue(r * c + 0.5);
+                }
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        wb.write(out);
+        return out.toByteArray();
+    }
+
+    private static byte[] getWorkbookStream(byte[] workbook) throws IOException {
+        POIFSFileSystem fs = new POIFSFileSystem(new ByteArrayInputStream(workbook));
+        InputStream in = fs.createDocumentInputStream("Workbook");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int count;
+        while ((count = in.read(buf)) >= 0) {
+            out.write(buf, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    private static int processEvents(byte[] workbook) throws IOException {
+        final int[] count = new int[1];
+        HSSFRequest req = new HSSFRequest();
+        req.addListenerForAllRecords(new HSSFListener() {
+            public void processRecord(Record record) {
+                count[0]++;
+            }
+        });
+        POIFSFileSystem fs = new POIFSFileSystem(new ByteArrayInputStream(workbook));
+        new HSSFEventFactory().processWorkbookEvents(req, fs);
+        return count[0];
+    }
+
+    private static void report(String name, int records, int iterations, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.printf("%-32s %,12.0f records/s (%d x %d records in %.2f s)%n",
+                name, records * (double) iterations / seconds, iterations, records, seconds);
+    }
+}
@@ -17,13 +17,21 @@
 
 package org.apache.poi.hssf.eventusermodel;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
+import org.apache.poi.EncryptedDocumentException;
 import org.apache.poi.hssf.eventusermodel.HSSFUserException;
 import org.apache.poi.hssf.record.*;
 import org.apache.poi.poifs.filesystem.DirectoryNode;
 import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.util.ConcurrentTasks;
+import org.apache.poi.util.IOUtils;
 
 /**
  * Low level event based HSSF reader.  Pass either a DocumentInputStream to
@@ -150,4 +158,96 @@ public class HSSFEventFactory {
 		// All done, return our last code
 		return userCode;
 	}
+
+	/**
+	 * Creates the requests for the sheets processed by
+	 * {@link HSSFEventFactory#processWorkbookEvents(HSSFRequest, SheetRequestFactory, DirectoryNode, Executor)}
+	 */
+	public interface SheetRequestFactory {
+		/**
+		 * Called on the calling thread, after the workbook globals were processed
+		 *
+		 * @param sheetIndex the (zero based) index of the sheet
+		 * @param sheet the BOUNDSHEET record of the sheet, with its name
+		 * @return the request with the listeners for the records of the sheet
+		 */
+		HSSFRequest createSheetRequest(int sheetIndex, BoundSheetRecord sheet);
+	}
+
+	/**
+	 * Processes a file into record events, processing the sheets concurrently.
+	 * The records of the workbook globals, like the SST and the BOUNDSHEET records,
+	 * are passed to <tt>req</tt> first, on the calling thread. Then each sheet is
+	 * read from the position of its BOF record given by its BOUNDSHEET record, by a
+	 * task of the executor, and its records, from its BOF to its EOF record, are
+	 * passed to the request which <tt>sheetRequests</tt> created for it. The listeners
+	 * of different sheets are thus called concurrently, and must only share state which
+	 * is safe for that, like the records of the globals.<p/>
+	 *
+	 * The Workbook stream is read into memory first. If a listener of the globals returns
+	 * a non-zero user code, no sheet is processed, and if a listener of a sheet does, the
+	 * processing of the sheet stops. This method returns when
+	 * all sheets were processed, and throws the first failure of the tasks, if any.
+	 * Encrypted workbooks are not supported, since their sheets cannot be decrypted
+	 * without reading the stream from its start.
+	 *
+	 * @param req the request with the listeners for the records of the workbook globals
+	 * @param sheetRequests creates the request with the listeners for each sheet
+	 * @param dir a DirectoryNode containing your workbook
+	 * @param executor runs the tasks which process the sheets. It is not shut down.
+	 */
+	public void processWorkbookEvents(HSSFRequest req, SheetRequestFactory sheetRequests,
+			DirectoryNode dir, Executor executor) throws IOException, HSSFUserException {
+		InputStream in = dir.createDocumentInputStream("Workbook");
+		final byte[] data;
+		try {
+			data = IOUtils.toByteArray(in);
+		} finally {
+			in.close();
+		}
+		if (WorkbookStreamUtil.isEncrypted(new ByteArrayInputStream(data))) {
+			throw new EncryptedDocumentException("Encrypted workbooks cannot be processed in parallel");
+		}
+
+		List<BoundSheetRecord> sheets = new ArrayList<BoundSheetRecord>();
+		RecordFactoryInputStream recordStream = new RecordFactoryInputStream(new ByteArrayInputStream(data), false);
+		int bofDepth = 0;
+		while (true) {
+			Record r = recordStream.nextRecord();
+			if (r == null) {
+				break;
+			}
+			if (r instanceof BoundSheetRecord) {
+				sheets.add((BoundSheetRecord) r);
+			}
+			if (req.processRecord(r) != 0) {
+				return;
+			}
+			if (r instanceof BOFRecord) {
+				bofDepth++;
+			} else if (r instanceof EOFRecord && --bofDepth == 0) {
+				// the end of the globals, the sheets follow
+				break;
+			}
+		}
+
+		ConcurrentTasks tasks = new ConcurrentTasks(executor);
+		try {
+			for (int i = 0; i < sheets.size(); i++) {
+				final int offset = sheets.get(i).getPositionOfBof();
+				final HSSFRequest sheetRequest = sheetRequests.createSheetRequest(i, sheets.get(i));
+				tasks.execute(new Callable<Void>() {
+					public Void call() throws HSSFUserException {
+						WorkbookStreamUtil.processSubstreamEvents(sheetRequest, new RecordFactoryInputStream(
+								new ByteArrayInputStream(data, offset, data.length - offset), false));
+						return null;
+					}
+				});
+			}
+		} finally {
+			// also when the sheet requests failed, do not leave tasks running
+			tasks.awaitAll();
+		}
+		tasks.throwFailure(HSSFUserException.class);
+	}
 }
@@ -0,0 +1,420 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.hssf.eventusermodel;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.poi.EncryptedDocumentException;
+import org.apache.poi.hssf.record.*;
+import org.apache.poi.poifs.filesystem.DirectoryNode;
+import org.apache.poi.poifs.filesystem.DocumentInputStream;
+
+/**
+ * Event based HSSF reader which seeks to the records it is asked for, instead of
+ * reading the Workbook stream from its start. The workbook globals are read once,
+ * when the reader is created. Then the records of a sheet are read from the position
+ * given by its BOUNDSHEET record, and those of a range of rows only from the row
+ * blocks which hold them: the INDEX record of the sheet gives the positions of the
+ * DBCELL records which end the row blocks, and each DBCELL record gives the position
+ * of the first ROW record of its block. The blocks are searched by their first row,
+ * so only a few records are read besides the wanted ones.<p/>
+ *
+ * With a {@link org.apache.poi.poifs.filesystem.NPOIFSFileSystem}, the blocks of the
+ * stream which are skipped are not read at all.<p/>
+ *
+ * Encrypted workbooks are not supported, since they cannot be decrypted without
+ * reading the stream from its start. An instance must not be used by several
+ * threads at once.
+ */
+public class HSSFRandomAccessReader implements Closeable {
+	private final DocumentInputStream _in;
+	private final int _size;
+	/** the position of <tt>_in</tt>, -1 if it is not known */
+	private int _position;
+	private final List<BoundSheetRecord> _sheets;
+	private SSTRecord _sst;
+	private byte[] _buffer;
+
+	/**
+	 * Reads the workbook globals
+	 *
+	 * @param dir a DirectoryNode containing your workbook
+	 */
+	public HSSFRandomAccessReader(DirectoryNode dir) throws IOException {
+		_in = dir.createDocumentInputStream("Workbook");
+		_size = _in.available();
+		_buffer = new byte[256];
+		// read from the start, without tracking the position
+		_position = -1;
+		if (WorkbookStreamUtil.isEncrypted(_in)) {
+			_in.close();
+			throw new EncryptedDocumentException("Encrypted workbooks cannot be read with random access");
+		}
+
+		final List<BoundSheetRecord> sheets = new ArrayList<BoundSheetRecord>();
+		HSSFListener listener = new HSSFListener() {
+			public void processRecord(Record record) {
+				if (record instanceof BoundSheetRecord) {
+					sheets.add((BoundSheetRecord) record);
+				} else {
+					_sst = (SSTRecord) record;
+				}
+			}
+		};
+		HSSFRequest req = new HSSFRequest();
+		req.addListener(listener, BoundSheetRecord.sid);
+		req.addListener(listener, SSTRecord.sid);
+		try {
+			processSubstreamEvents(req, 0);
+		} catch (HSSFUserException e) {
+			throw new IllegalStateException(e);
+		}
+		_sheets = Collections.unmodifiableList(sheets);
+	}
+
+	/**
+	 * @return the BOUNDSHEET records of the workbook, with the names of its sheets
+	 */
+	public List<BoundSheetRecord> getSheets() {
+		return _sheets;
+	}
+
+	/**
+	 * @return the shared strings of the workbook, <code>null</code> if it has none
+	 */
+	public SSTRecord getSSTRecord() {
+		return _sst;
+	}
+
+	/**
+	 * Passes the records of the workbook globals, from its BOF to its EOF record,
+	 * to the request
+	 *
+	 * @return numeric user-specified result code.
+	 */
+	public short processGlobalEvents(HSSFRequest req) throws IOException, HSSFUserException {
+		return processSubstreamEvents(req, 0);
+	}
+
+	/**
+	 * Passes the records of the sheet, from its BOF to its EOF record, to the request
+	 *
+	 * @param sheetIndex the (zero based) index of the sheet
+	 * @return numeric user-specified result code.
+	 */
+	public short processSheetEvents(HSSFRequest req, int sheetIndex) throws IOException, HSSFUserException {
+		return processSubstreamEvents(req, getSheet(sheetIndex).getPositionOfBof());
+	}
+
+	/**
+	 * Passes the records of the rows of the sheet from <tt>firstRow</tt> to <tt>lastRow</tt>
+	 * to the request, in the order of the stream: their ROW records, their cell value
+	 * records, and the STRING, SHAREDFMLA, ARRAY and TABLE records which follow their
+	 * formula records. MULRK records are passed as NUMBER records. If the sheet has no
+	 * usable INDEX record, it is read from its start instead.
+	 *
+	 * @param sheetIndex the (zero based) index of the sheet
+	 * @param firstRow the (zero based) index of the first row
+	 * @param lastRow the (zero based) index of the last row, inclusive
+	 * @return numeric user-specified result code.
+	 */
+	public short processRowEvents(HSSFRequest req, int sheetIndex, int firstRow, int lastRow)
+			throws IOException, HSSFUserException {
+		if (firstRow < 0 || lastRow < firstRow) {
+			throw new IllegalArgumentException("Invalid row range " + firstRow + ".." + lastRow);
+		}
+		BoundSheetRecord sheet = getSheet(sheetIndex);
+		IndexRecord index = readIndexRecord(sheet.getPositionOfBof());
+		if (index == null) {
+			return processSubstreamEvents(new RowRangeRequest(req, firstRow, lastRow),
+					sheet.getPositionOfBof());
+		}
+		int nBlocks = index.getNumDbcells();
+		if (nBlocks == 0 || lastRow < index.getFirstRow() || firstRow >= index.getLastRowAdd1()) {
+			return 0;
+		}
+
+		// the last block which starts at or before the first row
+		int low = 0;
+		int high = nBlocks - 1;
+		int start = -1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int rowPos = getFirstRowPosition(index.getDbcellAt(mid));
+			int row = rowPos < 0 ? -1 : getRowNumberAt(rowPos);
+			if (row < 0) {
+				// not written the way the INDEX record says
+				return processSubstreamEvents(new RowRangeRequest(req, firstRow, lastRow),
+						sheet.getPositionOfBof());
+			}
+			if (row <= firstRow) {
+				start = mid;
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		if (start < 0) {
+			start = 0;
+		}
+
+		RowRangeRequest rangeReq = new RowRangeRequest(req, firstRow, lastRow);
+		int pos = getFirstRowPosition(index.getDbcellAt(start));
+		for (int block = start; block < nBlocks && !rangeReq.isPastRange(); block++) {
+			int dbcellPos = index.getDbcellAt(block);
+			if (dbcellPos <= pos || dbcellPos + 4 > _size) {
+				break;
+			}
+			short userCode = processBlockEvents(rangeReq, pos, dbcellPos);
+			if (userCode != 0) {
+				return userCode;
+			}
+			if (rangeReq.isSubstreamDone()) {
+				break;
+			}
+			// the next block follows the DBCELL record
+			seek(dbcellPos);
+			readUShort();
+			pos = dbcellPos + 4 + readUShort();
+		}
+		return 0;
+	}
+
+	public void close() {
+		_in.close();
+	}
+
+	private BoundSheetRecord getSheet(int sheetIndex) {
+		if (sheetIndex < 0 || sheetIndex >= _sheets.size()) {
+			throw new IllegalArgumentException("Sheet index (" + sheetIndex
+					+ ") is out of range (0.." + (_sheets.size() - 1) + ")");
+		}
+		return _sheets.get(sheetIndex);
+	}
+
+	/**
+	 * Looks for the INDEX record among the records which precede the cell table of the sheet
+	 *
+	 * @return <code>null</code> if the sheet has none
+	 */
+	private IndexRecord readIndexRecord(int bofPos) throws IOException {
+		int pos = bofPos;
+		for (boolean first = true; ; first = false) {
+			if (pos + 4 > _size) {
+				return null;
+			}
+			seek(pos);
+			int sid = readUShort();
+			int len = readUShort();
+			if (sid == IndexRecord.sid) {
+				return (IndexRecord) createRecord(pos, len);
+			}
+			if ((first && sid != BOFRecord.sid) || (!first && isEndOfSheetHeader(sid))) {
+				return null;
+			}
+			pos += 4 + len;
+		}
+	}
+
+	private static boolean isEndOfSheetHeader(int sid) {
+		switch (sid) {
+			case BOFRecord.sid:
+			case EOFRecord.sid:
+			case RowRecord.sid:
+			case DimensionsRecord.sid:
+			case DBCellRecord.sid:
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the position of the first ROW record of the block which the DBCELL record
+	 * at the position ends, -1 if there is no DBCELL record there
+	 */
+	private int getFirstRowPosition(int dbcellPos) throws IOException {
+		if (dbcellPos < 0 || dbcellPos + 8 > _size) {
+			return -1;
+		}
+		seek(dbcellPos);
+		if (readUShort() != DBCellRecord.sid || readUShort() < 4) {
+			return -1;
+		}
+		return dbcellPos - readInt();
+	}
+
+	/**
+	 * @return the row of the ROW record at the position, -1 if there is none there
+	 */
+	private int getRowNumberAt(int rowPos) throws IOException {
+		if (rowPos < 0 || rowPos + 6 > _size) {
+			return -1;
+		}
+		seek(rowPos);
+		if (readUShort() != RowRecord.sid || readUShort() < 2) {
+			return -1;
+		}
+		return readUShort();
+	}
+
+	/**
+	 * Passes the records from the position up to the DBCELL record to the request
+	 */
+	private short processBlockEvents(HSSFRequest req, int pos, int dbcellPos)
+			throws IOException, HSSFUserException {
+		int len = dbcellPos - pos;
+		if (len > _buffer.length) {
+			_buffer = new byte[Math.max(len, _buffer.length * 2)];
+		}
+		seek(pos);
+		_in.readFully(_buffer, 0, len);
+		_position += len;
+
+		RecordFactoryInputStream recordStream = new RecordFactoryInputStream(
+				new ByteArrayInputStream(_buffer, 0, len), false);
+		while (true) {
+			Record r = recordStream.nextRecord();
+			if (r == null) {
+				return 0;
+			}
+			short userCode = req.processRecord(r);
+			if (userCode != 0) {
+				return userCode;
+			}
+		}
+	}
+
+	/**
+	 * Passes the records of the substream which starts at the position, from its
+	 * BOF record to its EOF record, to the request
+	 */
+	private short processSubstreamEvents(HSSFRequest req, int pos)
+			throws IOException, HSSFUserException {
+		seek(pos);
+		// the record stream reads ahead
+		_position = -1;
+		return WorkbookStreamUtil.processSubstreamEvents(req, new RecordFactoryInputStream(_in, false));
+	}
+
+	private Record createRecord(int pos, int len) throws IOException {
+		byte[] data = new byte[4 + len];
+		seek(pos);
+		_in.readFully(data);
+		_position += data.length;
+		RecordInputStream in = new RecordInputStream(new ByteArrayInputStream(data));
+		in.nextRecord();
+		return RecordFactory.createSingleRecord(in);
+	}
+
+	private void seek(int pos) throws IOException {
+		if (_position < 0 || pos < _position) {
+			// back to the start, then forward
+			_in.reset();
+			_position = 0;
+		}
+		while (_position < pos) {
+			long skipped = _in.skip(pos - _position);
+			if (skipped <= 0) {
+				throw new RecordFormatException("Position " + pos + " is past the end of the stream");
+			}
+			_position += skipped;
+		}
+	}
+
+	private int readUShort() {
+		_position += 2;
+		return _in.readUShort();
+	}
+
+	private int readInt() {
+		_position += 4;
+		return _in.readInt();
+	}
+
+	/**
+	 * Passes on the records of the rows in the range. The rows of the cell table
+	 * are in ascending order, those of the ROW records of each block as well as those
+	 * of its cell records.
+	 */
+	private static final class RowRangeRequest extends HSSFRequest {
+		private final HSSFRequest _req;
+		private final int _firstRow;
+		private final int _lastRow;
+		private boolean _inRange;
+		private boolean _pastRange;
+		private boolean _done;
+
+		public RowRangeRequest(HSSFRequest req, int firstRow, int lastRow) {
+			_req = req;
+			_firstRow = firstRow;
+			_lastRow = lastRow;
+		}
+
+		/**
+		 * @return whether a ROW record after the range was passed, so that the following
+		 * blocks hold no rows of the range
+		 */
+		public boolean isPastRange() {
+			return _pastRange;
+		}
+
+		/**
+		 * @return whether a cell record after the range was passed, so that no record
+		 * of the range follows
+		 */
+		boolean isSubstreamDone() {
+			return _done;
+		}
+
+		protected short processRecord(Record rec) throws HSSFUserException {
+			int row;
+			if (rec instanceof RowRecord) {
+				row = ((RowRecord) rec).getRowNumber();
+				if (row > _lastRow) {
+					_pastRange = true;
+				}
+			} else if (rec instanceof CellValueRecordInterface) {
+				row = ((CellValueRecordInterface) rec).getRow();
+				_inRange = row >= _firstRow && row <= _lastRow;
+				if (row > _lastRow) {
+					_done = true;
+				}
+			} else if (rec instanceof MulBlankRecord) {
+				row = ((MulBlankRecord) rec).getRow();
+				_inRange = row >= _firstRow && row <= _lastRow;
+				if (row > _lastRow) {
+					_done = true;
+				}
+			} else if (rec instanceof StringRecord || rec instanceof SharedValueRecordBase) {
+				// belongs to the preceding formula record
+				return _inRange ? _req.processRecord(rec) : 0;
+			} else {
+				return 0;
+			}
+			if (row < _firstRow || row > _lastRow) {
+				return 0;
+			}
+			return _req.processRecord(rec);
+		}
+	}
+}
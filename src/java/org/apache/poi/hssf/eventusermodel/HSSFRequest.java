@@ -113,4 +113,12 @@ public class HSSFRequest {
 		}
 		return userCode;
 	}
+
+	/**
+	 * @return <code>true</code> if no more records of the current substream are wanted, so that
+	 * it is not read up to its EOF record. Used by {@link HSSFRandomAccessReader}.
+	 */
+	/* package */ boolean isSubstreamDone() {
+		return false;
+	}
 }
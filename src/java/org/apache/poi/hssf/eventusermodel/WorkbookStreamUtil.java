@@ -0,0 +1,97 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.hssf.eventusermodel;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FilePassRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RecordFactoryInputStream;
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.util.LittleEndian;
+
+/**
+ * Reading of the Workbook stream shared by {@link HSSFEventFactory} and
+ * {@link HSSFRandomAccessReader}, for the parts which do not read it from its start
+ */
+final class WorkbookStreamUtil {
+
+	private WorkbookStreamUtil() {
+		// no instances of this class
+	}
+
+	/**
+	 * @param in the Workbook stream, at its start
+	 * @return whether the FILEPASS record is among the first records of the stream
+	 */
+	public static boolean isEncrypted(InputStream in) throws IOException {
+		// BOF, then FILEPASS, or BOF, WRITEPROTECT and FILEPASS
+		byte[] header = new byte[4];
+		for (int i = 0; i < 3; i++) {
+			if (IOUtils.readFully(in, header) < header.length) {
+				return false;
+			}
+			if (LittleEndian.getUShort(header, 0) == FilePassRecord.sid) {
+				return true;
+			}
+			long len = LittleEndian.getUShort(header, 2);
+			while (len > 0) {
+				long skipped = in.skip(len);
+				if (skipped <= 0) {
+					return false;
+				}
+				len -= skipped;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Passes the records of the substream at the start of the record stream, from its
+	 * BOF record to its EOF record, to the request. It stops early if the request returns
+	 * a non-zero user code, or when {@link HSSFRequest#isSubstreamDone()}.
+	 *
+	 * @return numeric user-specified result code.
+	 */
+	public static short processSubstreamEvents(HSSFRequest req, RecordFactoryInputStream recordStream)
+			throws HSSFUserException {
+		int bofDepth = 0;
+		while (true) {
+			Record r = recordStream.nextRecord();
+			if (r == null) {
+				return 0;
+			}
+			short userCode = req.processRecord(r);
+			if (userCode != 0) {
+				return userCode;
+			}
+			if (r instanceof BOFRecord) {
+				bofDepth++;
+			} else if (r instanceof EOFRecord && --bofDepth == 0) {
+				// charts embedded in the sheet have nested BOF/EOF pairs
+				return 0;
+			}
+			if (req.isSubstreamDone()) {
+				return 0;
+			}
+		}
+	}
+}
@@ -28,6 +28,7 @@ import java.util.Map.Entry;
 
 import org.apache.poi.ddf.*;
 import org.apache.poi.hssf.record.*;
+import org.apache.poi.hssf.record.aggregates.RecordAggregate.RecordVisitor;
 import org.apache.poi.hssf.record.common.UnicodeString;
 import org.apache.poi.hssf.util.HSSFColor;
 import org.apache.poi.ss.formula.EvaluationWorkbook.ExternalName;
@@ -972,6 +973,21 @@ public final class InternalWorkbook {
         if (log.check( POILogger.DEBUG ))
             log.log( DEBUG, "Serializing Workbook with offsets" );
 
+        SerializingRecordVisitor srv = new SerializingRecordVisitor(data, offset);
+        visitContainedRecords(srv, offset);
+        if (log.check( POILogger.DEBUG ))
+            log.log( DEBUG, "Exiting serialize workbook" );
+        return srv.countBytesWritten();
+    }
+
+    /**
+     * Visits all records in the worksheet section in the order they are serialized,
+     * so that the Workbook stream can be written out record by record. This is also
+     * how {@link #serialize(int, byte[])} writes them.
+     * @param rv the visitor receiving the records
+     * @param offset of the workbook section in the stream, needed for the ExtSST record
+     */
+    public void visitContainedRecords(RecordVisitor rv, int offset) {
         int pos = 0;
 
         SSTRecord sst = null;
@@ -979,9 +995,7 @@ public final class InternalWorkbook {
         boolean wroteBoundSheets = false;
         for ( int k = 0; k < records.size(); k++ )
         {
-
             Record record = records.get( k );
-            int len = 0;
             if (record instanceof SSTRecord)
             {
                 sst = (SSTRecord)record;
@@ -992,25 +1006,36 @@ public final class InternalWorkbook {
                 record = sst.createExtSSTRecord(sstPos + offset);
             }
             if (record instanceof BoundSheetRecord) {
-                 if(!wroteBoundSheets) {
+                if(!wroteBoundSheets) {
                     for (int i = 0; i < boundsheets.size(); i++) {
-                        len+= getBoundSheetRec(i)
-                                         .serialize(pos+offset+len, data);
+                        BoundSheetRecord bsr = getBoundSheetRec(i);
+                        rv.visitRecord(bsr);
+                        pos += bsr.getRecordSize();
                     }
                     wroteBoundSheets = true;
-                 }
+                }
             } else {
-               len = record.serialize( pos + offset, data );
+                rv.visitRecord(record);
+                pos += record.getRecordSize();
             }
-            /////  DEBUG BEGIN /////
-//                if (len != record.getRecordSize())
-//                    throw new IllegalStateException("Record size does not match serialized bytes.  Serialized size = " + len + " but getRecordSize() returns " + record.getRecordSize());
-            /////  DEBUG END /////
-            pos += len;   // rec.length;
         }
-        if (log.check( POILogger.DEBUG ))
-            log.log( DEBUG, "Exiting serialize workbook" );
-        return pos;
+    }
+
+    private static final class SerializingRecordVisitor implements RecordVisitor {
+        private final byte[] _data;
+        private final int _startOffset;
+        private int _countBytesWritten;
+
+        public SerializingRecordVisitor(byte[] data, int startOffset) {
+            _data = data;
+            _startOffset = startOffset;
+        }
+        public int countBytesWritten() {
+            return _countBytesWritten;
+        }
+        public void visitRecord(Record r) {
+            _countBytesWritten += r.serialize(_startOffset + _countBytesWritten, _data);
+        }
     }
 
     /**
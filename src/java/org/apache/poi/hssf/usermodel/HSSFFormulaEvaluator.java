@@ -17,8 +17,15 @@
 
 package org.apache.poi.hssf.usermodel;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
 import org.apache.poi.ss.formula.CollaboratingWorkbooksEnvironment;
+import org.apache.poi.ss.formula.EvaluationCell;
+import org.apache.poi.ss.formula.EvaluationProfiler;
 import org.apache.poi.ss.formula.IStabilityClassifier;
+import org.apache.poi.ss.formula.ParallelEvaluator;
 import org.apache.poi.ss.formula.WorkbookEvaluator;
 import org.apache.poi.ss.formula.eval.BoolEval;
 import org.apache.poi.ss.formula.eval.ErrorEval;
@@ -73,6 +80,7 @@ public class HSSFFormulaEvaluator implements FormulaEvaluator  {
 	 */
 	private HSSFFormulaEvaluator(HSSFWorkbook workbook, IStabilityClassifier stabilityClassifier, UDFFinder udfFinder) {
 		_bookEvaluator = new WorkbookEvaluator(HSSFEvaluationWorkbook.create(workbook), stabilityClassifier, udfFinder);
+		_book = workbook;
 	}
 
 	/**
@@ -343,12 +351,62 @@ public class HSSFFormulaEvaluator implements FormulaEvaluator  {
       evaluateAllFormulaCells(_book, this);
    }
 
+	/**
+	 * Evaluates all formula cells of the workbook and saves their results, like {@link #evaluateAll()},
+	 * but evaluates the cells which do not depend on each other concurrently, on the threads of the
+	 * supplied executor. The results are the same as those of {@link #evaluateAll()}.<p/>
+	 *
+	 * The workbook must not be changed while this method runs. User defined functions are called
+	 * from several threads at once, and so need to be thread safe.
+	 *
+	 * @see ParallelEvaluator
+	 */
+	public void evaluateAll(Executor executor) {
+		List<HSSFCell> cells = new ArrayList<HSSFCell>();
+		for (int i = 0; i < _book.getNumberOfSheets(); i++) {
+			for (Row r : _book.getSheetAt(i)) {
+				for (Cell c : r) {
+					if (c.getCellType() == HSSFCell.CELL_TYPE_FORMULA) {
+						cells.add((HSSFCell) c);
+					}
+				}
+			}
+		}
+		EvaluationCell[] evalCells = new EvaluationCell[cells.size()];
+		for (int i = 0; i < evalCells.length; i++) {
+			evalCells[i] = new HSSFEvaluationCell(cells.get(i));
+		}
+		ValueEval[] results = new ParallelEvaluator(_bookEvaluator, executor).evaluate(evalCells);
+		for (int i = 0; i < results.length; i++) {
+			setCellValue(cells.get(i), toCellValue(results[i]));
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @see WorkbookEvaluator#recalculateDirtyCells()
+	 */
+	public List<Cell> recalculateDirtyCells() {
+		List<Cell> result = new ArrayList<Cell>();
+		for (EvaluationCell evalCell : _bookEvaluator.recalculateDirtyCells()) {
+			HSSFCell cell = ((HSSFEvaluationCell) evalCell).getHSSFCell();
+			// the result is cached by now
+			evaluateFormulaCell(cell);
+			result.add(cell);
+		}
+		return result;
+	}
+
 	/**
 	 * Returns a CellValue wrapper around the supplied ValueEval instance.
 	 * @param cell
 	 */
 	private CellValue evaluateFormulaCellValue(Cell cell) {
-		ValueEval eval = _bookEvaluator.evaluate(new HSSFEvaluationCell((HSSFCell)cell));
+		return toCellValue(_bookEvaluator.evaluate(new HSSFEvaluationCell((HSSFCell)cell)));
+	}
+
+	private static CellValue toCellValue(ValueEval eval) {
 		if (eval instanceof BoolEval) {
 			BoolEval be = (BoolEval) eval;
 			return CellValue.valueOf(be.getBooleanValue());
@@ -386,6 +444,28 @@ public class HSSFFormulaEvaluator implements FormulaEvaluator  {
         _bookEvaluator.setIgnoreMissingWorkbooks(ignore);
     }
 
+    /**
+     * Whether to read the plain cell values from snapshots of the sheets, which keep them in arrays
+     * per column. This speeds up formulas over large areas at the cost of memory. The sheets must
+     * not be changed other than with the notify~ methods or {@link #clearAllCachedResultValues()}
+     * while this is enabled. Off by default.
+     *
+     * @see org.apache.poi.ss.formula.WorkbookEvaluator#setUseSheetSnapshots(boolean)
+     */
+    public void setUseSheetSnapshots(boolean value) {
+        _bookEvaluator.setUseSheetSnapshots(value);
+    }
+
+    /**
+     * Records where the time of the evaluations goes into the supplied profiler, until set to
+     * <code>null</code>.
+     *
+     * @see org.apache.poi.ss.formula.WorkbookEvaluator#setProfiler(EvaluationProfiler)
+     */
+    public void setProfiler(EvaluationProfiler profiler) {
+        _bookEvaluator.setProfiler(profiler);
+    }
+
     /** {@inheritDoc} */
     public void setDebugEvaluationOutputForNextEval(boolean value){
         _bookEvaluator.setDebugEvaluationOutputForNextEval(value);
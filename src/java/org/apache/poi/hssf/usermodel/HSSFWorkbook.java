@@ -17,6 +17,7 @@
 
 package org.apache.poi.hssf.usermodel;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
@@ -59,6 +60,7 @@ import org.apache.poi.hssf.record.NameRecord;
 import org.apache.poi.hssf.record.RecalcIdRecord;
 import org.apache.poi.hssf.record.Record;
 import org.apache.poi.hssf.record.RecordFactory;
+import org.apache.poi.hssf.record.RecordInputStream;
 import org.apache.poi.hssf.record.SSTRecord;
 import org.apache.poi.hssf.record.UnknownRecord;
 import org.apache.poi.hssf.record.aggregates.RecordAggregate.RecordVisitor;
@@ -71,6 +73,8 @@ import org.apache.poi.poifs.filesystem.FilteringDirectoryNode;
 import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
 import org.apache.poi.poifs.filesystem.Ole10Native;
 import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.poifs.filesystem.POIFSWriterEvent;
+import org.apache.poi.poifs.filesystem.POIFSWriterListener;
 import org.apache.poi.ss.formula.FormulaShifter;
 import org.apache.poi.ss.formula.FormulaType;
 import org.apache.poi.ss.formula.SheetNameFormatter;
@@ -1212,6 +1216,11 @@ public final class HSSFWorkbook extends POIDocument implements org.apache.poi.ss
      * Method write - write out this workbook to an Outputstream.  Constructs
      * a new POI POIFSFileSystem, passes in the workbook binary representation  and
      * writes it out.
+     * <p>
+     * The Workbook stream is serialized record by record straight into the output
+     * while the file system is written, so that unlike {@link #getBytes()} the
+     * binary representation of the whole workbook is never held in memory.
+     * </p>
      *
      * @param stream - the java OutputStream you wish to write the XLS to
      *
@@ -1222,15 +1231,15 @@ public final class HSSFWorkbook extends POIDocument implements org.apache.poi.ss
 	public void write(OutputStream stream)
             throws IOException
     {
-        byte[] bytes = getBytes();
         POIFSFileSystem fs = new POIFSFileSystem();
 
         // For tracking what we've written out, used if we're
         //  going to be preserving nodes
         List<String> excepts = new ArrayList<String>(1);
 
-        // Write out the Workbook stream
-        fs.createDocument(new ByteArrayInputStream(bytes), "Workbook");
+        // Write out the Workbook stream, the records are serialized when the filesystem is written
+        WorkbookRecordWriter workbookWriter = new WorkbookRecordWriter(workbook, getSheets());
+        fs.createDocument("Workbook", workbookWriter.getTotalSize(), workbookWriter);
 
         // Write out our HPFS properties, if we have them
         writeProperties(fs, excepts);
@@ -1252,6 +1261,126 @@ public final class HSSFWorkbook extends POIDocument implements org.apache.poi.ss
             fs.getRoot().setStorageClsid(this.directory.getStorageClsid());
         }
         fs.writeFilesystem(stream);
+        workbookWriter.checkWritten();
+    }
+
+    /**
+     * Tells the workbook and the sheets that serialization is about to occur.
+     * Must be called before the sizes of the workbook and sheet records are taken.
+     */
+    private static void preSerialize(InternalWorkbook workbook, HSSFSheet[] sheets) {
+        workbook.preSerialize();
+        for (int i = 0; i < sheets.length; i++) {
+            sheets[i].getSheet().preSerialize();
+            sheets[i].preSerialize();
+        }
+    }
+
+    /**
+     * Totals the sizes of all sheet records without holding on to them
+     */
+    private static final class SheetSizeCounter implements RecordVisitor {
+        private int _totalSize;
+
+        public int getTotalSize() {
+            return _totalSize;
+        }
+        public void visitRecord(Record r) {
+            _totalSize += r.getRecordSize();
+        }
+    }
+
+    /**
+     * Writes the Workbook stream into a POIFS document, one record at a time.
+     * The sheet sizes and BOF offsets are calculated up front, the records of
+     * each sheet are visited again when the document is written.
+     */
+    private static final class WorkbookRecordWriter implements POIFSWriterListener, RecordVisitor {
+
+        private final InternalWorkbook _workbook;
+        private final HSSFSheet[] _sheets;
+        private final int[] _sheetOffsets;
+        private final int[] _sheetSizes;
+        private final int _totalSize;
+
+        private OutputStream _out;
+        private byte[] _buffer = new byte[RecordInputStream.MAX_RECORD_DATA_SIZE + 4];
+        private int _written;
+        private IOException _exception;
+
+        public WorkbookRecordWriter(InternalWorkbook workbook, HSSFSheet[] sheets) {
+            _workbook = workbook;
+            _sheets = sheets;
+            preSerialize(workbook, sheets);
+
+            int nSheets = sheets.length;
+            int totalsize = workbook.getSize();
+
+            // pre-calculate all the sheet sizes and set BOF indexes
+            _sheetOffsets = new int[nSheets];
+            _sheetSizes = new int[nSheets];
+            for (int k = 0; k < nSheets; k++) {
+                workbook.setSheetBof(k, totalsize);
+                SheetSizeCounter ssc = new SheetSizeCounter();
+                sheets[k].getSheet().visitContainedRecords(ssc, totalsize);
+                _sheetOffsets[k] = totalsize;
+                _sheetSizes[k] = ssc.getTotalSize();
+                totalsize += ssc.getTotalSize();
+            }
+            _totalSize = totalsize;
+        }
+
+        public int getTotalSize() {
+            return _totalSize;
+        }
+
+        public void processPOIFSWriterEvent(POIFSWriterEvent event) {
+            _out = new BufferedOutputStream(event.getStream());
+            _workbook.visitContainedRecords(this, 0);
+            for (int k = 0; k < _sheets.length; k++) {
+                int start = _written;
+                _sheets[k].getSheet().visitContainedRecords(this, _sheetOffsets[k]);
+                int serializedSize = _written - start;
+                if (serializedSize != _sheetSizes[k]) {
+                    // see getBytes()
+                    throw new IllegalStateException("Actual serialized sheet size (" + serializedSize
+                            + ") differs from pre-calculated size (" + _sheetSizes[k]
+                            + ") for sheet (" + k + ")");
+                }
+            }
+            try {
+                _out.flush();
+            } catch (IOException e) {
+                _exception = e;
+            }
+        }
+
+        public void visitRecord(Record r) {
+            int size = r.getRecordSize();
+            if (_buffer.length < size) {
+                _buffer = new byte[size];
+            }
+            int len = r.serialize(0, _buffer);
+            _written += len;
+            if (_exception != null) {
+                return;
+            }
+            try {
+                _out.write(_buffer, 0, len);
+            } catch (IOException e) {
+                // POIFSWriterListener can't throw, the failure is reported by checkWritten()
+                _exception = e;
+            }
+        }
+
+        /**
+         * @throws IOException if the records could not be written to the document stream
+         */
+        public void checkWritten() throws IOException {
+            if (_exception != null) {
+                throw _exception;
+            }
+        }
     }
 
     /**
@@ -1305,11 +1434,7 @@ public final class HSSFWorkbook extends POIDocument implements org.apache.poi.ss
 
         // before getting the workbook size we must tell the sheets that
         // serialization is about to occur.
-        workbook.preSerialize();
-        for (int i = 0; i < nSheets; i++) {
-            sheets[i].getSheet().preSerialize();
-            sheets[i].preSerialize();
-        }
+        preSerialize(workbook, sheets);
 
         int totalsize = workbook.getSize();
 
@@ -210,10 +210,35 @@ public final class NDocumentInputStream extends DocumentInputStream {
 		}
 		
 		long rval = new_offset - _current_offset;
-		
-		// TODO Do this better
-		byte[] skip = new byte[(int)rval];
-		readFully(skip);
+		int remaining = (int)rval;
+
+		// Use up what is left of the current block
+		if(_buffer != null) {
+		   int limit = Math.min(remaining, _buffer.remaining());
+		   _buffer.position(_buffer.position() + limit);
+		   _current_offset += limit;
+		   remaining -= limit;
+		}
+
+		// Whole blocks are passed over without being read
+		if(_data instanceof NPOIFSStream.StreamBlockByteBufferIterator) {
+		   NPOIFSStream.StreamBlockByteBufferIterator blocks =
+		         (NPOIFSStream.StreamBlockByteBufferIterator)_data;
+		   int blockSize = _document.getDocumentBlockSize();
+		   while(remaining >= blockSize) {
+		      blocks.skip();
+		      _buffer = null;
+		      _current_block_count++;
+		      _current_offset += blockSize;
+		      remaining -= blockSize;
+		   }
+		}
+
+		// Position within the block we end up in
+		if(remaining > 0) {
+		   byte[] skip = new byte[remaining];
+		   readFully(skip);
+		}
 		return rval;
 	}
 
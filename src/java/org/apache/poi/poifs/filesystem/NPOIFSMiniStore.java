@@ -21,7 +21,6 @@ package org.apache.poi.poifs.filesystem;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Iterator;
 import java.util.List;
 
 import org.apache.poi.poifs.common.POIFSConstants;
@@ -42,6 +41,9 @@ public class NPOIFSMiniStore extends BlockStore
     private List<BATBlock>   _sbat_blocks;
     private HeaderBlock      _header;
     private RootProperty     _root;
+    // the big blocks of the mini stream, looked up as they are needed
+    private int[]            _mini_stream_blocks = new int[16];
+    private int              _mini_stream_block_count;
 
     protected NPOIFSMiniStore(NPOIFSFileSystem filesystem, RootProperty root,
          List<BATBlock> sbats, HeaderBlock header)
@@ -64,11 +66,7 @@ public class NPOIFSMiniStore extends BlockStore
        int bigBlockOffset = byteOffset % _filesystem.getBigBlockSize();
        
        // Now locate the data block for it
-       Iterator<ByteBuffer> it = _mini_stream.getBlockIterator();
-       for(int i=0; i<bigBlockNumber; i++) {
-          it.next();
-       }
-       ByteBuffer dataBlock = it.next();
+       ByteBuffer dataBlock = _filesystem.getBlockAt(getMiniStreamBlock(bigBlockNumber));
        if(dataBlock == null) {
           throw new IndexOutOfBoundsException("Big block " + bigBlockNumber + " outside stream");
        }
@@ -82,6 +80,40 @@ public class NPOIFSMiniStore extends BlockStore
        return miniBuffer;
     }
     
+    /**
+     * Returns the big block holding the given part of the mini stream.
+     * The chain of the mini stream is followed only once, rather than for
+     *  every small block, and without reading the big blocks along the way.
+     */
+    private int getMiniStreamBlock(final int bigBlockNumber) throws IOException {
+       if(bigBlockNumber < _mini_stream_block_count) {
+          return _mini_stream_blocks[bigBlockNumber];
+       }
+       int block = _mini_stream_block_count == 0 ? _mini_stream.getStartBlock() :
+          _filesystem.getNextBlock(_mini_stream_blocks[_mini_stream_block_count-1]);
+       long maxBlocks = _filesystem.size() / _filesystem.getBigBlockSize();
+       while(true) {
+          if(block == POIFSConstants.END_OF_CHAIN) {
+             throw new IndexOutOfBoundsException("Can't read past the end of the stream");
+          }
+          if(_mini_stream_block_count >= maxBlocks) {
+             throw new IllegalStateException(
+                   "Potential loop detected - the mini stream has more blocks than the file"
+             );
+          }
+          if(_mini_stream_block_count == _mini_stream_blocks.length) {
+             int[] blocks = new int[_mini_stream_blocks.length * 2];
+             System.arraycopy(_mini_stream_blocks, 0, blocks, 0, _mini_stream_block_count);
+             _mini_stream_blocks = blocks;
+          }
+          _mini_stream_blocks[_mini_stream_block_count++] = block;
+          if(bigBlockNumber < _mini_stream_block_count) {
+             return block;
+          }
+          block = _filesystem.getNextBlock(block);
+       }
+    }
+
     /**
      * Load the block, extending the underlying stream if needed
      */
@@ -110,6 +142,7 @@ public class NPOIFSMiniStore extends BlockStore
        if (firstInStore) {
            _filesystem._get_property_table().getRoot().setStartBlock(newBigBlock);
            _mini_stream = new NPOIFSStream(_filesystem, newBigBlock);
+           _mini_stream_block_count = 0;
        } else {
            // Tack it onto the end of our chain
            ChainLoopDetector loopDetector = _filesystem.getChainLoopDetector();
@@ -177,6 +177,18 @@ public class NPOIFSStream implements Iterable<ByteBuffer>
       public void remove() {
          throw new UnsupportedOperationException();
       }
+
+      /**
+       * Moves past the next block without reading it, only
+       *  following the chain of blocks
+       */
+      void skip() {
+         if(nextBlock == POIFSConstants.END_OF_CHAIN) {
+            throw new IndexOutOfBoundsException("Can't skip past the end of the stream");
+         }
+         loopDetector.claim(nextBlock);
+         nextBlock = blockStore.getNextBlock(nextBlock);
+      }
    }
    
    protected class StreamBlockByteBuffer extends OutputStream {
@@ -33,10 +33,18 @@ import org.apache.poi.util.IOUtils;
  * A POIFS {@link DataSource} backed by a File
  */
 public class FileBackedDataSource extends DataSource {
+   /**
+    * Size of the regions mapped by a memory-mapped data source, a multiple of all block sizes
+    */
+   public static final int MAPPED_WINDOW_SIZE = 1 << 26;
+
    private FileChannel channel;
    private boolean writable;
    // remember file base, which needs to be closed too
    private RandomAccessFile srcFile;
+   // read-only regions of the file, mapped as they are first read. null if not memory-mapped
+   private ByteBuffer[] mappedWindows;
+   private long mappedSize;
 
    public FileBackedDataSource(File file) throws FileNotFoundException {
        this(newSrcFile(file, "r"), true);
@@ -55,6 +63,36 @@ public class FileBackedDataSource extends DataSource {
       this.channel = channel;
       this.writable = !readOnly;
    }
+
+   /**
+    * Creates a read-only data source which memory-maps the file in regions
+    *  of {@link #MAPPED_WINDOW_SIZE} bytes, and returns slices of these regions
+    *  from {@link #read(int, long)} instead of copying the data into new buffers.
+    * The regions are unmapped when they are garbage collected, which on some platforms
+    *  prevents the file from being deleted until then.
+    */
+   public static FileBackedDataSource createMapped(File file) throws IOException {
+       return createMapped(newSrcFile(file, "r"));
+   }
+
+   /**
+    * Creates a read-only, memory-mapped data source over an open file.
+    *
+    * @see #createMapped(File)
+    */
+   public static FileBackedDataSource createMapped(RandomAccessFile srcFile) throws IOException {
+       FileBackedDataSource ds = new FileBackedDataSource(srcFile, true);
+       ds.mappedSize = ds.channel.size();
+       ds.mappedWindows = new ByteBuffer[(int)((ds.mappedSize + MAPPED_WINDOW_SIZE - 1) / MAPPED_WINDOW_SIZE)];
+       return ds;
+   }
+
+   /**
+    * @return whether reads are served from memory-mapped regions of the file
+    */
+   public boolean isMapped() {
+       return mappedWindows != null;
+   }
    
    public boolean isWriteable() {
        return this.writable;
@@ -66,6 +104,10 @@ public class FileBackedDataSource extends DataSource {
 
    @Override
    public ByteBuffer read(int length, long position) throws IOException {
+      if (mappedWindows != null) {
+         return readMapped(length, position);
+      }
+
       if(position >= size()) {
          throw new IllegalArgumentException("Position " + position + " past the end of the file");
       }
@@ -95,6 +137,50 @@ public class FileBackedDataSource extends DataSource {
       return dst;
    }
 
+   private ByteBuffer readMapped(int length, long position) throws IOException {
+      if(position >= mappedSize) {
+         throw new IllegalArgumentException("Position " + position + " past the end of the file");
+      }
+      int toRead = (int)Math.min(length, mappedSize - position);
+      int index = (int)(position / MAPPED_WINDOW_SIZE);
+      int offset = (int)(position % MAPPED_WINDOW_SIZE);
+      ByteBuffer window = getMappedWindow(index);
+
+      ByteBuffer dst;
+      if (toRead == length && offset + toRead <= window.capacity()) {
+         // the usual case, blocks never cross the window boundaries
+         dst = window.duplicate();
+         dst.position(offset);
+         dst.limit(offset + toRead);
+         dst = dst.slice();
+      } else {
+         // a short block at the end of the file is padded, as when reading
+         dst = ByteBuffer.allocate(length);
+         ByteBuffer src = window.duplicate();
+         src.position(offset);
+         src.limit(Math.min(window.capacity(), offset + toRead));
+         dst.put(src);
+         if (dst.position() < toRead) {
+            src = getMappedWindow(index + 1).duplicate();
+            src.limit(toRead - dst.position());
+            dst.put(src);
+         }
+         dst.position(0);
+      }
+      return dst;
+   }
+
+   private ByteBuffer getMappedWindow(int index) throws IOException {
+      ByteBuffer window = mappedWindows[index];
+      if (window == null) {
+         long start = (long)index * MAPPED_WINDOW_SIZE;
+         long size = Math.min(MAPPED_WINDOW_SIZE, mappedSize - start);
+         window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+         mappedWindows[index] = window;
+      }
+      return window;
+   }
+
    @Override
    public void write(ByteBuffer src, long position) throws IOException {
       channel.write(src, position);
@@ -115,6 +201,7 @@ public class FileBackedDataSource extends DataSource {
 
    @Override
    public void close() throws IOException {
+      mappedWindows = null;
       if (srcFile != null) {
           // see http://bugs.java.com/bugdatabase/view_bug.do?bug_id=4796385
           srcFile.close();
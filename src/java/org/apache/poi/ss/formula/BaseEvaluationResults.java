@@ -0,0 +1,82 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import java.util.Set;
+
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.formula.udf.UDFFinder;
+
+/**
+ * The results of the formula cells of a workbook, evaluated once and then shared by the evaluators
+ * of forks of the workbook, like those of {@link org.apache.poi.ss.formula.eval.forked.ForkedEvaluator},
+ * see {@link WorkbookEvaluator#setBaseResults(BaseEvaluationResults)}.<p/>
+ *
+ * Along with the results, the dependencies between the cells recorded while evaluating them are
+ * kept, so that a fork can tell which results are affected by the cells it changed. Once created,
+ * the results are not changed, and so can be used by several threads at once.
+ */
+public final class BaseEvaluationResults {
+
+	/** the book index of the cells in {@link #_cache} */
+	private static final int BOOK_INDEX = 0;
+
+	private final EvaluationWorkbook _workbook;
+	private final EvaluationCache _cache;
+
+	private BaseEvaluationResults(EvaluationWorkbook workbook, EvaluationCache cache) {
+		_workbook = workbook;
+		_cache = cache;
+	}
+
+	/**
+	 * Evaluates the supplied formula cells of the workbook
+	 *
+	 * @param udfFinder pass <code>null</code> for default (AnalysisToolPak only)
+	 */
+	public static BaseEvaluationResults create(EvaluationWorkbook workbook, EvaluationCell[] formulaCells,
+			IStabilityClassifier stabilityClassifier, UDFFinder udfFinder) {
+		WorkbookEvaluator evaluator = new WorkbookEvaluator(workbook, stabilityClassifier, udfFinder);
+		for (int i = 0; i < formulaCells.length; i++) {
+			evaluator.evaluate(formulaCells[i]);
+		}
+		return new BaseEvaluationResults(workbook, evaluator.getCache());
+	}
+
+	/**
+	 * @return the workbook whose formula cells were evaluated
+	 */
+	public EvaluationWorkbook getWorkbook() {
+		return _workbook;
+	}
+
+	/**
+	 * @return <code>null</code> if the cell is not a formula cell, or was not evaluated
+	 */
+	/* package */ ValueEval getResult(int sheetIndex, int rowIndex, int columnIndex) {
+		return _cache.getFormulaResult(BOOK_INDEX, sheetIndex, rowIndex, columnIndex);
+	}
+
+	/**
+	 * Adds the locations of the formula cells whose results depend on the specified cell to the
+	 * supplied set, with the book index 0, see {@link PlainCellCache.Loc}
+	 */
+	/* package */ void addDependentCells(int sheetIndex, int rowIndex, int columnIndex, Set<Long> result) {
+		_cache.addDependentFormulaCells(BOOK_INDEX, sheetIndex, rowIndex, columnIndex, result);
+	}
+}
@@ -0,0 +1,52 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import org.apache.poi.ss.formula.eval.ValueEval;
+
+/**
+ * A {@link TwoDEval} whose values can be read a block of rows at a time, without a
+ * {@link ValueEval} per cell. The functions which aggregate large areas use it when
+ * it is available and read the cells one by one otherwise.
+ */
+public interface BulkTwoDEval extends TwoDEval {
+
+	/** the type of a blank cell, read by {@link #getValues(int, int, byte[], double[])} */
+	byte VALUE_BLANK = 0;
+	/** the type of a numeric cell, read by {@link #getValues(int, int, byte[], double[])} */
+	byte VALUE_NUMBER = 1;
+	/** the type of a string cell, read by {@link #getValues(int, int, byte[], double[])} */
+	byte VALUE_STRING = 2;
+	/** the type of a boolean cell, read by {@link #getValues(int, int, byte[], double[])} */
+	byte VALUE_BOOLEAN = 3;
+	/** the type of an error cell, read by {@link #getValues(int, int, byte[], double[])} */
+	byte VALUE_ERROR = 4;
+
+	/**
+	 * Reads the values of several rows at once, as a type and a <code>double</code> per cell
+	 * instead of a {@link ValueEval}. The cell at relative row <tt>rowIndex + r</tt> and
+	 * column <tt>c</tt> is stored at index <tt>r * getWidth() + c</tt> of both arrays.
+	 *
+	 * @param rowIndex relative index of the first row to read (zero based)
+	 * @param rowCount the number of rows to read
+	 * @param types receives the type of each cell, one of the <tt>VALUE_XXX</tt> constants
+	 * @param values receives the number of numeric cells, 1 or 0 for boolean cells and the
+	 * error code of error cells. The values of blank and string cells are undefined.
+	 */
+	void getValues(int rowIndex, int rowCount, byte[] types, double[] values);
+}
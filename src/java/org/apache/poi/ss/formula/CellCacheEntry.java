@@ -30,13 +30,15 @@ import org.apache.poi.ss.formula.IEvaluationListener.ICacheEntry;
  */
 abstract class CellCacheEntry implements ICacheEntry {
 	public static final CellCacheEntry[] EMPTY_ARRAY = { };
+	private static final FormulaCellCacheEntry[] EMPTY_FORMULA_ARRAY = { };
 
-	private final FormulaCellCacheEntrySet _consumingCells;
+	/** created with the first consuming cell, as most cached cells have none or are never changed */
+	private FormulaCellCacheEntrySet _consumingCells;
 	private ValueEval _value;
 
 
 	protected CellCacheEntry() {
-		_consumingCells = new FormulaCellCacheEntrySet();
+		// leave fields un-set
 	}
 	protected final void clearValue() {
 		_value = null;
@@ -54,7 +56,7 @@ abstract class CellCacheEntry implements ICacheEntry {
 		return _value;
 	}
 
-	private static boolean areValuesEqual(ValueEval a, ValueEval b) {
+	/* package */ static boolean areValuesEqual(ValueEval a, ValueEval b) {
 		if (a == null) {
 			return false;
 		}
@@ -82,15 +84,18 @@ abstract class CellCacheEntry implements ICacheEntry {
 	}
 
 	public final void addConsumingCell(FormulaCellCacheEntry cellLoc) {
+		if (_consumingCells == null) {
+			_consumingCells = new FormulaCellCacheEntrySet();
+		}
 		_consumingCells.add(cellLoc);
 
 	}
 	public final FormulaCellCacheEntry[] getConsumingCells() {
-		return _consumingCells.toArray();
+		return _consumingCells == null ? EMPTY_FORMULA_ARRAY : _consumingCells.toArray();
 	}
 
 	public final void clearConsumingCell(FormulaCellCacheEntry cce) {
-		if(!_consumingCells.remove(cce)) {
+		if(_consumingCells == null || !_consumingCells.remove(cce)) {
 			throw new IllegalStateException("Specified formula cell is not consumed by this cell");
 		}
 	}
@@ -0,0 +1,170 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from cell locations, packed into a <code>long</code> by
+ * {@link PlainCellCache.Loc#toLocation(int, int, int, int)}, to cache entries.<p/>
+ *
+ * The keys and values are stored in two arrays with open addressing and linear probing, so that
+ * lookups do not allocate, and each entry takes 12 to 16 bytes of the arrays instead of the
+ * around 60 bytes of a {@link java.util.HashMap} entry with a boxed key.
+ */
+final class CellLocationMap<E extends CellCacheEntry> {
+	private static final int INITIAL_CAPACITY = 16;
+
+	private long[] _keys;
+	/** <code>null</code> for empty slots */
+	private CellCacheEntry[] _values;
+	private int _size;
+	/** the number of entries at which the arrays are grown */
+	private int _threshold;
+
+	public CellLocationMap() {
+		allocate(INITIAL_CAPACITY);
+	}
+
+	private void allocate(int capacity) {
+		_keys = new long[capacity];
+		_values = new CellCacheEntry[capacity];
+		_threshold = capacity / 4 * 3;
+	}
+
+	private int slot(long key) {
+		// Fibonacci hashing, the packed locations differ mostly in their low bits
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & (_keys.length - 1);
+	}
+
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * @return <code>null</code> if not found
+	 */
+	@SuppressWarnings("unchecked")
+	public E get(long key) {
+		int mask = _keys.length - 1;
+		for (int i = slot(key); _values[i] != null; i = (i + 1) & mask) {
+			if (_keys[i] == key) {
+				return (E) _values[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the previous entry of the location, <code>null</code> if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	public E put(long key, E value) {
+		if (value == null) {
+			throw new IllegalArgumentException("value must not be null");
+		}
+		int mask = _keys.length - 1;
+		int i = slot(key);
+		for (; _values[i] != null; i = (i + 1) & mask) {
+			if (_keys[i] == key) {
+				E result = (E) _values[i];
+				_values[i] = value;
+				return result;
+			}
+		}
+		_keys[i] = key;
+		_values[i] = value;
+		if (++_size > _threshold) {
+			rehash(_keys.length * 2);
+		}
+		return null;
+	}
+
+	/**
+	 * @return the removed entry, <code>null</code> if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	public E remove(long key) {
+		int mask = _keys.length - 1;
+		int i = slot(key);
+		for (; _values[i] != null; i = (i + 1) & mask) {
+			if (_keys[i] == key) {
+				break;
+			}
+		}
+		E result = (E) _values[i];
+		if (result == null) {
+			return null;
+		}
+		// move back the following entries of the probe sequence which would no longer be found
+		int gap = i;
+		for (int j = (i + 1) & mask; _values[j] != null; j = (j + 1) & mask) {
+			int home = slot(_keys[j]);
+			if (((j - home) & mask) >= ((j - gap) & mask)) {
+				_keys[gap] = _keys[j];
+				_values[gap] = _values[j];
+				gap = j;
+			}
+		}
+		_values[gap] = null;
+		_size--;
+		return result;
+	}
+
+	/**
+	 * Removes all entries, keeping the capacity
+	 */
+	public void clear() {
+		if (_size > 0) {
+			Arrays.fill(_values, null);
+			_size = 0;
+		}
+	}
+
+	/**
+	 * @return the number of slots, for iterating with {@link #getValueAt(int)}
+	 */
+	public int getCapacity() {
+		return _values.length;
+	}
+
+	/**
+	 * @return the entry in the slot, <code>null</code> if it is empty
+	 */
+	@SuppressWarnings("unchecked")
+	public E getValueAt(int slot) {
+		return (E) _values[slot];
+	}
+
+	private void rehash(int capacity) {
+		long[] keys = _keys;
+		CellCacheEntry[] values = _values;
+		allocate(capacity);
+		int mask = capacity - 1;
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null) {
+				int j = slot(keys[i]);
+				while (_values[j] != null) {
+					j = (j + 1) & mask;
+				}
+				_keys[j] = keys[i];
+				_values[j] = values[i];
+			}
+		}
+	}
+}
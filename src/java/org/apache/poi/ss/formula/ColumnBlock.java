@@ -0,0 +1,79 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+/**
+ * The values of {@link #SIZE} cells of a column, starting at a multiple of {@link #SIZE} rows, as
+ * read in bulk by {@link BulkTwoDEval#getValues(int, int, byte[], double[])} for the aggregate
+ * functions.<p/>
+ *
+ * Blocks are kept by the {@link EvaluationCache} like {@link LookupIndex}es. A block is cached like
+ * a formula cell whose inputs are its cells, and the formulas reading it depend on the block instead
+ * of on each of its cells. So large areas are tracked with one dependency per block, and when a cell
+ * changes, only its block is read again.
+ */
+final class ColumnBlock {
+
+	static final int SHIFT = 10;
+	static final int SIZE = 1 << SHIFT;
+
+	private final FormulaCellCacheEntry _cacheEntry;
+	/** the types of the cells, <code>null</code> if all of them are blank */
+	private byte[] _types;
+	private double[] _values;
+
+	public ColumnBlock() {
+		_cacheEntry = new FormulaCellCacheEntry();
+	}
+
+	public FormulaCellCacheEntry getCacheEntry() {
+		return _cacheEntry;
+	}
+
+	/**
+	 * @param types <code>null</code> if all cells are blank
+	 */
+	public void setValues(byte[] types, double[] values) {
+		_types = types;
+		_values = values;
+	}
+
+	/**
+	 * Copies the values of cells of the block to the arrays of
+	 * {@link BulkTwoDEval#getValues(int, int, byte[], double[])}, one per <tt>stride</tt> elements
+	 *
+	 * @param offset the index of the first cell within the block
+	 * @param count the number of cells to copy
+	 * @param index the index of the first cell in the arrays
+	 */
+	public void copyValues(int offset, int count, byte[] types, double[] values, int index, int stride) {
+		if (_types == null) {
+			for (int i = 0; i < count; i++) {
+				types[index + i * stride] = BulkTwoDEval.VALUE_BLANK;
+			}
+		} else if (stride == 1) {
+			System.arraycopy(_types, offset, types, index, count);
+			System.arraycopy(_values, offset, values, index, count);
+		} else {
+			for (int i = 0; i < count; i++) {
+				types[index + i * stride] = _types[offset + i];
+				values[index + i * stride] = _values[offset + i];
+			}
+		}
+	}
+}
@@ -17,6 +17,16 @@
 
 package org.apache.poi.ss.formula;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.apache.poi.ss.formula.eval.BlankEval;
 import org.apache.poi.ss.formula.eval.BoolEval;
 import org.apache.poi.ss.formula.eval.ErrorEval;
@@ -37,8 +47,31 @@ import org.apache.poi.ss.usermodel.Cell;
  */
 final class EvaluationCache {
 
+	/**
+	 * The most cells of all lookup indexes, which keep a copy of the values of their cells and
+	 * hashes of them. Further areas are searched directly.
+	 */
+	/* package */ static final int MAX_LOOKUP_INDEX_CELLS = 1 << 20;
+	/** the most areas requested once which are remembered, see {@link #getOrCreateLookupIndex} */
+	private static final int MAX_LOOKUP_INDEX_CANDIDATES = 4096;
+
 	private final PlainCellCache _plainCellCache;
 	private final FormulaCellCache _formulaCellCache;
+	private final Map<LookupIndexKey, LookupIndex> _lookupIndexes;
+	/** the areas requested once, which get an index when requested again */
+	private final Map<LookupIndexKey, Boolean> _lookupIndexCandidates;
+	/** the number of cells of the areas of {@link #_lookupIndexes} */
+	private int _lookupIndexCells;
+	/** the indexes whose cells failed to be read, see {@link LookupIndex#isFailed()} */
+	private final List<LookupIndex> _failedLookupIndexes;
+	/** by the location of the first cell of each block */
+	private final Map<Long, ColumnBlock> _columnBlocks;
+	/**
+	 * the formula cells whose results were cleared since they were last recalculated. Entries
+	 * removed from {@link #_formulaCellCache} are removed from here too, so that the set is no
+	 * larger than the cache when {@link #takeDirtyFormulaCells(int)} is not called.
+	 */
+	private final Set<FormulaCellCacheEntry> _dirtyFormulaCells;
 	/** only used for testing. <code>null</code> otherwise */
 	final IEvaluationListener _evaluationListener;
 
@@ -46,19 +79,28 @@ final class EvaluationCache {
 		_evaluationListener = evaluationListener;
 		_plainCellCache = new PlainCellCache();
 		_formulaCellCache = new FormulaCellCache();
+		_lookupIndexes = new HashMap<LookupIndexKey, LookupIndex>();
+		_lookupIndexCandidates = new LinkedHashMap<LookupIndexKey, Boolean>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<LookupIndexKey, Boolean> eldest) {
+				return size() > MAX_LOOKUP_INDEX_CANDIDATES;
+			}
+		};
+		_failedLookupIndexes = new ArrayList<LookupIndex>();
+		_columnBlocks = new HashMap<Long, ColumnBlock>();
+		_dirtyFormulaCells = new LinkedHashSet<FormulaCellCacheEntry>();
 	}
 
 	public void notifyUpdateCell(int bookIndex, int sheetIndex, EvaluationCell cell) {
-		FormulaCellCacheEntry fcce = _formulaCellCache.get(cell);
-
+		resetFailedLookupIndexes();
 		int rowIndex = cell.getRowIndex();
 		int columnIndex = cell.getColumnIndex();
-		Loc loc = new Loc(bookIndex, sheetIndex, rowIndex, columnIndex);
+		long loc = Loc.toLocation(bookIndex, sheetIndex, rowIndex, columnIndex);
+		FormulaCellCacheEntry fcce = _formulaCellCache.get(loc, cell);
 		PlainValueCellCacheEntry pcce = _plainCellCache.get(loc);
 
 		if (cell.getCellType() == Cell.CELL_TYPE_FORMULA) {
 			if (fcce == null) {
-				fcce = new FormulaCellCacheEntry();
+				fcce = new FormulaCellCacheEntry(cell.getIdentityKey(), loc, _dirtyFormulaCells);
 				if (pcce == null) {
 					if (_evaluationListener != null) {
 						_evaluationListener.onChangeFromBlankValue(sheetIndex, rowIndex,
@@ -67,10 +109,12 @@ final class EvaluationCache {
 					updateAnyBlankReferencingFormulas(bookIndex, sheetIndex, rowIndex,
 							columnIndex);
 				}
-				_formulaCellCache.put(cell, fcce);
+				_formulaCellCache.put(loc, fcce);
 			} else {
 				fcce.recurseClearCachedFormulaResults(_evaluationListener);
 				fcce.clearFormulaEntry();
+				// the formula may have changed
+				fcce.setPlan(null);
 			}
 			if (pcce == null) {
 				// was formula cell before - no change of type
@@ -108,9 +152,10 @@ final class EvaluationCache {
 				// was plain cell before - no change of type
 			} else {
 				// was formula cell before - now a plain value
-				_formulaCellCache.remove(cell);
+				_formulaCellCache.remove(loc, cell);
 				fcce.setSensitiveInputCells(null);
 				fcce.recurseClearCachedFormulaResults(_evaluationListener);
+				removeDirtyFormulaCell(fcce);
 			}
 		}
 	}
@@ -124,12 +169,20 @@ final class EvaluationCache {
 				entry.notifyUpdatedBlankCell(bsk, rowIndex, columnIndex, _evaluationListener);
 			}
 		});
+		for (LookupIndex index : _lookupIndexes.values()) {
+			index.getCacheEntry().notifyUpdatedBlankCell(bsk, rowIndex, columnIndex, _evaluationListener);
+		}
+		ColumnBlock block = _columnBlocks.get(Long.valueOf(Loc.toLocation(bookIndex, sheetIndex,
+				rowIndex & ~(ColumnBlock.SIZE - 1), columnIndex)));
+		if (block != null) {
+			block.getCacheEntry().notifyUpdatedBlankCell(bsk, rowIndex, columnIndex, _evaluationListener);
+		}
 	}
 
 	public PlainValueCellCacheEntry getPlainValueEntry(int bookIndex, int sheetIndex,
 			int rowIndex, int columnIndex, ValueEval value) {
 
-		Loc loc = new Loc(bookIndex, sheetIndex, rowIndex, columnIndex);
+		long loc = Loc.toLocation(bookIndex, sheetIndex, rowIndex, columnIndex);
 		PlainValueCellCacheEntry result = _plainCellCache.get(loc);
 		if (result == null) {
 			result = new PlainValueCellCacheEntry(value);
@@ -148,6 +201,26 @@ final class EvaluationCache {
 		}
 		return result;
 	}
+
+	/**
+	 * Same as {@link #getPlainValueEntry(int, int, int, int, ValueEval)} for a numeric cell, which
+	 * only creates a {@link NumberEval} when the cell was not read before or its value changed
+	 */
+	public PlainValueCellCacheEntry getPlainNumberEntry(int bookIndex, int sheetIndex,
+			int rowIndex, int columnIndex, double value) {
+
+		if (_evaluationListener == null) {
+			PlainValueCellCacheEntry result = _plainCellCache.get(Loc.toLocation(bookIndex, sheetIndex, rowIndex, columnIndex));
+			if (result != null) {
+				ValueEval cachedValue = result.getValue();
+				if (cachedValue instanceof NumberEval && ((NumberEval) cachedValue).getNumberValue() == value) {
+					return result;
+				}
+			}
+		}
+		return getPlainValueEntry(bookIndex, sheetIndex, rowIndex, columnIndex, new NumberEval(value));
+	}
+
 	private boolean areValuesEqual(ValueEval a, ValueEval b) {
 		if (a == null) {
 			return false;
@@ -175,12 +248,77 @@ final class EvaluationCache {
 		throw new IllegalStateException("Unexpected value class (" + cls.getName() + ")");
 	}
 
-	public FormulaCellCacheEntry getOrCreateFormulaCellEntry(EvaluationCell cell) {
-		FormulaCellCacheEntry result = _formulaCellCache.get(cell);
+	public FormulaCellCacheEntry getOrCreateFormulaCellEntry(int bookIndex, int sheetIndex, EvaluationCell cell) {
+		long loc = Loc.toLocation(bookIndex, sheetIndex, cell.getRowIndex(), cell.getColumnIndex());
+		FormulaCellCacheEntry result = _formulaCellCache.get(loc, cell);
 		if (result == null) {
 
-			result = new FormulaCellCacheEntry();
-			_formulaCellCache.put(cell, result);
+			result = new FormulaCellCacheEntry(cell.getIdentityKey(), loc, _dirtyFormulaCells);
+			_formulaCellCache.put(loc, result);
+		}
+		return result;
+	}
+
+	/**
+	 * An area gets an index only when it is requested for the second time, as the index copies its
+	 * values. So areas which differ for each formula, like running ranges <code>$A$1:A5</code>, are
+	 * searched directly, as are all further areas once the indexes hold
+	 * {@link #MAX_LOOKUP_INDEX_CELLS} cells.
+	 *
+	 * @return the lookup index of the area, which has no values yet if it was not read before or if
+	 * any of its cells changed since, <code>null</code> if the area is to be searched directly
+	 */
+	public LookupIndex getOrCreateLookupIndex(int bookIndex, int sheetIndex, int firstRowIndex,
+			int firstColumnIndex, int lastRowIndex, int lastColumnIndex) {
+		LookupIndexKey key = new LookupIndexKey(
+				Loc.toLocation(bookIndex, sheetIndex, firstRowIndex, firstColumnIndex),
+				Loc.toLocation(bookIndex, sheetIndex, lastRowIndex, lastColumnIndex));
+		LookupIndex result = _lookupIndexes.get(key);
+		if (result != null) {
+			return result.isFailed() ? null : result;
+		}
+		if (_lookupIndexCandidates.put(key, Boolean.TRUE) == null) {
+			return null;
+		}
+		long nCells = (long) (lastRowIndex - firstRowIndex + 1) * (lastColumnIndex - firstColumnIndex + 1);
+		if (_lookupIndexCells + nCells > MAX_LOOKUP_INDEX_CELLS) {
+			return null;
+		}
+		_lookupIndexCandidates.remove(key);
+		_lookupIndexCells += (int) nCells;
+		result = new LookupIndex();
+		_lookupIndexes.put(key, result);
+		return result;
+	}
+
+	/**
+	 * Remembers that the cells of the index cannot be read, until any cell is updated
+	 */
+	public void setLookupIndexFailed(LookupIndex index) {
+		index.setFailed(true);
+		_failedLookupIndexes.add(index);
+	}
+
+	private void resetFailedLookupIndexes() {
+		if (_failedLookupIndexes.isEmpty()) {
+			return;
+		}
+		for (LookupIndex index : _failedLookupIndexes) {
+			index.setFailed(false);
+		}
+		_failedLookupIndexes.clear();
+	}
+
+	/**
+	 * @return the block of the column starting at the given row, which needs to be read if it was
+	 * not read before or if any of its cells changed since
+	 */
+	public ColumnBlock getOrCreateColumnBlock(int bookIndex, int sheetIndex, int firstRowIndex, int columnIndex) {
+		Long key = Long.valueOf(Loc.toLocation(bookIndex, sheetIndex, firstRowIndex, columnIndex));
+		ColumnBlock result = _columnBlocks.get(key);
+		if (result == null) {
+			result = new ColumnBlock();
+			_columnBlocks.put(key, result);
 		}
 		return result;
 	}
@@ -194,19 +332,69 @@ final class EvaluationCache {
 		}
 		_plainCellCache.clear();
 		_formulaCellCache.clear();
+		_lookupIndexes.clear();
+		_lookupIndexCandidates.clear();
+		_lookupIndexCells = 0;
+		_failedLookupIndexes.clear();
+		_columnBlocks.clear();
+		_dirtyFormulaCells.clear();
+	}
+
+	/**
+	 * Removes the entries of the formula cells of the book whose results were cleared, since
+	 * the cells they depend on changed, since the last call. The entries of other books are kept.
+	 *
+	 * @return the entries which are still cached, with their results before they were cleared
+	 * as {@link FormulaCellCacheEntry#takePreviousValue()}
+	 */
+	public List<FormulaCellCacheEntry> takeDirtyFormulaCells(int bookIndex) {
+		List<FormulaCellCacheEntry> result = new ArrayList<FormulaCellCacheEntry>();
+		for (Iterator<FormulaCellCacheEntry> it = _dirtyFormulaCells.iterator(); it.hasNext(); ) {
+			FormulaCellCacheEntry fcce = it.next();
+			long loc = fcce.getLocation();
+			if (Loc.getBookIndex(loc) != bookIndex) {
+				continue;
+			}
+			it.remove();
+			if (_formulaCellCache.contains(loc, fcce)) {
+				result.add(fcce);
+			} else {
+				// the cell was deleted, or is no longer a formula cell
+				fcce.takePreviousValue();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Forgets the previous result of an entry which is no longer cached
+	 */
+	private void removeDirtyFormulaCell(FormulaCellCacheEntry fcce) {
+		if (_dirtyFormulaCells.remove(fcce)) {
+			fcce.takePreviousValue();
+		}
+	}
+
+	/**
+	 * only used for testing
+	 */
+	/* package */ int getDirtyFormulaCellCount() {
+		return _dirtyFormulaCells.size();
 	}
 	public void notifyDeleteCell(int bookIndex, int sheetIndex, EvaluationCell cell) {
+		resetFailedLookupIndexes();
 
+		long loc = Loc.toLocation(bookIndex, sheetIndex, cell.getRowIndex(), cell.getColumnIndex());
 		if (cell.getCellType() == Cell.CELL_TYPE_FORMULA) {
-			FormulaCellCacheEntry fcce = _formulaCellCache.remove(cell);
+			FormulaCellCacheEntry fcce = _formulaCellCache.remove(loc, cell);
 			if (fcce == null) {
 				// formula cell has not been evaluated yet
 			} else {
 				fcce.setSensitiveInputCells(null);
 				fcce.recurseClearCachedFormulaResults(_evaluationListener);
+				removeDirtyFormulaCell(fcce);
 			}
 		} else {
-			Loc loc = new Loc(bookIndex, sheetIndex, cell.getRowIndex(), cell.getColumnIndex());
 			PlainValueCellCacheEntry pcce = _plainCellCache.get(loc);
 
 			if (pcce == null) {
@@ -216,4 +404,111 @@ final class EvaluationCache {
 			}
 		}
 	}
+
+	/**
+	 * @return the cached result of the formula cell at the location, <code>null</code> if it is
+	 * not cached
+	 */
+	public ValueEval getFormulaResult(int bookIndex, int sheetIndex, int rowIndex, int columnIndex) {
+		FormulaCellCacheEntry fcce = _formulaCellCache.get(Loc.toLocation(bookIndex, sheetIndex, rowIndex, columnIndex));
+		return fcce == null ? null : fcce.getValue();
+	}
+
+	/**
+	 * Adds the locations of the formula cells whose cached results depend on the specified cell,
+	 * directly or through other formula cells, to the supplied set. Unlike the notify~ methods,
+	 * this does not change the cache, and so can be called from several threads at once.
+	 */
+	public void addDependentFormulaCells(int bookIndex, int sheetIndex, int rowIndex, int columnIndex,
+			Set<Long> result) {
+		long loc = Loc.toLocation(bookIndex, sheetIndex, rowIndex, columnIndex);
+		Set<CellCacheEntry> visited = new HashSet<CellCacheEntry>();
+		List<CellCacheEntry> pending = new ArrayList<CellCacheEntry>();
+		PlainValueCellCacheEntry pcce = _plainCellCache.get(loc);
+		if (pcce != null) {
+			pending.add(pcce);
+		}
+		FormulaCellCacheEntry fcce = _formulaCellCache.get(loc);
+		if (fcce != null) {
+			pending.add(fcce);
+		}
+		if (pending.isEmpty()) {
+			// a blank cell, used by the entries which read the blank cells around it
+			BookSheetKey bsk = new BookSheetKey(bookIndex, sheetIndex);
+			List<FormulaCellCacheEntry> users = new ArrayList<FormulaCellCacheEntry>();
+			for (CellCacheEntry entry : _formulaCellCache.getCacheEntries()) {
+				users.add((FormulaCellCacheEntry) entry);
+			}
+			for (LookupIndex index : _lookupIndexes.values()) {
+				users.add(index.getCacheEntry());
+			}
+			ColumnBlock block = _columnBlocks.get(Long.valueOf(Loc.toLocation(bookIndex, sheetIndex,
+					rowIndex & ~(ColumnBlock.SIZE - 1), columnIndex)));
+			if (block != null) {
+				users.add(block.getCacheEntry());
+			}
+			for (FormulaCellCacheEntry user : users) {
+				if (user.isBlankCellUsed(bsk, rowIndex, columnIndex)) {
+					addDependentFormulaCell(user, visited, pending, result);
+				}
+			}
+		}
+		while (!pending.isEmpty()) {
+			CellCacheEntry entry = pending.remove(pending.size() - 1);
+			FormulaCellCacheEntry[] consumingCells = entry.getConsumingCells();
+			for (int i = 0; i < consumingCells.length; i++) {
+				addDependentFormulaCell(consumingCells[i], visited, pending, result);
+			}
+		}
+	}
+
+	private static void addDependentFormulaCell(FormulaCellCacheEntry fcce, Set<CellCacheEntry> visited,
+			List<CellCacheEntry> pending, Set<Long> result) {
+		if (visited.add(fcce)) {
+			if (fcce.getLocation() != FormulaCellCacheEntry.NO_LOCATION) {
+				result.add(Long.valueOf(fcce.getLocation()));
+			}
+			pending.add(fcce);
+		}
+	}
+
+	/**
+	 * Clears the formula results which depend on the value of the cell cached by
+	 * {@link EvaluationTracker#acceptPlainValueDependency(int, int, int, int, ValueEval)}, without
+	 * telling the type of the cell, for values which were not read from the cell itself
+	 */
+	public void clearPlainValue(int bookIndex, int sheetIndex, int rowIndex, int columnIndex) {
+		long loc = Loc.toLocation(bookIndex, sheetIndex, rowIndex, columnIndex);
+		PlainValueCellCacheEntry pcce = _plainCellCache.get(loc);
+		if (pcce != null) {
+			pcce.recurseClearCachedFormulaResults(_evaluationListener);
+			_plainCellCache.remove(loc);
+		}
+	}
+
+	/**
+	 * The locations of the first and the last cell of an area with a {@link LookupIndex}
+	 */
+	private static final class LookupIndexKey {
+		private final long _first;
+		private final long _last;
+
+		public LookupIndexKey(long first, long last) {
+			_first = first;
+			_last = last;
+		}
+
+		public int hashCode() {
+			long h = _first * 31 + _last;
+			return (int) (h ^ (h >>> 32));
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof LookupIndexKey)) {
+				return false;
+			}
+			LookupIndexKey other = (LookupIndexKey) obj;
+			return _first == other._first && _last == other._last;
+		}
+	}
 }
@@ -0,0 +1,356 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.ss.formula.ptg.AbstractFunctionPtg;
+import org.apache.poi.ss.formula.ptg.OperationPtg;
+import org.apache.poi.ss.util.CellReference;
+
+/**
+ * Records where the time of formula evaluation goes, when set on a {@link WorkbookEvaluator} with
+ * {@link WorkbookEvaluator#setProfiler(EvaluationProfiler)}, to find the formulas which make a
+ * workbook slow to evaluate. It records
+ * <ul>
+ * <li>the evaluations of each formula cell, with their time</li>
+ * <li>the calls of each function and operator, with their time</li>
+ * <li>the hits and misses of the cache of formula results</li>
+ * <li>the deepest chain of formula cells evaluated to evaluate another</li>
+ * </ul>
+ *
+ * The total time of an evaluation or call includes the time of the cells evaluated and the
+ * functions called meanwhile, which is excluded from its self time. The optimized IF and CHOOSE
+ * only choose the argument which is evaluated, and are not recorded as calls.<p/>
+ *
+ * A profiler is not thread safe, and is meant for one evaluator. The workers of a
+ * {@link ParallelEvaluator} do not record into it. It slows evaluation down somewhat, by reading
+ * the clock twice for each evaluation and call.
+ */
+public final class EvaluationProfiler {
+
+	/**
+	 * The number of evaluations or calls, with their time
+	 */
+	public static abstract class Statistics {
+		private int _count;
+		private long _totalNanos;
+		private long _selfNanos;
+
+		Statistics() {
+			// only the subclasses of this class
+		}
+
+		/**
+		 * @return the number of evaluations or calls
+		 */
+		public int getCount() {
+			return _count;
+		}
+
+		/**
+		 * @return the time of the evaluations or calls, including that of what they evaluated
+		 */
+		public long getTotalNanos() {
+			return _totalNanos;
+		}
+
+		/**
+		 * @return the time of the evaluations or calls, without that of the formula cells
+		 * evaluated and the functions called meanwhile
+		 */
+		public long getSelfNanos() {
+			return _selfNanos;
+		}
+	}
+
+	/**
+	 * The evaluations of a formula cell, which are those of the cache misses
+	 */
+	public static final class CellStatistics extends Statistics {
+		private final String _sheetName;
+		private final int _rowIndex;
+		private final int _columnIndex;
+
+		CellStatistics(String sheetName, int rowIndex, int columnIndex) {
+			_sheetName = sheetName;
+			_rowIndex = rowIndex;
+			_columnIndex = columnIndex;
+		}
+
+		public String getSheetName() {
+			return _sheetName;
+		}
+
+		public int getRowIndex() {
+			return _rowIndex;
+		}
+
+		public int getColumnIndex() {
+			return _columnIndex;
+		}
+
+		/**
+		 * @return the reference of the cell, like "Sheet1!B3"
+		 */
+		public String formatAsString() {
+			return new CellReference(_sheetName, _rowIndex, _columnIndex, false, false).formatAsString();
+		}
+
+		public String toString() {
+			return formatAsString() + ": " + getCount() + " evaluations, total " + getTotalNanos()
+					+ " ns, self " + getSelfNanos() + " ns";
+		}
+	}
+
+	/**
+	 * The calls of a function or operator
+	 */
+	public static final class FunctionStatistics extends Statistics {
+		private final String _name;
+
+		FunctionStatistics(String name) {
+			_name = name;
+		}
+
+		/**
+		 * @return the name of the function, or the operator with "x" for its operands, like "x+x"
+		 */
+		public String getName() {
+			return _name;
+		}
+
+		public String toString() {
+			return _name + ": " + getCount() + " calls, total " + getTotalNanos()
+					+ " ns, self " + getSelfNanos() + " ns";
+		}
+	}
+
+	/** orders by descending self time, the slowest first */
+	private static final Comparator<Statistics> SELF_TIME_ORDER = new Comparator<Statistics>() {
+		public int compare(Statistics a, Statistics b) {
+			return a._selfNanos > b._selfNanos ? -1 : a._selfNanos < b._selfNanos ? 1 : 0;
+		}
+	};
+
+	/** by the locations of the cells, see {@link PlainCellCache.Loc} */
+	private final Map<Long, CellStatistics> _cells;
+	private final Map<String, FunctionStatistics> _functions;
+	private long _cacheHits;
+	private long _cacheMisses;
+
+	/** the statistics of the cells and functions being evaluated, innermost last */
+	private Statistics[] _frames;
+	/** when the evaluations or calls of the frames started */
+	private long[] _frameStartNanos;
+	/** the time of the cells and functions evaluated meanwhile */
+	private long[] _frameChildNanos;
+	private int _frameCount;
+
+	/** the cells being evaluated, innermost last */
+	private final List<CellStatistics> _cellStack;
+	private List<CellStatistics> _deepestChain;
+
+	public EvaluationProfiler() {
+		_cells = new HashMap<Long, CellStatistics>();
+		_functions = new HashMap<String, FunctionStatistics>();
+		_frames = new Statistics[16];
+		_frameStartNanos = new long[16];
+		_frameChildNanos = new long[16];
+		_cellStack = new ArrayList<CellStatistics>();
+		_deepestChain = Collections.emptyList();
+	}
+
+	/**
+	 * Discards what was recorded so far
+	 */
+	public void reset() {
+		_cells.clear();
+		_functions.clear();
+		_cacheHits = 0;
+		_cacheMisses = 0;
+		_deepestChain = Collections.emptyList();
+	}
+
+	/**
+	 * @return the formula cells evaluated, the slowest first by self time
+	 */
+	public List<CellStatistics> getCellStatistics() {
+		List<CellStatistics> result = new ArrayList<CellStatistics>(_cells.values());
+		Collections.sort(result, SELF_TIME_ORDER);
+		return result;
+	}
+
+	/**
+	 * @return the functions and operators called, the slowest first by self time
+	 */
+	public List<FunctionStatistics> getFunctionStatistics() {
+		List<FunctionStatistics> result = new ArrayList<FunctionStatistics>(_functions.values());
+		Collections.sort(result, SELF_TIME_ORDER);
+		return result;
+	}
+
+	/**
+	 * @return <code>null</code> if the function or operator was not called
+	 */
+	public FunctionStatistics getFunctionStatistics(String name) {
+		return _functions.get(name);
+	}
+
+	/**
+	 * @return the number of times the result of a formula cell was taken from the cache
+	 */
+	public long getCacheHits() {
+		return _cacheHits;
+	}
+
+	/**
+	 * @return the number of times a formula cell was evaluated, since its result was not cached
+	 */
+	public long getCacheMisses() {
+		return _cacheMisses;
+	}
+
+	/**
+	 * @return the share of the results of formula cells taken from the cache, 0 if none were read
+	 */
+	public double getCacheHitRate() {
+		long total = _cacheHits + _cacheMisses;
+		return total == 0 ? 0 : (double) _cacheHits / total;
+	}
+
+	/**
+	 * @return the longest chain of formula cells evaluated, from the one evaluated first to the
+	 * one evaluated for all others. Its length is the depth of the dependencies of the first cell.
+	 */
+	public List<CellStatistics> getDeepestChain() {
+		return _deepestChain;
+	}
+
+	/**
+	 * @return a summary of the slowest cells and functions, at most <tt>limit</tt> of each
+	 */
+	public String formatReport(int limit) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Formula cache: ").append(_cacheHits).append(" hits, ").append(_cacheMisses).append(" misses\n");
+		sb.append("Deepest chain: ").append(_deepestChain.size()).append(" cells");
+		if (!_deepestChain.isEmpty()) {
+			sb.append(", from ").append(_deepestChain.get(0).formatAsString());
+			sb.append(" to ").append(_deepestChain.get(_deepestChain.size() - 1).formatAsString());
+		}
+		sb.append("\nSlowest cells:\n");
+		List<CellStatistics> cells = getCellStatistics();
+		for (int i = 0; i < cells.size() && i < limit; i++) {
+			sb.append("  ").append(cells.get(i)).append('\n');
+		}
+		sb.append("Slowest functions:\n");
+		List<FunctionStatistics> functions = getFunctionStatistics();
+		for (int i = 0; i < functions.size() && i < limit; i++) {
+			sb.append("  ").append(functions.get(i)).append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the name used for the function or operator of the token
+	 */
+	/* package */ static String getFunctionName(OperationPtg ptg) {
+		if (ptg instanceof AbstractFunctionPtg) {
+			return ((AbstractFunctionPtg) ptg).getName();
+		}
+		String[] operands = new String[ptg.getNumberOfOperands()];
+		Arrays.fill(operands, "x");
+		return ptg.toFormulaString(operands);
+	}
+
+	/* package */ void onCacheHit() {
+		_cacheHits++;
+	}
+
+	/**
+	 * Called before a formula cell is evaluated, to be followed by {@link #endEvaluate()}
+	 */
+	/* package */ void startEvaluate(WorkbookEvaluator evaluator, int sheetIndex, int rowIndex, int columnIndex) {
+		_cacheMisses++;
+		Long key = Long.valueOf(PlainCellCache.Loc.toLocation(0, sheetIndex, rowIndex, columnIndex));
+		CellStatistics cell = _cells.get(key);
+		if (cell == null) {
+			cell = new CellStatistics(evaluator.getSheetName(sheetIndex), rowIndex, columnIndex);
+			_cells.put(key, cell);
+		}
+		_cellStack.add(cell);
+		if (_cellStack.size() > _deepestChain.size()) {
+			_deepestChain = new ArrayList<CellStatistics>(_cellStack);
+		}
+		push(cell);
+	}
+
+	/* package */ void endEvaluate() {
+		pop();
+		_cellStack.remove(_cellStack.size() - 1);
+	}
+
+	/**
+	 * Called before a function or operator is called, to be followed by {@link #endCall()}
+	 */
+	/* package */ void startCall(String name) {
+		FunctionStatistics function = _functions.get(name);
+		if (function == null) {
+			function = new FunctionStatistics(name);
+			_functions.put(name, function);
+		}
+		push(function);
+	}
+
+	/* package */ void endCall() {
+		pop();
+	}
+
+	private void push(Statistics statistics) {
+		if (_frameCount == _frames.length) {
+			int capacity = _frameCount * 2;
+			_frames = Arrays.copyOf(_frames, capacity);
+			_frameStartNanos = Arrays.copyOf(_frameStartNanos, capacity);
+			_frameChildNanos = Arrays.copyOf(_frameChildNanos, capacity);
+		}
+		_frames[_frameCount] = statistics;
+		_frameChildNanos[_frameCount] = 0;
+		_frameStartNanos[_frameCount] = System.nanoTime();
+		_frameCount++;
+	}
+
+	private void pop() {
+		long end = System.nanoTime();
+		_frameCount--;
+		Statistics statistics = _frames[_frameCount];
+		_frames[_frameCount] = null;
+		long nanos = end - _frameStartNanos[_frameCount];
+		statistics._count++;
+		statistics._totalNanos += nanos;
+		statistics._selfNanos += nanos - _frameChildNanos[_frameCount];
+		if (_frameCount > 0) {
+			_frameChildNanos[_frameCount - 1] += nanos;
+		}
+	}
+}
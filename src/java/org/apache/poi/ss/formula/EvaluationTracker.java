@@ -131,6 +131,19 @@ final class EvaluationTracker {
 		}
 	}
 
+	/**
+	 * Same as {@link #acceptPlainValueDependency(int, int, int, int, ValueEval)} for a numeric cell
+	 */
+	public void acceptPlainNumberDependency(int bookIndex, int sheetIndex,
+			int rowIndex, int columnIndex, double value) {
+		int prevFrameIndex = _evaluationFrames.size() - 1;
+		if (prevFrameIndex >= 0) {
+			PlainValueCellCacheEntry cce = _cache.getPlainNumberEntry(bookIndex, sheetIndex,
+					rowIndex, columnIndex, value);
+			_evaluationFrames.get(prevFrameIndex).addSensitiveInputCell(cce);
+		}
+	}
+
 	public void acceptPlainValueDependency(int bookIndex, int sheetIndex,
 			int rowIndex, int columnIndex, ValueEval value) {
 		// Tell the currently evaluating cell frame that it has a dependency on the specified
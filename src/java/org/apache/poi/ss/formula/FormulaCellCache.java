@@ -17,10 +17,6 @@
 
 package org.apache.poi.ss.formula;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-
 /**
  * 
  * @author Josh Micich
@@ -31,17 +27,23 @@ final class FormulaCellCache {
 		void processEntry(FormulaCellCacheEntry entry);
 	}
 
-	private final Map<Object, FormulaCellCacheEntry> _formulaEntriesByCell;
+	/** keyed by the cell locations of {@link PlainCellCache.Loc} */
+	private final CellLocationMap<FormulaCellCacheEntry> _formulaEntriesByCell;
 
 	public FormulaCellCache() {
-		// assumes the object returned by EvaluationCell.getIdentityKey() has a well behaved hashCode+equals
-		_formulaEntriesByCell = new HashMap<Object, FormulaCellCacheEntry>();
+		_formulaEntriesByCell = new CellLocationMap<FormulaCellCacheEntry>();
 	}
 
 	public CellCacheEntry[] getCacheEntries() {
 
 		FormulaCellCacheEntry[] result = new FormulaCellCacheEntry[_formulaEntriesByCell.size()];
-		_formulaEntriesByCell.values().toArray(result);
+		int j = 0;
+		for (int i = 0; i < _formulaEntriesByCell.getCapacity(); i++) {
+			FormulaCellCacheEntry entry = _formulaEntriesByCell.getValueAt(i);
+			if (entry != null) {
+				result[j++] = entry;
+			}
+		}
 		return result;
 	}
 
@@ -49,25 +51,43 @@ final class FormulaCellCache {
 		_formulaEntriesByCell.clear();
 	}
 
+	/**
+	 * @return <code>null</code> if not found, or if the entry at the location is the one of a
+	 * different cell, which has since been replaced by the specified cell
+	 */
+	public FormulaCellCacheEntry get(long loc, EvaluationCell cell) {
+		FormulaCellCacheEntry result = _formulaEntriesByCell.get(loc);
+		return result == null || !result.isEntryFor(cell) ? null : result;
+	}
+
 	/**
 	 * @return <code>null</code> if not found
 	 */
-	public FormulaCellCacheEntry get(EvaluationCell cell) {
-		return _formulaEntriesByCell.get(cell.getIdentityKey());
+	public FormulaCellCacheEntry get(long loc) {
+		return _formulaEntriesByCell.get(loc);
+	}
+
+	/**
+	 * @return <code>true</code> if the entry is still the one at the location
+	 */
+	public boolean contains(long loc, FormulaCellCacheEntry entry) {
+		return _formulaEntriesByCell.get(loc) == entry;
 	}
 
-	public void put(EvaluationCell cell, FormulaCellCacheEntry entry) {
-		_formulaEntriesByCell.put(cell.getIdentityKey(), entry);
+	public void put(long loc, FormulaCellCacheEntry entry) {
+		_formulaEntriesByCell.put(loc, entry);
 	}
 
-	public FormulaCellCacheEntry remove(EvaluationCell cell) {
-		return _formulaEntriesByCell.remove(cell.getIdentityKey());
+	public FormulaCellCacheEntry remove(long loc, EvaluationCell cell) {
+		return get(loc, cell) == null ? null : _formulaEntriesByCell.remove(loc);
 	}
 
 	public void applyOperation(IEntryOperation operation) {
-		Iterator<FormulaCellCacheEntry> i = _formulaEntriesByCell.values().iterator();
-		while (i.hasNext()) {
-			operation.processEntry(i.next());
+		for (int i = 0; i < _formulaEntriesByCell.getCapacity(); i++) {
+			FormulaCellCacheEntry entry = _formulaEntriesByCell.getValueAt(i);
+			if (entry != null) {
+				operation.processEntry(entry);
+			}
 		}
 	}
 }
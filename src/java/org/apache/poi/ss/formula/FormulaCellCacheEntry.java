@@ -41,10 +41,78 @@ final class FormulaCellCacheEntry extends CellCacheEntry {
 
 	private FormulaUsedBlankCellSet _usedBlankCellGroup;
 
+	/**
+	 * The {@link EvaluationCell#getIdentityKey()} of the cell, to tell a cell apart from one which
+	 * replaced it at the same location
+	 */
+	private final Object _identityKey;
+
+	/** the compiled formula of the cell, <code>null</code> until it is first evaluated */
+	private FormulaPlan _plan;
+
+	/** the {@link #getLocation()} of entries which are not of a cell */
+	public static final long NO_LOCATION = -1;
+
+	/** the location of the cell, see {@link PlainCellCache.Loc} */
+	private final long _location;
+
+	/**
+	 * Where the entry adds itself when its result is cleared, <code>null</code> for entries which
+	 * are not of a cell
+	 */
+	private final Set<FormulaCellCacheEntry> _dirtyEntries;
+
+	/**
+	 * The result before it was cleared, while the entry is in the dirty entries,
+	 * <code>null</code> otherwise
+	 */
+	private ValueEval _previousValue;
+
+	/**
+	 * Creates an entry which is not of a cell, for the cells read by another cache entry
+	 */
 	public FormulaCellCacheEntry() {
-		// leave fields un-set
+		this(null, NO_LOCATION, null);
+	}
+
+	public FormulaCellCacheEntry(Object identityKey, long location, Set<FormulaCellCacheEntry> dirtyEntries) {
+		_identityKey = identityKey;
+		_location = location;
+		_dirtyEntries = dirtyEntries;
+	}
+
+	/**
+	 * @return {@link #NO_LOCATION} for entries which are not of a cell
+	 */
+	public long getLocation() {
+		return _location;
+	}
+
+	/**
+	 * @return the result before the entry was added to the dirty entries, which are cleared
+	 * together with the previous results by the caller
+	 */
+	public ValueEval takePreviousValue() {
+		ValueEval result = _previousValue;
+		_previousValue = null;
+		return result;
+	}
+
+	/**
+	 * @return <code>true</code> if this entry was created for the specified cell
+	 */
+	public boolean isEntryFor(EvaluationCell cell) {
+		return _identityKey == null || _identityKey.equals(cell.getIdentityKey());
 	}
 	
+	public FormulaPlan getPlan() {
+		return _plan;
+	}
+
+	public void setPlan(FormulaPlan plan) {
+		_plan = plan;
+	}
+
 	public boolean isInputSensitive() {
 		if (_sensitiveInputCells != null) {
 			if (_sensitiveInputCells.length > 0 ) {
@@ -62,6 +130,11 @@ final class FormulaCellCacheEntry extends CellCacheEntry {
 	}
 
 	public void clearFormulaEntry() {
+		ValueEval value = getValue();
+		if (value != null && _dirtyEntries != null && _previousValue == null) {
+			_previousValue = value;
+			_dirtyEntries.add(this);
+		}
 		CellCacheEntry[] usedCells = _sensitiveInputCells;
 		if (usedCells != null) {
 			for (int i = usedCells.length-1; i>=0; i--) {
@@ -111,11 +184,16 @@ final class FormulaCellCacheEntry extends CellCacheEntry {
 	}
 
 	public void notifyUpdatedBlankCell(BookSheetKey bsk, int rowIndex, int columnIndex, IEvaluationListener evaluationListener) {
-		if (_usedBlankCellGroup != null) {
-			if (_usedBlankCellGroup.containsCell(bsk, rowIndex, columnIndex)) {
-				clearFormulaEntry();
-				recurseClearCachedFormulaResults(evaluationListener);
-			}
+		if (isBlankCellUsed(bsk, rowIndex, columnIndex)) {
+			clearFormulaEntry();
+			recurseClearCachedFormulaResults(evaluationListener);
 		}
 	}
+
+	/**
+	 * @return <code>true</code> if the result depends on the specified cell, which was blank
+	 */
+	public boolean isBlankCellUsed(BookSheetKey bsk, int rowIndex, int columnIndex) {
+		return _usedBlankCellGroup != null && _usedBlankCellGroup.containsCell(bsk, rowIndex, columnIndex);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,621 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.ss.formula.eval.BlankEval;
+import org.apache.poi.ss.formula.eval.BoolEval;
+import org.apache.poi.ss.formula.eval.ErrorEval;
+import org.apache.poi.ss.formula.eval.EvaluationException;
+import org.apache.poi.ss.formula.eval.MissingArgEval;
+import org.apache.poi.ss.formula.eval.NumberEval;
+import org.apache.poi.ss.formula.eval.StringEval;
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.formula.functions.Choose;
+import org.apache.poi.ss.formula.functions.Function;
+import org.apache.poi.ss.formula.functions.IfFunc;
+import org.apache.poi.ss.formula.ptg.Area3DPtg;
+import org.apache.poi.ss.formula.ptg.AreaErrPtg;
+import org.apache.poi.ss.formula.ptg.AreaPtg;
+import org.apache.poi.ss.formula.ptg.AreaPtgBase;
+import org.apache.poi.ss.formula.ptg.ArrayPtg;
+import org.apache.poi.ss.formula.ptg.AttrPtg;
+import org.apache.poi.ss.formula.ptg.BoolPtg;
+import org.apache.poi.ss.formula.ptg.ControlPtg;
+import org.apache.poi.ss.formula.ptg.DeletedArea3DPtg;
+import org.apache.poi.ss.formula.ptg.DeletedRef3DPtg;
+import org.apache.poi.ss.formula.ptg.ErrPtg;
+import org.apache.poi.ss.formula.ptg.FuncVarPtg;
+import org.apache.poi.ss.formula.ptg.IntPtg;
+import org.apache.poi.ss.formula.ptg.MemAreaPtg;
+import org.apache.poi.ss.formula.ptg.MemErrPtg;
+import org.apache.poi.ss.formula.ptg.MemFuncPtg;
+import org.apache.poi.ss.formula.ptg.MissingArgPtg;
+import org.apache.poi.ss.formula.ptg.NumberPtg;
+import org.apache.poi.ss.formula.ptg.OperationPtg;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.formula.ptg.Ref3DPtg;
+import org.apache.poi.ss.formula.ptg.RefErrorPtg;
+import org.apache.poi.ss.formula.ptg.RefPtg;
+import org.apache.poi.ss.formula.ptg.RefPtgBase;
+import org.apache.poi.ss.formula.ptg.StringPtg;
+import org.apache.poi.ss.formula.ptg.UnionPtg;
+import org.apache.poi.ss.formula.ptg.ValueOperatorPtg;
+import org.apache.poi.util.LittleEndianOutputStream;
+
+/**
+ * A formula compiled from its tokens, for evaluating it repeatedly.<p/>
+ *
+ * {@link WorkbookEvaluator#evaluateFormula(OperationEvaluationContext, Ptg[])} interprets the
+ * tokens with a stack, looks up the function of each operation, and works out the jumps of the
+ * optimized IF and CHOOSE, on every evaluation. A plan does all this once: it is a tree of nodes
+ * with the functions looked up, the constants created, the operators applied to constants already
+ * evaluated, and IF and CHOOSE turned into nodes which evaluate the chosen argument only.<p/>
+ *
+ * References relative to the cell are kept as offsets, so a plan can be shared by all cells with
+ * the same formula in R1C1 notation, e.g. the cells of a shared formula, or a formula filled down
+ * a column. These cells have the same {@link #createKey(Ptg[], int, int)}.
+ */
+final class FormulaPlan {
+
+	/**
+	 * The plan of the formulas which cannot be compiled, and are interpreted instead
+	 */
+	public static final FormulaPlan INTERPRETED = new FormulaPlan(null);
+
+	private final Node _root;
+
+	private FormulaPlan(Node root) {
+		_root = root;
+	}
+
+	/**
+	 * @return <code>false</code> for {@link #INTERPRETED}
+	 */
+	public boolean isCompiled() {
+		return _root != null;
+	}
+
+	/**
+	 * @return the result of the formula, dereferenced like
+	 * {@link WorkbookEvaluator#dereferenceResult(ValueEval, int, int)} does
+	 */
+	public ValueEval evaluate(WorkbookEvaluator evaluator, OperationEvaluationContext ec) {
+		ValueEval value = _root.evaluate(evaluator, ec);
+		return WorkbookEvaluator.dereferenceResult(value, ec.getRowIndex(), ec.getColumnIndex());
+	}
+
+	/**
+	 * Compiles the tokens of the formula of a cell
+	 *
+	 * @return {@link #INTERPRETED} if the tokens are not in the form expected, so that the
+	 * interpreter reports the problem when the formula is evaluated
+	 */
+	public static FormulaPlan compile(Ptg[] ptgs, int rowIndex, int columnIndex) {
+		try {
+			Compiler compiler = new Compiler(ptgs, rowIndex, columnIndex);
+			if (compiler.compile(0) != ptgs.length || compiler._stack.size() != 1) {
+				return INTERPRETED;
+			}
+			return new FormulaPlan(compiler._stack.get(0));
+		} catch (RuntimeException e) {
+			return INTERPRETED;
+		}
+	}
+
+	/**
+	 * @return a key which is the same for the formulas of all cells which can share a plan,
+	 * <code>null</code> if the plan cannot be shared
+	 */
+	public static String createKey(Ptg[] ptgs, int rowIndex, int columnIndex) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(ptgs.length * 8);
+		LittleEndianOutputStream out = new LittleEndianOutputStream(bytes);
+		for (int i = 0; i < ptgs.length; i++) {
+			Ptg ptg = ptgs[i];
+			if (ptg instanceof ArrayPtg) {
+				// the array values are not written by the token
+				return null;
+			}
+			if (ptg instanceof RefPtg || ptg instanceof Ref3DPtg) {
+				// the references resolved by RefNode, written with their offsets
+				RefPtgBase ref = (RefPtgBase) ptg;
+				out.writeByte(ptg instanceof RefPtg ? RefPtg.sid : Ref3DPtg.sid);
+				out.writeInt(ref.isRowRelative() ? ref.getRow() - rowIndex : ref.getRow());
+				out.writeInt(ref.isColRelative() ? ref.getColumn() - columnIndex : ref.getColumn());
+				out.writeByte((ref.isRowRelative() ? 1 : 0) | (ref.isColRelative() ? 2 : 0));
+				if (ptg instanceof Ref3DPtg) {
+					out.writeInt(((Ref3DPtg) ptg).getExternSheetIndex());
+				}
+			} else if (ptg instanceof AreaPtg || ptg instanceof Area3DPtg) {
+				AreaPtgBase area = (AreaPtgBase) ptg;
+				out.writeByte(ptg instanceof AreaPtg ? AreaPtg.sid : Area3DPtg.sid);
+				out.writeInt(area.isFirstRowRelative() ? area.getFirstRow() - rowIndex : area.getFirstRow());
+				out.writeInt(area.isFirstColRelative() ? area.getFirstColumn() - columnIndex : area.getFirstColumn());
+				out.writeInt(area.isLastRowRelative() ? area.getLastRow() - rowIndex : area.getLastRow());
+				out.writeInt(area.isLastColRelative() ? area.getLastColumn() - columnIndex : area.getLastColumn());
+				out.writeByte((area.isFirstRowRelative() ? 1 : 0) | (area.isFirstColRelative() ? 2 : 0)
+						| (area.isLastRowRelative() ? 4 : 0) | (area.isLastColRelative() ? 8 : 0));
+				if (ptg instanceof Area3DPtg) {
+					out.writeInt(((Area3DPtg) ptg).getExternSheetIndex());
+				}
+			} else {
+				ptg.write(out);
+			}
+		}
+		byte[] data = bytes.toByteArray();
+		char[] chars = new char[data.length];
+		for (int i = 0; i < data.length; i++) {
+			chars[i] = (char) (data[i] & 0xFF);
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Builds the nodes like the interpreter evaluates the tokens, with a stack of nodes instead of
+	 * values, and both ways of each jump
+	 */
+	private static final class Compiler {
+		private final Ptg[] _ptgs;
+		private final int _rowIndex;
+		private final int _columnIndex;
+		final List<Node> _stack;
+
+		public Compiler(Ptg[] ptgs, int rowIndex, int columnIndex) {
+			_ptgs = ptgs;
+			_rowIndex = rowIndex;
+			_columnIndex = columnIndex;
+			_stack = new ArrayList<Node>();
+		}
+
+		/**
+		 * Compiles the tokens from the start index up to the end of the formula, or up to the
+		 * tAttrSkip ending an argument of IF or CHOOSE
+		 *
+		 * @return the index of the tAttrSkip, the number of tokens if the end was reached
+		 */
+		public int compile(int startIndex) {
+			for (int i = startIndex; i < _ptgs.length; i++) {
+				Ptg ptg = _ptgs[i];
+				if (ptg instanceof AttrPtg) {
+					AttrPtg attrPtg = (AttrPtg) ptg;
+					if (attrPtg.isSum()) {
+						ptg = FuncVarPtg.SUM;
+					}
+					if (attrPtg.isOptimizedChoose()) {
+						i = compileChoose(i);
+						continue;
+					}
+					if (attrPtg.isOptimizedIf()) {
+						i = compileIf(i);
+						continue;
+					}
+					if (attrPtg.isSkip()) {
+						return i;
+					}
+				}
+				if (ptg instanceof ControlPtg || ptg instanceof MemFuncPtg || ptg instanceof MemAreaPtg
+						|| ptg instanceof MemErrPtg || ptg instanceof UnionPtg) {
+					continue;
+				}
+				if (ptg instanceof OperationPtg) {
+					OperationPtg optg = (OperationPtg) ptg;
+					Node[] args = new Node[optg.getNumberOfOperands()];
+					for (int j = args.length - 1; j >= 0; j--) {
+						args[j] = pop();
+					}
+					_stack.add(createOperation(optg, args));
+				} else {
+					_stack.add(createOperand(ptg));
+				}
+			}
+			return _ptgs.length;
+		}
+
+		private Node pop() {
+			if (_stack.isEmpty()) {
+				throw new IllegalStateException("Too few operands");
+			}
+			return _stack.remove(_stack.size() - 1);
+		}
+
+		/**
+		 * Compiles an argument of IF or CHOOSE, which ends with a tAttrSkip
+		 *
+		 * @return the index of the last token skipped by the tAttrSkip
+		 */
+		private int compileArgument(int startIndex, Node[] result, int resultIndex) {
+			int stackSize = _stack.size();
+			int skipIndex = compile(startIndex);
+			if (skipIndex >= _ptgs.length || _stack.size() != stackSize + 1) {
+				throw new IllegalStateException("Unexpected tokens in argument");
+			}
+			result[resultIndex] = pop();
+			AttrPtg skipPtg = (AttrPtg) _ptgs[skipIndex];
+			return skipIndex + WorkbookEvaluator.countTokensToBeSkipped(_ptgs, skipIndex, skipPtg.getData() + 1);
+		}
+
+		private int compileIf(int index) {
+			AttrPtg attrPtg = (AttrPtg) _ptgs[index];
+			Node condition = pop();
+			Node[] args = new Node[2];
+			int falseIndex = index + WorkbookEvaluator.countTokensToBeSkipped(_ptgs, index, attrPtg.getData());
+			int endIndex = compileArgument(index + 1, args, 0);
+			if (_ptgs[falseIndex] instanceof AttrPtg && _ptgs[falseIndex + 1] instanceof FuncVarPtg) {
+				// an IF without the false argument
+				if (endIndex != falseIndex + 1) {
+					throw new IllegalStateException("Unexpected end of IF");
+				}
+			} else if (compileArgument(falseIndex + 1, args, 1) != endIndex) {
+				throw new IllegalStateException("Unexpected end of IF");
+			}
+			_stack.add(new IfNode(condition, args[0], args[1]));
+			return endIndex;
+		}
+
+		private int compileChoose(int index) {
+			AttrPtg attrPtg = (AttrPtg) _ptgs[index];
+			Node arg0 = pop();
+			int[] jumpTable = attrPtg.getJumpTable();
+			int nChoices = jumpTable.length;
+			// Encoded dist for tAttrChoose includes size of jump table
+			int jumpTableSize = nChoices * 2 + 2;
+			int endIndex = index + WorkbookEvaluator.countTokensToBeSkipped(_ptgs, index,
+					attrPtg.getChooseFuncOffset() + 4 - jumpTableSize); // +4 for tFuncFar(CHOOSE)
+			Node[] choices = new Node[nChoices];
+			for (int i = 0; i < nChoices; i++) {
+				int startIndex = index + WorkbookEvaluator.countTokensToBeSkipped(_ptgs, index, jumpTable[i] - jumpTableSize) + 1;
+				if (compileArgument(startIndex, choices, i) != endIndex) {
+					throw new IllegalStateException("Unexpected end of CHOOSE");
+				}
+			}
+			_stack.add(new ChooseNode(arg0, choices));
+			return endIndex;
+		}
+
+		private Node createOperation(OperationPtg ptg, Node[] args) {
+			Function function = OperationEvaluatorFactory.getFunction(ptg);
+			if (function == null) {
+				return new OperationNode(ptg, args);
+			}
+			String name = EvaluationProfiler.getFunctionName(ptg);
+			if (ptg instanceof ValueOperatorPtg) {
+				// operators on constant values always give the same result
+				ValueEval[] values = new ValueEval[args.length];
+				for (int i = 0; i < args.length; i++) {
+					values[i] = args[i].getConstantValue();
+					if (!isScalar(values[i])) {
+						return new FunctionNode(function, name, args);
+					}
+				}
+				ValueEval result = function.evaluate(values, _rowIndex, (short) _columnIndex);
+				if (result != null) {
+					return new ConstantNode(result);
+				}
+			}
+			return new FunctionNode(function, name, args);
+		}
+
+		private Node createOperand(Ptg ptg) {
+			ValueEval value = getConstantValue(ptg);
+			if (value != null) {
+				return new ConstantNode(value);
+			}
+			if (ptg instanceof Ref3DPtg) {
+				Ref3DPtg rptg = (Ref3DPtg) ptg;
+				return new RefNode(rptg, rptg.getExternSheetIndex(), _rowIndex, _columnIndex);
+			}
+			if (ptg instanceof Area3DPtg) {
+				Area3DPtg aptg = (Area3DPtg) ptg;
+				return new AreaNode(aptg, aptg.getExternSheetIndex(), _rowIndex, _columnIndex);
+			}
+			if (ptg instanceof RefPtg) {
+				return new RefNode((RefPtg) ptg, -1, _rowIndex, _columnIndex);
+			}
+			if (ptg instanceof AreaPtg) {
+				return new AreaNode((AreaPtg) ptg, -1, _rowIndex, _columnIndex);
+			}
+			// names, and the tokens the interpreter fails on
+			return new PtgNode(ptg);
+		}
+
+		/**
+		 * @return the value of a constant token, as created by the interpreter, <code>null</code>
+		 * for other tokens
+		 */
+		private static ValueEval getConstantValue(Ptg ptg) {
+			if (ptg instanceof IntPtg) {
+				return new NumberEval(((IntPtg)ptg).getValue());
+			}
+			if (ptg instanceof NumberPtg) {
+				return new NumberEval(((NumberPtg)ptg).getValue());
+			}
+			if (ptg instanceof StringPtg) {
+				return new StringEval(((StringPtg) ptg).getValue());
+			}
+			if (ptg instanceof BoolPtg) {
+				return BoolEval.valueOf(((BoolPtg) ptg).getValue());
+			}
+			if (ptg instanceof ErrPtg) {
+				return ErrorEval.valueOf(((ErrPtg) ptg).getErrorCode());
+			}
+			if (ptg instanceof MissingArgPtg) {
+				return MissingArgEval.instance;
+			}
+			if (ptg instanceof AreaErrPtg ||ptg instanceof RefErrorPtg
+					|| ptg instanceof DeletedArea3DPtg || ptg instanceof DeletedRef3DPtg) {
+				return ErrorEval.REF_INVALID;
+			}
+			return null;
+		}
+
+		private static boolean isScalar(ValueEval value) {
+			return value instanceof NumberEval || value instanceof StringEval
+					|| value instanceof BoolEval || value instanceof ErrorEval;
+		}
+	}
+
+	private static abstract class Node {
+		public abstract ValueEval evaluate(WorkbookEvaluator evaluator, OperationEvaluationContext ec);
+
+		/**
+		 * @return the value of constant nodes, <code>null</code> otherwise
+		 */
+		public ValueEval getConstantValue() {
+			return null;
+		}
+	}
+
+	private static ValueEval[] evaluateArgs(Node[] args, WorkbookEvaluator evaluator,
+			OperationEvaluationContext ec) {
+		ValueEval[] result = new ValueEval[args.length];
+		for (int i = 0; i < args.length; i++) {
+			result[i] = args[i].evaluate(evaluator, ec);
+		}
+		return result;
+	}
+
+	private static ValueEval checkResult(ValueEval result) {
+		if (result == null) {
+			throw new RuntimeException("Evaluation result must not be null");
+		}
+		return result;
+	}
+
+	/**
+	 * Converts a missing argument to blank, like the tAttrSkip at the end of the arguments of IF
+	 * and CHOOSE
+	 */
+	private static ValueEval skipMissingArg(ValueEval value) {
+		return value == MissingArgEval.instance ? BlankEval.instance : value;
+	}
+
+	private static final class ConstantNode extends Node {
+		private final ValueEval _value;
+
+		public ConstantNode(ValueEval value) {
+			_value = value;
+		}
+
+		public ValueEval evaluate(WorkbookEvaluator evaluator, OperationEvaluationContext ec) {
+			return _value;
+		}
+
+		public ValueEval getConstantValue() {
+			return _value;
+		}
+	}
+
+	/**
+	 * A reference to a cell, with the relative row and column as offsets from the evaluated cell
+	 */
+	private static final class RefNode extends Node {
+		private final int _row;
+		private final int _column;
+		private final boolean _isRowRelative;
+		private final boolean _isColRelative;
+		/** -1 for references to the sheet of the evaluated cell */
+		private final int _externSheetIndex;
+
+		public RefNode(RefPtgBase ptg, int externSheetIndex, int rowIndex, int columnIndex) {
+			_isRowRelative = ptg.isRowRelative();
+			_isColRelative = ptg.isColRelative();
+			_row = _isRowRelative ? ptg.getRow() - rowIndex : ptg.getRow();
+			_column = _isColRelative ? ptg.getColumn() - columnIndex : ptg.getColumn();
+			_externSheetIndex = externSheetIndex;
+		}
+
+		public ValueEval evaluate(WorkbookEvaluator evaluator, OperationEvaluationContext ec) {
+			int row = _isRowRelative ? ec.getRowIndex() + _row : _row;
+			int column = _isColRelative ? ec.getColumnIndex() + _column : _column;
+			if (_externSheetIndex < 0) {
+				return ec.getRefEval(row, column);
+			}
+			return ec.getRef3DEval(row, column, _externSheetIndex);
+		}
+	}
+
+	/**
+	 * A reference to an area, with the relative rows and columns as offsets from the evaluated cell
+	 */
+	private static final class AreaNode extends Node {
+		private final int _firstRow;
+		private final int _firstColumn;
+		private final int _lastRow;
+		private final int _lastColumn;
+		/** bit 0, 1, 2, 3 for first row, first column, last row, last column relative */
+		private final int _relativeFlags;
+		/** -1 for references to the sheet of the evaluated cell */
+		private final int _externSheetIndex;
+
+		public AreaNode(AreaPtgBase ptg, int externSheetIndex, int rowIndex, int columnIndex) {
+			_relativeFlags = (ptg.isFirstRowRelative() ? 1 : 0) | (ptg.isFirstColRelative() ? 2 : 0)
+					| (ptg.isLastRowRelative() ? 4 : 0) | (ptg.isLastColRelative() ? 8 : 0);
+			_firstRow = ptg.isFirstRowRelative() ? ptg.getFirstRow() - rowIndex : ptg.getFirstRow();
+			_firstColumn = ptg.isFirstColRelative() ? ptg.getFirstColumn() - columnIndex : ptg.getFirstColumn();
+			_lastRow = ptg.isLastRowRelative() ? ptg.getLastRow() - rowIndex : ptg.getLastRow();
+			_lastColumn = ptg.isLastColRelative() ? ptg.getLastColumn() - columnIndex : ptg.getLastColumn();
+			_externSheetIndex = externSheetIndex;
+		}
+
+		public ValueEval evaluate(WorkbookEvaluator evaluator, OperationEvaluationContext ec) {
+			int rowIndex = ec.getRowIndex();
+			int columnIndex = ec.getColumnIndex();
+			int firstRow = (_relativeFlags & 1) != 0 ? rowIndex + _firstRow : _firstRow;
+			int firstColumn = (_relativeFlags & 2) != 0 ? columnIndex + _firstColumn : _firstColumn;
+			int lastRow = (_relativeFlags & 4) != 0 ? rowIndex + _lastRow : _lastRow;
+			int lastColumn = (_relativeFlags & 8) != 0 ? columnIndex + _lastColumn : _lastColumn;
+			if (_externSheetIndex < 0) {
+				return ec.getAreaEval(firstRow, firstColumn, lastRow, lastColumn);
+			}
+			return ec.getArea3DEval(firstRow, firstColumn, lastRow, lastColumn, _externSheetIndex);
+		}
+	}
+
+	/**
+	 * A token evaluated by the interpreter, like names
+	 */
+	private static final class PtgNode extends Node {
+		private final Ptg _ptg;
+
+		public PtgNode(Ptg ptg) {
+			_ptg = ptg;
+		}
+
+		public ValueEval evaluate(WorkbookEvaluator evaluator, OperationEvaluationContext ec) {
+			return evaluator.getEvalForPtg(_ptg, ec);
+		}
+	}
+
+	private static final class FunctionNode extends Node {
+		private final Function _function;
+		/** for the {@link EvaluationProfiler} */
+		private final String _name;
+		private final Node[] _args;
+
+		public FunctionNode(Function function, String name, Node[] args) {
+			_function = function;
+			_name = name;
+			_args = args;
+		}
+
+		public ValueEval evaluate(WorkbookEvaluator evaluator, OperationEvaluationContext ec) {
+			ValueEval[] args = evaluateArgs(_args, evaluator, ec);
+			EvaluationProfiler profiler = evaluator.getProfiler();
+			if (profiler == null) {
+				return checkResult(_function.evaluate(args, ec.getRowIndex(), (short) ec.getColumnIndex()));
+			}
+			profiler.startCall(_name);
+			try {
+				return checkResult(_function.evaluate(args, ec.getRowIndex(), (short) ec.getColumnIndex()));
+			} finally {
+				profiler.endCall();
+			}
+		}
+	}
+
+	/**
+	 * An operation whose function is looked up on each evaluation, like INDIRECT and external
+	 * functions which need the evaluation context
+	 */
+	private static final class OperationNode extends Node {
+		private final OperationPtg _ptg;
+		private final Node[] _args;
+
+		public OperationNode(OperationPtg ptg, Node[] args) {
+			_ptg = ptg;
+			_args = args;
+		}
+
+		public ValueEval evaluate(WorkbookEvaluator evaluator, OperationEvaluationContext ec) {
+			ValueEval[] args = evaluateArgs(_args, evaluator, ec);
+			EvaluationProfiler profiler = evaluator.getProfiler();
+			if (profiler == null) {
+				return checkResult(OperationEvaluatorFactory.evaluate(_ptg, args, ec));
+			}
+			profiler.startCall(EvaluationProfiler.getFunctionName(_ptg));
+			try {
+				return checkResult(OperationEvaluatorFactory.evaluate(_ptg, args, ec));
+			} finally {
+				profiler.endCall();
+			}
+		}
+	}
+
+	/**
+	 * An optimized IF, which evaluates only the chosen argument
+	 */
+	private static final class IfNode extends Node {
+		private final Node _condition;
+		private final Node _trueNode;
+		/** <code>null</code> if the IF has no false argument */
+		private final Node _falseNode;
+
+		public IfNode(Node condition, Node trueNode, Node falseNode) {
+			_condition = condition;
+			_trueNode = trueNode;
+			_falseNode = falseNode;
+		}
+
+		public ValueEval evaluate(WorkbookEvaluator evaluator, OperationEvaluationContext ec) {
+			ValueEval arg0 = _condition.evaluate(evaluator, ec);
+			boolean evaluatedPredicate;
+			try {
+				evaluatedPredicate = IfFunc.evaluateFirstArg(arg0, ec.getRowIndex(), ec.getColumnIndex());
+			} catch (EvaluationException e) {
+				return e.getErrorEval();
+			}
+			if (evaluatedPredicate) {
+				return skipMissingArg(_trueNode.evaluate(evaluator, ec));
+			}
+			if (_falseNode == null) {
+				return BoolEval.FALSE;
+			}
+			return skipMissingArg(_falseNode.evaluate(evaluator, ec));
+		}
+	}
+
+	/**
+	 * An optimized CHOOSE, which evaluates only the chosen argument
+	 */
+	private static final class ChooseNode extends Node {
+		private final Node _arg0;
+		private final Node[] _choices;
+
+		public ChooseNode(Node arg0, Node[] choices) {
+			_arg0 = arg0;
+			_choices = choices;
+		}
+
+		public ValueEval evaluate(WorkbookEvaluator evaluator, OperationEvaluationContext ec) {
+			ValueEval arg0 = _arg0.evaluate(evaluator, ec);
+			int switchIndex;
+			try {
+				switchIndex = Choose.evaluateFirstArg(arg0, ec.getRowIndex(), ec.getColumnIndex());
+			} catch (EvaluationException e) {
+				return e.getErrorEval();
+			}
+			if (switchIndex < 1 || switchIndex > _choices.length) {
+				return ErrorEval.VALUE_INVALID;
+			}
+			return skipMissingArg(_choices[switchIndex - 1].evaluate(evaluator, ec));
+		}
+	}
+}
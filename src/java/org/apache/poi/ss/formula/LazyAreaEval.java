@@ -51,6 +51,11 @@ final class LazyAreaEval extends AreaEvalBase {
 		return _evaluator.getEvalForCell(rowIx, colIx);
 	}
 
+	public void getValues(int rowIndex, int rowCount, byte[] types, double[] values) {
+		_evaluator.getValues(getFirstRow() + rowIndex, getFirstColumn(), rowCount, getWidth(),
+				getFirstRow(), getLastRow(), types, values);
+	}
+
 	public AreaEval offset(int relFirstRowIx, int relLastRowIx, int relFirstColIx, int relLastColIx) {
 		AreaI area = new OffsetArea(getFirstRow(), getFirstColumn(),
 				relFirstRowIx, relLastRowIx, relFirstColIx, relLastColIx);
@@ -88,6 +93,14 @@ final class LazyAreaEval extends AreaEvalBase {
 		return sb.toString();
 	}
 
+	/**
+	 * @return the cached values of the row or column of this area's sheet, <code>null</code> if
+	 * they cannot be cached
+	 */
+	LookupIndex getLookupIndex(int firstRowIndex, int firstColumnIndex, int lastRowIndex, int lastColumnIndex) {
+		return _evaluator.getLookupIndex(firstRowIndex, firstColumnIndex, lastRowIndex, lastColumnIndex);
+	}
+
     /**
      * @return  whether cell at rowIndex and columnIndex is a subtotal
     */
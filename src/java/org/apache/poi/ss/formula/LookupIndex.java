@@ -0,0 +1,309 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.poi.ss.formula.eval.BoolEval;
+import org.apache.poi.ss.formula.eval.NumberEval;
+import org.apache.poi.ss.formula.eval.StringEval;
+import org.apache.poi.ss.formula.eval.ValueEval;
+
+/**
+ * The values of a row, column or area of a sheet, as searched by VLOOKUP, HLOOKUP, MATCH and
+ * LOOKUP, or filtered by COUNTIF, SUMIF, COUNTIFS and SUMIFS. Besides the values, which are kept
+ * in row-major order, it holds the indexes built from them on demand: a hash of the first position
+ * of each value for exact matches, the positions of the numbers sorted by value for comparison
+ * criteria, and the positions matching each criteria seen so far.<p/>
+ *
+ * Instances are kept by the {@link EvaluationCache} of the evaluator, so that a table searched by
+ * many formulas is read only once. Areas searched only once are not indexed. The index is cached
+ * like a formula cell whose inputs are the cells of the area, and the formulas using it depend on
+ * it in turn. So when any of these cells changes, the index is read again, and the results of the
+ * formulas are cleared.<p/>
+ *
+ * For POI internal use only
+ */
+public final class LookupIndex {
+
+	/** smaller rows and columns are searched directly, as building the index would cost more */
+	/* package */ static final int MIN_SIZE = 16;
+	/**
+	 * the most criteria whose matches are cached by one index, so that the matches of all indexes,
+	 * which have at most {@link EvaluationCache#MAX_LOOKUP_INDEX_CELLS} cells, take at most 8 MB
+	 */
+	private static final int MAX_MATCHES = 64;
+
+	private final FormulaCellCacheEntry _cacheEntry;
+	private ValueEval[] _values;
+	/** created with the first exact match, as range lookups only need {@link #_values} */
+	private Map<Object, Integer> _firstIndexes;
+	/** the positions of the numbers, sorted by value, created with the first comparison */
+	private int[] _numberPositions;
+	private double[] _sortedNumbers;
+	/** the positions matching each criteria, by the key of the criteria */
+	private Map<Object, BitSet> _matches;
+	/** whether the cells were not read, as one of them failed to evaluate */
+	private boolean _failed;
+
+	/* package */ LookupIndex() {
+		_cacheEntry = new FormulaCellCacheEntry();
+	}
+
+	/**
+	 * @return the index of the column of the area, <code>null</code> if the area does not refer
+	 * to the cells of a sheet, if the column is too short, or if its values cannot be cached
+	 */
+	public static LookupIndex getColumnIndex(TwoDEval area, int relativeColumnIndex) {
+		if (!(area instanceof LazyAreaEval) || area.getHeight() < MIN_SIZE) {
+			return null;
+		}
+		LazyAreaEval ae = (LazyAreaEval) area;
+		int columnIndex = ae.getFirstColumn() + relativeColumnIndex;
+		return ae.getLookupIndex(ae.getFirstRow(), columnIndex, ae.getLastRow(), columnIndex);
+	}
+
+	/**
+	 * @return the index of the row of the area, <code>null</code> if the area does not refer
+	 * to the cells of a sheet, if the row is too short, or if its values cannot be cached
+	 */
+	public static LookupIndex getRowIndex(TwoDEval area, int relativeRowIndex) {
+		if (!(area instanceof LazyAreaEval) || area.getWidth() < MIN_SIZE) {
+			return null;
+		}
+		LazyAreaEval ae = (LazyAreaEval) area;
+		int rowIndex = ae.getFirstRow() + relativeRowIndex;
+		return ae.getLookupIndex(rowIndex, ae.getFirstColumn(), rowIndex, ae.getLastColumn());
+	}
+
+	/**
+	 * @return the index of all cells of the area, <code>null</code> if the area does not refer to
+	 * the cells of a sheet, if it is too small, or if its values cannot be cached
+	 */
+	public static LookupIndex getAreaIndex(TwoDEval area) {
+		if (!(area instanceof LazyAreaEval) || area.getHeight() * area.getWidth() < MIN_SIZE) {
+			return null;
+		}
+		LazyAreaEval ae = (LazyAreaEval) area;
+		return ae.getLookupIndex(ae.getFirstRow(), ae.getFirstColumn(), ae.getLastRow(), ae.getLastColumn());
+	}
+
+	/* package */ FormulaCellCacheEntry getCacheEntry() {
+		return _cacheEntry;
+	}
+
+	/* package */ boolean isFailed() {
+		return _failed;
+	}
+
+	/* package */ void setFailed(boolean failed) {
+		_failed = failed;
+	}
+
+	/* package */ void setValues(ValueEval[] values) {
+		_values = values;
+		_firstIndexes = null;
+		_numberPositions = null;
+		_sortedNumbers = null;
+		_matches = null;
+	}
+
+	public int getSize() {
+		return _values.length;
+	}
+
+	public ValueEval getItem(int index) {
+		return _values[index];
+	}
+
+	/**
+	 * @return the positions of the values matching the criteria with the specified key, as stored
+	 * by {@link #putMatches(Object, BitSet)}, <code>null</code> if not known yet. The result must
+	 * not be modified.
+	 */
+	public BitSet getMatches(Object criteriaKey) {
+		return _matches == null ? null : _matches.get(criteriaKey);
+	}
+
+	/**
+	 * Keeps the positions of the values matching a criteria, unless {@link #MAX_MATCHES} are kept already.
+	 * @param criteriaKey equal to the key of another criteria if and only if both criteria match the
+	 * same values
+	 */
+	public void putMatches(Object criteriaKey, BitSet matches) {
+		if (_matches == null) {
+			_matches = new HashMap<Object, BitSet>();
+		} else if (_matches.size() >= MAX_MATCHES) {
+			return;
+		}
+		_matches.put(criteriaKey, matches);
+	}
+
+	/**
+	 * @return the number of {@link NumberEval} values
+	 */
+	public int getNumberCount() {
+		sortNumbers();
+		return _sortedNumbers.length;
+	}
+
+	/**
+	 * @param rank zero based index into the numbers of the index, sorted by value
+	 * @return the position of the number
+	 */
+	public int getNumberPosition(int rank) {
+		sortNumbers();
+		return _numberPositions[rank];
+	}
+
+	/**
+	 * @return the number of numbers of the index which are less than the specified value, or also
+	 * equal to it if <code>inclusive</code>, according to {@link Double#compare(double, double)}
+	 */
+	public int getNumberRank(double value, boolean inclusive) {
+		sortNumbers();
+		double[] numbers = _sortedNumbers;
+		int low = 0;
+		int high = numbers.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			int cmp = Double.compare(numbers[mid], value);
+			if (cmp < 0 || cmp == 0 && inclusive) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private void sortNumbers() {
+		if (_sortedNumbers != null) {
+			return;
+		}
+		ValueEval[] values = _values;
+		int nNumbers = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] instanceof NumberEval) {
+				nNumbers++;
+			}
+		}
+		int[] positions = new int[nNumbers];
+		for (int i = 0, j = 0; i < values.length; i++) {
+			if (values[i] instanceof NumberEval) {
+				positions[j++] = i;
+			}
+		}
+		int[] sorted = positions.clone();
+		mergeSort(positions, sorted, 0, nNumbers, values);
+		double[] numbers = new double[nNumbers];
+		for (int i = 0; i < nNumbers; i++) {
+			numbers[i] = getNumber(values, sorted[i]);
+		}
+		_numberPositions = sorted;
+		_sortedNumbers = numbers;
+	}
+
+	private static double getNumber(ValueEval[] values, int position) {
+		return ((NumberEval) values[position]).getNumberValue();
+	}
+
+	/**
+	 * Sorts <code>dest[from..to)</code> by the numbers at the positions, using <code>src</code>,
+	 * which starts as a copy of <code>dest</code>, as the work array
+	 */
+	private static void mergeSort(int[] src, int[] dest, int from, int to, ValueEval[] values) {
+		if (to - from < 2) {
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(dest, src, from, mid, values);
+		mergeSort(dest, src, mid, to, values);
+		for (int i = from, p = from, q = mid; i < to; i++) {
+			if (q >= to || p < mid && Double.compare(getNumber(values, src[p]), getNumber(values, src[q])) <= 0) {
+				dest[i] = src[p++];
+			} else {
+				dest[i] = src[q++];
+			}
+		}
+	}
+
+	/**
+	 * Finds the first value equal to the specified one the way the lookup functions compare
+	 * values: of the same type, and for strings ignoring case. Wildcards are not supported.
+	 *
+	 * @return zero based index, -1 if the value cannot be found
+	 */
+	public int indexOf(ValueEval value) {
+		Object key = toKey(value);
+		if (key == null) {
+			return -1;
+		}
+		if (_firstIndexes == null) {
+			_firstIndexes = createFirstIndexes(_values);
+		}
+		Integer result = _firstIndexes.get(key);
+		return result == null ? -1 : result.intValue();
+	}
+
+	private static Map<Object, Integer> createFirstIndexes(ValueEval[] values) {
+		Map<Object, Integer> result = new HashMap<Object, Integer>(values.length * 4 / 3 + 1);
+		for (int i = values.length - 1; i >= 0; i--) {
+			Object key = toKey(values[i]);
+			if (key != null) {
+				// backward iteration, so that the first occurrence is kept
+				result.put(key, Integer.valueOf(i));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return a key which equals the key of another value if and only if the lookup functions
+	 * consider both values equal, <code>null</code> for values which never match (blanks and errors)
+	 */
+	private static Object toKey(ValueEval value) {
+		Class<?> cls = value.getClass();
+		if (cls == NumberEval.class) {
+			// Double.equals() agrees with the Double.compare() of the lookup functions
+			return Double.valueOf(((NumberEval) value).getNumberValue());
+		}
+		if (cls == StringEval.class) {
+			return foldCase(((StringEval) value).getStringValue());
+		}
+		if (cls == BoolEval.class) {
+			return Boolean.valueOf(((BoolEval) value).getBooleanValue());
+		}
+		return null;
+	}
+
+	/**
+	 * @return a string equal to the folded string of another if and only if both are equal
+	 * according to {@link String#compareToIgnoreCase(String)}
+	 */
+	private static String foldCase(String s) {
+		int len = s.length();
+		char[] chars = new char[len];
+		for (int i = 0; i < len; i++) {
+			chars[i] = Character.toLowerCase(Character.toUpperCase(s.charAt(i)));
+		}
+		return new String(chars);
+	}
+}
@@ -44,6 +44,7 @@ import org.apache.poi.ss.formula.ptg.UnaryPlusPtg;
 import org.apache.poi.ss.formula.eval.ConcatEval;
 import org.apache.poi.ss.formula.eval.FunctionEval;
 import org.apache.poi.ss.formula.eval.IntersectionEval;
+import org.apache.poi.ss.formula.eval.NotImplementedException;
 import org.apache.poi.ss.formula.eval.PercentEval;
 import org.apache.poi.ss.formula.eval.RangeEval;
 import org.apache.poi.ss.formula.eval.RelationalOperationEval;
@@ -54,6 +55,7 @@ import org.apache.poi.ss.formula.eval.ValueEval;
 import org.apache.poi.ss.formula.function.FunctionMetadataRegistry;
 import org.apache.poi.ss.formula.functions.Function;
 import org.apache.poi.ss.formula.functions.Indirect;
+import org.apache.poi.ss.formula.functions.NotImplementedFunction;
 
 /**
  * This class creates <tt>OperationEval</tt> instances to help evaluate <tt>OperationPtg</tt>
@@ -104,6 +106,30 @@ final class OperationEvaluatorFactory {
 		m.put(ptgKey, instance);
 	}
 
+	/**
+	 * Looks up the function of an operation once, for evaluating it repeatedly
+	 *
+	 * @return the function which {@link #evaluate(OperationPtg, ValueEval[], OperationEvaluationContext)}
+	 * calls for the operation, <code>null</code> if the function needs the evaluation context
+	 * (INDIRECT, external functions), or if the function is not implemented yet, since it can
+	 * still be registered
+	 */
+	public static Function getFunction(OperationPtg ptg) {
+		Function result = _instancesByPtgClass.get(ptg);
+		if (result != null) {
+			return result;
+		}
+		if (!(ptg instanceof AbstractFunctionPtg)) {
+			return null;
+		}
+		try {
+			result = FunctionEval.getBasicFunction(((AbstractFunctionPtg) ptg).getFunctionIndex());
+		} catch (NotImplementedException e) {
+			return null;
+		}
+		return result instanceof NotImplementedFunction ? null : result;
+	}
+
 	/**
 	 * returns the OperationEval concrete impl instance corresponding
 	 * to the supplied operationPtg
@@ -0,0 +1,595 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.formula.function.FunctionMetadataRegistry;
+import org.apache.poi.ss.formula.ptg.AbstractFunctionPtg;
+import org.apache.poi.ss.formula.ptg.Area3DPtg;
+import org.apache.poi.ss.formula.ptg.AreaPtg;
+import org.apache.poi.ss.formula.ptg.NamePtg;
+import org.apache.poi.ss.formula.ptg.NameXPtg;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.formula.ptg.Ref3DPtg;
+import org.apache.poi.ss.formula.ptg.RefPtg;
+import org.apache.poi.util.ConcurrentTasks;
+
+/**
+ * Evaluates the formula cells of a workbook on several threads.<p/>
+ *
+ * The dependencies between the formula cells are read from their formula tokens, and the cells are
+ * grouped into levels, each cell depending only on cells of the levels before its own. The cells of
+ * one level are evaluated concurrently on the {@link Executor}, each task with its own
+ * {@link WorkbookEvaluator} and cache, which take the results of the previous levels instead of
+ * evaluating these cells again.<p/>
+ *
+ * Cells which are part of a circular reference, which call INDIRECT or OFFSET, or which refer to
+ * another workbook, together with all cells depending on them, are evaluated last, on the calling
+ * thread and in the given order, so that the results are the same as those of evaluating all cells
+ * one after the other. Cells read by user defined functions other than through their arguments are
+ * not known to the dependency graph; they are still evaluated correctly, but possibly more than once.<p/>
+ *
+ * For POI internal use only
+ */
+public final class ParallelEvaluator {
+
+	/** levels with fewer cells than this are evaluated on the calling thread */
+	private static final int MIN_CELLS_PER_TASK = 64;
+	/** the number of tasks per thread for each level, to even out tasks of different cost */
+	private static final int TASKS_PER_THREAD = 4;
+	/** the maximum depth of names referring to other names which is followed */
+	private static final int MAX_NAME_DEPTH = 16;
+	private static final int FUNCTION_INDEX_OFFSET = FunctionMetadataRegistry.lookupIndexByName("OFFSET");
+
+	private static final int UNVISITED = -1;
+	private static final int VISITING = -2;
+	/** the level of the cells evaluated after all others, on one thread */
+	private static final int SERIAL = Integer.MAX_VALUE;
+
+	private final WorkbookEvaluator _evaluator;
+	private final EvaluationWorkbook _workbook;
+	private final Executor _executor;
+	private final int _parallelism;
+
+	/** the keys of the cells being evaluated, sorted by sheet, column and row */
+	private long[] _keys;
+	/** the results of the cells, in the order of {@link #_keys} */
+	private ValueEval[] _results;
+	/** the formula tokens of the cells, in the order of {@link #_keys}, parsed on the calling thread */
+	private Ptg[][] _tokens;
+	/** held while parsing the formulas of cells which are not given, see {@link #getFormulaTokens} */
+	private final Object _parseLock = new Object();
+	private final List<WorkbookEvaluator> _idleEvaluators = new ArrayList<WorkbookEvaluator>();
+
+	/**
+	 * @param evaluator the evaluator of the workbook, its cache is neither used nor changed
+	 * @param executor runs the evaluation tasks
+	 */
+	public ParallelEvaluator(WorkbookEvaluator evaluator, Executor executor) {
+		this(evaluator, executor, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param parallelism the number of threads of the executor which are expected to be available
+	 */
+	public ParallelEvaluator(WorkbookEvaluator evaluator, Executor executor, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be positive, but was " + parallelism);
+		}
+		_evaluator = evaluator;
+		_workbook = evaluator.getWorkbook();
+		_executor = executor;
+		_parallelism = parallelism;
+	}
+
+	/**
+	 * Evaluates the specified formula cells. These should be all formula cells of the workbook; formula
+	 * cells which are referred to but not given are evaluated as often as they are needed, and their
+	 * formulas are parsed by one thread at a time, since parsing may change the workbook.<p/>
+	 *
+	 * If evaluating a cell fails, the exception is thrown after the tasks running at that time are
+	 * finished. This need not be the exception of the first failing cell in the given order.
+	 *
+	 * @return the result of each cell, as {@link WorkbookEvaluator#evaluate(EvaluationCell)} returns it
+	 */
+	public ValueEval[] evaluate(EvaluationCell[] cells) {
+		ValueEval[] results = new ValueEval[cells.length];
+		if (_evaluator.getEnvironment() != CollaboratingWorkbooksEnvironment.EMPTY) {
+			// the evaluators of the other workbooks are not thread safe
+			for (int i = 0; i < cells.length; i++) {
+				results[i] = _evaluator.evaluate(cells[i]);
+			}
+			return results;
+		}
+
+		int nCells = cells.length;
+		long[] cellKeys = new long[nCells];
+		for (int i = 0; i < nCells; i++) {
+			EvaluationCell cell = cells[i];
+			int sheetIndex = _evaluator.getSheetIndex(cell.getSheet());
+			cellKeys[i] = getKey(sheetIndex, cell.getRowIndex(), cell.getColumnIndex());
+		}
+		_keys = cellKeys.clone();
+		Arrays.sort(_keys);
+		for (int i = 1; i < nCells; i++) {
+			if (_keys[i] == _keys[i - 1]) {
+				throw new IllegalArgumentException("The cell " + formatKey(_keys[i]) + " is given more than once");
+			}
+		}
+		// from here on, the cells are identified by their position in _keys
+		int[] positions = new int[nCells];
+		EvaluationCell[] sortedCells = new EvaluationCell[nCells];
+		for (int i = 0; i < nCells; i++) {
+			positions[i] = Arrays.binarySearch(_keys, cellKeys[i]);
+			sortedCells[positions[i]] = cells[i];
+		}
+		_results = new ValueEval[nCells];
+		_tokens = new Ptg[nCells][];
+		try {
+			int[] levels = computeLevels(sortedCells);
+			evaluateLevels(sortedCells, levels, positions);
+			for (int i = 0; i < nCells; i++) {
+				results[i] = _results[positions[i]];
+			}
+		} finally {
+			_keys = null;
+			_results = null;
+			_tokens = null;
+			_idleEvaluators.clear();
+		}
+		return results;
+	}
+
+	/**
+	 * Called by the evaluators of the worker threads for each formula cell they need
+	 *
+	 * @return the result of the cell, or <code>null</code> if it has not been evaluated yet
+	 */
+	/* package */ ValueEval getResult(int sheetIndex, int rowIndex, int columnIndex) {
+		int pos = Arrays.binarySearch(_keys, getKey(sheetIndex, rowIndex, columnIndex));
+		return pos < 0 ? null : _results[pos];
+	}
+
+	/**
+	 * Called by the evaluators of the worker threads for each formula they evaluate
+	 */
+	/* package */ Ptg[] getFormulaTokens(EvaluationCell cell, int sheetIndex) {
+		int pos = Arrays.binarySearch(_keys, getKey(sheetIndex, cell.getRowIndex(), cell.getColumnIndex()));
+		if (pos >= 0) {
+			return _tokens[pos];
+		}
+		// e.g. XSSF caches the parsed tokens in the workbook, in maps which are not thread safe
+		synchronized (_parseLock) {
+			return _workbook.getFormulaTokens(cell);
+		}
+	}
+
+	private static long getKey(int sheetIndex, int rowIndex, int columnIndex) {
+		return ((long) sheetIndex << 40) | ((long) columnIndex << 24) | rowIndex;
+	}
+
+	private static String formatKey(long key) {
+		return "sheet " + (int) (key >>> 40) + " row " + (int) (key & 0xFFFFFF)
+				+ " column " + (int) ((key >>> 24) & 0xFFFF);
+	}
+
+	/**
+	 * @return the level of each cell, {@link #SERIAL} for the cells to evaluate last
+	 */
+	private int[] computeLevels(EvaluationCell[] cells) {
+		int nCells = cells.length;
+		// the precedents of cell i are the cells at the positions [from, to) of the pairs in
+		// rangeData[rangeStarts[i]] to rangeData[rangeStarts[i+1]]
+		int[] rangeStarts = new int[nCells + 1];
+		IntList rangeData = new IntList();
+		boolean[] serial = new boolean[nCells];
+		Map<Integer, Ptg[]> nameDefinitions = new HashMap<Integer, Ptg[]>();
+		for (int i = 0; i < nCells; i++) {
+			rangeStarts[i] = rangeData.size();
+			int sheetIndex = (int) (_keys[i] >>> 40);
+			// the worker threads only take the tokens of the given cells from _tokens
+			Ptg[] ptgs = _workbook.getFormulaTokens(cells[i]);
+			_tokens[i] = ptgs;
+			serial[i] = !addPrecedents(ptgs, sheetIndex, rangeData, nameDefinitions, 0);
+		}
+		rangeStarts[nCells] = rangeData.size();
+		int[] ranges = rangeData.toArray();
+
+		int[] levels = new int[nCells];
+		Arrays.fill(levels, UNVISITED);
+		// finished cells are skipped through these links, see findUnfinished()
+		int[] nextUnfinished = new int[nCells + 1];
+		for (int i = 0; i <= nCells; i++) {
+			nextUnfinished[i] = i;
+		}
+		LevelTree levelTree = new LevelTree(nCells);
+
+		// depth first search without recursion, as the chains of dependencies can be very long
+		int[] stack = new int[nCells];
+		int[] stackRange = new int[nCells];
+		int[] stackScan = new int[nCells];
+		for (int root = 0; root < nCells; root++) {
+			if (levels[root] != UNVISITED) {
+				continue;
+			}
+			int depth = 0;
+			stack[0] = root;
+			stackRange[0] = rangeStarts[root];
+			stackScan[0] = -1;
+			levels[root] = VISITING;
+			depth++;
+			while (depth > 0) {
+				int cell = stack[depth - 1];
+				int rangeIx = stackRange[depth - 1];
+				int scan = stackScan[depth - 1];
+				int child = -1;
+				while (rangeIx < rangeStarts[cell + 1]) {
+					int to = ranges[rangeIx + 1];
+					int pos = findUnfinished(nextUnfinished, scan < 0 ? ranges[rangeIx] : scan);
+					while (pos < to) {
+						if (levels[pos] == UNVISITED) {
+							child = pos;
+							break;
+						}
+						// a cell currently on the stack, so this is a circular reference
+						serial[cell] = true;
+						pos = findUnfinished(nextUnfinished, pos + 1);
+					}
+					if (child >= 0) {
+						scan = pos;
+						break;
+					}
+					rangeIx += 2;
+					scan = -1;
+				}
+				if (child >= 0) {
+					stackRange[depth - 1] = rangeIx;
+					stackScan[depth - 1] = scan;
+					stack[depth] = child;
+					stackRange[depth] = rangeStarts[child];
+					stackScan[depth] = -1;
+					levels[child] = VISITING;
+					depth++;
+					continue;
+				}
+
+				// all precedents are finished
+				int level = 0;
+				if (serial[cell]) {
+					level = SERIAL;
+				} else {
+					for (int r = rangeStarts[cell]; r < rangeStarts[cell + 1]; r += 2) {
+						int max = levelTree.getMax(ranges[r], ranges[r + 1]);
+						if (max == SERIAL) {
+							level = SERIAL;
+							break;
+						}
+						level = Math.max(level, max + 1);
+					}
+				}
+				levels[cell] = level;
+				levelTree.set(cell, level);
+				nextUnfinished[cell] = cell + 1;
+				depth--;
+			}
+		}
+		return levels;
+	}
+
+	/**
+	 * @return the first position from <code>pos</code> on of a cell which is not finished
+	 */
+	private static int findUnfinished(int[] nextUnfinished, int pos) {
+		int result = pos;
+		while (nextUnfinished[result] != result) {
+			result = nextUnfinished[result];
+		}
+		// path compression
+		while (nextUnfinished[pos] != result) {
+			int next = nextUnfinished[pos];
+			nextUnfinished[pos] = result;
+			pos = next;
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the ranges of the formula cells referred to by the specified tokens
+	 *
+	 * @return <code>false</code> if the cells referred to cannot be known before evaluation
+	 */
+	private boolean addPrecedents(Ptg[] ptgs, int sheetIndex, IntList ranges,
+			Map<Integer, Ptg[]> nameDefinitions, int nameDepth) {
+		boolean result = true;
+		for (Ptg ptg : ptgs) {
+			if (ptg instanceof RefPtg) {
+				RefPtg rptg = (RefPtg) ptg;
+				addRanges(sheetIndex, rptg.getRow(), rptg.getColumn(), rptg.getRow(), rptg.getColumn(), ranges);
+			} else if (ptg instanceof AreaPtg) {
+				AreaPtg aptg = (AreaPtg) ptg;
+				addRanges(sheetIndex, aptg.getFirstRow(), aptg.getFirstColumn(),
+						aptg.getLastRow(), aptg.getLastColumn(), ranges);
+			} else if (ptg instanceof Ref3DPtg) {
+				Ref3DPtg rptg = (Ref3DPtg) ptg;
+				int otherSheetIndex = getSheetIndexByExternIndex(rptg.getExternSheetIndex());
+				if (otherSheetIndex == -1) {
+					result = false;
+				} else {
+					addRanges(otherSheetIndex, rptg.getRow(), rptg.getColumn(), rptg.getRow(), rptg.getColumn(), ranges);
+				}
+			} else if (ptg instanceof Area3DPtg) {
+				Area3DPtg aptg = (Area3DPtg) ptg;
+				int otherSheetIndex = getSheetIndexByExternIndex(aptg.getExternSheetIndex());
+				if (otherSheetIndex == -1) {
+					result = false;
+				} else {
+					addRanges(otherSheetIndex, aptg.getFirstRow(), aptg.getFirstColumn(),
+							aptg.getLastRow(), aptg.getLastColumn(), ranges);
+				}
+			} else if (ptg instanceof NamePtg) {
+				Ptg[] definition = getNameDefinition((NamePtg) ptg, nameDefinitions);
+				if (definition != null) {
+					result &= nameDepth < MAX_NAME_DEPTH
+							&& addPrecedents(definition, sheetIndex, ranges, nameDefinitions, nameDepth + 1);
+				}
+			} else if (ptg instanceof NameXPtg) {
+				// a name of another workbook, unless it is the name of a function
+				result &= _workbook.getExternalSheet(((NameXPtg) ptg).getSheetRefIndex()) == null;
+			} else if (ptg instanceof AbstractFunctionPtg) {
+				int functionIndex = ((AbstractFunctionPtg) ptg).getFunctionIndex();
+				result &= functionIndex != FunctionMetadataRegistry.FUNCTION_INDEX_INDIRECT
+						&& functionIndex != FUNCTION_INDEX_OFFSET;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the index of the sheet in this workbook, <code>-1</code> for a sheet of another workbook
+	 * and <code>-2</code> for a sheet which does not exist
+	 */
+	private int getSheetIndexByExternIndex(int externSheetIndex) {
+		if (_workbook.getExternalSheet(externSheetIndex) != null) {
+			return -1;
+		}
+		int result = _workbook.convertFromExternSheetIndex(externSheetIndex);
+		return result < 0 ? -2 : result;
+	}
+
+	/**
+	 * @return the tokens of the name, <code>null</code> for names of functions
+	 */
+	private Ptg[] getNameDefinition(NamePtg namePtg, Map<Integer, Ptg[]> nameDefinitions) {
+		Integer key = Integer.valueOf(namePtg.getIndex());
+		if (nameDefinitions.containsKey(key)) {
+			return nameDefinitions.get(key);
+		}
+		EvaluationName name = _workbook.getName(namePtg);
+		Ptg[] result = name.isFunctionName() || !name.hasFormula() ? null : name.getNameDefinition();
+		nameDefinitions.put(key, result);
+		return result;
+	}
+
+	/**
+	 * Adds the ranges of positions of the formula cells within the area, one for each column
+	 */
+	private void addRanges(int sheetIndex, int firstRow, int firstColumn, int lastRow, int lastColumn, IntList ranges) {
+		if (sheetIndex < 0) {
+			return; // a deleted sheet
+		}
+		int column = firstColumn;
+		while (column <= lastColumn) {
+			int from = lowerBound(getKey(sheetIndex, firstRow, column));
+			if (from == _keys.length || (int) (_keys[from] >>> 40) != sheetIndex) {
+				return;
+			}
+			int fromColumn = (int) ((_keys[from] >>> 24) & 0xFFFF);
+			if (fromColumn != column) {
+				// no formula cells in the rows of the area in this column, skip to the next one having some
+				column = fromColumn;
+				continue;
+			}
+			int to = lowerBound(getKey(sheetIndex, lastRow + 1, column));
+			if (to > from) {
+				ranges.add(from);
+				ranges.add(to);
+			}
+			column++;
+		}
+	}
+
+	private int lowerBound(long key) {
+		int pos = Arrays.binarySearch(_keys, key);
+		return pos < 0 ? -(pos + 1) : pos;
+	}
+
+	private void evaluateLevels(EvaluationCell[] cells, int[] levels, int[] positions) {
+		int nCells = cells.length;
+		int maxLevel = -1;
+		for (int level : levels) {
+			if (level != SERIAL) {
+				maxLevel = Math.max(maxLevel, level);
+			}
+		}
+		// the cells sorted by level, by position within a level
+		int[] levelStarts = new int[maxLevel + 2];
+		for (int level : levels) {
+			if (level != SERIAL) {
+				levelStarts[level + 1]++;
+			}
+		}
+		for (int i = 0; i <= maxLevel; i++) {
+			levelStarts[i + 1] += levelStarts[i];
+		}
+		int[] byLevel = new int[levelStarts[maxLevel + 1]];
+		int[] fill = levelStarts.clone();
+		for (int pos = 0; pos < nCells; pos++) {
+			if (levels[pos] != SERIAL) {
+				byLevel[fill[levels[pos]]++] = pos;
+			}
+		}
+
+		for (int level = 0; level <= maxLevel; level++) {
+			evaluateLevel(cells, byLevel, levelStarts[level], levelStarts[level + 1]);
+		}
+
+		// the remaining cells in the given order, through one evaluator, like a serial evaluation
+		WorkbookEvaluator evaluator = takeEvaluator();
+		for (int pos : positions) {
+			if (levels[pos] == SERIAL) {
+				_results[pos] = evaluator.evaluate(cells[pos], (int) (_keys[pos] >>> 40));
+			}
+		}
+		releaseEvaluator(evaluator);
+	}
+
+	private void evaluateLevel(EvaluationCell[] cells, int[] byLevel, int from, int to) {
+		int nCells = to - from;
+		int nTasks = Math.min(_parallelism * TASKS_PER_THREAD, nCells / MIN_CELLS_PER_TASK);
+		if (_parallelism == 1 || nTasks < 2) {
+			new EvaluationTask(cells, byLevel, from, to).run();
+			return;
+		}
+		ConcurrentTasks tasks = new ConcurrentTasks(_executor);
+		try {
+			for (int i = 0; i < nTasks; i++) {
+				tasks.execute(Executors.callable(new EvaluationTask(cells, byLevel,
+						from + (int) ((long) nCells * i / nTasks), from + (int) ((long) nCells * (i + 1) / nTasks))));
+			}
+		} finally {
+			// so that no task is running when returning or throwing
+			tasks.awaitAll();
+		}
+		tasks.throwFailure(RuntimeException.class);
+	}
+
+	private WorkbookEvaluator takeEvaluator() {
+		synchronized (_idleEvaluators) {
+			if (!_idleEvaluators.isEmpty()) {
+				return _idleEvaluators.remove(_idleEvaluators.size() - 1);
+			}
+		}
+		return _evaluator.createWorkerEvaluator(this);
+	}
+
+	private void releaseEvaluator(WorkbookEvaluator evaluator) {
+		synchronized (_idleEvaluators) {
+			_idleEvaluators.add(evaluator);
+		}
+	}
+
+	/**
+	 * Evaluates a part of the cells of one level
+	 */
+	private final class EvaluationTask implements Runnable {
+		private final EvaluationCell[] _cells;
+		private final int[] _positions;
+		private final int _from;
+		private final int _to;
+
+		EvaluationTask(EvaluationCell[] cells, int[] positions, int from, int to) {
+			_cells = cells;
+			_positions = positions;
+			_from = from;
+			_to = to;
+		}
+
+		public void run() {
+			WorkbookEvaluator evaluator = takeEvaluator();
+			for (int i = _from; i < _to; i++) {
+				int pos = _positions[i];
+				_results[pos] = evaluator.evaluate(_cells[pos], (int) (_keys[pos] >>> 40));
+			}
+			releaseEvaluator(evaluator);
+		}
+	}
+
+	/**
+	 * The maximum level of ranges of positions, as a segment tree
+	 */
+	private static final class LevelTree {
+		private final int _size;
+		private final int[] _max;
+
+		LevelTree(int nCells) {
+			int size = 1;
+			while (size < nCells) {
+				size <<= 1;
+			}
+			_size = size;
+			_max = new int[2 * size];
+			Arrays.fill(_max, -1);
+		}
+
+		void set(int pos, int level) {
+			int node = pos + _size;
+			_max[node] = level;
+			for (node >>= 1; node > 0; node >>= 1) {
+				_max[node] = Math.max(_max[2 * node], _max[2 * node + 1]);
+			}
+		}
+
+		/**
+		 * @return the maximum level of the positions [from, to), <code>-1</code> if there are none
+		 */
+		int getMax(int from, int to) {
+			int result = -1;
+			int lo = from + _size;
+			int hi = to + _size;
+			while (lo < hi) {
+				if ((lo & 1) != 0) {
+					result = Math.max(result, _max[lo++]);
+				}
+				if ((hi & 1) != 0) {
+					result = Math.max(result, _max[--hi]);
+				}
+				lo >>= 1;
+				hi >>= 1;
+			}
+			return result;
+		}
+	}
+
+	private static final class IntList {
+		private int[] _values = new int[64];
+		private int _size;
+
+		void add(int value) {
+			if (_size == _values.length) {
+				_values = Arrays.copyOf(_values, _size * 2);
+			}
+			_values[_size++] = value;
+		}
+
+		int size() {
+			return _size;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(_values, _size);
+		}
+	}
+}
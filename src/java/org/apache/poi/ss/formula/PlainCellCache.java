@@ -17,79 +17,61 @@
 
 package org.apache.poi.ss.formula;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  *
  * @author Josh Micich
  */
 final class PlainCellCache {
 
+	/**
+	 * Packs the location of a cell into a <code>long</code>, 14 bits for the book index, 16 bits for
+	 * the sheet index, 20 bits for the row index and 14 bits for the column index.
+	 */
 	public static final class Loc {
 
-		private final long _bookSheetColumn;
-
-		private final int _rowIndex;
-
-		public Loc(int bookIndex, int sheetIndex, int rowIndex, int columnIndex) {
-			_bookSheetColumn = toBookSheetColumn(bookIndex, sheetIndex, columnIndex);
-			_rowIndex = rowIndex;
-		}
-
-		public static long toBookSheetColumn(int bookIndex, int sheetIndex, int columnIndex) {
-			return ((bookIndex   & 0xFFFFl) << 48)  +
-                   ((sheetIndex  & 0xFFFFl) << 32) +
-                   ((columnIndex & 0xFFFFl) << 0);
-		}
-
-		public Loc(long bookSheetColumn, int rowIndex) {
-			_bookSheetColumn = bookSheetColumn;
-			_rowIndex = rowIndex;
-		}
-
-		public int hashCode() {
-			return (int)(_bookSheetColumn ^ (_bookSheetColumn >>> 32)) + 17 * _rowIndex;
+		private Loc() {
+			// no instances of this class
 		}
 
-		public boolean equals(Object obj) {
-			assert obj instanceof Loc : "these package-private cache key instances are only compared to themselves";
-			Loc other = (Loc) obj;
-			return _bookSheetColumn == other._bookSheetColumn && _rowIndex == other._rowIndex;
+		public static long toLocation(int bookIndex, int sheetIndex, int rowIndex, int columnIndex) {
+			return ((bookIndex   & 0x3FFFL)  << 50) |
+                   ((sheetIndex  & 0xFFFFL)  << 34) |
+                   ((rowIndex    & 0xFFFFFL) << 14) |
+                   ((columnIndex & 0x3FFFL)  << 0);
 		}
 
-		public int getRowIndex() {
-			return _rowIndex;
+		public static int getRowIndex(long location) {
+			return (int)((location >> 14) & 0xFFFFF);
 		}
 
-		public int getColumnIndex() {
-            return (int)(_bookSheetColumn & 0x000FFFF);
+		public static int getColumnIndex(long location) {
+            return (int)(location & 0x3FFF);
 		}
 
-        public int getSheetIndex() {
-            return (int)((_bookSheetColumn >> 32) & 0xFFFF);
+        public static int getSheetIndex(long location) {
+            return (int)((location >> 34) & 0xFFFF);
         }
 
-        public int getBookIndex() {
-            return (int)((_bookSheetColumn >> 48) & 0xFFFF);
+        public static int getBookIndex(long location) {
+            return (int)((location >>> 50) & 0x3FFF);
         }
 	}
 
-	private Map<Loc, PlainValueCellCacheEntry> _plainValueEntriesByLoc;
+	private final CellLocationMap<PlainValueCellCacheEntry> _plainValueEntriesByLoc;
 
 	public PlainCellCache() {
-		_plainValueEntriesByLoc = new HashMap<Loc, PlainValueCellCacheEntry>();
+		_plainValueEntriesByLoc = new CellLocationMap<PlainValueCellCacheEntry>();
 	}
-	public void put(Loc key, PlainValueCellCacheEntry cce) {
-		_plainValueEntriesByLoc.put(key, cce);
+	public void put(long loc, PlainValueCellCacheEntry cce) {
+		_plainValueEntriesByLoc.put(loc, cce);
 	}
 	public void clear() {
 		_plainValueEntriesByLoc.clear();
 	}
-	public PlainValueCellCacheEntry get(Loc key) {
-		return _plainValueEntriesByLoc.get(key);
+	public PlainValueCellCacheEntry get(long loc) {
+		return _plainValueEntriesByLoc.get(loc);
 	}
-	public void remove(Loc key) {
-		_plainValueEntriesByLoc.remove(key);
+	public void remove(long loc) {
+		_plainValueEntriesByLoc.remove(loc);
 	}
 }
@@ -51,6 +51,17 @@ final class SheetRefEvaluator {
 		return _bookEvaluator.evaluateReference(getSheet(), _sheetIndex, rowIndex, columnIndex, _tracker);
 	}
 
+	public void getValues(int firstRowIndex, int firstColumnIndex, int rowCount, int columnCount,
+			int areaFirstRowIndex, int areaLastRowIndex, byte[] types, double[] values) {
+		_bookEvaluator.getValues(getSheet(), _sheetIndex, firstRowIndex, firstColumnIndex, rowCount,
+				columnCount, areaFirstRowIndex, areaLastRowIndex, types, values, _tracker);
+	}
+
+	public LookupIndex getLookupIndex(int firstRowIndex, int firstColumnIndex, int lastRowIndex, int lastColumnIndex) {
+		return _bookEvaluator.getLookupIndex(getSheet(), _sheetIndex, firstRowIndex, firstColumnIndex,
+				lastRowIndex, lastColumnIndex, _tracker);
+	}
+
 	private EvaluationSheet getSheet() {
 		if (_sheet == null) {
 			_sheet = _bookEvaluator.getSheet(_sheetIndex);
@@ -66,8 +77,7 @@ final class SheetRefEvaluator {
         boolean subtotal = false;
         EvaluationCell cell = getSheet().getCell(rowIndex, columnIndex);
         if(cell != null && cell.getCellType() == Cell.CELL_TYPE_FORMULA){
-            EvaluationWorkbook wb = _bookEvaluator.getWorkbook();
-            for(Ptg ptg : wb.getFormulaTokens(cell)){
+            for(Ptg ptg : _bookEvaluator.getFormulaTokens(cell, _sheetIndex)){
                 if(ptg instanceof FuncVarPtg){
                     FuncVarPtg f = (FuncVarPtg)ptg;
                     if("SUBTOTAL".equals(f.getName())) {
@@ -0,0 +1,243 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.poi.ss.formula.eval.BlankEval;
+import org.apache.poi.ss.formula.eval.BoolEval;
+import org.apache.poi.ss.formula.eval.ErrorEval;
+import org.apache.poi.ss.formula.eval.NumberEval;
+import org.apache.poi.ss.formula.eval.StringEval;
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.usermodel.Cell;
+
+/**
+ * A read-only copy of the plain cell values of an {@link EvaluationSheet}, kept in dense arrays per
+ * column.<p/>
+ *
+ * Reading a cell of a sheet looks up its row and then its cell, and creates a wrapper for it, so
+ * large area references spend most of their time chasing pointers. The snapshot reads the cells of
+ * a column in blocks of {@link #BLOCK_SIZE} rows the first time one of them is needed, and keeps a
+ * type tag and a <code>double</code> for each, with strings stored once in a table. Formula cells
+ * are only tagged, their cells are still taken from the sheet.<p/>
+ *
+ * The snapshot does not see changes to the sheet, other than those passed to
+ * {@link #notifyUpdateCell(EvaluationCell)} and {@link #notifyDeleteCell(EvaluationCell)}.
+ */
+final class SheetSnapshot implements EvaluationSheet {
+
+	private static final int BLOCK_SHIFT = 10;
+	private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+	private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+	private static final byte BLANK = BulkTwoDEval.VALUE_BLANK;
+	private static final byte NUMBER = BulkTwoDEval.VALUE_NUMBER;
+	private static final byte STRING = BulkTwoDEval.VALUE_STRING;
+	private static final byte BOOLEAN = BulkTwoDEval.VALUE_BOOLEAN;
+	private static final byte ERROR = BulkTwoDEval.VALUE_ERROR;
+	private static final byte FORMULA = -1;
+
+	/**
+	 * The cells of {@link #BLOCK_SIZE} rows of one column
+	 */
+	private static final class Block {
+		final byte[] _types = new byte[BLOCK_SIZE];
+		/** the number, the string id, 1 for TRUE, or the error code, depending on the type */
+		final double[] _values = new double[BLOCK_SIZE];
+	}
+
+	/** shared by all blocks of blank cells, replaced by a new block when one of its cells is set */
+	private static final Block EMPTY_BLOCK = new Block();
+
+	private final EvaluationSheet _sheet;
+	/** the blocks of each column by row block index, <code>null</code> if not read yet */
+	private Block[][] _columns;
+	private final Map<String, Integer> _stringIds;
+	private StringEval[] _strings;
+	private int _stringCount;
+
+	public SheetSnapshot(EvaluationSheet sheet) {
+		_sheet = sheet;
+		_columns = new Block[16][];
+		_stringIds = new HashMap<String, Integer>();
+		_strings = new StringEval[64];
+	}
+
+	public EvaluationCell getCell(int rowIndex, int columnIndex) {
+		return _sheet.getCell(rowIndex, columnIndex);
+	}
+
+	/**
+	 * @return the value of a cell which is not a formula cell, <code>null</code> for formula cells
+	 */
+	public ValueEval getPlainValue(int rowIndex, int columnIndex) {
+		Block block = getBlock(rowIndex, columnIndex);
+		int i = rowIndex & BLOCK_MASK;
+		switch (block._types[i]) {
+			case BLANK:
+				return BlankEval.instance;
+			case NUMBER:
+				return new NumberEval(block._values[i]);
+			case STRING:
+				return _strings[(int) block._values[i]];
+			case BOOLEAN:
+				return BoolEval.valueOf(block._values[i] != 0);
+			case ERROR:
+				return ErrorEval.valueOf((int) block._values[i]);
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the value of a cell which is not a formula cell without creating a {@link ValueEval},
+	 * like {@link BulkTwoDEval#getValues(int, int, byte[], double[])}
+	 *
+	 * @return the <tt>BulkTwoDEval.VALUE_XXX</tt> type of the cell, -1 for formula cells
+	 */
+	public byte getPlainValue(int rowIndex, int columnIndex, double[] values, int index) {
+		Block block = getBlock(rowIndex, columnIndex);
+		int i = rowIndex & BLOCK_MASK;
+		values[index] = block._values[i];
+		return block._types[i];
+	}
+
+	/**
+	 * Copies the new value of the cell into the snapshot, if it was read already
+	 */
+	public void notifyUpdateCell(EvaluationCell cell) {
+		int rowIndex = cell.getRowIndex();
+		Block block = getLoadedBlock(rowIndex, cell.getColumnIndex(), true);
+		if (block != null) {
+			setCell(block, rowIndex & BLOCK_MASK, cell);
+		}
+	}
+
+	public void notifyDeleteCell(EvaluationCell cell) {
+		int rowIndex = cell.getRowIndex();
+		Block block = getLoadedBlock(rowIndex, cell.getColumnIndex(), false);
+		if (block != null && block != EMPTY_BLOCK) {
+			block._types[rowIndex & BLOCK_MASK] = BLANK;
+		}
+	}
+
+	/**
+	 * @param forUpdate <code>true</code> to replace the shared empty block by one which can be set
+	 * @return <code>null</code> if the block was not read yet
+	 */
+	private Block getLoadedBlock(int rowIndex, int columnIndex, boolean forUpdate) {
+		if (columnIndex >= _columns.length) {
+			return null;
+		}
+		Block[] blocks = _columns[columnIndex];
+		int blockIndex = rowIndex >> BLOCK_SHIFT;
+		if (blocks == null || blockIndex >= blocks.length) {
+			return null;
+		}
+		Block result = blocks[blockIndex];
+		if (result == EMPTY_BLOCK && forUpdate) {
+			result = new Block();
+			blocks[blockIndex] = result;
+		}
+		return result;
+	}
+
+	private Block getBlock(int rowIndex, int columnIndex) {
+		if (columnIndex >= _columns.length) {
+			Block[][] columns = new Block[Math.max(columnIndex + 1, _columns.length * 2)][];
+			System.arraycopy(_columns, 0, columns, 0, _columns.length);
+			_columns = columns;
+		}
+		Block[] blocks = _columns[columnIndex];
+		int blockIndex = rowIndex >> BLOCK_SHIFT;
+		if (blocks == null || blockIndex >= blocks.length) {
+			Block[] newBlocks = new Block[Math.max(blockIndex + 1, blocks == null ? 4 : blocks.length * 2)];
+			if (blocks != null) {
+				System.arraycopy(blocks, 0, newBlocks, 0, blocks.length);
+			}
+			blocks = newBlocks;
+			_columns[columnIndex] = blocks;
+		}
+		Block result = blocks[blockIndex];
+		if (result == null) {
+			result = readBlock(blockIndex << BLOCK_SHIFT, columnIndex);
+			blocks[blockIndex] = result;
+		}
+		return result;
+	}
+
+	private Block readBlock(int firstRowIndex, int columnIndex) {
+		Block result = null;
+		for (int i = 0; i < BLOCK_SIZE; i++) {
+			EvaluationCell cell = _sheet.getCell(firstRowIndex + i, columnIndex);
+			if (cell == null || cell.getCellType() == Cell.CELL_TYPE_BLANK) {
+				continue;
+			}
+			if (result == null) {
+				result = new Block();
+			}
+			setCell(result, i, cell);
+		}
+		return result == null ? EMPTY_BLOCK : result;
+	}
+
+	private void setCell(Block block, int i, EvaluationCell cell) {
+		int cellType = cell.getCellType();
+		switch (cellType) {
+			case Cell.CELL_TYPE_NUMERIC:
+				block._types[i] = NUMBER;
+				block._values[i] = cell.getNumericCellValue();
+				return;
+			case Cell.CELL_TYPE_STRING:
+				block._types[i] = STRING;
+				block._values[i] = getStringId(cell.getStringCellValue());
+				return;
+			case Cell.CELL_TYPE_BOOLEAN:
+				block._types[i] = BOOLEAN;
+				block._values[i] = cell.getBooleanCellValue() ? 1 : 0;
+				return;
+			case Cell.CELL_TYPE_ERROR:
+				block._types[i] = ERROR;
+				block._values[i] = cell.getErrorCellValue();
+				return;
+			case Cell.CELL_TYPE_BLANK:
+				block._types[i] = BLANK;
+				return;
+			case Cell.CELL_TYPE_FORMULA:
+				block._types[i] = FORMULA;
+				return;
+		}
+		throw new RuntimeException("Unexpected cell type (" + cellType + ")");
+	}
+
+	private int getStringId(String value) {
+		Integer id = _stringIds.get(value);
+		if (id != null) {
+			return id.intValue();
+		}
+		if (_stringCount == _strings.length) {
+			StringEval[] strings = new StringEval[_stringCount * 2];
+			System.arraycopy(_strings, 0, strings, 0, _stringCount);
+			_strings = strings;
+		}
+		_strings[_stringCount] = new StringEval(value);
+		_stringIds.put(value, Integer.valueOf(_stringCount));
+		return _stringCount++;
+	}
+}
@@ -56,6 +56,7 @@ import org.apache.poi.ss.formula.udf.AggregatingUDFFinder;
 import org.apache.poi.ss.formula.udf.UDFFinder;
 import org.apache.poi.ss.util.CellReference;
 import org.apache.poi.ss.formula.CollaboratingWorkbooksEnvironment.WorkbookNotFoundException;
+import org.apache.poi.ss.formula.PlainCellCache.Loc;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.util.POILogFactory;
 import org.apache.poi.util.POILogger;
@@ -90,6 +91,26 @@ public final class WorkbookEvaluator {
 
     private boolean _ignoreMissingWorkbooks = false;
 
+	/** set on the evaluators of the worker threads of a {@link ParallelEvaluator} */
+	private ParallelEvaluator _parallelEvaluator;
+
+	/** the snapshots of the sheets by sheet index, <code>null</code> if not enabled */
+	private SheetSnapshot[] _sheetSnapshots;
+
+	/** the compiled formulas by {@link FormulaPlan#createKey(Ptg[], int, int)} */
+	private final Map<String, FormulaPlan> _formulaPlans;
+
+	/** the results of the formula cells before the updates of this evaluator, <code>null</code> if not set */
+	private BaseEvaluationResults _baseResults;
+	/**
+	 * The locations of the formula cells whose base results are affected by the updated cells,
+	 * see {@link BaseEvaluationResults#addDependentCells(int, int, int, Set)}
+	 */
+	private Set<Long> _cellsAffectedByUpdates;
+
+	/** <code>null</code> if not profiling */
+	private EvaluationProfiler _profiler;
+
 	/**
 	 * @param udfFinder pass <code>null</code> for default (AnalysisToolPak only)
 	 */
@@ -103,6 +124,7 @@ public final class WorkbookEvaluator {
 		_cache = new EvaluationCache(evaluationListener);
 		_sheetIndexesBySheet = new IdentityHashMap<EvaluationSheet, Integer>();
 		_sheetIndexesByName = new IdentityHashMap<String, Integer>();
+		_formulaPlans = new HashMap<String, FormulaPlan>();
 		_collaboratingWorkbookEnvironment = CollaboratingWorkbooksEnvironment.EMPTY;
 		_workbookIx = 0;
 		_stabilityClassifier = stabilityClassifier;
@@ -123,13 +145,71 @@ public final class WorkbookEvaluator {
 	}
 
 	/* package */ EvaluationSheet getSheet(int sheetIndex) {
-		return _workbook.getSheet(sheetIndex);
+		if (_sheetSnapshots == null) {
+			return _workbook.getSheet(sheetIndex);
+		}
+		if (sheetIndex >= _sheetSnapshots.length) {
+			SheetSnapshot[] snapshots = new SheetSnapshot[sheetIndex + 1];
+			System.arraycopy(_sheetSnapshots, 0, snapshots, 0, _sheetSnapshots.length);
+			_sheetSnapshots = snapshots;
+		}
+		SheetSnapshot result = _sheetSnapshots[sheetIndex];
+		if (result == null) {
+			result = new SheetSnapshot(_workbook.getSheet(sheetIndex));
+			_sheetSnapshots[sheetIndex] = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Whether to read the plain values of the cells from snapshots of the sheets, which copy them
+	 * into arrays per column when first read. This speeds up formulas over large areas, especially
+	 * of XSSF sheets, at the cost of memory. The snapshots follow the changes passed to
+	 * {@link #notifyUpdateCell(EvaluationCell)} and {@link #notifyDeleteCell(EvaluationCell)}, and
+	 * are discarded by {@link #clearAllCachedResultValues()}. Off by default.
+	 */
+	public void setUseSheetSnapshots(boolean value) {
+		_sheetSnapshots = value ? new SheetSnapshot[0] : null;
 	}
 	
+	/**
+	 * Records the time of the evaluations of the formula cells and the calls of the functions,
+	 * the hits and misses of the cache and the deepest chain of dependencies into the supplied
+	 * profiler, until set to <code>null</code>.
+	 */
+	public void setProfiler(EvaluationProfiler profiler) {
+		_profiler = profiler;
+	}
+
+	/**
+	 * @return <code>null</code> if not profiling
+	 */
+	public EvaluationProfiler getProfiler() {
+		return _profiler;
+	}
+
 	/* package */ EvaluationWorkbook getWorkbook() {
 		return _workbook;
 	}
 
+	/* package */ EvaluationCache getCache() {
+		return _cache;
+	}
+
+	/**
+	 * Takes the results of the formula cells from the supplied base results, unless they are
+	 * affected by the cells updated since, which are evaluated by this evaluator. The workbook of
+	 * this evaluator must be a fork of the workbook of the base results, with the same sheets, like
+	 * {@link org.apache.poi.ss.formula.eval.forked.ForkedEvaluator} creates. The cells which differ
+	 * from the base workbook must be passed to {@link #notifyUpdateCell(EvaluationCell)}, so that the
+	 * evaluation work of each fork is proportional to the formula cells affected by its updates.
+	 */
+	public void setBaseResults(BaseEvaluationResults baseResults) {
+		_baseResults = baseResults;
+		_cellsAffectedByUpdates = baseResults == null ? null : new HashSet<Long>();
+		clearAllCachedResultValues();
+	}
+
 	/* package */ EvaluationName getName(String name, int sheetIndex) {
         NamePtg namePtg = _workbook.getName(name, sheetIndex).createPtg();
 
@@ -185,6 +265,20 @@ public final class WorkbookEvaluator {
 		return _evaluationListener;
 	}
 
+	/**
+	 * Creates an evaluator for a worker thread of the specified {@link ParallelEvaluator}. It shares the
+	 * workbook with this evaluator but has its own cache, and takes the results of formula cells from
+	 * the parallel evaluator if these have already been evaluated.
+	 */
+	/* package */ WorkbookEvaluator createWorkerEvaluator(ParallelEvaluator parallelEvaluator) {
+		// the user defined functions are already part of the workbook's UDF finder
+		WorkbookEvaluator result = new WorkbookEvaluator(_workbook, null, _stabilityClassifier, null);
+		result._ignoreMissingWorkbooks = _ignoreMissingWorkbooks;
+		result._parallelEvaluator = parallelEvaluator;
+		result.setUseSheetSnapshots(_sheetSnapshots != null);
+		return result;
+	}
+
 	/**
 	 * Should be called whenever there are changes to input cells in the evaluated workbook.
 	 * Failure to call this method after changing cell values will cause incorrect behaviour
@@ -193,6 +287,10 @@ public final class WorkbookEvaluator {
 	public void clearAllCachedResultValues() {
 		_cache.clear();
 		_sheetIndexesBySheet.clear();
+		_formulaPlans.clear();
+		if (_sheetSnapshots != null) {
+			_sheetSnapshots = new SheetSnapshot[0];
+		}
 	}
 
 	/**
@@ -202,6 +300,13 @@ public final class WorkbookEvaluator {
 	public void notifyUpdateCell(EvaluationCell cell) {
 		int sheetIndex = getSheetIndex(cell.getSheet());
 		_cache.notifyUpdateCell(_workbookIx, sheetIndex, cell);
+		SheetSnapshot snapshot = getSheetSnapshot(sheetIndex);
+		if (snapshot != null) {
+			snapshot.notifyUpdateCell(cell);
+		}
+		if (_baseResults != null) {
+			notifyUpdateBaseResults(sheetIndex, cell.getRowIndex(), cell.getColumnIndex());
+		}
 	}
 	/**
 	 * Should be called to tell the cell value cache that the specified cell has just been
@@ -210,9 +315,77 @@ public final class WorkbookEvaluator {
 	public void notifyDeleteCell(EvaluationCell cell) {
 		int sheetIndex = getSheetIndex(cell.getSheet());
 		_cache.notifyDeleteCell(_workbookIx, sheetIndex, cell);
+		SheetSnapshot snapshot = getSheetSnapshot(sheetIndex);
+		if (snapshot != null) {
+			snapshot.notifyDeleteCell(cell);
+		}
+		if (_baseResults != null) {
+			notifyUpdateBaseResults(sheetIndex, cell.getRowIndex(), cell.getColumnIndex());
+		}
+	}
+
+	/**
+	 * Stops using the base results of the updated cell, whose formula may differ from the base,
+	 * and of the formula cells which depend on it. These results may have been cached as plain
+	 * values of the cells read by other formula cells.
+	 */
+	private void notifyUpdateBaseResults(int sheetIndex, int rowIndex, int columnIndex) {
+		Set<Long> dependentCells = new HashSet<Long>();
+		dependentCells.add(Long.valueOf(Loc.toLocation(0, sheetIndex, rowIndex, columnIndex)));
+		_baseResults.addDependentCells(sheetIndex, rowIndex, columnIndex, dependentCells);
+		for (Long loc : dependentCells) {
+			if (_cellsAffectedByUpdates.add(loc)) {
+				long location = loc.longValue();
+				_cache.clearPlainValue(_workbookIx, Loc.getSheetIndex(location),
+						Loc.getRowIndex(location), Loc.getColumnIndex(location));
+			}
+		}
+	}
+
+	/**
+	 * Re-evaluates the formula cells whose cached results were cleared by
+	 * {@link #notifyUpdateCell(EvaluationCell)} and {@link #notifyDeleteCell(EvaluationCell)}
+	 * since the last call, i.e. the formula cells evaluated before which depend on the changed
+	 * cells, directly or through other formula cells. Each cell is evaluated once, after the
+	 * cells it depends on, since these are evaluated first when they are also dirty. Formula
+	 * cells which were not evaluated before are not evaluated.
+	 *
+	 * @return the cells whose results differ from their results before they were cleared
+	 */
+	public List<EvaluationCell> recalculateDirtyCells() {
+		List<FormulaCellCacheEntry> entries = _cache.takeDirtyFormulaCells(_workbookIx);
+		ValueEval[] previousValues = new ValueEval[entries.size()];
+		for (int i = 0; i < previousValues.length; i++) {
+			previousValues[i] = entries.get(i).takePreviousValue();
+		}
+		List<EvaluationCell> result = new ArrayList<EvaluationCell>();
+		for (int i = 0; i < previousValues.length; i++) {
+			long loc = entries.get(i).getLocation();
+			int sheetIndex = Loc.getSheetIndex(loc);
+			EvaluationCell cell = _workbook.getSheet(sheetIndex).getCell(Loc.getRowIndex(loc), Loc.getColumnIndex(loc));
+			if (cell == null || cell.getCellType() != Cell.CELL_TYPE_FORMULA) {
+				// changed without notifying the evaluator
+				continue;
+			}
+			ValueEval value = evaluate(cell, sheetIndex);
+			if (!CellCacheEntry.areValuesEqual(previousValues[i], value)) {
+				result.add(cell);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return <code>null</code> if snapshots are not enabled, or if the sheet was not read yet
+	 */
+	private SheetSnapshot getSheetSnapshot(int sheetIndex) {
+		if (_sheetSnapshots == null || sheetIndex >= _sheetSnapshots.length) {
+			return null;
+		}
+		return _sheetSnapshots[sheetIndex];
 	}
 	
-	private int getSheetIndex(EvaluationSheet sheet) {
+	/* package */ int getSheetIndex(EvaluationSheet sheet) {
 		Integer result = _sheetIndexesBySheet.get(sheet);
 		if (result == null) {
 			int sheetIndex = _workbook.getSheetIndex(sheet);
@@ -227,6 +400,10 @@ public final class WorkbookEvaluator {
 
 	public ValueEval evaluate(EvaluationCell srcCell) {
 		int sheetIndex = getSheetIndex(srcCell.getSheet());
+		return evaluate(srcCell, sheetIndex);
+	}
+
+	/* package */ ValueEval evaluate(EvaluationCell srcCell, int sheetIndex) {
 		return evaluateAny(srcCell, sheetIndex, srcCell.getRowIndex(), srcCell.getColumnIndex(), new EvaluationTracker(_cache));
 	}
 
@@ -252,6 +429,11 @@ public final class WorkbookEvaluator {
 	}
 
 
+	private boolean isCellDependencyRecorded(int sheetIndex, int rowIndex, int columnIndex) {
+		return _stabilityClassifier == null ? true
+					: !_stabilityClassifier.isCellFinal(sheetIndex, rowIndex, columnIndex);
+	}
+
 	/**
 	 * @return never <code>null</code>, never {@link BlankEval}
 	 */
@@ -259,8 +441,7 @@ public final class WorkbookEvaluator {
 				int rowIndex, int columnIndex, EvaluationTracker tracker) {
 
 		// avoid tracking dependencies to cells that have constant definition
-		boolean shouldCellDependencyBeRecorded = _stabilityClassifier == null ? true
-					: !_stabilityClassifier.isCellFinal(sheetIndex, rowIndex, columnIndex);
+		boolean shouldCellDependencyBeRecorded = isCellDependencyRecorded(sheetIndex, rowIndex, columnIndex);
 		if (srcCell == null || srcCell.getCellType() != Cell.CELL_TYPE_FORMULA) {
 			ValueEval result = getValueFromNonFormulaCell(srcCell);
 			if (shouldCellDependencyBeRecorded) {
@@ -269,7 +450,29 @@ public final class WorkbookEvaluator {
 			return result;
 		}
 
-		FormulaCellCacheEntry cce = _cache.getOrCreateFormulaCellEntry(srcCell);
+		if (_parallelEvaluator != null) {
+			ValueEval result = _parallelEvaluator.getResult(sheetIndex, rowIndex, columnIndex);
+			if (result != null) {
+				return result;
+			}
+		}
+
+		if (_baseResults != null && !_cellsAffectedByUpdates.contains(
+				Long.valueOf(Loc.toLocation(0, sheetIndex, rowIndex, columnIndex)))) {
+			ValueEval result = _baseResults.getResult(sheetIndex, rowIndex, columnIndex);
+			if (result != null) {
+				// cached like a plain value, until the cell is affected by an update
+				if (shouldCellDependencyBeRecorded) {
+					tracker.acceptPlainValueDependency(_workbookIx, sheetIndex, rowIndex, columnIndex, result);
+				}
+				if (_profiler != null) {
+					_profiler.onCacheHit();
+				}
+				return result;
+			}
+		}
+
+		FormulaCellCacheEntry cce = _cache.getOrCreateFormulaCellEntry(_workbookIx, sheetIndex, srcCell);
 		if (shouldCellDependencyBeRecorded || cce.isInputSensitive()) {
 			tracker.acceptFormulaDependency(cce);
 		}
@@ -280,15 +483,18 @@ public final class WorkbookEvaluator {
 				return ErrorEval.CIRCULAR_REF_ERROR;
 			}
 			OperationEvaluationContext ec = new OperationEvaluationContext(this, _workbook, sheetIndex, rowIndex, columnIndex, tracker);
+			EvaluationProfiler profiler = _profiler;
+			if (profiler != null) {
+				profiler.startEvaluate(this, sheetIndex, rowIndex, columnIndex);
+			}
 
 			try {
 
-				Ptg[] ptgs = _workbook.getFormulaTokens(srcCell);
 				if (evalListener == null) {
-					result = evaluateFormula(ec, ptgs);
+					result = evaluateFormula(ec, srcCell, sheetIndex, cce);
 				} else {
 					evalListener.onStartEvaluate(srcCell, cce);
-					result = evaluateFormula(ec, ptgs);
+					result = evaluateFormula(ec, srcCell, sheetIndex, cce);
 					evalListener.onEndEvaluate(cce, result);
 				}
 
@@ -324,11 +530,17 @@ public final class WorkbookEvaluator {
 				 }
 			 } finally {
 				tracker.endEvaluate(cce);
+				if (profiler != null) {
+					profiler.endEvaluate();
+				}
 			}
 		} else {
 			if(evalListener != null) {
 				evalListener.onCacheHit(sheetIndex, rowIndex, columnIndex, cce.getValue());
 			}
+			if (_profiler != null) {
+				_profiler.onCacheHit();
+			}
 			return cce.getValue();
 		}
 		if (isDebugLogEnabled()) {
@@ -522,7 +734,16 @@ public final class WorkbookEvaluator {
 					ops[j] = p;
 				}
 //				logDebug("invoke " + operation + " (nAgs=" + numops + ")");
-				opResult = OperationEvaluatorFactory.evaluate(optg, ops, ec);
+				if (_profiler == null) {
+					opResult = OperationEvaluatorFactory.evaluate(optg, ops, ec);
+				} else {
+					_profiler.startCall(EvaluationProfiler.getFunctionName(optg));
+					try {
+						opResult = OperationEvaluatorFactory.evaluate(optg, ops, ec);
+					} finally {
+						_profiler.endCall();
+					}
+				}
 			} else {
 				opResult = getEvalForPtg(ptg, ec);
 			}
@@ -555,13 +776,55 @@ public final class WorkbookEvaluator {
 
 	}
 
+	/**
+	 * Evaluates the formula of a cell with its compiled {@link FormulaPlan}, which is kept with the
+	 * cache entry of the cell until the cell is updated. The formula is interpreted if it cannot be
+	 * compiled, and while debug output is written.
+	 */
+	private ValueEval evaluateFormula(OperationEvaluationContext ec, EvaluationCell srcCell, int sheetIndex,
+			FormulaCellCacheEntry cce) {
+		if (dbgEvaluationOutputForNextEval || dbgEvaluationOutputIndent > 0) {
+			return evaluateFormula(ec, getFormulaTokens(srcCell, sheetIndex));
+		}
+		FormulaPlan plan = cce.getPlan();
+		if (plan == null) {
+			Ptg[] ptgs = getFormulaTokens(srcCell, sheetIndex);
+			String key = FormulaPlan.createKey(ptgs, ec.getRowIndex(), ec.getColumnIndex());
+			plan = key == null ? null : _formulaPlans.get(key);
+			if (plan == null) {
+				plan = FormulaPlan.compile(ptgs, ec.getRowIndex(), ec.getColumnIndex());
+				if (key != null) {
+					_formulaPlans.put(key, plan);
+				}
+			}
+			cce.setPlan(plan);
+			if (!plan.isCompiled()) {
+				return evaluateFormula(ec, ptgs);
+			}
+		} else if (!plan.isCompiled()) {
+			return evaluateFormula(ec, getFormulaTokens(srcCell, sheetIndex));
+		}
+		return plan.evaluate(this, ec);
+	}
+
+	/**
+	 * Evaluators of worker threads take the tokens from the {@link ParallelEvaluator}, as parsing
+	 * a formula may change the workbook.
+	 */
+	/* package */ Ptg[] getFormulaTokens(EvaluationCell cell, int sheetIndex) {
+		if (_parallelEvaluator != null) {
+			return _parallelEvaluator.getFormulaTokens(cell, sheetIndex);
+		}
+		return _workbook.getFormulaTokens(cell);
+	}
+
 	/**
 	 * Calculates the number of tokens that the evaluator should skip upon reaching a tAttrSkip.
 	 *
 	 * @return the number of tokens (starting from <tt>startIndex+1</tt>) that need to be skipped
 	 * to achieve the specified <tt>distInBytes</tt> skip distance.
 	 */
-	private static int countTokensToBeSkipped(Ptg[] ptgs, int startIndex, int distInBytes) {
+	/* package */ static int countTokensToBeSkipped(Ptg[] ptgs, int startIndex, int distInBytes) {
 		int remBytes = distInBytes;
 		int index = startIndex;
 		while (remBytes != 0) {
@@ -609,7 +872,7 @@ public final class WorkbookEvaluator {
 	 * StringPtg, BoolPtg <br/>special Note: OperationPtg subtypes cannot be
 	 * passed here!
 	 */
-	private ValueEval getEvalForPtg(Ptg ptg, OperationEvaluationContext ec) {
+	/* package */ ValueEval getEvalForPtg(Ptg ptg, OperationEvaluationContext ec) {
 		//  consider converting all these (ptg instanceof XxxPtg) expressions to (ptg.getClass() == XxxPtg.class)
 
 		if (ptg instanceof NamePtg) {
@@ -698,9 +961,239 @@ public final class WorkbookEvaluator {
 	/* package */ ValueEval evaluateReference(EvaluationSheet sheet, int sheetIndex, int rowIndex,
 			int columnIndex, EvaluationTracker tracker) {
 
+		if (sheet instanceof SheetSnapshot) {
+			ValueEval result = ((SheetSnapshot) sheet).getPlainValue(rowIndex, columnIndex);
+			if (result != null) {
+				if (isCellDependencyRecorded(sheetIndex, rowIndex, columnIndex)) {
+					tracker.acceptPlainValueDependency(_workbookIx, sheetIndex, rowIndex, columnIndex, result);
+				}
+				return result;
+			}
+		}
 		EvaluationCell cell = sheet.getCell(rowIndex, columnIndex);
 		return evaluateAny(cell, sheetIndex, rowIndex, columnIndex, tracker);
 	}
+
+	/**
+	 * Reads the values of a block of cells for {@link BulkTwoDEval#getValues(int, int, byte[], double[])}.
+	 * The cells of the {@link ColumnBlock}s which lie within the rows of the whole area are taken
+	 * from the cache, or read and cached, the remaining cells are read one by one.
+	 */
+	/* package */ void getValues(EvaluationSheet sheet, int sheetIndex, int firstRowIndex,
+			int firstColumnIndex, int rowCount, int columnCount, int areaFirstRowIndex,
+			int areaLastRowIndex, byte[] types, double[] values, EvaluationTracker tracker) {
+
+		int endRowIndex = firstRowIndex + rowCount;
+		int rowIndex = firstRowIndex;
+		while (rowIndex < endRowIndex) {
+			int blockStart = rowIndex & ~(ColumnBlock.SIZE - 1);
+			int blockEnd = blockStart + ColumnBlock.SIZE;
+			int count = Math.min(endRowIndex, blockEnd) - rowIndex;
+			int index = (rowIndex - firstRowIndex) * columnCount;
+			if (blockStart >= areaFirstRowIndex && blockEnd - 1 <= areaLastRowIndex) {
+				for (int c = 0; c < columnCount; c++) {
+					ColumnBlock block = getColumnBlock(sheet, sheetIndex, blockStart, firstColumnIndex + c, tracker);
+					if (block == null) {
+						readValues(sheet, sheetIndex, rowIndex, firstColumnIndex + c, count, 1,
+								types, values, index + c, columnCount, tracker);
+					} else {
+						block.copyValues(rowIndex - blockStart, count, types, values, index + c, columnCount);
+					}
+				}
+			} else {
+				readValues(sheet, sheetIndex, rowIndex, firstColumnIndex, count, columnCount,
+						types, values, index, columnCount, tracker);
+			}
+			rowIndex += count;
+		}
+	}
+
+	/**
+	 * Reads the values of a block of cells like {@link #getValues}, one by one in row-major order.
+	 * Formula cells are evaluated as usual, the other cells are read into the arrays directly,
+	 * so that only strings need a {@link ValueEval} when the dependencies are recorded.
+	 *
+	 * @param index the index of the first cell in the arrays
+	 * @param stride the distance of the rows in the arrays
+	 * @return <code>false</code> if one of the cells is part of a circular reference
+	 */
+	private boolean readValues(EvaluationSheet sheet, int sheetIndex, int firstRowIndex,
+			int firstColumnIndex, int rowCount, int columnCount, byte[] types, double[] values,
+			int index, int stride, EvaluationTracker tracker) {
+
+		SheetSnapshot snapshot = sheet instanceof SheetSnapshot ? (SheetSnapshot) sheet : null;
+		boolean result = true;
+		for (int n = 0; n < rowCount * columnCount; n++) {
+			int rowIndex = firstRowIndex + n / columnCount;
+			int columnIndex = firstColumnIndex + n % columnCount;
+			int i = index + (n / columnCount) * stride + n % columnCount;
+			EvaluationCell cell = null;
+			byte type;
+			if (snapshot != null) {
+				type = snapshot.getPlainValue(rowIndex, columnIndex, values, i);
+			} else {
+				cell = sheet.getCell(rowIndex, columnIndex);
+				type = getPlainValue(cell, values, i);
+			}
+			if (type < 0) {
+				ValueEval value = snapshot == null
+						? evaluateAny(cell, sheetIndex, rowIndex, columnIndex, tracker)
+						: evaluateReference(sheet, sheetIndex, rowIndex, columnIndex, tracker);
+				AreaEvalBase.setValue(value, types, values, i);
+				if (value == ErrorEval.CIRCULAR_REF_ERROR) {
+					result = false;
+				}
+				continue;
+			}
+			types[i] = type;
+			if (!isCellDependencyRecorded(sheetIndex, rowIndex, columnIndex)) {
+				continue;
+			}
+			switch (type) {
+				case BulkTwoDEval.VALUE_NUMBER:
+					tracker.acceptPlainNumberDependency(_workbookIx, sheetIndex, rowIndex, columnIndex, values[i]);
+					break;
+				case BulkTwoDEval.VALUE_BLANK:
+					tracker.acceptPlainValueDependency(_workbookIx, sheetIndex, rowIndex, columnIndex, BlankEval.instance);
+					break;
+				default:
+					ValueEval value = snapshot == null ? getValueFromNonFormulaCell(cell)
+							: snapshot.getPlainValue(rowIndex, columnIndex);
+					tracker.acceptPlainValueDependency(_workbookIx, sheetIndex, rowIndex, columnIndex, value);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Reads the values of a {@link ColumnBlock}, or takes them from the cache if none of its cells
+	 * changed since, like {@link #getLookupIndex}.
+	 *
+	 * @return <code>null</code> if the values cannot be cached, because they depend on the
+	 * evaluating formula
+	 */
+	private ColumnBlock getColumnBlock(EvaluationSheet sheet, int sheetIndex, int firstRowIndex,
+			int columnIndex, EvaluationTracker tracker) {
+
+		ColumnBlock block = _cache.getOrCreateColumnBlock(_workbookIx, sheetIndex, firstRowIndex, columnIndex);
+		FormulaCellCacheEntry cce = block.getCacheEntry();
+		if (cce.getValue() == null) {
+			if (!tracker.startEvaluate(cce)) {
+				return null;
+			}
+			try {
+				byte[] types = new byte[ColumnBlock.SIZE];
+				double[] values = new double[ColumnBlock.SIZE];
+				if (!readValues(sheet, sheetIndex, firstRowIndex, columnIndex, ColumnBlock.SIZE, 1,
+						types, values, 0, 1, tracker)) {
+					return null;
+				}
+				if (isBlank(types)) {
+					block.setValues(null, null);
+				} else {
+					block.setValues(types, values);
+				}
+				tracker.updateCacheResult(BoolEval.TRUE);
+			} finally {
+				tracker.endEvaluate(cce);
+			}
+		}
+		if (cce.isInputSensitive()) {
+			tracker.acceptFormulaDependency(cce);
+		}
+		return block;
+	}
+
+	private static boolean isBlank(byte[] types) {
+		for (int i = 0; i < types.length; i++) {
+			if (types[i] != BulkTwoDEval.VALUE_BLANK) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the <tt>BulkTwoDEval.VALUE_XXX</tt> type of a cell which is not a formula cell, -1 for
+	 * formula cells
+	 */
+	private static byte getPlainValue(EvaluationCell cell, double[] values, int index) {
+		if (cell == null) {
+			return BulkTwoDEval.VALUE_BLANK;
+		}
+		int cellType = cell.getCellType();
+		switch (cellType) {
+			case Cell.CELL_TYPE_NUMERIC:
+				values[index] = cell.getNumericCellValue();
+				return BulkTwoDEval.VALUE_NUMBER;
+			case Cell.CELL_TYPE_STRING:
+				return BulkTwoDEval.VALUE_STRING;
+			case Cell.CELL_TYPE_BOOLEAN:
+				values[index] = cell.getBooleanCellValue() ? 1 : 0;
+				return BulkTwoDEval.VALUE_BOOLEAN;
+			case Cell.CELL_TYPE_BLANK:
+				return BulkTwoDEval.VALUE_BLANK;
+			case Cell.CELL_TYPE_ERROR:
+				values[index] = cell.getErrorCellValue();
+				return BulkTwoDEval.VALUE_ERROR;
+			case Cell.CELL_TYPE_FORMULA:
+				return -1;
+		}
+		throw new RuntimeException("Unexpected cell type (" + cellType + ")");
+	}
+
+	/**
+	 * Reads the values of a row or column for the lookup functions, or takes them from the cache if
+	 * none of its cells changed since. The index is cached like a formula cell which uses all cells
+	 * of the row or column, and the evaluating formula is made dependent on it.
+	 *
+	 * @return <code>null</code> if the area is not to be indexed, see
+	 * {@link EvaluationCache#getOrCreateLookupIndex}, or if the values cannot be cached, because they
+	 * depend on the evaluating formula, or because one of the cells fails to evaluate
+	 */
+	/* package */ LookupIndex getLookupIndex(EvaluationSheet sheet, int sheetIndex, int firstRowIndex,
+			int firstColumnIndex, int lastRowIndex, int lastColumnIndex, EvaluationTracker tracker) {
+
+		LookupIndex index = _cache.getOrCreateLookupIndex(_workbookIx, sheetIndex, firstRowIndex,
+				firstColumnIndex, lastRowIndex, lastColumnIndex);
+		if (index == null) {
+			return null;
+		}
+		FormulaCellCacheEntry cce = index.getCacheEntry();
+		if (cce.getValue() == null) {
+			if (!tracker.startEvaluate(cce)) {
+				// the index is being read by an enclosing lookup
+				return null;
+			}
+			try {
+				int nColumns = lastColumnIndex - firstColumnIndex + 1;
+				ValueEval[] values = new ValueEval[(lastRowIndex - firstRowIndex + 1) * nColumns];
+				for (int i = 0; i < values.length; i++) {
+					ValueEval value = evaluateReference(sheet, sheetIndex, firstRowIndex + i / nColumns,
+							firstColumnIndex + i % nColumns, tracker);
+					if (value == ErrorEval.CIRCULAR_REF_ERROR) {
+						// one of the cells depends on the evaluating formula
+						_cache.setLookupIndexFailed(index);
+						return null;
+					}
+					values[i] = value;
+				}
+				index.setValues(values);
+				tracker.updateCacheResult(BoolEval.TRUE);
+			} catch (RuntimeException e) {
+				// let the lookup read the cells itself, which only fails if the failing cell is needed
+				_cache.setLookupIndexFailed(index);
+				return null;
+			} finally {
+				tracker.endEvaluate(cce);
+			}
+		}
+		if (cce.isInputSensitive()) {
+			tracker.acceptFormulaDependency(cce);
+		}
+		return index;
+	}
+
 	public FreeRefFunction findUserDefinedFunction(String functionName) {
 		return _udfFinder.findFunction(functionName);
 	}
@@ -17,12 +17,13 @@
 
 package org.apache.poi.ss.formula.eval;
 
+import org.apache.poi.ss.formula.BulkTwoDEval;
 import org.apache.poi.ss.formula.ptg.AreaI;
 
 /**
  * @author Josh Micich
  */
-public abstract class AreaEvalBase implements AreaEval {
+public abstract class AreaEvalBase implements AreaEval, BulkTwoDEval {
 
 	private final int _firstColumn;
 	private final int _firstRow;
@@ -111,6 +112,39 @@ public abstract class AreaEvalBase implements AreaEval {
 
 	public abstract ValueEval getRelativeValue(int relativeRowIndex, int relativeColumnIndex);
 
+	public void getValues(int rowIndex, int rowCount, byte[] types, double[] values) {
+		int width = getWidth();
+		int i = 0;
+		for (int r = rowIndex; r < rowIndex + rowCount; r++) {
+			for (int c = 0; c < width; c++) {
+				setValue(getRelativeValue(r, c), types, values, i++);
+			}
+		}
+	}
+
+	/**
+	 * Stores a cell value at the given index of the arrays filled by
+	 * {@link #getValues(int, int, byte[], double[])}. A <code>null</code> value is stored as blank.
+	 */
+	public static void setValue(ValueEval ve, byte[] types, double[] values, int index) {
+		if (ve instanceof BoolEval) {
+			types[index] = BulkTwoDEval.VALUE_BOOLEAN;
+			values[index] = ((BoolEval) ve).getBooleanValue() ? 1 : 0;
+		} else if (ve instanceof NumericValueEval) {
+			types[index] = BulkTwoDEval.VALUE_NUMBER;
+			values[index] = ((NumericValueEval) ve).getNumberValue();
+		} else if (ve instanceof StringValueEval) {
+			types[index] = BulkTwoDEval.VALUE_STRING;
+		} else if (ve instanceof ErrorEval) {
+			types[index] = BulkTwoDEval.VALUE_ERROR;
+			values[index] = ((ErrorEval) ve).getErrorCode();
+		} else if (ve == BlankEval.instance || ve == null) {
+			types[index] = BulkTwoDEval.VALUE_BLANK;
+		} else {
+			throw new RuntimeException("Unexpected value class (" + ve.getClass().getName() + ")");
+		}
+	}
+
 	public int getWidth() {
 		return _lastColumn-_firstColumn+1;
 	}
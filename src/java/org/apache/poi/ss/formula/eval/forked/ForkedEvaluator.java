@@ -17,6 +17,9 @@
 
 package org.apache.poi.ss.formula.eval.forked;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.poi.ss.formula.eval.BoolEval;
 import org.apache.poi.ss.formula.eval.ErrorEval;
 import org.apache.poi.ss.formula.eval.NumberEval;
@@ -25,12 +28,15 @@ import org.apache.poi.ss.formula.eval.ValueEval;
 import org.apache.poi.ss.formula.udf.UDFFinder;
 import org.apache.poi.hssf.usermodel.HSSFEvaluationWorkbook;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.formula.BaseEvaluationResults;
 import org.apache.poi.ss.formula.CollaboratingWorkbooksEnvironment;
 import org.apache.poi.ss.formula.EvaluationCell;
+import org.apache.poi.ss.formula.EvaluationSheet;
 import org.apache.poi.ss.formula.EvaluationWorkbook;
 import org.apache.poi.ss.formula.IStabilityClassifier;
 import org.apache.poi.ss.formula.WorkbookEvaluator;
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Workbook;
 
 /**
@@ -52,6 +58,10 @@ public final class ForkedEvaluator {
 		_sewb = new ForkedEvaluationWorkbook(masterWorkbook);
 		_evaluator = new WorkbookEvaluator(_sewb, stabilityClassifier, udfFinder);
 	}
+	private ForkedEvaluator(BaseEvaluationResults baseResults, IStabilityClassifier stabilityClassifier, UDFFinder udfFinder) {
+		this(baseResults.getWorkbook(), stabilityClassifier, udfFinder);
+		_evaluator.setBaseResults(baseResults);
+	}
 	private static EvaluationWorkbook createEvaluationWorkbook(Workbook wb) {
 		if (wb instanceof HSSFWorkbook) {
 			return HSSFEvaluationWorkbook.create((HSSFWorkbook) wb);
@@ -75,6 +85,43 @@ public final class ForkedEvaluator {
 		return new ForkedEvaluator(createEvaluationWorkbook(wb), stabilityClassifier, udfFinder);
 	}
 
+	/**
+	 * Evaluates all formula cells of the master workbook once, for the evaluators created by
+	 * {@link #create(BaseEvaluationResults, IStabilityClassifier, UDFFinder)}, which can then be
+	 * used by several threads at once. The master workbook must not be changed afterwards.
+	 *
+	 * @param udfFinder pass <code>null</code> for default (AnalysisToolPak only)
+	 */
+	public static BaseEvaluationResults createBaseResults(Workbook wb, IStabilityClassifier stabilityClassifier, UDFFinder udfFinder) {
+		EvaluationWorkbook ewb = createEvaluationWorkbook(wb);
+		List<EvaluationCell> cells = new ArrayList<EvaluationCell>();
+		for (int i = 0; i < wb.getNumberOfSheets(); i++) {
+			EvaluationSheet sheet = ewb.getSheet(i);
+			for (Row row : wb.getSheetAt(i)) {
+				for (Cell cell : row) {
+					if (cell.getCellType() == Cell.CELL_TYPE_FORMULA) {
+						cells.add(sheet.getCell(cell.getRowIndex(), cell.getColumnIndex()));
+					}
+				}
+			}
+		}
+		return BaseEvaluationResults.create(ewb, cells.toArray(new EvaluationCell[cells.size()]),
+				stabilityClassifier, udfFinder);
+	}
+
+	/**
+	 * Creates an evaluator which takes the results of the formula cells from the base results,
+	 * except for those affected by the cells updated with {@link #updateCell(String, int, int, ValueEval)},
+	 * so that only these are evaluated. The stability classifier and the UDF finder should be the
+	 * ones the base results were created with.
+	 *
+	 * @param udfFinder pass <code>null</code> for default (AnalysisToolPak only)
+	 * @see WorkbookEvaluator#setBaseResults(BaseEvaluationResults)
+	 */
+	public static ForkedEvaluator create(BaseEvaluationResults baseResults, IStabilityClassifier stabilityClassifier, UDFFinder udfFinder) {
+		return new ForkedEvaluator(baseResults, stabilityClassifier, udfFinder);
+	}
+
 	/**
 	 * Sets the specified cell to the supplied <tt>value</tt>
 	 * @param sheetName the name of the sheet containing the cell
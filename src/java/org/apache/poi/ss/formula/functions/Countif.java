@@ -17,6 +17,7 @@
 
 package org.apache.poi.ss.formula.functions;
 
+import java.util.BitSet;
 import java.util.regex.Pattern;
 
 import org.apache.poi.ss.formula.eval.BlankEval;
@@ -29,6 +30,7 @@ import org.apache.poi.ss.formula.eval.RefEval;
 import org.apache.poi.ss.formula.eval.StringEval;
 import org.apache.poi.ss.formula.eval.ValueEval;
 import org.apache.poi.ss.formula.functions.CountUtils.I_MatchPredicate;
+import org.apache.poi.ss.formula.LookupIndex;
 import org.apache.poi.ss.formula.TwoDEval;
 import org.apache.poi.ss.usermodel.ErrorConstants;
 
@@ -187,6 +189,28 @@ public final class Countif extends Fixed2ArgFunction {
 			return String.valueOf(_value);
 		}
 
+		/**
+		 * @return the positions of the matching values of the index, found through the numbers
+		 * sorted by value, <code>null</code> if the operator is not a comparison
+		 */
+		public BitSet findMatches(LookupIndex index) {
+			int from;
+			int to;
+			switch (getCode()) {
+				case CmpOp.LT: from = 0; to = index.getNumberRank(_value, false); break;
+				case CmpOp.LE: from = 0; to = index.getNumberRank(_value, true); break;
+				case CmpOp.GT: from = index.getNumberRank(_value, true); to = index.getNumberCount(); break;
+				case CmpOp.GE: from = index.getNumberRank(_value, false); to = index.getNumberCount(); break;
+				default:
+					return null;
+			}
+			BitSet result = new BitSet(index.getSize());
+			for (int i = from; i < to; i++) {
+				result.set(index.getNumberPosition(i));
+			}
+			return result;
+		}
+
 		public boolean matches(ValueEval x) {
 			double testValue;
 			if(x instanceof StringEval) {
@@ -430,12 +454,18 @@ public final class Countif extends Fixed2ArgFunction {
 
 	public ValueEval evaluate(int srcRowIndex, int srcColumnIndex, ValueEval arg0, ValueEval arg1) {
 
-		I_MatchPredicate mp = createCriteriaPredicate(arg1, srcRowIndex, srcColumnIndex);
-		if(mp == null) {
+		ValueEval criteria = evaluateCriteriaArg(arg1, srcRowIndex, srcColumnIndex);
+		if(criteria == BlankEval.instance) {
 			// If the criteria arg is a reference to a blank cell, countif always returns zero.
 			return NumberEval.ZERO;
 		}
-		double result = countMatchingCellsInArea(arg0, mp);
+		if (arg0 instanceof TwoDEval) {
+			LookupIndex index = LookupIndex.getAreaIndex((TwoDEval) arg0);
+			if (index != null) {
+				return new NumberEval(findMatches(index, criteria).cardinality());
+			}
+		}
+		double result = countMatchingCellsInArea(arg0, createCriteriaPredicate(criteria));
 		return new NumberEval(result);
 	}
 	/**
@@ -457,8 +487,14 @@ public final class Countif extends Fixed2ArgFunction {
 	 * @return <code>null</code> if the arg evaluates to blank.
 	 */
 	/* package */ static I_MatchPredicate createCriteriaPredicate(ValueEval arg, int srcRowIndex, int srcColumnIndex) {
+		return createCriteriaPredicate(evaluateCriteriaArg(arg, srcRowIndex, srcColumnIndex));
+	}
 
-		ValueEval evaluatedCriteriaArg = evaluateCriteriaArg(arg, srcRowIndex, srcColumnIndex);
+	/**
+	 * @param evaluatedCriteriaArg the de-referenced criteria arg
+	 * @return <code>null</code> if the arg is blank.
+	 */
+	/* package */ static I_MatchPredicate createCriteriaPredicate(ValueEval evaluatedCriteriaArg) {
 
 		if(evaluatedCriteriaArg instanceof NumberEval) {
 			return new NumberMatcher(((NumberEval)evaluatedCriteriaArg).getNumberValue(), CmpOp.OP_NONE);
@@ -480,11 +516,62 @@ public final class Countif extends Fixed2ArgFunction {
 				+ evaluatedCriteriaArg.getClass().getName() + ")");
 	}
 
+	/**
+	 * Finds the values of the index matching the criteria. The matches are kept by the index, so
+	 * that other formulas with the same criteria on the same range neither parse the criteria nor
+	 * scan the values again.
+	 *
+	 * @param evaluatedCriteriaArg the de-referenced criteria arg, not blank
+	 * @return the positions of the matching values of the index, which must not be modified
+	 */
+	/* package */ static BitSet findMatches(LookupIndex index, ValueEval evaluatedCriteriaArg) {
+		Object key = createCriteriaKey(evaluatedCriteriaArg);
+		BitSet result = index.getMatches(key);
+		if (result != null) {
+			return result;
+		}
+		I_MatchPredicate mp = createCriteriaPredicate(evaluatedCriteriaArg);
+		if (mp instanceof NumberMatcher) {
+			result = ((NumberMatcher) mp).findMatches(index);
+		}
+		if (result == null) {
+			int size = index.getSize();
+			result = new BitSet(size);
+			for (int i = 0; i < size; i++) {
+				if (mp.matches(index.getItem(i))) {
+					result.set(i);
+				}
+			}
+		}
+		index.putMatches(key, result);
+		return result;
+	}
+
+	/**
+	 * @return a key which equals the key of another criteria arg of the same type and value
+	 */
+	private static Object createCriteriaKey(ValueEval evaluatedCriteriaArg) {
+		if(evaluatedCriteriaArg instanceof NumberEval) {
+			return Double.valueOf(((NumberEval)evaluatedCriteriaArg).getNumberValue());
+		}
+		if(evaluatedCriteriaArg instanceof BoolEval) {
+			return Boolean.valueOf(((BoolEval)evaluatedCriteriaArg).getBooleanValue());
+		}
+		if(evaluatedCriteriaArg instanceof StringEval) {
+			return ((StringEval)evaluatedCriteriaArg).getStringValue();
+		}
+		if(evaluatedCriteriaArg instanceof ErrorEval) {
+			return Integer.valueOf(((ErrorEval)evaluatedCriteriaArg).getErrorCode());
+		}
+		throw new RuntimeException("Unexpected type for criteria ("
+				+ evaluatedCriteriaArg.getClass().getName() + ")");
+	}
+
 	/**
 	 *
 	 * @return the de-referenced criteria arg (possibly {@link ErrorEval})
 	 */
-	private static ValueEval evaluateCriteriaArg(ValueEval arg, int srcRowIndex, int srcColumnIndex) {
+	/* package */ static ValueEval evaluateCriteriaArg(ValueEval arg, int srcRowIndex, int srcColumnIndex) {
 		try {
 			return OperandResolver.getSingleValue(arg, srcRowIndex, (short)srcColumnIndex);
 		} catch (EvaluationException e) {
@@ -51,8 +51,8 @@ public final class Lookup extends Var2or3ArgFunction {
 			TwoDEval aeLookupVector = LookupUtils.resolveTableArrayArg(arg1);
 			TwoDEval aeResultVector = LookupUtils.resolveTableArrayArg(arg2);
 
-			ValueVector lookupVector = createVector(aeLookupVector);
-			ValueVector resultVector = createVector(aeResultVector);
+			ValueVector lookupVector = createVector(aeLookupVector, true);
+			ValueVector resultVector = createVector(aeResultVector, false);
 			if(lookupVector.getSize() > resultVector.getSize()) {
 				// Excel seems to handle this by accessing past the end of the result vector.
 				throw new RuntimeException("Lookup vector and result vector of differing sizes not supported yet");
@@ -65,8 +65,8 @@ public final class Lookup extends Var2or3ArgFunction {
 		}
 	}
 
-	private static ValueVector createVector(TwoDEval ae) {
-		ValueVector result = LookupUtils.createVector(ae);
+	private static ValueVector createVector(TwoDEval ae, boolean isLookupVector) {
+		ValueVector result = isLookupVector ? LookupUtils.createLookupVector(ae) : LookupUtils.createVector(ae);
 		if (result != null) {
 			return result;
 		}
@@ -27,6 +27,7 @@ import org.apache.poi.ss.formula.eval.OperandResolver;
 import org.apache.poi.ss.formula.eval.RefEval;
 import org.apache.poi.ss.formula.eval.StringEval;
 import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.formula.LookupIndex;
 import org.apache.poi.ss.formula.TwoDEval;
 
 import java.util.regex.Matcher;
@@ -104,6 +105,28 @@ final class LookupUtils {
 		}
 	}
 
+	/**
+	 * A row or column of a sheet, read once into a {@link LookupIndex} cached by the evaluator
+	 */
+	private static final class IndexedVector implements ValueVector {
+
+		private final LookupIndex _index;
+
+		public IndexedVector(LookupIndex index) {
+			_index = index;
+		}
+
+		public ValueEval getItem(int index) {
+			return _index.getItem(index);
+		}
+		public int getSize() {
+			return _index.getSize();
+		}
+		public LookupIndex getIndex() {
+			return _index;
+		}
+	}
+
 	public static ValueVector createRowVector(TwoDEval tableArray, int relativeRowIndex) {
 		return new RowVector(tableArray, relativeRowIndex);
 	}
@@ -123,6 +146,45 @@ final class LookupUtils {
 		return null;
 	}
 
+	/**
+	 * Like {@link #createRowVector(TwoDEval, int)}, for the row to be searched, which is taken
+	 * from the lookup index cache of the evaluator if possible
+	 */
+	public static ValueVector createLookupRowVector(TwoDEval tableArray, int relativeRowIndex) {
+		if (relativeRowIndex >= 0 && relativeRowIndex < tableArray.getHeight()) {
+			LookupIndex index = LookupIndex.getRowIndex(tableArray, relativeRowIndex);
+			if (index != null) {
+				return new IndexedVector(index);
+			}
+		}
+		return createRowVector(tableArray, relativeRowIndex);
+	}
+	/**
+	 * Like {@link #createColumnVector(TwoDEval, int)}, for the column to be searched, which is
+	 * taken from the lookup index cache of the evaluator if possible
+	 */
+	public static ValueVector createLookupColumnVector(TwoDEval tableArray, int relativeColumnIndex) {
+		if (relativeColumnIndex >= 0 && relativeColumnIndex < tableArray.getWidth()) {
+			LookupIndex index = LookupIndex.getColumnIndex(tableArray, relativeColumnIndex);
+			if (index != null) {
+				return new IndexedVector(index);
+			}
+		}
+		return createColumnVector(tableArray, relativeColumnIndex);
+	}
+	/**
+	 * Like {@link #createVector(TwoDEval)}, for the row or column to be searched
+	 */
+	public static ValueVector createLookupVector(TwoDEval ae) {
+		if (ae.isColumn()) {
+			return createLookupColumnVector(ae, 0);
+		}
+		if (ae.isRow()) {
+			return createLookupRowVector(ae, 0);
+		}
+		return null;
+	}
+
 	/**
 	 * Enumeration to support <b>4</b> valued comparison results.<p/>
 	 * Excel lookup functions have complex behaviour in the case where the lookup array has mixed
@@ -220,17 +282,28 @@ final class LookupUtils {
 		 * <tt>GREATER_THAN</tt> or <tt>TYPE_MISMATCH</tt>
 		 */
 		CompareResult compareTo(ValueEval other);
+
+		/**
+		 * @return the value which is equal to exactly the values this comparer finds equal, for
+		 * searching a {@link LookupIndex}, <code>null</code> if there is no such value (wildcards)
+		 */
+		ValueEval getIndexedValue();
 	}
 
 	private static abstract class LookupValueComparerBase implements LookupValueComparer {
 
+		private final ValueEval _targetValue;
 		private final Class<? extends ValueEval> _targetClass;
 		protected LookupValueComparerBase(ValueEval targetValue) {
 			if(targetValue == null) {
 				throw new RuntimeException("targetValue cannot be null");
 			}
+			_targetValue = targetValue;
 			_targetClass = targetValue.getClass();
 		}
+		public ValueEval getIndexedValue() {
+			return _targetValue;
+		}
 		public final CompareResult compareTo(ValueEval other) {
 			if (other == null) {
 				throw new RuntimeException("compare to value cannot be null");
@@ -268,6 +341,13 @@ final class LookupUtils {
             _isMatchFunction = isMatchFunction;
 		}
 
+		public ValueEval getIndexedValue() {
+			if (_wildCardPattern != null) {
+				return null;
+			}
+			return super.getIndexedValue();
+		}
+
 		protected CompareResult compareSameType(ValueEval other) {
             StringEval se = (StringEval) other;
 
@@ -474,8 +554,14 @@ final class LookupUtils {
 	 * 	tableArray. For HLOOKUP this is the first row of the tableArray.
 	 * @return zero based index into the vector, -1 if value cannot be found
 	 */
-	private static int lookupIndexOfExactValue(LookupValueComparer lookupComparer, ValueVector vector) {
+	public static int lookupIndexOfExactValue(LookupValueComparer lookupComparer, ValueVector vector) {
 
+		if (vector instanceof IndexedVector) {
+			ValueEval indexedValue = lookupComparer.getIndexedValue();
+			if (indexedValue != null) {
+				return ((IndexedVector) vector).getIndex().indexOf(indexedValue);
+			}
+		}
 		// find first occurrence of lookup value
 		int size = vector.getSize();
 		for (int i = 0; i < size; i++) {
@@ -128,7 +128,7 @@ public final class Match extends Var2or3ArgFunction {
 			return new SingleValueVector(re.getInnerValueEval());
 		}
 		if (eval instanceof TwoDEval) {
-			ValueVector result = LookupUtils.createVector((TwoDEval)eval);
+			ValueVector result = LookupUtils.createLookupVector((TwoDEval)eval);
 			if (result == null) {
 				throw new EvaluationException(ErrorEval.NA);
 			}
@@ -188,12 +188,11 @@ public final class Match extends Var2or3ArgFunction {
 
 		int size = lookupRange.getSize();
 		if(matchExact) {
-			for (int i = 0; i < size; i++) {
-				if(lookupComparer.compareTo(lookupRange.getItem(i)).isEqual()) {
-					return i;
-				}
+			int result = LookupUtils.lookupIndexOfExactValue(lookupComparer, lookupRange);
+			if(result < 0) {
+				throw new EvaluationException(ErrorEval.NA);
 			}
-			throw new EvaluationException(ErrorEval.NA);
+			return result;
 		}
 
 		if(findLargestLessThanOrEqual) {
@@ -27,6 +27,7 @@ import org.apache.poi.ss.formula.eval.OperandResolver;
 import org.apache.poi.ss.formula.eval.RefEval;
 import org.apache.poi.ss.formula.eval.StringValueEval;
 import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.formula.BulkTwoDEval;
 import org.apache.poi.ss.formula.TwoDEval;
 
 /**
@@ -83,6 +84,11 @@ public abstract class MultiOperandNumericFunction implements Function {
 
 	private static final int DEFAULT_MAX_NUM_OPERANDS = 30;
 
+	/**
+	 * The number of cells read at once from area operands
+	 */
+	static final int AREA_BLOCK_SIZE = 1024;
+
 	public final ValueEval evaluate(ValueEval[] args, int srcCellRow, int srcCellCol) {
 
 		double d;
@@ -142,6 +148,10 @@ public abstract class MultiOperandNumericFunction implements Function {
 	 */
 	private void collectValues(ValueEval operand, DoubleList temp) throws EvaluationException {
 
+		if (operand instanceof BulkTwoDEval && isSubtotalCounted()) {
+			collectAreaValues((BulkTwoDEval) operand, temp);
+			return;
+		}
 		if (operand instanceof TwoDEval) {
 			TwoDEval ae = (TwoDEval) operand;
 			int width = ae.getWidth();
@@ -162,6 +172,42 @@ public abstract class MultiOperandNumericFunction implements Function {
 		}
 		collectValue(operand, false, temp);
 	}
+
+	/**
+	 * Collects the values of an area in blocks of rows, without a {@link ValueEval} per cell
+	 */
+	private void collectAreaValues(BulkTwoDEval ae, DoubleList temp) throws EvaluationException {
+		int width = ae.getWidth();
+		int height = ae.getHeight();
+		int blockHeight = Math.max(1, Math.min(height, AREA_BLOCK_SIZE / width));
+		byte[] types = new byte[blockHeight * width];
+		double[] values = new double[blockHeight * width];
+		for (int rrIx = 0; rrIx < height; rrIx += blockHeight) {
+			int rowCount = Math.min(blockHeight, height - rrIx);
+			ae.getValues(rrIx, rowCount, types, values);
+			for (int i = 0, n = rowCount * width; i < n; i++) {
+				switch (types[i]) {
+					case BulkTwoDEval.VALUE_NUMBER:
+						temp.add(values[i]);
+						break;
+					case BulkTwoDEval.VALUE_BOOLEAN:
+						if (_isReferenceBoolCounted) {
+							temp.add(values[i]);
+						}
+						break;
+					case BulkTwoDEval.VALUE_ERROR:
+						throw new EvaluationException(ErrorEval.valueOf((int) values[i]));
+					case BulkTwoDEval.VALUE_BLANK:
+						if (_isBlankCounted) {
+							temp.add(0.0);
+						}
+						break;
+					// ignore all ref strings
+				}
+			}
+		}
+	}
+
 	private void collectValue(ValueEval ve, boolean isViaReference, DoubleList temp)  throws EvaluationException {
 		if (ve == null) {
 			throw new IllegalArgumentException("ve must not be null");
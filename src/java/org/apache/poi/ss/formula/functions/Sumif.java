@@ -17,7 +17,11 @@
 
 package org.apache.poi.ss.formula.functions;
 
+import java.util.BitSet;
+
+import org.apache.poi.ss.formula.LookupIndex;
 import org.apache.poi.ss.formula.eval.AreaEval;
+import org.apache.poi.ss.formula.eval.BlankEval;
 import org.apache.poi.ss.formula.eval.ErrorEval;
 import org.apache.poi.ss.formula.eval.EvaluationException;
 import org.apache.poi.ss.formula.eval.NumberEval;
@@ -68,11 +72,34 @@ public final class Sumif extends Var2or3ArgFunction {
 	private static ValueEval eval(int srcRowIndex, int srcColumnIndex, ValueEval arg1, AreaEval aeRange,
 			AreaEval aeSum) {
 		// TODO - junit to prove last arg must be srcColumnIndex and not srcRowIndex
-		I_MatchPredicate mp = Countif.createCriteriaPredicate(arg1, srcRowIndex, srcColumnIndex);
+		ValueEval criteria = Countif.evaluateCriteriaArg(arg1, srcRowIndex, srcColumnIndex);
+		if (criteria != BlankEval.instance) {
+			LookupIndex index = LookupIndex.getAreaIndex(aeRange);
+			if (index != null) {
+				return new NumberEval(sumMatchingCells(Countif.findMatches(index, criteria), aeSum));
+			}
+		}
+		I_MatchPredicate mp = Countif.createCriteriaPredicate(criteria);
 		double result = sumMatchingCells(aeRange, mp, aeSum);
 		return new NumberEval(result);
 	}
 
+	/**
+	 * @param matches the positions of the matching cells, in row-major order
+	 */
+	/* package */ static double sumMatchingCells(BitSet matches, AreaEval aeSum) {
+		// only the matching cells are read, so the sum range is not indexed
+		int width = aeSum.getWidth();
+		double result = 0.0;
+		for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+			ValueEval addend = aeSum.getRelativeValue(i / width, i % width);
+			if (addend instanceof NumberEval) {
+				result += ((NumberEval)addend).getNumberValue();
+			}
+		}
+		return result;
+	}
+
 	private static double sumMatchingCells(AreaEval aeRange, I_MatchPredicate mp, AreaEval aeSum) {
 		int height=aeRange.getHeight();
 		int width= aeRange.getWidth();
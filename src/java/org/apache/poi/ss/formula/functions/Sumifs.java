@@ -19,6 +19,9 @@
 
 package org.apache.poi.ss.formula.functions;
 
+import java.util.BitSet;
+
+import org.apache.poi.ss.formula.LookupIndex;
 import org.apache.poi.ss.formula.OperationEvaluationContext;
 import org.apache.poi.ss.formula.eval.*;
 import org.apache.poi.ss.formula.functions.CountUtils.I_MatchPredicate;
@@ -57,14 +60,22 @@ public final class Sumifs implements FreeRefFunction {
 
             // collect pairs of ranges and criteria
             AreaEval[] ae = new AreaEval[(args.length - 1)/2];
-            I_MatchPredicate[] mp = new I_MatchPredicate[ae.length];
+            ValueEval[] criteria = new ValueEval[ae.length];
             for(int i = 1, k=0; i < args.length; i += 2, k++){
                 ae[k] = convertRangeArg(args[i]);
-                mp[k] = Countif.createCriteriaPredicate(args[i+1], ec.getRowIndex(), ec.getColumnIndex());
+                criteria[k] = Countif.evaluateCriteriaArg(args[i+1], ec.getRowIndex(), ec.getColumnIndex());
             }
 
             validateCriteriaRanges(ae, sumRange);
 
+            BitSet matches = findMatches(ae, criteria);
+            if (matches != null) {
+                return new NumberEval(Sumif.sumMatchingCells(matches, sumRange));
+            }
+            I_MatchPredicate[] mp = new I_MatchPredicate[ae.length];
+            for(int k = 0; k < ae.length; k++){
+                mp[k] = Countif.createCriteriaPredicate(criteria[k]);
+            }
             double result = sumMatchingCells(ae, mp, sumRange);
             return new NumberEval(result);
 		} catch (EvaluationException e) {
@@ -87,6 +98,30 @@ public final class Sumifs implements FreeRefFunction {
         }
     }
 
+    /**
+     * Finds the cells matching all criteria through the lookup indexes of the ranges
+     *
+     * @return the positions of the cells matching all criteria, <code>null</code> if a range has no
+     * lookup index, or if a criteria is blank
+     */
+    private static BitSet findMatches(AreaEval[] ranges, ValueEval[] criteria) {
+        BitSet result = null;
+        for(int i = 0; i < ranges.length; i++){
+            LookupIndex index = LookupIndex.getAreaIndex(ranges[i]);
+            if (index == null || criteria[i] == BlankEval.instance) {
+                return null;
+            }
+            BitSet matches = Countif.findMatches(index, criteria[i]);
+            if (result == null) {
+                // the matches are kept by the index
+                result = (BitSet) matches.clone();
+            } else {
+                result.and(matches);
+            }
+        }
+        return result;
+    }
+
     /**
      *
      * @param ranges  criteria ranges, each range must be of the same dimensions as <code>aeSum</code>
@@ -26,6 +26,7 @@ import org.apache.poi.ss.formula.eval.NumericValueEval;
 import org.apache.poi.ss.formula.eval.RefEval;
 import org.apache.poi.ss.formula.eval.StringEval;
 import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.formula.BulkTwoDEval;
 import org.apache.poi.ss.formula.TwoDEval;
 
 
@@ -145,6 +146,36 @@ public final class Sumproduct implements Function {
 			return ErrorEval.VALUE_INVALID;
 		}
 
+		if (!areasAllBulk(args)) {
+			return evaluateCellSumProduct(args, height, width);
+		}
+
+		double acc = 0;
+
+		// read the areas in blocks of rows
+		int blockHeight = Math.max(1, Math.min(height, MultiOperandNumericFunction.AREA_BLOCK_SIZE / width));
+		byte[][] types = new byte[maxN][blockHeight * width];
+		double[][] values = new double[maxN][blockHeight * width];
+		for (int rrIx=0; rrIx<height; rrIx+=blockHeight) {
+			int rowCount = Math.min(blockHeight, height - rrIx);
+			for(int n=0; n<maxN; n++) {
+				((BulkTwoDEval) args[n]).getValues(rrIx, rowCount, types[n], values[n]);
+			}
+			for (int i=0, nCells=rowCount*width; i<nCells; i++) {
+				double term = 1D;
+				for(int n=0; n<maxN; n++) {
+					double val = getProductTerm(types[n][i], values[n][i]);
+					term *= val;
+				}
+				acc += term;
+			}
+		}
+
+		return new NumberEval(acc);
+	}
+
+	private static ValueEval evaluateCellSumProduct(TwoDEval[] args, int height, int width) throws EvaluationException {
+		int maxN = args.length;
 		double acc = 0;
 
 		for (int rrIx=0; rrIx<height; rrIx++) {
@@ -161,6 +192,15 @@ public final class Sumproduct implements Function {
 		return new NumberEval(acc);
 	}
 
+	private static boolean areasAllBulk(TwoDEval[] args) {
+		for (int i = 0; i < args.length; i++) {
+			if (!(args[i] instanceof BulkTwoDEval)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	private static void throwFirstError(TwoDEval areaEval) throws EvaluationException {
 		int height = areaEval.getHeight();
 		int width = areaEval.getWidth();
@@ -189,6 +229,23 @@ public final class Sumproduct implements Function {
 	}
 
 
+	/**
+	 * Determines the term of a cell of an area (sum)product, read by
+	 * {@link BulkTwoDEval#getValues(int, int, byte[], double[])}
+	 * @throws EvaluationException if the cell is an error value.
+	 */
+	private static double getProductTerm(byte type, double value) throws EvaluationException {
+		switch (type) {
+			case BulkTwoDEval.VALUE_NUMBER:
+			case BulkTwoDEval.VALUE_BOOLEAN:
+				return value;
+			case BulkTwoDEval.VALUE_ERROR:
+				throw new EvaluationException(ErrorEval.valueOf((int) value));
+		}
+		// blank and string values are interpreted as zero
+		return 0;
+	}
+
 	/**
 	 * Determines a <code>double</code> value for the specified <code>ValueEval</code>.
 	 * @param isScalarProduct <code>false</code> for SUMPRODUCTs over area refs.
@@ -17,6 +17,8 @@
 
 package org.apache.poi.ss.usermodel;
 
+import java.util.List;
+
 /**
  * Evaluates formula cells.<p/>
  * 
@@ -65,6 +67,18 @@ public interface FormulaEvaluator {
     *  calling evaluateFormulaCell on each one.
      */
     void evaluateAll();
+
+    /**
+     * Re-evaluates the formula cells which depend on the cells changed since the last call, as
+     *  told by the notify~ methods, directly or through other formula cells. Only the formula
+     *  cells whose results were cached before are re-evaluated, each once, after the cells they
+     *  depend on. For the cells whose results changed, the results are saved like
+     *  {@link #evaluateFormulaCell(Cell)} does.
+     * This allows a batch of changes to be followed by the re-evaluation of what depends on them
+     *  only, instead of the re-evaluation of all cells after {@link #clearAllCachedResultValues()}.
+     * @return the formula cells whose results changed
+     */
+    List<Cell> recalculateDirtyCells();
     
     /**
      * If cell contains a formula, the formula is evaluated and returned,
@@ -24,6 +24,8 @@ import java.awt.font.TextLayout;
 import java.awt.font.FontRenderContext;
 import java.awt.font.TextAttribute;
 import java.awt.geom.AffineTransform;
+import java.util.Collections;
+import java.util.List;
 
 
 /**
@@ -65,6 +67,10 @@ public class SheetUtil {
 
         public void evaluateAll() {}
 
+        public List<Cell> recalculateDirtyCells() {
+            return Collections.emptyList();
+        }
+
         public int evaluateFormulaCell(Cell cell) {
             return cell.getCachedFormulaResultType();
         }
@@ -0,0 +1,127 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs tasks by an {@link Executor} and waits for all of them, for the parts of POI which
+ * process a document concurrently. The tasks which the executor rejects, like when it is
+ * shut down or its queue is full, are run by the calling thread. A typical use, which does
+ * not return or throw while a task is still running:
+ * <pre>
+ * ConcurrentTasks tasks = new ConcurrentTasks(executor);
+ * try {
+ *     for (...) {
+ *         tasks.execute(task);
+ *     }
+ * } finally {
+ *     tasks.awaitAll();
+ * }
+ * tasks.throwFailure(IOException.class);
+ * </pre>
+ */
+@Internal
+public final class ConcurrentTasks {
+
+	private final Executor _executor;
+	private final List<FutureTask<Object>> _tasks;
+	/** the first failure of the tasks waited for, in the order they were executed */
+	private Throwable _failure;
+	/** the number of tasks waited for */
+	private int _done;
+
+	/**
+	 * @param executor runs the tasks. It is not shut down.
+	 */
+	public ConcurrentTasks(Executor executor) {
+		_executor = executor;
+		_tasks = new ArrayList<FutureTask<Object>>();
+	}
+
+	/**
+	 * Runs the task by the executor, or by the calling thread if the executor rejects it
+	 */
+	public void execute(Callable<?> task) {
+		@SuppressWarnings("unchecked")
+		FutureTask<Object> future = new FutureTask<Object>((Callable<Object>) task);
+		_tasks.add(future);
+		try {
+			_executor.execute(future);
+		} catch (RejectedExecutionException e) {
+			future.run();
+		}
+	}
+
+	/**
+	 * Waits for all tasks executed so far. An interruption of the calling thread does not stop
+	 * the waiting, it is restored afterwards.
+	 */
+	public void awaitAll() {
+		boolean interrupted = false;
+		for (; _done < _tasks.size(); _done++) {
+			while (true) {
+				try {
+					_tasks.get(_done).get();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					if (_failure == null) {
+						_failure = e.getCause();
+					}
+					break;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Waits for all tasks, then throws the first failure of them, if any, in the order they
+	 * were executed. Checked exceptions which are not of the given type are wrapped in a
+	 * {@link RuntimeException}.
+	 *
+	 * @param checkedType the type of the checked exceptions which the tasks may throw
+	 */
+	public <E extends Exception> void throwFailure(Class<E> checkedType) throws E {
+		awaitAll();
+		Throwable failure = _failure;
+		if (failure == null) {
+			return;
+		}
+		if (checkedType.isInstance(failure)) {
+			throw checkedType.cast(failure);
+		}
+		if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		}
+		if (failure instanceof Error) {
+			throw (Error) failure;
+		}
+		throw new RuntimeException(failure);
+	}
+}
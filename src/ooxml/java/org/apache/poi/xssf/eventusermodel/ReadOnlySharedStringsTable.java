@@ -94,6 +94,13 @@ public class ReadOnlySharedStringsTable extends DefaultHandler {
      */
     private List<String> strings;
 
+    /**
+     * For subclasses which keep the strings elsewhere, and read
+     *  them with {@link #readFrom(InputStream)} themselves
+     */
+    protected ReadOnlySharedStringsTable() {
+    }
+
     /**
      * @param pkg
      * @throws IOException
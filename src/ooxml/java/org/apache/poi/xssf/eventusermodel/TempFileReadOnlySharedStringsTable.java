@@ -0,0 +1,303 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.eventusermodel;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.poi.POIXMLException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.util.TempFile;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+/**
+ * A {@link ReadOnlySharedStringsTable} for shared strings parts too large to
+ *  hold as <code>String</code>s, which keeps the strings UTF-8 encoded in a
+ *  temp file, memory mapped for reading. Only the offsets of the strings, 8 bytes
+ *  for each, are kept on the heap, and each call of {@link #getEntryAt(int)}
+ *  decodes a new <code>String</code>.
+ * <p>
+ * The part is read when the table is created, or when it is first used if it is
+ *  created lazily, so that the workbook and styles can be read first. The
+ *  table may be used by several threads at once. {@link #close()} deletes the
+ *  temp file.
+ * </p>
+ */
+public class TempFileReadOnlySharedStringsTable extends ReadOnlySharedStringsTable implements Closeable {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The size of the parts of the temp file which are mapped, as strings
+     *  may make it larger than a single mapped buffer can be
+     */
+    private static final int MAPPED_REGION_SIZE = 1 << 26;
+
+    /**
+     * The part to read when the table is first used, <code>null</code> once read.
+     *  Volatile so that the other fields are seen once it is read.
+     */
+    private volatile PackagePart part;
+
+    private int count;
+    private int uniqueCount;
+
+    private File file;
+    /** the mapped regions of the file, see {@link #MAPPED_REGION_SIZE} */
+    private ByteBuffer[] regions;
+    /** the start of each string in the file, and its end at the next index */
+    private long[] offsets;
+    private int size;
+
+    // the state while reading the part
+    private OutputStream out;
+    private long written;
+    private StringBuilder characters;
+    private boolean tIsOpen;
+
+    /**
+     * Reads the shared strings part of the package, if it has one
+     */
+    public TempFileReadOnlySharedStringsTable(OPCPackage pkg) throws IOException, SAXException {
+        this(pkg, false);
+    }
+
+    /**
+     * @param lazy whether to read the shared strings part of the package
+     *  only when the table is first used, instead of now
+     */
+    public TempFileReadOnlySharedStringsTable(OPCPackage pkg, boolean lazy) throws IOException, SAXException {
+        ArrayList<PackagePart> parts =
+                pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+
+        // Some workbooks have no shared strings table.
+        if (parts.size() > 0) {
+            part = parts.get(0);
+            if (!lazy) {
+                ensureRead();
+            }
+        } else {
+            offsets = new long[1];
+        }
+    }
+
+    /**
+     * Reads the part if it was not read yet
+     */
+    private synchronized void ensureRead() throws IOException, SAXException {
+        if (part == null) {
+            return;
+        }
+        InputStream is = part.getInputStream();
+        try {
+            readFrom(is);
+        } finally {
+            is.close();
+        }
+        part = null;
+    }
+
+    private void ensureReadUnchecked() {
+        if (part != null) {
+            try {
+                ensureRead();
+            } catch (IOException e) {
+                throw new POIXMLException(e);
+            } catch (SAXException e) {
+                throw new POIXMLException(e);
+            }
+        }
+    }
+
+    /**
+     * Writes the strings of the part to a temp file, and maps it
+     */
+    public void readFrom(InputStream is) throws IOException, SAXException {
+        close();
+        file = TempFile.createTempFile("poi-sst", ".bin");
+        out = new BufferedOutputStream(new FileOutputStream(file), 65536);
+        written = 0;
+        size = 0;
+        offsets = new long[17];
+        try {
+            super.readFrom(is);
+        } finally {
+            out.close();
+            out = null;
+            characters = null;
+        }
+        offsets = Arrays.copyOf(offsets, size + 1);
+        map();
+    }
+
+    private void map() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+            regions = new ByteBuffer[(int) ((length + MAPPED_REGION_SIZE - 1) / MAPPED_REGION_SIZE)];
+            for (int i = 0; i < regions.length; i++) {
+                long start = (long) i * MAPPED_REGION_SIZE;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(MAPPED_REGION_SIZE, length - start));
+            }
+        } finally {
+            // the mappings stay valid
+            raf.close();
+        }
+    }
+
+    public int getCount() {
+        ensureReadUnchecked();
+        return count;
+    }
+
+    public int getUniqueCount() {
+        ensureReadUnchecked();
+        return uniqueCount;
+    }
+
+    /**
+     * Return the string at a given index.
+     * Formatting is ignored.
+     *
+     * @param idx index of item to return.
+     * @return the item at the specified position in this Shared String table.
+     */
+    public String getEntryAt(int idx) {
+        ensureReadUnchecked();
+        if (idx < 0 || idx >= size) {
+            throw new IndexOutOfBoundsException("Index: " + idx + ", Size: " + size);
+        }
+        long start = offsets[idx];
+        int length = (int) (offsets[idx + 1] - start);
+        byte[] bytes = new byte[length];
+        int region = (int) (start / MAPPED_REGION_SIZE);
+        int position = (int) (start % MAPPED_REGION_SIZE);
+        int done = 0;
+        while (done < length) {
+            // a duplicate, since other threads may read the same region
+            ByteBuffer src = regions[region].duplicate();
+            src.position(position);
+            int n = Math.min(length - done, src.remaining());
+            src.get(bytes, done, n);
+            done += n;
+            region++;
+            position = 0;
+        }
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * @return a view of the strings, which decodes them on each access
+     */
+    public List<String> getItems() {
+        ensureReadUnchecked();
+        return new AbstractList<String>() {
+            public String get(int index) {
+                return getEntryAt(index);
+            }
+
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Deletes the temp file. The table must not be used afterwards.
+     */
+    public void close() {
+        regions = null;
+        if (file != null) {
+            // may fail until the mapped regions are collected, on some platforms
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+            file = null;
+        }
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        close();
+        super.finalize();
+    }
+
+    //// ContentHandler methods ////
+
+    public void startElement(String uri, String localName, String name,
+                             Attributes attributes) throws SAXException {
+        if ("sst".equals(name)) {
+            String count = attributes.getValue("count");
+            if(count != null) this.count = Integer.parseInt(count);
+            String uniqueCount = attributes.getValue("uniqueCount");
+            if(uniqueCount != null) this.uniqueCount = Integer.parseInt(uniqueCount);
+
+            offsets = new long[Math.max(this.uniqueCount, 16) + 1];
+            characters = new StringBuilder();
+        } else if ("si".equals(name)) {
+            characters.setLength(0);
+        } else if ("t".equals(name)) {
+            tIsOpen = true;
+        }
+    }
+
+    public void endElement(String uri, String localName, String name)
+            throws SAXException {
+        if ("si".equals(name)) {
+            byte[] bytes = characters.toString().getBytes(UTF8);
+            try {
+                out.write(bytes);
+            } catch (IOException e) {
+                throw new SAXException(e);
+            }
+            written += bytes.length;
+            if (size + 1 == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            size++;
+            offsets[size] = written;
+        } else if ("t".equals(name)) {
+            tIsOpen = false;
+        }
+    }
+
+    /**
+     * Captures characters only if a t(ext) element is open.
+     */
+    public void characters(char[] ch, int start, int length)
+            throws SAXException {
+        if (tIsOpen)
+            characters.append(ch, start, length);
+    }
+}
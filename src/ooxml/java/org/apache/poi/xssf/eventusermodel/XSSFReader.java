@@ -24,6 +24,8 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
 import org.apache.poi.POIXMLException;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
@@ -35,6 +37,7 @@ import org.apache.poi.openxml4j.opc.PackageRelationship;
 import org.apache.poi.openxml4j.opc.PackageRelationshipCollection;
 import org.apache.poi.openxml4j.opc.PackageRelationshipTypes;
 import org.apache.poi.openxml4j.opc.PackagingURIHelper;
+import org.apache.poi.util.ConcurrentTasks;
 import org.apache.poi.xssf.model.CommentsTable;
 import org.apache.poi.xssf.model.SharedStringsTable;
 import org.apache.poi.xssf.model.StylesTable;
@@ -164,6 +167,68 @@ public class XSSFReader {
         return new SheetIterator(workbookPart);
     }
 
+    /**
+     * Processes the sheets concurrently, each by a task of the executor,
+     *  which passes the data of the sheet to the processor. As each sheet
+     *  is a zip entry of its own, the sheets are also decompressed in parallel.
+     * The processor is thus called concurrently for different sheets. It can
+     *  share the {@link ReadOnlySharedStringsTable} and {@link StylesTable}
+     *  between them, since they are only read.
+     * This method returns when all sheets were processed, and throws the first
+     *  failure of the tasks, if any.
+     *
+     * @param executor runs the tasks which process the sheets. It is not shut down.
+     * @param processor reads the data of each sheet, for example with a
+     *  {@link XSSFSheetRowReader} or a {@link XSSFSheetXMLHandler}
+     */
+    public void processSheets(Executor executor, final SheetProcessor processor)
+            throws IOException, InvalidFormatException {
+        SheetIterator sheets = new SheetIterator(workbookPart);
+        ConcurrentTasks tasks = new ConcurrentTasks(executor);
+        try {
+            for (int i = 0; sheets.hasNext(); i++) {
+                final int sheetIndex = i;
+                final InputStream sheetData = sheets.next();
+                final String sheetName = sheets.getSheetName();
+                tasks.execute(new Callable<Void>() {
+                    public Void call() throws IOException {
+                        try {
+                            processor.processSheet(sheetIndex, sheetName, sheetData);
+                        } catch (IOException e) {
+                            throw e;
+                        } catch (RuntimeException e) {
+                            throw e;
+                        } catch (Exception e) {
+                            throw new POIXMLException(e);
+                        } finally {
+                            sheetData.close();
+                        }
+                        return null;
+                    }
+                });
+            }
+        } finally {
+            // also when a sheet failed to be opened, do not leave tasks running
+            tasks.awaitAll();
+        }
+        tasks.throwFailure(IOException.class);
+    }
+
+    /**
+     * Reads the data of the sheets processed by
+     *  {@link XSSFReader#processSheets(Executor, SheetProcessor)}
+     */
+    public interface SheetProcessor {
+        /**
+         * Called concurrently for different sheets
+         *
+         * @param sheetIndex the (zero based) index of the sheet
+         * @param sheetName the name of the sheet
+         * @param sheetData the sheet part, which is closed afterwards
+         */
+        void processSheet(int sheetIndex, String sheetName, InputStream sheetData) throws Exception;
+    }
+
     /**
      * Iterator over sheet data.
      */
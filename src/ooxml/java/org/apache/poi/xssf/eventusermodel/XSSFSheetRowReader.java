@@ -0,0 +1,578 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+package org.apache.poi.xssf.eventusermodel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.poi.POIXMLException;
+import org.apache.poi.ss.util.CellReference;
+
+/**
+ * Reads the rows of a sheet#.xml sheet part of a XSSF .xlsx file one at a time, with a StAX
+ *  pull parser, as an alternative to a SAX parser with a {@link XSSFSheetXMLHandler}. The cells
+ *  give their values as stored, typed but not formatted, so that only the values which are used
+ *  are converted, and only the current row is held in memory.
+ * <p>
+ * For example, to read all sheets of a workbook:
+ * <pre>
+ * XSSFReader reader = new XSSFReader(pkg);
+ * ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+ * Iterator&lt;InputStream&gt; sheets = reader.getSheetsData();
+ * while (sheets.hasNext()) {
+ *     XSSFSheetRowReader rows = new XSSFSheetRowReader(sheets.next(), strings);
+ *     try {
+ *         while (rows.hasNext()) {
+ *             for (SheetCell cell : rows.next().getCells()) {
+ *                 ...
+ *             }
+ *         }
+ *     } finally {
+ *         rows.close();
+ *     }
+ * }
+ * </pre>
+ * Errors of the XML are thrown as {@link POIXMLException}s by {@link #hasNext()} and
+ *  {@link #next()}.
+ */
+public class XSSFSheetRowReader implements Iterator<XSSFSheetRowReader.SheetRow>, Closeable {
+
+    /**
+     * The types of the values of the cells, by the <tt>t</tt> attribute of the <tt>c</tt> element
+     */
+    public enum CellValueType {
+        /** a number, also of dates, the default */
+        NUMBER,
+        /** <tt>t="b"</tt>, 0 or 1 */
+        BOOLEAN,
+        /** <tt>t="e"</tt>, like #DIV/0! */
+        ERROR,
+        /** <tt>t="s"</tt>, an index of the shared strings table */
+        SHARED_STRING,
+        /** <tt>t="inlineStr"</tt>, a string in the cell */
+        INLINE_STRING,
+        /** <tt>t="str"</tt>, the string result of a formula */
+        FORMULA_STRING,
+        /** <tt>t="d"</tt>, a date as ISO 8601 text, like "2014-03-01T12:00:00" */
+        DATE,
+        /** a <tt>t</tt> value of another kind, whose value is only given as stored */
+        UNKNOWN,
+        /** no value, like a cell which only has a style */
+        BLANK
+    }
+
+    /**
+     * The types of the formulas of the cells, by the <tt>t</tt> attribute of the <tt>f</tt> element
+     */
+    public enum CellFormulaType {
+        /** a formula of the cell only, the default */
+        NORMAL,
+        /** <tt>t="shared"</tt>, a formula shared by the cells of a range, given by its first cell */
+        SHARED,
+        /** <tt>t="array"</tt>, an array formula of a range, given by its first cell */
+        ARRAY,
+        /** <tt>t="dataTable"</tt>, a data table of a range */
+        DATA_TABLE
+    }
+
+    /**
+     * A row of a sheet, with its cells
+     */
+    public static final class SheetRow {
+        private final int rowNum;
+        private final List<SheetCell> cells;
+
+        SheetRow(int rowNum, List<SheetCell> cells) {
+            this.rowNum = rowNum;
+            this.cells = Collections.unmodifiableList(cells);
+        }
+
+        /**
+         * @return the (zero based) row number
+         */
+        public int getRowNum() {
+            return rowNum;
+        }
+
+        /**
+         * @return the cells stored in the row, in the order of the sheet part, which is the order
+         *  of their columns
+         */
+        public List<SheetCell> getCells() {
+            return cells;
+        }
+    }
+
+    /**
+     * A cell of a sheet, with its value as stored
+     */
+    public static final class SheetCell {
+        private final int rowIndex;
+        private final int columnIndex;
+        private final int styleIndex;
+        private final CellValueType type;
+        private final String value;
+        private final String formula;
+        private final CellFormulaType formulaType;
+        private final int sharedFormulaIndex;
+        private final String formulaRef;
+        private SheetCell sharedFormulaMaster;
+        private final ReadOnlySharedStringsTable strings;
+
+        SheetCell(int rowIndex, int columnIndex, int styleIndex, CellValueType type, String value,
+                String formula, CellFormulaType formulaType, int sharedFormulaIndex, String formulaRef,
+                ReadOnlySharedStringsTable strings) {
+            this.rowIndex = rowIndex;
+            this.columnIndex = columnIndex;
+            this.styleIndex = styleIndex;
+            this.type = type;
+            this.value = value;
+            this.formula = formula;
+            this.formulaType = formulaType;
+            this.sharedFormulaIndex = sharedFormulaIndex;
+            this.formulaRef = formulaRef;
+            this.strings = strings;
+        }
+
+        /**
+         * @return the (zero based) row index
+         */
+        public int getRowIndex() {
+            return rowIndex;
+        }
+
+        /**
+         * @return the (zero based) column index
+         */
+        public int getColumnIndex() {
+            return columnIndex;
+        }
+
+        /**
+         * @return the reference of the cell, like "B3"
+         */
+        public String getReference() {
+            return new CellReference(rowIndex, columnIndex).formatAsString();
+        }
+
+        /**
+         * @return the index of the style of the cell in the {@link org.apache.poi.xssf.model.StylesTable}
+         */
+        public int getStyleIndex() {
+            return styleIndex;
+        }
+
+        public CellValueType getType() {
+            return type;
+        }
+
+        /**
+         * @return the text of the value as stored, like "1.5", "1", "#N/A", "2014-03-01" or the index
+         *  of a shared string, <code>null</code> for {@link CellValueType#BLANK}
+         */
+        public String getRawValue() {
+            return value;
+        }
+
+        /**
+         * @return the number of a {@link CellValueType#NUMBER} cell, which is the serial number
+         *  for dates
+         */
+        public double getNumericValue() {
+            checkType(CellValueType.NUMBER);
+            return Double.parseDouble(value);
+        }
+
+        public boolean getBooleanValue() {
+            checkType(CellValueType.BOOLEAN);
+            return !"0".equals(value);
+        }
+
+        /**
+         * @return the index in the shared strings table of a {@link CellValueType#SHARED_STRING} cell
+         */
+        public int getSharedStringIndex() {
+            checkType(CellValueType.SHARED_STRING);
+            return Integer.parseInt(value);
+        }
+
+        /**
+         * @return the string of a {@link CellValueType#SHARED_STRING}, {@link CellValueType#INLINE_STRING}
+         *  or {@link CellValueType#FORMULA_STRING} cell, without formatting
+         */
+        public String getStringValue() {
+            switch (type) {
+                case SHARED_STRING:
+                    if (strings == null) {
+                        throw new IllegalStateException("No shared strings table given to look up cell " + getReference());
+                    }
+                    return strings.getEntryAt(getSharedStringIndex());
+                case INLINE_STRING:
+                case FORMULA_STRING:
+                    return value;
+                default:
+                    throw typeMismatch("string");
+            }
+        }
+
+        /**
+         * @return the error of a {@link CellValueType#ERROR} cell, like "#DIV/0!"
+         */
+        public String getErrorValue() {
+            checkType(CellValueType.ERROR);
+            return value;
+        }
+
+        /**
+         * @return the formula of the cell without the leading '=', <code>null</code> if it has none.
+         *  It is empty for the cells which use a shared formula of another cell, see
+         *  {@link #getSharedFormulaMaster()}.
+         */
+        public String getFormula() {
+            return formula;
+        }
+
+        /**
+         * @return the type of the formula of the cell, <code>null</code> if it has none
+         */
+        public CellFormulaType getFormulaType() {
+            return formulaType;
+        }
+
+        /**
+         * @return the <tt>si</tt> index of the shared formula of a {@link CellFormulaType#SHARED}
+         *  cell, which is unique in the sheet, -1 for the other cells
+         */
+        public int getSharedFormulaIndex() {
+            return sharedFormulaIndex;
+        }
+
+        /**
+         * @return the range of the cells using the formula, like "A1:A10", for the first cell of a
+         *  shared formula or an array formula, <code>null</code> for the other cells
+         */
+        public String getFormulaRef() {
+            return formulaRef;
+        }
+
+        /**
+         * Gives the cell which stores the text of the shared formula of this cell. Its references
+         *  are relative to that cell, so that the formula of this cell is the formula of the master
+         *  cell with the relative references moved by the rows and columns between the two cells.
+         *
+         * @return the first cell of the range of the shared formula, which is this cell for that
+         *  cell, <code>null</code> if the cell does not use a shared formula, or if the first
+         *  cell of the range was not read before
+         */
+        public SheetCell getSharedFormulaMaster() {
+            return sharedFormulaMaster;
+        }
+
+        private void checkType(CellValueType expected) {
+            if (type != expected) {
+                throw typeMismatch(expected.name().toLowerCase());
+            }
+        }
+
+        private IllegalStateException typeMismatch(String expected) {
+            return new IllegalStateException("Cannot get a " + expected + " value from a "
+                    + type.name().toLowerCase() + " cell " + getReference());
+        }
+
+        public String toString() {
+            return getReference() + "=" + (type == CellValueType.BLANK ? "" : value);
+        }
+    }
+
+    private final InputStream sheetData;
+    private final XMLStreamReader reader;
+    private final ReadOnlySharedStringsTable strings;
+
+    /** the row returned by the next call of {@link #next()}, <code>null</code> if not read yet */
+    private SheetRow nextRow;
+    private boolean finished;
+    private int lastRowNum = -1;
+
+    private final StringBuilder text = new StringBuilder();
+
+    /** the cells which store the text of the shared formulas read so far, by their index */
+    private final Map<Integer, SheetCell> sharedFormulaMasters = new HashMap<Integer, SheetCell>();
+
+    /**
+     * @param sheetData the sheet part, like one of {@link XSSFReader#getSheetsData()}. It is
+     *  closed by {@link #close()}.
+     * @param strings the shared strings, to look up the strings of {@link CellValueType#SHARED_STRING}
+     *  cells, or <code>null</code> if only their indexes are wanted
+     */
+    public XSSFSheetRowReader(InputStream sheetData, ReadOnlySharedStringsTable strings) throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        this.reader = factory.createXMLStreamReader(sheetData);
+        this.strings = strings;
+        this.sheetData = sheetData;
+    }
+
+    public boolean hasNext() {
+        if (nextRow == null && !finished) {
+            try {
+                nextRow = readRow();
+            } catch (XMLStreamException e) {
+                throw new POIXMLException(e);
+            }
+            finished = nextRow == null;
+        }
+        return nextRow != null;
+    }
+
+    public SheetRow next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        SheetRow result = nextRow;
+        nextRow = null;
+        return result;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Closes the parser and the sheet part
+     */
+    public void close() throws IOException {
+        finished = true;
+        nextRow = null;
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e.getMessage());
+        } finally {
+            sheetData.close();
+        }
+    }
+
+    /**
+     * @return <code>null</code> at the end of the sheet data
+     */
+    private SheetRow readRow() throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if ("row".equals(reader.getLocalName())) {
+                    return readRowContents();
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if ("sheetData".equals(reader.getLocalName())) {
+                    // the rest of the sheet part has no cells
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads from the start of a <tt>row</tt> element to its end
+     */
+    private SheetRow readRowContents() throws XMLStreamException {
+        String r = reader.getAttributeValue(null, "r");
+        int rowNum = r == null ? lastRowNum + 1 : Integer.parseInt(r) - 1;
+        lastRowNum = rowNum;
+
+        List<SheetCell> cells = new ArrayList<SheetCell>();
+        int lastColumn = -1;
+        while (true) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if ("c".equals(reader.getLocalName())) {
+                    SheetCell cell = readCell(rowNum, lastColumn);
+                    lastColumn = cell.getColumnIndex();
+                    cells.add(cell);
+                } else {
+                    skipElement();
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                return new SheetRow(rowNum, cells);
+            }
+        }
+    }
+
+    /**
+     * Reads from the start of a <tt>c</tt> element to its end
+     */
+    private SheetCell readCell(int rowNum, int lastColumn) throws XMLStreamException {
+        String ref = reader.getAttributeValue(null, "r");
+        int column = ref == null ? lastColumn + 1 : getColumnIndex(ref);
+        String s = reader.getAttributeValue(null, "s");
+        int styleIndex = s == null ? 0 : Integer.parseInt(s);
+        CellValueType type = getType(reader.getAttributeValue(null, "t"));
+
+        String value = null;
+        String formula = null;
+        CellFormulaType formulaType = null;
+        int sharedFormulaIndex = -1;
+        String formulaRef = null;
+        while (true) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if ("v".equals(name)) {
+                    value = reader.getElementText();
+                } else if ("f".equals(name)) {
+                    formulaType = getFormulaType(reader.getAttributeValue(null, "t"));
+                    if (formulaType == CellFormulaType.SHARED) {
+                        sharedFormulaIndex = Integer.parseInt(reader.getAttributeValue(null, "si"));
+                    }
+                    formulaRef = reader.getAttributeValue(null, "ref");
+                    formula = reader.getElementText();
+                } else if ("is".equals(name)) {
+                    value = readInlineString();
+                } else {
+                    skipElement();
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+        }
+        if (value == null) {
+            type = CellValueType.BLANK;
+        }
+        SheetCell cell = new SheetCell(rowNum, column, styleIndex, type, value, formula,
+                formulaType, sharedFormulaIndex, formulaRef, strings);
+        if (formulaType == CellFormulaType.SHARED) {
+            Integer si = Integer.valueOf(sharedFormulaIndex);
+            if (formulaRef != null) {
+                sharedFormulaMasters.put(si, cell);
+            }
+            cell.sharedFormulaMaster = sharedFormulaMasters.get(si);
+        }
+        return cell;
+    }
+
+    /**
+     * Reads the text of the <tt>t</tt> elements of an <tt>is</tt> element, directly or in rich
+     *  text runs, without the phonetic runs
+     */
+    private String readInlineString() throws XMLStreamException {
+        text.setLength(0);
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if ("t".equals(name)) {
+                    text.append(reader.getElementText());
+                } else if ("rPh".equals(name)) {
+                    skipElement();
+                } else {
+                    depth++;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Skips from the start of an element to its end
+     */
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static CellValueType getType(String t) {
+        if (t == null || "n".equals(t)) {
+            return CellValueType.NUMBER;
+        }
+        if ("s".equals(t)) {
+            return CellValueType.SHARED_STRING;
+        }
+        if ("str".equals(t)) {
+            return CellValueType.FORMULA_STRING;
+        }
+        if ("inlineStr".equals(t)) {
+            return CellValueType.INLINE_STRING;
+        }
+        if ("b".equals(t)) {
+            return CellValueType.BOOLEAN;
+        }
+        if ("e".equals(t)) {
+            return CellValueType.ERROR;
+        }
+        if ("d".equals(t)) {
+            return CellValueType.DATE;
+        }
+        // kept as stored, rather than failing in the middle of a sheet
+        return CellValueType.UNKNOWN;
+    }
+
+    private static CellFormulaType getFormulaType(String t) {
+        if (t == null || "normal".equals(t)) {
+            return CellFormulaType.NORMAL;
+        }
+        if ("shared".equals(t)) {
+            return CellFormulaType.SHARED;
+        }
+        if ("array".equals(t)) {
+            return CellFormulaType.ARRAY;
+        }
+        if ("dataTable".equals(t)) {
+            return CellFormulaType.DATA_TABLE;
+        }
+        // the formula text is still given
+        return CellFormulaType.NORMAL;
+    }
+
+    /**
+     * @return the (zero based) column index of a cell reference like "AB12", without parsing the row
+     */
+    private static int getColumnIndex(String ref) {
+        int result = 0;
+        for (int i = 0; i < ref.length(); i++) {
+            char ch = ref.charAt(i);
+            if (ch < 'A' || ch > 'Z') {
+                break;
+            }
+            result = result * 26 + (ch - 'A' + 1);
+        }
+        return result - 1;
+    }
+}
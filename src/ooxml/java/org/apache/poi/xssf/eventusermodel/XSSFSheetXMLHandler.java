@@ -21,7 +21,6 @@ import org.apache.poi.ss.usermodel.DataFormatter;
 import org.apache.poi.util.POILogFactory;
 import org.apache.poi.util.POILogger;
 import org.apache.poi.xssf.model.StylesTable;
-import org.apache.poi.xssf.usermodel.XSSFCellStyle;
 import org.apache.poi.xssf.usermodel.XSSFRichTextString;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
@@ -54,6 +53,12 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
     */
    private StylesTable stylesTable;
 
+   /**
+    * The number formats of the styles by style index, looked up
+    *  from the styles table when first used
+    */
+   private StyleFormat[] styleFormats = new StyleFormat[0];
+
    private ReadOnlySharedStringsTable sharedStringsTable;
 
    /**
@@ -201,36 +206,87 @@ public class XSSFSheetXMLHandler extends DefaultHandler {
            this.formatString = null;
            cellRef = attributes.getValue("r");
            String cellType = attributes.getValue("t");
-           String cellStyleStr = attributes.getValue("s");
-           if ("b".equals(cellType))
-               nextDataType = xssfDataType.BOOLEAN;
-           else if ("e".equals(cellType))
-               nextDataType = xssfDataType.ERROR;
-           else if ("inlineStr".equals(cellType))
-               nextDataType = xssfDataType.INLINE_STRING;
-           else if ("s".equals(cellType))
-               nextDataType = xssfDataType.SST_STRING;
-           else if ("str".equals(cellType))
-               nextDataType = xssfDataType.FORMULA;
-           else {
+           if (cellType != null)
+               nextDataType = getDataType(cellType);
+           if (nextDataType == xssfDataType.NUMBER) {
                // Number, but almost certainly with a special style or format
-               XSSFCellStyle style = null;
+               StyleFormat format = null;
+               String cellStyleStr = attributes.getValue("s");
                if (cellStyleStr != null) {
-                   int styleIndex = Integer.parseInt(cellStyleStr);
-                   style = stylesTable.getStyleAt(styleIndex);
+                   format = getStyleFormat(Integer.parseInt(cellStyleStr));
                } else if (stylesTable.getNumCellStyles() > 0) {
-                   style = stylesTable.getStyleAt(0);
+                   format = getStyleFormat(0);
                }
-               if (style != null) {
-                   this.formatIndex = style.getDataFormat();
-                   this.formatString = style.getDataFormatString();
-                   if (this.formatString == null)
-                       this.formatString = BuiltinFormats.getBuiltinFormat(this.formatIndex);
+               if (format != null) {
+                   this.formatIndex = format.formatIndex;
+                   this.formatString = format.formatString;
                }
            }
        }
    }
 
+   /**
+    * @return the type of the <tt>t</tt> attribute of a cell,
+    *  {@link xssfDataType#NUMBER} for "n" and unknown types
+    */
+   private static xssfDataType getDataType(String cellType) {
+       switch (cellType.length()) {
+           case 1:
+               switch (cellType.charAt(0)) {
+                   case 'b': return xssfDataType.BOOLEAN;
+                   case 'e': return xssfDataType.ERROR;
+                   case 's': return xssfDataType.SST_STRING;
+               }
+               break;
+           case 3:
+               if ("str".equals(cellType))
+                   return xssfDataType.FORMULA;
+               break;
+           case 9:
+               if ("inlineStr".equals(cellType))
+                   return xssfDataType.INLINE_STRING;
+               break;
+       }
+       return xssfDataType.NUMBER;
+   }
+
+   /**
+    * Looks up the number format of the style once, instead of
+    *  creating a {@link org.apache.poi.xssf.usermodel.XSSFCellStyle}
+    *  for each cell
+    */
+   private StyleFormat getStyleFormat(int styleIndex) {
+       if (styleIndex >= styleFormats.length) {
+           // the styles table may have grown since
+           StyleFormat[] formats = new StyleFormat[stylesTable.getNumCellStyles()];
+           System.arraycopy(styleFormats, 0, formats, 0, styleFormats.length);
+           styleFormats = formats;
+       }
+       StyleFormat result = styleFormats[styleIndex];
+       if (result == null) {
+           short index = (short) stylesTable.getCellXfAt(styleIndex).getNumFmtId();
+           String string = stylesTable.getNumberFormatAt(index);
+           if (string == null)
+               string = BuiltinFormats.getBuiltinFormat(index);
+           result = new StyleFormat(index, string);
+           styleFormats[styleIndex] = result;
+       }
+       return result;
+   }
+
+   /**
+    * The number format of a cell style
+    */
+   private static final class StyleFormat {
+       final short formatIndex;
+       final String formatString;
+
+       StyleFormat(short formatIndex, String formatString) {
+           this.formatIndex = formatIndex;
+           this.formatString = formatString;
+       }
+   }
+
    @Override
    public void endElement(String uri, String localName, String name)
            throws SAXException {
@@ -22,6 +22,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -57,6 +59,18 @@ public class StylesTable extends POIXMLDocumentPart {
 
 	private final List<CTDxf> dxfs = new ArrayList<CTDxf>();
 
+	/**
+	 * Hash indexes of the lists above, so that registering a font, fill, border or cell style
+	 * doesn't need a linear search. Fonts, fills and borders are keyed by their content,
+	 * cell xfs by identity. Each index maps to the first position of the key in its list.
+	 * Fonts are changed in place after they were registered, which leaves them under their
+	 * old hash, so a font which is not found is still searched in the list.
+	 */
+	private final Map<XSSFFont, Integer> fontIndexes = new HashMap<XSSFFont, Integer>();
+	private final Map<XSSFCellFill, Integer> fillIndexes = new HashMap<XSSFCellFill, Integer>();
+	private final Map<XSSFCellBorder, Integer> borderIndexes = new HashMap<XSSFCellBorder, Integer>();
+	private final Map<CTXf, Integer> xfIndexes = new IdentityHashMap<CTXf, Integer>();
+
 	/**
 	 * The first style id available for use as a custom style
 	 */
@@ -125,26 +139,30 @@ public class StylesTable extends POIXMLDocumentPart {
 				for (CTFont font : ctfonts.getFontArray()) {
 				   // Create the font and save it. Themes Table supplied later
 					XSSFFont f = new XSSFFont(font, idx);
-					fonts.add(f);
+					addIndexed(fonts, fontIndexes, f);
 					idx++;
 				}
 			}
             CTFills ctfills = styleSheet.getFills();
             if(ctfills != null){
                 for (CTFill fill : ctfills.getFillArray()) {
-                    fills.add(new XSSFCellFill(fill));
+                    addIndexed(fills, fillIndexes, new XSSFCellFill(fill));
                 }
             }
 
             CTBorders ctborders = styleSheet.getBorders();
             if(ctborders != null) {
                 for (CTBorder border : ctborders.getBorderArray()) {
-                    borders.add(new XSSFCellBorder(border));
+                    addIndexed(borders, borderIndexes, new XSSFCellBorder(border));
                 }
             }
 
             CTCellXfs cellXfs = styleSheet.getCellXfs();
-            if(cellXfs != null) xfs.addAll(Arrays.asList(cellXfs.getXfArray()));
+            if(cellXfs != null) {
+                for (CTXf xf : cellXfs.getXfArray()) {
+                    addIndexed(xfs, xfIndexes, xf);
+                }
+            }
 
             CTCellStyleXfs cellStyleXfs = styleSheet.getCellStyleXfs();
             if(cellStyleXfs != null) styleXfs.addAll(Arrays.asList(cellStyleXfs.getXfArray()));
@@ -200,18 +218,20 @@ public class StylesTable extends POIXMLDocumentPart {
 	 *  {@link XSSFFont#registerTo(StylesTable)}
 	 */
 	public int putFont(XSSFFont font, boolean forceRegistration) {
-		int idx = -1;
 		if(!forceRegistration) {
-			idx = fonts.indexOf(font);
+			Integer idx = fontIndexes.get(font);
+			if (idx != null) {
+				return idx;
+			}
+			int i = fonts.indexOf(font);
+			if (i >= 0) {
+				// changed since it was indexed
+				fontIndexes.put(font, i);
+				return i;
+			}
 		}
 
-		if (idx != -1) {
-			return idx;
-		}
-		
-		idx = fonts.size();
-		fonts.add(font);
-		return idx;
+		return addIndexed(fonts, fontIndexes, font);
 	}
 	public int putFont(XSSFFont font) {
 		return putFont(font, false);
@@ -230,10 +250,11 @@ public class StylesTable extends POIXMLDocumentPart {
 	public int putStyle(XSSFCellStyle style) {
 		CTXf mainXF = style.getCoreXf();
 
-		if(! xfs.contains(mainXF)) {
-			xfs.add(mainXF);
+		Integer idx = xfIndexes.get(mainXF);
+		if (idx != null) {
+			return idx;
 		}
-		return xfs.indexOf(mainXF);
+		return addIndexed(xfs, xfIndexes, mainXF);
 	}
 
 	public XSSFCellBorder getBorderAt(int idx) {
@@ -241,13 +262,12 @@ public class StylesTable extends POIXMLDocumentPart {
 	}
 
 	public int putBorder(XSSFCellBorder border) {
-		int idx = borders.indexOf(border);
-		if (idx != -1) {
+		Integer idx = borderIndexes.get(border);
+		if (idx != null) {
 			return idx;
 		}
-		borders.add(border);
 		border.setThemesTable(theme);
-		return borders.size() - 1;
+		return addIndexed(borders, borderIndexes, border);
 	}
 
 	public XSSFCellFill getFillAt(int idx) {
@@ -271,23 +291,28 @@ public class StylesTable extends POIXMLDocumentPart {
 	}
 
 	public int putFill(XSSFCellFill fill) {
-		int idx = fills.indexOf(fill);
-		if (idx != -1) {
+		Integer idx = fillIndexes.get(fill);
+		if (idx != null) {
 			return idx;
 		}
-		fills.add(fill);
-		return fills.size() - 1;
+		return addIndexed(fills, fillIndexes, fill);
 	}
 
 	public CTXf getCellXfAt(int idx) {
 		return xfs.get(idx);
 	}
 	public int putCellXf(CTXf cellXf) {
-		xfs.add(cellXf);
-		return xfs.size();
+		return addIndexed(xfs, xfIndexes, cellXf) + 1;
 	}
    public void replaceCellXfAt(int idx, CTXf cellXf) {
-      xfs.set(idx, cellXf);
+      CTXf oldXf = xfs.set(idx, cellXf);
+      // rarely used, simply re-index both xfs
+      xfIndexes.remove(oldXf);
+      int oldIdx = xfs.indexOf(oldXf);
+      if (oldIdx != -1) {
+         xfIndexes.put(oldXf, oldIdx);
+      }
+      xfIndexes.put(cellXf, xfs.indexOf(cellXf));
    }
 
 	public CTXf getCellStyleXfAt(int idx) {
@@ -454,20 +479,35 @@ public class StylesTable extends POIXMLDocumentPart {
 	private void initialize() {
 		//CTFont ctFont = createDefaultFont();
 		XSSFFont xssfFont = createDefaultFont();
-		fonts.add(xssfFont);
+		addIndexed(fonts, fontIndexes, xssfFont);
 
 		CTFill[] ctFill = createDefaultFills();
-		fills.add(new XSSFCellFill(ctFill[0]));
-		fills.add(new XSSFCellFill(ctFill[1]));
+		addIndexed(fills, fillIndexes, new XSSFCellFill(ctFill[0]));
+		addIndexed(fills, fillIndexes, new XSSFCellFill(ctFill[1]));
 
 		CTBorder ctBorder = createDefaultBorder();
-		borders.add(new XSSFCellBorder(ctBorder));
+		addIndexed(borders, borderIndexes, new XSSFCellBorder(ctBorder));
 
 		CTXf styleXf = createDefaultXf();
 		styleXfs.add(styleXf);
 		CTXf xf = createDefaultXf();
 		xf.setXfId(0);
-		xfs.add(xf);
+		addIndexed(xfs, xfIndexes, xf);
+	}
+
+	/**
+	 * Appends an element to one of the style lists and records its position in the hash index
+	 * of that list, unless an equal element is already indexed at a lower position.
+	 *
+	 * @return the position of the appended element
+	 */
+	private static <T> int addIndexed(List<T> list, Map<T, Integer> indexes, T element) {
+		int idx = list.size();
+		list.add(element);
+		if (!indexes.containsKey(element)) {
+			indexes.put(element, idx);
+		}
+		return idx;
 	}
 
 	private static CTXf createDefaultXf() {
@@ -0,0 +1,417 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.streaming;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a zip file from entries which were deflated beforehand, possibly in parallel.
+ * <p>
+ * {@link java.util.zip.ZipOutputStream} can only compress entries itself, one after the other.
+ * Here each {@link Entry} is an output stream which deflates its content into memory or into
+ * a temp file, and {@link #putEntry(Entry)} copies the compressed data to the zip file as is.
+ * Zip64 extensions are written for entries and archives exceeding the limits of the zip format.
+ * </p>
+ */
+final class DeflatedZipWriter
+{
+    private static final long LIMIT_32 = 0xFFFFFFFFL;
+    private static final int LIMIT_16 = 0xFFFF;
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIR = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIR = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int ZIP64_EXTRA = 0x0001;
+
+    private static final int VERSION = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int METHOD_DEFLATED = 8;
+
+    /**
+     * An entry which deflates the data written to it.
+     * The entry is ready to be put into the zip file once it has been closed.
+     */
+    static final class Entry extends OutputStream
+    {
+        private final String _name;
+        private final File _file;
+        private final Deflater _deflater;
+        private final CountingOutputStream _compressed;
+        private final DeflaterOutputStream _out;
+        private final CRC32 _crc = new CRC32();
+        private long _size;
+        private boolean _closed;
+
+        /**
+         * @param name the entry name
+         * @param file the temp file to keep the compressed data in,
+         *  or <code>null</code> to keep it in memory
+         */
+        Entry(String name, File file) throws IOException
+        {
+            _name = name;
+            _file = file;
+            OutputStream os = file == null ? new ByteArrayOutputStream() :
+                new BufferedOutputStream(new FileOutputStream(file));
+            _compressed = new CountingOutputStream(os);
+            _deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            _out = new DeflaterOutputStream(_compressed, _deflater, 8192);
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            _crc.update(b);
+            _size++;
+            _out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            _crc.update(b, off, len);
+            _size += len;
+            _out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (_closed) return;
+            _closed = true;
+            try
+            {
+                _out.close();
+            }
+            finally
+            {
+                _deflater.end();
+            }
+        }
+
+        String getName()
+        {
+            return _name;
+        }
+
+        long getSize()
+        {
+            return _size;
+        }
+
+        long getCompressedSize()
+        {
+            return _compressed._count;
+        }
+
+        long getCrc()
+        {
+            return _crc.getValue();
+        }
+
+        void writeCompressedTo(OutputStream out) throws IOException
+        {
+            if (_file == null)
+            {
+                ((ByteArrayOutputStream)_compressed._out).writeTo(out);
+                return;
+            }
+            InputStream is = new FileInputStream(_file);
+            try
+            {
+                byte[] chunk = new byte[65536];
+                int count;
+                while ((count = is.read(chunk)) >= 0)
+                {
+                    out.write(chunk, 0, count);
+                }
+            }
+            finally
+            {
+                is.close();
+            }
+        }
+
+        /**
+         * Releases the compressed data
+         */
+        void dispose()
+        {
+            try
+            {
+                close();
+            }
+            catch (IOException e)
+            {
+                // the data is discarded anyway
+            }
+            if (_file != null)
+            {
+                _file.delete();
+            }
+        }
+    }
+
+    private static final class CountingOutputStream extends OutputStream
+    {
+        final OutputStream _out;
+        long _count;
+
+        CountingOutputStream(OutputStream out)
+        {
+            _out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            _out.write(b);
+            _count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            _out.write(b, off, len);
+            _count += len;
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            _out.flush();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            _out.close();
+        }
+    }
+
+    private static final class CentralEntry
+    {
+        final byte[] name;
+        final long crc;
+        final long size;
+        final long compressedSize;
+        final long offset;
+
+        CentralEntry(byte[] name, long crc, long size, long compressedSize, long offset)
+        {
+            this.name = name;
+            this.crc = crc;
+            this.size = size;
+            this.compressedSize = compressedSize;
+            this.offset = offset;
+        }
+    }
+
+    private final CountingOutputStream _out;
+    private final List<CentralEntry> _entries = new ArrayList<CentralEntry>();
+    private final int _dosTime = toDosTime(System.currentTimeMillis());
+    private final byte[] _header = new byte[64];
+
+    DeflatedZipWriter(OutputStream out)
+    {
+        _out = new CountingOutputStream(out);
+    }
+
+    /**
+     * Write an entry to the zip file. The entry must have been closed.
+     */
+    void putEntry(Entry entry) throws IOException
+    {
+        if (!entry._closed)
+        {
+            throw new IllegalStateException("Entry " + entry.getName() + " has not been closed");
+        }
+        byte[] name = entry.getName().getBytes("UTF-8");
+        long offset = _out._count;
+        long size = entry.getSize();
+        long compressedSize = entry.getCompressedSize();
+        boolean zip64 = size >= LIMIT_32 || compressedSize >= LIMIT_32;
+
+        int pos = 0;
+        pos = putInt(pos, LOCAL_HEADER);
+        pos = putShort(pos, zip64 ? VERSION_ZIP64 : VERSION);
+        pos = putShort(pos, FLAG_UTF8);
+        pos = putShort(pos, METHOD_DEFLATED);
+        pos = putInt(pos, _dosTime);
+        pos = putInt(pos, (int)entry.getCrc());
+        pos = putInt(pos, (int)(zip64 ? LIMIT_32 : compressedSize));
+        pos = putInt(pos, (int)(zip64 ? LIMIT_32 : size));
+        pos = putShort(pos, name.length);
+        pos = putShort(pos, zip64 ? 20 : 0);
+        _out.write(_header, 0, pos);
+        _out.write(name);
+        if (zip64)
+        {
+            pos = 0;
+            pos = putShort(pos, ZIP64_EXTRA);
+            pos = putShort(pos, 16);
+            pos = putLong(pos, size);
+            pos = putLong(pos, compressedSize);
+            _out.write(_header, 0, pos);
+        }
+        entry.writeCompressedTo(_out);
+
+        _entries.add(new CentralEntry(name, entry.getCrc(), size, compressedSize, offset));
+    }
+
+    /**
+     * Write the central directory. The underlying stream is flushed but not closed.
+     */
+    void finish() throws IOException
+    {
+        long centralOffset = _out._count;
+        for (CentralEntry e : _entries)
+        {
+            boolean zip64Size = e.size >= LIMIT_32 || e.compressedSize >= LIMIT_32;
+            boolean zip64Offset = e.offset >= LIMIT_32;
+            int extraLength = (zip64Size ? 16 : 0) + (zip64Offset ? 8 : 0);
+            int version = extraLength > 0 ? VERSION_ZIP64 : VERSION;
+
+            int pos = 0;
+            pos = putInt(pos, CENTRAL_HEADER);
+            pos = putShort(pos, version);
+            pos = putShort(pos, version);
+            pos = putShort(pos, FLAG_UTF8);
+            pos = putShort(pos, METHOD_DEFLATED);
+            pos = putInt(pos, _dosTime);
+            pos = putInt(pos, (int)e.crc);
+            pos = putInt(pos, (int)(zip64Size ? LIMIT_32 : e.compressedSize));
+            pos = putInt(pos, (int)(zip64Size ? LIMIT_32 : e.size));
+            pos = putShort(pos, e.name.length);
+            pos = putShort(pos, extraLength > 0 ? extraLength + 4 : 0);
+            pos = putShort(pos, 0); // comment length
+            pos = putShort(pos, 0); // disk number
+            pos = putShort(pos, 0); // internal attributes
+            pos = putInt(pos, 0);   // external attributes
+            pos = putInt(pos, (int)(zip64Offset ? LIMIT_32 : e.offset));
+            _out.write(_header, 0, pos);
+            _out.write(e.name);
+            if (extraLength > 0)
+            {
+                pos = 0;
+                pos = putShort(pos, ZIP64_EXTRA);
+                pos = putShort(pos, extraLength);
+                if (zip64Size)
+                {
+                    pos = putLong(pos, e.size);
+                    pos = putLong(pos, e.compressedSize);
+                }
+                if (zip64Offset)
+                {
+                    pos = putLong(pos, e.offset);
+                }
+                _out.write(_header, 0, pos);
+            }
+        }
+        long centralSize = _out._count - centralOffset;
+        int count = _entries.size();
+
+        boolean zip64 = count >= LIMIT_16 || centralOffset >= LIMIT_32 || centralSize >= LIMIT_32;
+        if (zip64)
+        {
+            long zip64Offset = _out._count;
+            int pos = 0;
+            pos = putInt(pos, ZIP64_END_OF_CENTRAL_DIR);
+            pos = putLong(pos, 44); // size of the remaining record
+            pos = putShort(pos, VERSION_ZIP64);
+            pos = putShort(pos, VERSION_ZIP64);
+            pos = putInt(pos, 0);   // disk number
+            pos = putInt(pos, 0);   // disk with the central directory
+            pos = putLong(pos, count);
+            pos = putLong(pos, count);
+            pos = putLong(pos, centralSize);
+            pos = putLong(pos, centralOffset);
+            _out.write(_header, 0, pos);
+
+            pos = 0;
+            pos = putInt(pos, ZIP64_LOCATOR);
+            pos = putInt(pos, 0);   // disk with the zip64 end of central directory
+            pos = putLong(pos, zip64Offset);
+            pos = putInt(pos, 1);   // number of disks
+            _out.write(_header, 0, pos);
+        }
+
+        int pos = 0;
+        pos = putInt(pos, END_OF_CENTRAL_DIR);
+        pos = putShort(pos, 0);     // disk number
+        pos = putShort(pos, 0);     // disk with the central directory
+        pos = putShort(pos, Math.min(count, LIMIT_16));
+        pos = putShort(pos, Math.min(count, LIMIT_16));
+        pos = putInt(pos, (int)Math.min(centralSize, LIMIT_32));
+        pos = putInt(pos, (int)Math.min(centralOffset, LIMIT_32));
+        pos = putShort(pos, 0);     // comment length
+        _out.write(_header, 0, pos);
+        _out.flush();
+    }
+
+    private int putShort(int pos, int value)
+    {
+        _header[pos] = (byte)value;
+        _header[pos + 1] = (byte)(value >>> 8);
+        return pos + 2;
+    }
+
+    private int putInt(int pos, int value)
+    {
+        pos = putShort(pos, value);
+        return putShort(pos, value >>> 16);
+    }
+
+    private int putLong(int pos, long value)
+    {
+        pos = putInt(pos, (int)value);
+        return putInt(pos, (int)(value >>> 32));
+    }
+
+    /**
+     * Convert a java time to the MS-DOS date and time format of zip entries
+     */
+    private static int toDosTime(long time)
+    {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(time);
+        int year = cal.get(Calendar.YEAR);
+        if (year < 1980)
+        {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25 | (cal.get(Calendar.MONTH) + 1) << 21 | cal.get(Calendar.DAY_OF_MONTH) << 16
+            | cal.get(Calendar.HOUR_OF_DAY) << 11 | cal.get(Calendar.MINUTE) << 5 | cal.get(Calendar.SECOND) >> 1;
+    }
+}
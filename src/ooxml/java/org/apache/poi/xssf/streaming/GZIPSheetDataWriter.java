@@ -47,6 +47,13 @@ public class GZIPSheetDataWriter extends SheetDataWriter {
         super(sharedStringsTable);
     }
 
+    /**
+     * @param sharedStringsTable the temp-file backed shared strings table
+     */
+    public GZIPSheetDataWriter(TempFileSharedStringsTable sharedStringsTable) throws IOException {
+        super(sharedStringsTable);
+    }
+
     /**
      * @return temp file to write sheet data
      */
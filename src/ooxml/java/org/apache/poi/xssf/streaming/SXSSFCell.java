@@ -779,7 +779,7 @@ public class SXSSFCell implements Cell
             }
             case CELL_TYPE_BLANK:
             {
-                _value=new BlankValue();
+                _value=BlankValue.INSTANCE;
                 break;
             }
             case CELL_TYPE_BOOLEAN:
@@ -1108,6 +1108,8 @@ public class SXSSFCell implements Cell
     }
     static class BlankValue implements Value
     {
+        // blank values carry no state, so all blank cells share this one
+        static final BlankValue INSTANCE = new BlankValue();
         public int getType()
         {
             return CELL_TYPE_BLANK;
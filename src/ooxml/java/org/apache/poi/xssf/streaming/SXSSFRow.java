@@ -34,6 +34,7 @@ import org.apache.poi.ss.usermodel.Sheet;
 public class SXSSFRow implements Row
 {
     SXSSFSheet _sheet;
+    int _rowNum;   // maintained by SXSSFRowWindow
     SXSSFCell[] _cells;
     int _maxColumn=-1;
     short _style=-1;
@@ -0,0 +1,257 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.streaming;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The rows of a {@link SXSSFSheet} which are not yet flushed, sorted by row number.
+ * <p>
+ * Rows are kept in a ring buffer keyed by primitive row numbers. Appending a row after the
+ * last one and flushing the first one are constant time operations, which covers the usual
+ * case of rows being written in ascending order. Rows created out of order are inserted by
+ * shifting the rows following them.
+ * </p>
+ */
+final class SXSSFRowWindow implements Iterable<SXSSFRow>
+{
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] _rowNums;
+    private SXSSFRow[] _rows;
+    private int _mask;
+    private int _head;
+    private int _size;
+    private int _modCount;
+
+    SXSSFRowWindow()
+    {
+        _rowNums=new int[INITIAL_CAPACITY];
+        _rows=new SXSSFRow[INITIAL_CAPACITY];
+        _mask=INITIAL_CAPACITY-1;
+    }
+
+    int size()
+    {
+        return _size;
+    }
+
+    /**
+     * @return the lowest row number, only valid if the window is not empty
+     */
+    int getFirstRowNum()
+    {
+        return _rowNums[_head];
+    }
+
+    /**
+     * @return the highest row number, only valid if the window is not empty
+     */
+    int getLastRowNum()
+    {
+        return _rowNums[slot(_size-1)];
+    }
+
+    SXSSFRow get(int rownum)
+    {
+        if(_size==0) return null;
+        int first=_rowNums[_head];
+        if(rownum<first||rownum>getLastRowNum()) return null;
+        // rows without gaps are found at their offset from the first row
+        int offset=rownum-first;
+        if(offset<_size&&_rowNums[slot(offset)]==rownum) return _rows[slot(offset)];
+        int index=search(rownum);
+        return index<0?null:_rows[slot(index)];
+    }
+
+    /**
+     * Adds a row, replacing the row with the same number, if any.
+     */
+    void put(int rownum, SXSSFRow row)
+    {
+        row._rowNum=rownum;
+        if(_size==0||rownum>getLastRowNum())
+        {
+            ensureCapacity();
+            int s=slot(_size);
+            _rowNums[s]=rownum;
+            _rows[s]=row;
+            _size++;
+            _modCount++;
+            return;
+        }
+        int index=search(rownum);
+        if(index>=0)
+        {
+            _rows[slot(index)]=row;
+            _modCount++;
+            return;
+        }
+        index=-(index+1);
+        ensureCapacity();
+        for(int i=_size;i>index;i--)
+        {
+            _rowNums[slot(i)]=_rowNums[slot(i-1)];
+            _rows[slot(i)]=_rows[slot(i-1)];
+        }
+        _rowNums[slot(index)]=rownum;
+        _rows[slot(index)]=row;
+        _size++;
+        _modCount++;
+    }
+
+    /**
+     * @return true if the row was contained in this window
+     */
+    boolean remove(SXSSFRow row)
+    {
+        int index=search(row._rowNum);
+        if(index<0||_rows[slot(index)]!=row) return false;
+        removeAt(index);
+        return true;
+    }
+
+    SXSSFRow removeFirst()
+    {
+        if(_size==0) throw new NoSuchElementException();
+        SXSSFRow row=_rows[_head];
+        removeAt(0);
+        return row;
+    }
+
+    /**
+     * @return true if the row is contained in this window
+     */
+    boolean contains(SXSSFRow row)
+    {
+        return get(row._rowNum)==row;
+    }
+
+    public Iterator<SXSSFRow> iterator()
+    {
+        return new RowIterator(0,Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return an iterator over the rows with numbers in the range [fromRow, toRow]
+     */
+    Iterator<SXSSFRow> iterator(int fromRow, int toRow)
+    {
+        int index=search(fromRow);
+        return new RowIterator(index<0?-(index+1):index,toRow);
+    }
+
+    private void removeAt(int index)
+    {
+        if(index==0)
+        {
+            _rows[_head]=null;
+            _head=slot(1);
+        }
+        else
+        {
+            for(int i=index;i<_size-1;i++)
+            {
+                _rowNums[slot(i)]=_rowNums[slot(i+1)];
+                _rows[slot(i)]=_rows[slot(i+1)];
+            }
+            _rows[slot(_size-1)]=null;
+        }
+        _size--;
+        _modCount++;
+    }
+
+    private int slot(int index)
+    {
+        return (_head+index)&_mask;
+    }
+
+    /**
+     * @return the index of the row, or <code>-(insertion point)-1</code> if it is not contained
+     */
+    private int search(int rownum)
+    {
+        int low=0;
+        int high=_size-1;
+        while(low<=high)
+        {
+            int mid=(low+high)>>>1;
+            int midRowNum=_rowNums[slot(mid)];
+            if(midRowNum<rownum) low=mid+1;
+            else if(midRowNum>rownum) high=mid-1;
+            else return mid;
+        }
+        return -(low+1);
+    }
+
+    private void ensureCapacity()
+    {
+        if(_size<_rows.length) return;
+        int capacity=_rows.length*2;
+        int[] rowNums=new int[capacity];
+        SXSSFRow[] rows=new SXSSFRow[capacity];
+        for(int i=0;i<_size;i++)
+        {
+            rowNums[i]=_rowNums[slot(i)];
+            rows[i]=_rows[slot(i)];
+        }
+        _rowNums=rowNums;
+        _rows=rows;
+        _mask=capacity-1;
+        _head=0;
+    }
+
+    private class RowIterator implements Iterator<SXSSFRow>
+    {
+        private int _next;
+        private final int _toRow;
+        private int _last=-1;
+        private int _expectedModCount=_modCount;
+
+        RowIterator(int next, int toRow)
+        {
+            _next=next;
+            _toRow=toRow;
+        }
+
+        public boolean hasNext()
+        {
+            return _next<_size&&_rowNums[slot(_next)]<=_toRow;
+        }
+
+        public SXSSFRow next()
+        {
+            if(_modCount!=_expectedModCount) throw new ConcurrentModificationException();
+            if(!hasNext()) throw new NoSuchElementException();
+            _last=_next++;
+            return _rows[slot(_last)];
+        }
+
+        public void remove()
+        {
+            if(_last<0) throw new IllegalStateException();
+            if(_modCount!=_expectedModCount) throw new ConcurrentModificationException();
+            removeAt(_last);
+            _next=_last;
+            _last=-1;
+            _expectedModCount=_modCount;
+        }
+    }
+}
@@ -20,8 +20,6 @@ package org.apache.poi.xssf.streaming;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Iterator;
-import java.util.Map;
-import java.util.TreeMap;
 
 import org.apache.poi.hssf.util.PaneInformation;
 import org.apache.poi.ss.SpreadsheetVersion;
@@ -55,7 +53,7 @@ public class SXSSFSheet implements Sheet, Cloneable
 {
     SXSSFWorkbook _workbook;
     XSSFSheet _sh;
-    TreeMap<Integer,SXSSFRow> _rows=new TreeMap<Integer,SXSSFRow>();
+    SXSSFRowWindow _rows=new SXSSFRowWindow();
     SheetDataWriter _writer;
     int _randomAccessWindowSize = SXSSFWorkbook.DEFAULT_WINDOW_SIZE;
     int outlineLevelRow = 0;
@@ -133,7 +131,7 @@ public class SXSSFSheet implements Sheet, Cloneable
         if(initialAllocationSize<=0)
             initialAllocationSize=10;
         SXSSFRow newRow=new SXSSFRow(this,initialAllocationSize);
-        _rows.put(new Integer(rownum),newRow);
+        _rows.put(rownum,newRow);
         if(_randomAccessWindowSize>=0&&_rows.size()>_randomAccessWindowSize)
         {
             try
@@ -159,15 +157,7 @@ public class SXSSFSheet implements Sheet, Cloneable
             throw new IllegalArgumentException("Specified row does not belong to this sheet");
         }
 
-        for(Iterator<Map.Entry<Integer,SXSSFRow>> iter=_rows.entrySet().iterator();iter.hasNext();)
-        {
-            Map.Entry<Integer,SXSSFRow> entry=iter.next();
-            if(entry.getValue()==row)
-            {
-                iter.remove();
-                return;
-            }
-        }
+        _rows.remove((SXSSFRow)row);
     }
 
     /**
@@ -179,7 +169,7 @@ public class SXSSFSheet implements Sheet, Cloneable
      */
     public Row getRow(int rownum)
     {
-        return _rows.get(new Integer(rownum));
+        return _rows.get(rownum);
     }
 
     /**
@@ -201,7 +191,7 @@ public class SXSSFSheet implements Sheet, Cloneable
     {
         if(_writer.getNumberOfFlushedRows() > 0)
             return _writer.getLowestIndexOfFlushedRows();
-        return _rows.size() == 0 ? 0 : _rows.firstKey();
+        return _rows.size() == 0 ? 0 : _rows.getFirstRowNum();
     }
 
     /**
@@ -211,7 +201,7 @@ public class SXSSFSheet implements Sheet, Cloneable
      */
     public int getLastRowNum()
     {
-        return _rows.size() == 0 ? 0 : _rows.lastKey();
+        return _rows.size() == 0 ? 0 : _rows.getLastRowNum();
     }
 
     /**
@@ -432,7 +422,7 @@ public class SXSSFSheet implements Sheet, Cloneable
     public Iterator<Row> rowIterator()
     {
         @SuppressWarnings("unchecked")
-        Iterator<Row> result = (Iterator<Row>)(Iterator<? extends Row>)_rows.values().iterator();
+        Iterator<Row> result = (Iterator<Row>)(Iterator<? extends Row>)_rows.iterator();
         return result;
     }
 
@@ -1110,7 +1100,8 @@ public class SXSSFSheet implements Sheet, Cloneable
      */
     public void groupRow(int fromRow, int toRow)
     {
-        for(SXSSFRow row : _rows.subMap(fromRow, toRow + 1).values()){
+        for(Iterator<SXSSFRow> iter = _rows.iterator(fromRow, toRow); iter.hasNext(); ){
+            SXSSFRow row = iter.next();
             int level = row.getOutlineLevel() + 1;
             row.setOutlineLevel(level);
 
@@ -1424,30 +1415,23 @@ public class SXSSFSheet implements Sheet, Cloneable
 
     private void flushOneRow() throws IOException
     {
-        Integer firstRowNum = _rows.firstKey();
-        if (firstRowNum!=null) {
-            int rowIndex = firstRowNum.intValue();
-            SXSSFRow row = _rows.get(firstRowNum);
+        if (_rows.size() > 0) {
+            int rowIndex = _rows.getFirstRowNum();
+            SXSSFRow row = _rows.get(rowIndex);
             _writer.writeRow(rowIndex, row);
-            _rows.remove(firstRowNum);
+            _rows.removeFirst();
         }
     }
     public void changeRowNum(SXSSFRow row, int newRowNum)
     {
         
         removeRow(row);
-        _rows.put(new Integer(newRowNum),row);
+        _rows.put(newRowNum,row);
     }
 
     public int getRowNum(SXSSFRow row)
     {
-        for(Iterator<Map.Entry<Integer,SXSSFRow>> iter=_rows.entrySet().iterator();iter.hasNext();)
-        {
-            Map.Entry<Integer,SXSSFRow> entry=iter.next();
-            if(entry.getValue()==row)
-                return entry.getKey().intValue();
-        }
-        return -1;
+        return _rows.contains(row) ? row._rowNum : -1;
     }
 
     /**
@@ -22,11 +22,17 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
@@ -58,7 +64,8 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
  * a lot more resources than with shared strings disabled.
  *
  * Carefully review your memory budget and compatibility needs before deciding
- * whether to enable shared strings or not.
+ * whether to enable shared strings or not. A {@link TempFileSharedStringsTable}
+ * provides shared strings while keeping the unique strings on disk.
  */
 public class SXSSFWorkbook implements Workbook
 {
@@ -83,11 +90,26 @@ public class SXSSFWorkbook implements Workbook
      */
     private boolean _compressTmpFiles = false;
 
+    /**
+     * whether to write the temp files with {@link UTF8SheetDataWriter}
+     */
+    private boolean _useUTF8SheetDataWriter = false;
+
     /**
      * shared string table - a cache of strings in this workbook
      */
     private SharedStringsTable _sharedStringSource = null;
 
+    /**
+     * temp-file backed shared string table, streamed into the shared strings part on write
+     */
+    private TempFileSharedStringsTable _tempSharedStrings = null;
+
+    /**
+     * executor to compress the sheet data in parallel on write, <code>null</code> to write sequentially
+     */
+    private Executor _writeExecutor = null;
+
     /**
      * Construct a new workbook
      */
@@ -208,6 +230,11 @@ public class SXSSFWorkbook implements Workbook
      * @param useSharedStringsTable whether to use a shared strings table
      */
     public SXSSFWorkbook(XSSFWorkbook workbook, int rowAccessWindowSize, boolean compressTmpFiles, boolean useSharedStringsTable){
+        this(workbook, rowAccessWindowSize, compressTmpFiles, useSharedStringsTable, null);
+    }
+
+    private SXSSFWorkbook(XSSFWorkbook workbook, int rowAccessWindowSize, boolean compressTmpFiles, boolean useSharedStringsTable,
+            TempFileSharedStringsTable tempSharedStrings){
         setRandomAccessWindowSize(rowAccessWindowSize);
         setCompressTempFiles(compressTmpFiles);
         if (workbook == null)
@@ -223,6 +250,19 @@ public class SXSSFWorkbook implements Workbook
             if(useSharedStringsTable){
                 _sharedStringSource = _wb.getSharedStringSource();
             }
+        }
+        if (tempSharedStrings != null)
+        {
+            SharedStringsTable sst = _wb.getSharedStringSource();
+            try {
+                tempSharedStrings.addItems(sst.getItems(), sst.getCount());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            _tempSharedStrings = tempSharedStrings;
+        }
+        if (workbook != null)
+        {
             for ( int i = 0; i < _wb.getNumberOfSheets(); i++ )
             {
                 XSSFSheet sheet = _wb.getSheetAt( i );
@@ -230,6 +270,32 @@ public class SXSSFWorkbook implements Workbook
             }
         }
     }
+
+    /**
+     * Constructs an workbook from an existing workbook, keeping the shared strings
+     * in the specified temp-file backed table.
+     * <p>
+     * Unlike <code>useSharedStringsTable</code> the unique strings are not kept in memory,
+     * the shared strings part is streamed from the table's temp file when the workbook is written.
+     * Strings of the template workbook are copied into the table and keep their indexes.
+     * Strings must not be added to the template through the XSSF API afterwards.
+     * </p>
+     *
+     * @param workbook  the template workbook, or <code>null</code> for a new workbook
+     * @param rowAccessWindowSize
+     * @param compressTmpFiles whether to use gzip compression for temporary files
+     * @param sharedStringsTable the table to keep the shared strings in
+     */
+    public SXSSFWorkbook(XSSFWorkbook workbook, int rowAccessWindowSize, boolean compressTmpFiles, TempFileSharedStringsTable sharedStringsTable){
+        this(workbook, rowAccessWindowSize, compressTmpFiles, false, checkNotNull(sharedStringsTable));
+    }
+
+    private static TempFileSharedStringsTable checkNotNull(TempFileSharedStringsTable sharedStringsTable){
+        if (sharedStringsTable == null) {
+            throw new IllegalArgumentException("sharedStringsTable must not be null");
+        }
+        return sharedStringsTable;
+    }
     /**
      * Construct an empty workbook and specify the window for row access.
      * <p>
@@ -283,9 +349,47 @@ public class SXSSFWorkbook implements Workbook
         _compressTmpFiles = compress;
     }
 
+    /**
+     * Set whether temp files should be written by {@link UTF8SheetDataWriter}, which encodes
+     * the sheet data directly to UTF-8 bytes and is considerably faster for large sheets.
+     * <p>
+     *     The setting applies to sheets created afterwards and is ignored if temp files are compressed.
+     * </p>
+     * @param useUTF8SheetDataWriter whether to use the byte-oriented writer
+     */
+    public void setUseUTF8SheetDataWriter(boolean useUTF8SheetDataWriter){
+        _useUTF8SheetDataWriter = useUTF8SheetDataWriter;
+    }
+
+    /**
+     * Set an executor to compress the sheets in parallel when the workbook is written.
+     * <p>
+     *   By default all parts of the workbook are compressed one after the other while they are
+     *   written to the output stream. With an executor, the data of each sheet is deflated into
+     *   a temp file of its own by a task of the executor, and the compressed parts are then copied
+     *   to the output stream in order, without being compressed again.
+     *   The write time then scales with the number of threads for workbooks with several large sheets.
+     * </p>
+     * <p>
+     *   The executor is not shut down by this workbook.
+     * </p>
+     * @param executor the executor, or <code>null</code> to compress on the calling thread
+     */
+    public void setWriteExecutor(Executor executor){
+        _writeExecutor = executor;
+    }
+
     SheetDataWriter createSheetDataWriter() throws IOException {
+        if(_tempSharedStrings != null) {
+            if(_compressTmpFiles) {
+                return new GZIPSheetDataWriter(_tempSharedStrings);
+            }
+            return _useUTF8SheetDataWriter ? new UTF8SheetDataWriter(_tempSharedStrings) : new SheetDataWriter(_tempSharedStrings);
+        }
         if(_compressTmpFiles) {
             return new GZIPSheetDataWriter(_sharedStringSource);
+        } else if(_useUTF8SheetDataWriter) {
+            return new UTF8SheetDataWriter(_sharedStringSource);
         } else {
             return new SheetDataWriter(_sharedStringSource);
         }
@@ -322,6 +426,11 @@ public class SXSSFWorkbook implements Workbook
         }
         return null;
     }
+    private boolean isSharedStringsZipEntry(String entryName)
+    {
+        return _tempSharedStrings != null &&
+                entryName.equals(_wb.getSharedStringSource().getPackagePart().getPartName().getName().substring(1));
+    }
     private void injectData(File zipfile, OutputStream out) throws IOException 
     {
         ZipFile zip = new ZipFile(zipfile);
@@ -336,38 +445,166 @@ public class SXSSFWorkbook implements Workbook
                 {
                     ZipEntry ze = en.nextElement();
                     zos.putNextEntry(new ZipEntry(ze.getName()));
-                    InputStream is = zip.getInputStream(ze);
-                    XSSFSheet xSheet=getSheetFromZipEntryName(ze.getName());
-                    if(xSheet!=null)
+                    writeEntryData(zip, ze, getSheetFromZipEntryName(ze.getName()), zos);
+                }
+            }
+            finally
+            {
+                zos.close();
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+    }
+    /**
+     * Like {@link #injectData(File, OutputStream)}, but deflates the sheet data on the write executor
+     * and stitches the compressed entries together in their original order.
+     */
+    private void injectDataParallel(File zipfile, OutputStream out) throws IOException
+    {
+        final ZipFile zip = new ZipFile(zipfile);
+        List<FutureTask<DeflatedZipWriter.Entry>> tasks = new ArrayList<FutureTask<DeflatedZipWriter.Entry>>();
+        try
+        {
+            @SuppressWarnings("unchecked")
+            Enumeration<ZipEntry> en = (Enumeration<ZipEntry>) zip.entries();
+            while (en.hasMoreElements())
+            {
+                final ZipEntry ze = en.nextElement();
+                final XSSFSheet xSheet = getSheetFromZipEntryName(ze.getName());
+                // sheets and the temp-file backed shared strings are large, the other parts are not worth a task
+                final boolean large = xSheet != null || isSharedStringsZipEntry(ze.getName());
+                FutureTask<DeflatedZipWriter.Entry> task = new FutureTask<DeflatedZipWriter.Entry>(
+                    new Callable<DeflatedZipWriter.Entry>()
                     {
-                        SXSSFSheet sxSheet=getSXSSFSheet(xSheet);
-                        InputStream xis = sxSheet.getWorksheetXMLInputStream();
-                        try
-                        {
-                            copyStreamAndInjectWorksheet(is,zos,xis);
-                        }
-                        finally
+                        public DeflatedZipWriter.Entry call() throws IOException
                         {
-                            xis.close();
+                            return deflateEntry(zip, ze, xSheet, large);
                         }
-                    }
-                    else
-                    {
-                        copyStream(is, zos);
-                    }
-                    is.close();
+                    });
+                if (large)
+                {
+                    _writeExecutor.execute(task);
+                }
+                else
+                {
+                    task.run();
                 }
+                tasks.add(task);
             }
-            finally
+
+            DeflatedZipWriter writer = new DeflatedZipWriter(out);
+            for (FutureTask<DeflatedZipWriter.Entry> task : tasks)
             {
-                zos.close();
+                DeflatedZipWriter.Entry entry = getDeflatedEntry(task);
+                try
+                {
+                    writer.putEntry(entry);
+                }
+                finally
+                {
+                    entry.dispose();
+                }
             }
+            writer.finish();
         }
         finally
         {
+            // wait for the remaining tasks before the template is closed and discard their data
+            for (FutureTask<DeflatedZipWriter.Entry> task : tasks)
+            {
+                try
+                {
+                    task.get().dispose();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                catch (ExecutionException e)
+                {
+                    // reported by getDeflatedEntry
+                }
+            }
             zip.close();
         }
     }
+    private DeflatedZipWriter.Entry deflateEntry(ZipFile zip, ZipEntry ze, XSSFSheet xSheet, boolean large) throws IOException
+    {
+        File fd = large ? File.createTempFile("poi-sxssf-entry", ".deflated") : null;
+        DeflatedZipWriter.Entry entry = new DeflatedZipWriter.Entry(ze.getName(), fd);
+        boolean success = false;
+        try
+        {
+            writeEntryData(zip, ze, xSheet, entry);
+            entry.close();
+            success = true;
+            return entry;
+        }
+        finally
+        {
+            if (!success) entry.dispose();
+        }
+    }
+    private static DeflatedZipWriter.Entry getDeflatedEntry(FutureTask<DeflatedZipWriter.Entry> task) throws IOException
+    {
+        try
+        {
+            return task.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw (IOException)new InterruptedIOException("Interrupted while compressing the workbook").initCause(e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException)cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+            if (cause instanceof Error) throw (Error)cause;
+            throw new RuntimeException(cause);
+        }
+    }
+    /**
+     * Write the uncompressed data of a template entry, replacing the sheet data
+     * and the shared strings with the data of the temp files.
+     */
+    private void writeEntryData(ZipFile zip, ZipEntry ze, XSSFSheet xSheet, OutputStream out) throws IOException
+    {
+        InputStream is = zip.getInputStream(ze);
+        try
+        {
+            if(xSheet!=null)
+            {
+                SXSSFSheet sxSheet=getSXSSFSheet(xSheet);
+                InputStream xis = sxSheet.getWorksheetXMLInputStream();
+                try
+                {
+                    copyStreamAndInjectWorksheet(is,out,xis);
+                }
+                finally
+                {
+                    xis.close();
+                }
+            }
+            else if(isSharedStringsZipEntry(ze.getName()))
+            {
+                _tempSharedStrings.writeTo(out);
+            }
+            else
+            {
+                copyStream(is, out);
+            }
+        }
+        finally
+        {
+            is.close();
+        }
+    }
     private static void copyStream(InputStream in, OutputStream out) throws IOException {
         byte[] chunk = new byte[1024];
         int count;
@@ -834,7 +1071,14 @@ public class SXSSFWorkbook implements Workbook
             }
 
             //Substitute the template entries with the generated sheet data files
-            injectData(tmplFile, stream);
+            if (_writeExecutor != null)
+            {
+                injectDataParallel(tmplFile, stream);
+            }
+            else
+            {
+                injectData(tmplFile, stream);
+            }
         }
         finally
         {
@@ -854,6 +1098,10 @@ public class SXSSFWorkbook implements Workbook
         {
             success = sheet.dispose() && success;
         }
+        if (_tempSharedStrings != null)
+        {
+            success = _tempSharedStrings.dispose() && success;
+        }
         return success;
     }
 
@@ -45,8 +45,8 @@ import org.openxmlformats.schemas.spreadsheetml.x2006.main.STCellType;
  */
 public class SheetDataWriter {
     private final File _fd;
-    private final Writer _out;
-    private int _rownum;
+    final Writer _out;
+    int _rownum;
     private int _numberOfFlushedRows;
     private int _lowestIndexOfFlushedRows; // meaningful only of _numberOfFlushedRows>0
     private int _numberOfCellsOfLastFlushedRow; // meaningful only of _numberOfFlushedRows>0
@@ -58,6 +58,11 @@ public class SheetDataWriter {
      */
     private SharedStringsTable _sharedStringSource;
 
+    /**
+     * Temp-file backed alternative to <code>_sharedStringSource</code>
+     */
+    private TempFileSharedStringsTable _tempSharedStrings;
+
     public SheetDataWriter() throws IOException {
         _fd = createTempFile();
         _out = createWriter(_fd);
@@ -67,6 +72,11 @@ public class SheetDataWriter {
         this();
         this._sharedStringSource = sharedStringsTable;
     }
+
+    public SheetDataWriter(TempFileSharedStringsTable sharedStringsTable) throws IOException{
+        this();
+        this._tempSharedStrings = sharedStringsTable;
+    }
     /**
      * Create a temp file to write sheet data. 
      * By default, temp files are created in the default temporary-file directory
@@ -211,10 +221,8 @@ public class SheetDataWriter {
                 break;
             }
             case Cell.CELL_TYPE_STRING: {
-                if (_sharedStringSource != null) {
-                    XSSFRichTextString rt = new XSSFRichTextString(cell.getStringCellValue());
-                    int sRef = _sharedStringSource.addEntry(rt.getCTRst());
-
+                int sRef = addSharedString(cell.getStringCellValue());
+                if (sRef >= 0) {
                     _out.write(" t=\"" + STCellType.S.toString() + "\">");
                     _out.write("<v>");
                     _out.write(String.valueOf(sRef));
@@ -255,12 +263,29 @@ public class SheetDataWriter {
         _out.write("</c>");
     }
 
+    /**
+     * Add a string to the shared strings table of this writer, if any.
+     *
+     * @return the index of the string in the shared strings table,
+     *  or -1 if strings are written inline
+     */
+    int addSharedString(String value) throws IOException {
+        if (_sharedStringSource != null) {
+            XSSFRichTextString rt = new XSSFRichTextString(value);
+            return _sharedStringSource.addEntry(rt.getCTRst());
+        }
+        if (_tempSharedStrings != null) {
+            return _tempSharedStrings.addEntry(value);
+        }
+        return -1;
+    }
+
 
     /**
      * @return  whether the string has leading / trailing spaces that
      *  need to be preserved with the xml:space=\"preserve\" attribute
      */
-    boolean hasLeadingTrailingSpaces(String str) {
+    static boolean hasLeadingTrailingSpaces(String str) {
         if (str != null && str.length() > 0) {
             char firstChar = str.charAt(0);
             char lastChar  = str.charAt(str.length() - 1);
@@ -269,8 +294,12 @@ public class SheetDataWriter {
         return false;
     }
 
+    protected void outputQuotedString(String s) throws IOException {
+        outputQuotedString(_out, s);
+    }
+
     //Taken from jdk1.3/src/javax/swing/text/html/HTMLWriter.java
-     protected void outputQuotedString(String s) throws IOException {
+    static void outputQuotedString(Writer out, String s) throws IOException {
         if (s == null || s.length() == 0) {
             return;
         }
@@ -283,53 +312,53 @@ public class SheetDataWriter {
             switch (c) {
                 case '<':
                     if (counter > last) {
-                        _out.write(chars, last, counter - last);
+                        out.write(chars, last, counter - last);
                     }
                     last = counter + 1;
-                    _out.write("&lt;");
+                    out.write("&lt;");
                     break;
                 case '>':
                     if (counter > last) {
-                        _out.write(chars, last, counter - last);
+                        out.write(chars, last, counter - last);
                     }
                     last = counter + 1;
-                    _out.write("&gt;");
+                    out.write("&gt;");
                     break;
                 case '&':
                     if (counter > last) {
-                        _out.write(chars, last, counter - last);
+                        out.write(chars, last, counter - last);
                     }
                     last = counter + 1;
-                    _out.write("&amp;");
+                    out.write("&amp;");
                     break;
                 case '"':
                     if (counter > last) {
-                        _out.write(chars, last, counter - last);
+                        out.write(chars, last, counter - last);
                     }
                     last = counter + 1;
-                    _out.write("&quot;");
+                    out.write("&quot;");
                     break;
                 // Special characters
                 case '\n':
                 case '\r':
                     if (counter > last) {
-                        _out.write(chars, last, counter - last);
+                        out.write(chars, last, counter - last);
                     }
-                    _out.write("&#xa;");
+                    out.write("&#xa;");
                     last = counter + 1;
                     break;
                 case '\t':
                     if (counter > last) {
-                        _out.write(chars, last, counter - last);
+                        out.write(chars, last, counter - last);
                     }
-                    _out.write("&#x9;");
+                    out.write("&#x9;");
                     last = counter + 1;
                     break;
                 case 0xa0:
                     if (counter > last) {
-                        _out.write(chars, last, counter - last);
+                        out.write(chars, last, counter - last);
                     }
-                    _out.write("&#xa0;");
+                    out.write("&#xa0;");
                     last = counter + 1;
                     break;
                 default:
@@ -338,27 +367,27 @@ public class SheetDataWriter {
                     if( c < ' ' || Character.isLowSurrogate(c) || Character.isHighSurrogate(c) ||
                             ('\uFFFE' <= c && c <= '\uFFFF')) {
                         if (counter > last) {
-                            _out.write(chars, last, counter - last);
+                            out.write(chars, last, counter - last);
                         }
-                        _out.write('?');
+                        out.write('?');
                         last = counter + 1;
                     }
                     else if (c > 127) {
                         if (counter > last) {
-                            _out.write(chars, last, counter - last);
+                            out.write(chars, last, counter - last);
                         }
                         last = counter + 1;
                         // If the character is outside of ascii, write the
                         // numeric value.
-                        _out.write("&#");
-                        _out.write(String.valueOf((int) c));
-                        _out.write(";");
+                        out.write("&#");
+                        out.write(String.valueOf((int) c));
+                        out.write(";");
                     }
                     break;
             }
         }
         if (last < length) {
-            _out.write(chars, last, length - last);
+            out.write(chars, last, length - last);
         }
     }
 
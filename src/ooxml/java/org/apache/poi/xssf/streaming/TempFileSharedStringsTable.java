@@ -0,0 +1,243 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.streaming;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.xmlbeans.XmlOptions;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRst;
+
+/**
+ * Shared strings table for SXSSF that keeps the unique strings in a temp file
+ * instead of in memory.
+ * <p>
+ * Strings are appended to the temp file as <code>&lt;si&gt;</code> items when they are
+ * first seen, and <code>sharedStrings.xml</code> is streamed from that file when the
+ * workbook is written. Duplicates are detected through an on-heap index with a fixed
+ * number of slots, so the heap footprint does not grow with the number of strings.
+ * A string which recurs after its slot has been taken by another string is stored again
+ * under a new index. This makes the table somewhat larger than strictly necessary,
+ * but is valid SpreadsheetML.
+ * </p>
+ *
+ * @see SXSSFWorkbook#SXSSFWorkbook(org.apache.poi.xssf.usermodel.XSSFWorkbook, int, boolean, TempFileSharedStringsTable)
+ */
+public class TempFileSharedStringsTable {
+    /**
+     * The default number of slots of the duplicate index
+     */
+    public static final int DEFAULT_INDEX_SIZE = 65536;
+
+    private static final XmlOptions options = new XmlOptions();
+    static {
+        options.put( XmlOptions.SAVE_INNER );
+        options.put( XmlOptions.SAVE_AGGRESSIVE_NAMESPACES );
+        options.put( XmlOptions.SAVE_USE_DEFAULT_NAMESPACE );
+        options.setSaveImplicitNamespaces(Collections.singletonMap("", "http://schemas.openxmlformats.org/spreadsheetml/2006/main"));
+    }
+
+    private final File _fd;
+    private final Writer _out;
+
+    /**
+     * Direct-mapped index of recently added strings: the slot of a string is given by its hash code
+     */
+    private final String[] _indexKeys;
+    private final int[] _indexValues;
+    private final int _indexMask;
+
+    private int _count;
+    private int _uniqueCount;
+
+    public TempFileSharedStringsTable() throws IOException {
+        this(DEFAULT_INDEX_SIZE);
+    }
+
+    /**
+     * @param indexSize the number of slots of the duplicate index, rounded up to a power of two.
+     *  Each slot holds on to one string.
+     */
+    public TempFileSharedStringsTable(int indexSize) throws IOException {
+        if (indexSize < 1) {
+            throw new IllegalArgumentException("indexSize must be positive");
+        }
+        int size = Integer.highestOneBit(indexSize);
+        if (size < indexSize) {
+            size <<= 1;
+        }
+        _indexKeys = new String[size];
+        _indexValues = new int[size];
+        _indexMask = size - 1;
+        _fd = createTempFile();
+        _out = createWriter(_fd);
+    }
+
+    /**
+     * Create a temp file to write the string items.
+     * By default, temp files are created in the default temporary-file directory
+     * with a prefix "poi-sxssf-sst" and suffix ".xml".
+     *
+     * @return temp file to write the string items
+     */
+    public File createTempFile() throws IOException {
+        return File.createTempFile("poi-sxssf-sst", ".xml");
+    }
+
+    /**
+     * Create a writer for the string items.
+     *
+     * @param  fd the file to write to
+     */
+    public Writer createWriter(File fd) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fd), "UTF-8"));
+    }
+
+    /**
+     * @return a stream to read the string items written to the temp file
+     */
+    public InputStream getItemsInputStream() throws IOException {
+        return new FileInputStream(_fd);
+    }
+
+    File getTempFile() {
+        return _fd;
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        _fd.delete();
+
+        super.finalize();
+    }
+
+    /**
+     * Copy the items of an existing shared strings table, e.g. of a template workbook,
+     * so that they keep their indexes. Must be called before any other string is added.
+     *
+     * @param items the items of the existing table
+     * @param count the total count of strings of the existing table
+     */
+    void addItems(List<CTRst> items, int count) throws IOException {
+        if (_uniqueCount > 0) {
+            throw new IllegalStateException("Existing items must be added before any other string");
+        }
+        for (CTRst st : items) {
+            _out.write("<si>");
+            _out.write(st.xmlText(options));
+            _out.write("</si>");
+            _uniqueCount++;
+        }
+        _count = count;
+    }
+
+    /**
+     * Add a string to this table.
+     * If the string is found in the duplicate index, its index is returned.
+     * Otherwise a new entry is appended.
+     *
+     * @param str the string to add
+     * @return the index of the entry
+     */
+    public int addEntry(String str) throws IOException {
+        _count++;
+        int slot = str.hashCode() & _indexMask;
+        if (str.equals(_indexKeys[slot])) {
+            return _indexValues[slot];
+        }
+
+        _out.write("<si><t");
+        if (SheetDataWriter.hasLeadingTrailingSpaces(str)) {
+            _out.write(" xml:space=\"preserve\"");
+        }
+        _out.write(">");
+        SheetDataWriter.outputQuotedString(_out, str);
+        _out.write("</t></si>");
+
+        int idx = _uniqueCount++;
+        _indexKeys[slot] = str;
+        _indexValues[slot] = idx;
+        return idx;
+    }
+
+    /**
+     * @return the total count of strings added to this table, including duplicates
+     */
+    public int getCount() {
+        return _count;
+    }
+
+    /**
+     * @return the count of entries in this table
+     */
+    public int getUniqueCount() {
+        return _uniqueCount;
+    }
+
+    /**
+     * Write the shared strings part, streaming the items from the temp file.
+     * No strings may be added after this method was called.
+     *
+     * @param out The stream to write to.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        _out.close();
+
+        Writer writer = new OutputStreamWriter(out, "UTF-8");
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        writer.write("<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"");
+        writer.write(" count=\"" + _count + "\" uniqueCount=\"" + _uniqueCount + "\">");
+        writer.flush();
+
+        InputStream is = getItemsInputStream();
+        try {
+            byte[] chunk = new byte[8192];
+            int count;
+            while ((count = is.read(chunk)) >= 0) {
+                out.write(chunk, 0, count);
+            }
+        } finally {
+            is.close();
+        }
+
+        writer.write("</sst>");
+        writer.flush();
+    }
+
+    /**
+     * Deletes the temporary file that backed this table on disk.
+     * @return true if the file was deleted, false if it wasn't.
+     */
+    boolean dispose() {
+        try {
+            _out.close();
+            return _fd.delete();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,421 @@
+/*
+ *  ====================================================================
+ *    Licensed to the Apache Software Foundation (ASF) under one or more
+ *    contributor license agreements.  See the NOTICE file distributed with
+ *    this work for additional information regarding copyright ownership.
+ *    The ASF licenses this file to You under the Apache License, Version 2.0
+ *    (the "License"); you may not use this file except in compliance with
+ *    the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * ====================================================================
+ */
+
+package org.apache.poi.xssf.streaming;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.xssf.model.SharedStringsTable;
+
+/**
+ * Sheet writer that encodes the sheet data directly to UTF-8 bytes.
+ * <p>
+ * The XML is written into a preallocated byte buffer instead of going through a character
+ * encoder: markup is copied as ASCII bytes, cell references and numbers are formatted without
+ * creating intermediate strings, and text is escaped through a lookup table.
+ * The temp file content is equivalent to the one written by {@link SheetDataWriter},
+ * except that non-ASCII characters are stored as UTF-8 instead of character references
+ * and integral numbers are written without a fraction, e.g. <code>5</code> instead of <code>5.0</code>.
+ * </p>
+ * <p>
+ * Subclasses can override {@link #createOutputStream(File)}, {@link #createTempFile()}
+ * and {@link #getWorksheetXMLInputStream()} to compress the temp files.
+ * </p>
+ *
+ * @see SXSSFWorkbook#setUseUTF8SheetDataWriter(boolean)
+ */
+public class UTF8SheetDataWriter extends SheetDataWriter {
+
+    public UTF8SheetDataWriter() throws IOException {
+        super();
+    }
+
+    /**
+     * @param sharedStringsTable the shared strings table, or null if inline text is used
+     */
+    public UTF8SheetDataWriter(SharedStringsTable sharedStringsTable) throws IOException {
+        super(sharedStringsTable);
+    }
+
+    /**
+     * @param sharedStringsTable the temp-file backed shared strings table
+     */
+    public UTF8SheetDataWriter(TempFileSharedStringsTable sharedStringsTable) throws IOException {
+        super(sharedStringsTable);
+    }
+
+    /**
+     * @return a writer encoding to UTF-8 into the stream returned by {@link #createOutputStream(File)}
+     */
+    @Override
+    public Writer createWriter(File fd) throws IOException {
+        return new UTF8Writer(createOutputStream(fd));
+    }
+
+    /**
+     * Create the stream to write the encoded sheet data to.
+     * The data is buffered by this writer, so the stream does not need to be buffered.
+     *
+     * @param  fd the file to write to
+     */
+    public OutputStream createOutputStream(File fd) throws IOException {
+        return new FileOutputStream(fd);
+    }
+
+    @Override
+    void beginRow(int rownum, SXSSFRow row) throws IOException {
+        UTF8Writer out = (UTF8Writer)_out;
+        out.writeAscii("<row r=\"");
+        out.writeInt(rownum + 1);
+        out.writeAscii("\"");
+        if (row.hasCustomHeight()) {
+            out.writeAscii(" customHeight=\"true\"  ht=\"");
+            out.writeAscii(Float.toString(row.getHeightInPoints()));
+            out.writeAscii("\"");
+        }
+        if (row.getZeroHeight())
+            out.writeAscii(" hidden=\"true\"");
+        if (row.isFormatted()) {
+            out.writeAscii(" s=\"");
+            out.writeInt(row._style);
+            out.writeAscii("\" customFormat=\"1\"");
+        }
+        if (row.getOutlineLevel() != 0) {
+            out.writeAscii(" outlineLevel=\"");
+            out.writeInt(row.getOutlineLevel());
+            out.writeAscii("\"");
+        }
+        if(row.getHidden() != null) {
+            out.writeAscii(row.getHidden() ? " hidden=\"1\"" : " hidden=\"0\"");
+        }
+        if(row.getCollapsed() != null) {
+            out.writeAscii(row.getCollapsed() ? " collapsed=\"1\"" : " collapsed=\"0\"");
+        }
+        out.writeAscii(">\n");
+        _rownum = rownum;
+    }
+
+    @Override
+    void endRow() throws IOException {
+        ((UTF8Writer)_out).writeAscii("</row>\n");
+    }
+
+    @Override
+    public void writeCell(int columnIndex, Cell cell) throws IOException {
+        if (cell == null) {
+            return;
+        }
+        UTF8Writer out = (UTF8Writer)_out;
+        out.writeAscii("<c r=\"");
+        out.writeCellReference(_rownum, columnIndex);
+        out.writeAscii("\"");
+        short styleIndex = cell.getCellStyle().getIndex();
+        if (styleIndex != 0) {
+            out.writeAscii(" s=\"");
+            out.writeInt(styleIndex);
+            out.writeAscii("\"");
+        }
+        switch (cell.getCellType()) {
+            case Cell.CELL_TYPE_BLANK: {
+                out.writeAscii(">");
+                break;
+            }
+            case Cell.CELL_TYPE_FORMULA: {
+                out.writeAscii("><f>");
+                out.writeEscaped(cell.getCellFormula());
+                out.writeAscii("</f>");
+                switch (cell.getCachedFormulaResultType()) {
+                    case Cell.CELL_TYPE_NUMERIC:
+                        double nval = cell.getNumericCellValue();
+                        if (!Double.isNaN(nval)) {
+                            out.writeAscii("<v>");
+                            out.writeDouble(nval);
+                            out.writeAscii("</v>");
+                        }
+                        break;
+                }
+                break;
+            }
+            case Cell.CELL_TYPE_STRING: {
+                String value = cell.getStringCellValue();
+                int sRef = addSharedString(value);
+                if (sRef >= 0) {
+                    out.writeAscii(" t=\"s\"><v>");
+                    out.writeInt(sRef);
+                    out.writeAscii("</v>");
+                } else {
+                    out.writeAscii(hasLeadingTrailingSpaces(value) ?
+                            " t=\"inlineStr\"><is><t xml:space=\"preserve\">" : " t=\"inlineStr\"><is><t>");
+                    out.writeEscaped(value);
+                    out.writeAscii("</t></is>");
+                }
+                break;
+            }
+            case Cell.CELL_TYPE_NUMERIC: {
+                out.writeAscii(" t=\"n\"><v>");
+                out.writeDouble(cell.getNumericCellValue());
+                out.writeAscii("</v>");
+                break;
+            }
+            case Cell.CELL_TYPE_BOOLEAN: {
+                out.writeAscii(cell.getBooleanCellValue() ? " t=\"b\"><v>1</v>" : " t=\"b\"><v>0</v>");
+                break;
+            }
+            case Cell.CELL_TYPE_ERROR: {
+                FormulaError error = FormulaError.forInt(cell.getErrorCellValue());
+
+                out.writeAscii(" t=\"e\"><v>");
+                out.writeAscii(error.getString());
+                out.writeAscii("</v>");
+                break;
+            }
+            default: {
+                throw new RuntimeException("Huh?");
+            }
+        }
+        out.writeAscii("</c>");
+    }
+
+    @Override
+    protected void outputQuotedString(String s) throws IOException {
+        ((UTF8Writer)_out).writeEscaped(s);
+    }
+
+    /**
+     * Writer that encodes to UTF-8 into its own buffer.
+     * Lone surrogates are written as question marks.
+     */
+    static final class UTF8Writer extends Writer {
+        private static final int BUFFER_SIZE = 65536;
+
+        /**
+         * Replacements of the characters up to U+00A0 which need escaping, <code>null</code>
+         * if the character is written as is. The rules are those of
+         * {@link SheetDataWriter#outputQuotedString(Writer, String)}.
+         */
+        private static final byte[][] ESCAPES = new byte[0xa1][];
+        static {
+            for (int c = 0; c < ' '; c++) {
+                ESCAPES[c] = ascii("?");
+            }
+            ESCAPES['\n'] = ascii("&#xa;");
+            ESCAPES['\r'] = ascii("&#xa;");
+            ESCAPES['\t'] = ascii("&#x9;");
+            ESCAPES['<'] = ascii("&lt;");
+            ESCAPES['>'] = ascii("&gt;");
+            ESCAPES['&'] = ascii("&amp;");
+            ESCAPES['"'] = ascii("&quot;");
+            ESCAPES[0xa0] = ascii("&#xa0;");
+        }
+
+        private static byte[] ascii(String s) {
+            byte[] bytes = new byte[s.length()];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte)s.charAt(i);
+            }
+            return bytes;
+        }
+
+        // integral values up to this magnitude are formatted as long
+        private static final double MAX_INTEGRAL = 1e15;
+
+        private final OutputStream _os;
+        private final byte[] _buf = new byte[BUFFER_SIZE];
+        private int _pos;
+
+        UTF8Writer(OutputStream os) {
+            _os = os;
+        }
+
+        /**
+         * Write a string which only contains ASCII characters
+         */
+        void writeAscii(String s) throws IOException {
+            int length = s.length();
+            if (_pos + length > _buf.length) {
+                flushBuffer();
+                if (length > _buf.length) {
+                    write(s, 0, length);
+                    return;
+                }
+            }
+            for (int i = 0; i < length; i++) {
+                _buf[_pos++] = (byte)s.charAt(i);
+            }
+        }
+
+        void writeInt(int value) throws IOException {
+            writeLong(value);
+        }
+
+        void writeLong(long value) throws IOException {
+            if (_pos + 20 > _buf.length) {
+                flushBuffer();
+            }
+            if (value < 0) {
+                _buf[_pos++] = '-';
+                value = -value;
+            }
+            int end = _pos + digits(value);
+            int i = end;
+            do {
+                _buf[--i] = (byte)('0' + (value % 10));
+                value /= 10;
+            } while (value != 0);
+            _pos = end;
+        }
+
+        private static int digits(long value) {
+            int n = 1;
+            while (value >= 10) {
+                value /= 10;
+                n++;
+            }
+            return n;
+        }
+
+        /**
+         * Write a number. Integral values are written without fraction, any other value
+         * in the format of {@link Double#toString(double)}.
+         */
+        void writeDouble(double value) throws IOException {
+            if (value == (long)value && Math.abs(value) < MAX_INTEGRAL
+                    && (value != 0 || 1 / value > 0)) {
+                writeLong((long)value);
+            } else {
+                writeAscii(Double.toString(value));
+            }
+        }
+
+        /**
+         * Write a cell reference in A1 style, e.g. <code>AB12</code>
+         *
+         * @param row 0-based row index
+         * @param col 0-based column index
+         */
+        void writeCellReference(int row, int col) throws IOException {
+            if (_pos + 16 > _buf.length) {
+                flushBuffer();
+            }
+            int letters = 1;
+            for (int n = col / 26; n > 0; n = (n - 1) / 26) {
+                letters++;
+            }
+            int i = _pos + letters;
+            for (int n = col + 1; n > 0; n = (n - 1) / 26) {
+                _buf[--i] = (byte)('A' + (n - 1) % 26);
+            }
+            _pos += letters;
+            writeLong(row + 1);
+        }
+
+        /**
+         * Write XML text, escaping markup, line breaks and invalid characters
+         */
+        void writeEscaped(String s) throws IOException {
+            if (s == null) {
+                return;
+            }
+            int length = s.length();
+            for (int i = 0; i < length; i++) {
+                // the longest replacement takes 6 bytes
+                if (_pos + 6 > _buf.length) {
+                    flushBuffer();
+                }
+                char c = s.charAt(i);
+                if (c < 0x80 && ESCAPES[c] == null) {
+                    _buf[_pos++] = (byte)c;
+                } else if (c <= 0xa0 && ESCAPES[c] != null) {
+                    byte[] escape = ESCAPES[c];
+                    System.arraycopy(escape, 0, _buf, _pos, escape.length);
+                    _pos += escape.length;
+                } else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c) || c >= '\uFFFE') {
+                    // XmlBeans replaces surrogates and "not a character" symbols with question marks
+                    _buf[_pos++] = '?';
+                } else {
+                    encode(c);
+                }
+            }
+        }
+
+        private void encode(char c) {
+            if (c < 0x80) {
+                _buf[_pos++] = (byte)c;
+            } else if (c < 0x800) {
+                _buf[_pos++] = (byte)(0xc0 | (c >> 6));
+                _buf[_pos++] = (byte)(0x80 | (c & 0x3f));
+            } else {
+                _buf[_pos++] = (byte)(0xe0 | (c >> 12));
+                _buf[_pos++] = (byte)(0x80 | ((c >> 6) & 0x3f));
+                _buf[_pos++] = (byte)(0x80 | (c & 0x3f));
+            }
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                if (_pos + 4 > _buf.length) {
+                    flushBuffer();
+                }
+                char c = cbuf[i];
+                if (Character.isHighSurrogate(c) && i + 1 < off + len && Character.isLowSurrogate(cbuf[i + 1])) {
+                    int cp = Character.toCodePoint(c, cbuf[++i]);
+                    _buf[_pos++] = (byte)(0xf0 | (cp >> 18));
+                    _buf[_pos++] = (byte)(0x80 | ((cp >> 12) & 0x3f));
+                    _buf[_pos++] = (byte)(0x80 | ((cp >> 6) & 0x3f));
+                    _buf[_pos++] = (byte)(0x80 | (cp & 0x3f));
+                } else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                    _buf[_pos++] = '?';
+                } else {
+                    encode(c);
+                }
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            write(str.toCharArray(), off, len);
+        }
+
+        private void flushBuffer() throws IOException {
+            if (_pos > 0) {
+                _os.write(_buf, 0, _pos);
+                _pos = 0;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushBuffer();
+            _os.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flushBuffer();
+            _os.close();
+        }
+    }
+}
@@ -399,20 +399,56 @@ public final class XSSFCell implements Cell {
         if(f == null) throw new IllegalStateException(
                 "Master cell of a shared formula with sid="+si+" was not found");
 
-        String sharedFormula = f.getStringValue();
-        //Range of cells which the shared formula applies to
-        String sharedFormulaRange = f.getRef();
+        XSSFEvaluationWorkbook fpb = XSSFEvaluationWorkbook.create(sheet.getWorkbook());
+        return FormulaRenderer.toFormulaString(fpb, convertSharedFormulaTokens(f));
+    }
+
+    /**
+     * Creates the tokens of a non shared formula from the master of a shared formula.
+     * The master formula itself is parsed only once per workbook.
+     *
+     * @param f the master of the shared formula
+     * @return formula tokens for the given shared formula and this cell
+     */
+    private Ptg[] convertSharedFormulaTokens(CTCellFormula f){
+        XSSFSheet sheet = getSheet();
+        XSSFWorkbook wb = sheet.getWorkbook();
 
-        CellRangeAddress ref = CellRangeAddress.valueOf(sharedFormulaRange);
+        //Range of cells which the shared formula applies to
+        CellRangeAddress ref = CellRangeAddress.valueOf(f.getRef());
 
-        int sheetIndex = sheet.getWorkbook().getSheetIndex(sheet);
-        XSSFEvaluationWorkbook fpb = XSSFEvaluationWorkbook.create(sheet.getWorkbook());
+        Ptg[] ptgs = wb.getSharedFormulaTokens(f, wb.getSheetIndex(sheet));
         SharedFormula sf = new SharedFormula(SpreadsheetVersion.EXCEL2007);
-
-        Ptg[] ptgs = FormulaParser.parse(sharedFormula, fpb, FormulaType.CELL, sheetIndex);
-        Ptg[] fmla = sf.convertSharedFormulas(ptgs,
+        return sf.convertSharedFormulas(ptgs,
                 getRowIndex() - ref.getFirstRow(), getColumnIndex() - ref.getFirstColumn());
-        return FormulaRenderer.toFormulaString(fpb, fmla);
+    }
+
+    /**
+     * Parses the formula of this cell.
+     * Callers should use {@link XSSFWorkbook#getFormulaTokens(XSSFCell)} which caches the result.
+     *
+     * @return the parsed formula tokens
+     * @throws IllegalStateException if the cell type returned by {@link #getCellType()} is not CELL_TYPE_FORMULA
+     */
+    /* package */ Ptg[] parseFormula() {
+        int cellType = getCellType();
+        if(cellType != CELL_TYPE_FORMULA) throw typeMismatch(CELL_TYPE_FORMULA, cellType, false);
+
+        XSSFSheet sheet = getSheet();
+        XSSFWorkbook wb = sheet.getWorkbook();
+        CTCellFormula f = _cell.getF();
+        if (isPartOfArrayFormulaGroup() && f == null) {
+            XSSFCell cell = sheet.getFirstCellInArrayFormula(this);
+            return wb.getFormulaTokens(cell);
+        }
+        if (f.getT() == STCellFormulaType.SHARED) {
+            CTCellFormula master = sheet.getSharedFormula((int)f.getSi());
+            if(master == null) throw new IllegalStateException(
+                    "Master cell of a shared formula with sid="+f.getSi()+" was not found");
+            return convertSharedFormulaTokens(master);
+        }
+        XSSFEvaluationWorkbook fpb = XSSFEvaluationWorkbook.create(wb);
+        return FormulaParser.parse(f.getStringValue(), fpb, FormulaType.CELL, wb.getSheetIndex(sheet));
     }
 
     /**
@@ -459,6 +495,7 @@ public final class XSSFCell implements Cell {
         f.setStringValue(formula);
         _cell.setF(f);
         if(_cell.isSetV()) _cell.unsetV();
+        wb.onChangeFormula(this);
     }
 
     /**
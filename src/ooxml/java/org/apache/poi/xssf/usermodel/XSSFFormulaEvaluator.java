@@ -17,8 +17,15 @@
 
 package org.apache.poi.xssf.usermodel;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
 import org.apache.poi.hssf.usermodel.HSSFFormulaEvaluator;
+import org.apache.poi.ss.formula.EvaluationCell;
+import org.apache.poi.ss.formula.EvaluationProfiler;
 import org.apache.poi.ss.formula.IStabilityClassifier;
+import org.apache.poi.ss.formula.ParallelEvaluator;
 import org.apache.poi.ss.formula.WorkbookEvaluator;
 import org.apache.poi.ss.formula.eval.BoolEval;
 import org.apache.poi.ss.formula.eval.ErrorEval;
@@ -29,6 +36,7 @@ import org.apache.poi.ss.formula.udf.UDFFinder;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellValue;
 import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Workbook;
 
 /**
@@ -252,6 +260,53 @@ public class XSSFFormulaEvaluator implements FormulaEvaluator {
       HSSFFormulaEvaluator.evaluateAllFormulaCells(_book);
    }
 
+	/**
+	 * Evaluates all formula cells of the workbook and saves their results, like {@link #evaluateAll()},
+	 * but evaluates the cells which do not depend on each other concurrently, on the threads of the
+	 * supplied executor. The results are the same as those of {@link #evaluateAll()}.<p/>
+	 *
+	 * The workbook must not be changed while this method runs. User defined functions are called
+	 * from several threads at once, and so need to be thread safe.
+	 *
+	 * @see ParallelEvaluator
+	 */
+	public void evaluateAll(Executor executor) {
+		List<XSSFCell> cells = new ArrayList<XSSFCell>();
+		for (int i = 0; i < _book.getNumberOfSheets(); i++) {
+			for (Row r : _book.getSheetAt(i)) {
+				for (Cell c : r) {
+					if (c.getCellType() == XSSFCell.CELL_TYPE_FORMULA) {
+						cells.add((XSSFCell) c);
+					}
+				}
+			}
+		}
+		EvaluationCell[] evalCells = new EvaluationCell[cells.size()];
+		for (int i = 0; i < evalCells.length; i++) {
+			evalCells[i] = new XSSFEvaluationCell(cells.get(i));
+		}
+		ValueEval[] results = new ParallelEvaluator(_bookEvaluator, executor).evaluate(evalCells);
+		for (int i = 0; i < results.length; i++) {
+			setCellValue(cells.get(i), toCellValue(results[i]));
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @see WorkbookEvaluator#recalculateDirtyCells()
+	 */
+	public List<Cell> recalculateDirtyCells() {
+		List<Cell> result = new ArrayList<Cell>();
+		for (EvaluationCell evalCell : _bookEvaluator.recalculateDirtyCells()) {
+			XSSFCell cell = ((XSSFEvaluationCell) evalCell).getXSSFCell();
+			// the result is cached by now
+			evaluateFormulaCell(cell);
+			result.add(cell);
+		}
+		return result;
+	}
+
 	/**
 	 * Returns a CellValue wrapper around the supplied ValueEval instance.
 	 */
@@ -261,7 +316,10 @@ public class XSSFFormulaEvaluator implements FormulaEvaluator {
                     " Only XSSFCells can be evaluated.");
         }
 
-		ValueEval eval = _bookEvaluator.evaluate(new XSSFEvaluationCell((XSSFCell) cell));
+		return toCellValue(_bookEvaluator.evaluate(new XSSFEvaluationCell((XSSFCell) cell)));
+	}
+
+	private static CellValue toCellValue(ValueEval eval) {
 		if (eval instanceof NumberEval) {
 			NumberEval ne = (NumberEval) eval;
 			return new CellValue(ne.getNumberValue());
@@ -285,4 +343,26 @@ public class XSSFFormulaEvaluator implements FormulaEvaluator {
         _bookEvaluator.setDebugEvaluationOutputForNextEval(value);
     }
 
+    /**
+     * Whether to read the plain cell values from snapshots of the sheets, which keep them in arrays
+     * per column. This speeds up formulas over large areas at the cost of memory. The sheets must
+     * not be changed other than with the notify~ methods or {@link #clearAllCachedResultValues()}
+     * while this is enabled. Off by default.
+     *
+     * @see org.apache.poi.ss.formula.WorkbookEvaluator#setUseSheetSnapshots(boolean)
+     */
+    public void setUseSheetSnapshots(boolean value) {
+        _bookEvaluator.setUseSheetSnapshots(value);
+    }
+
+    /**
+     * Records where the time of the evaluations goes into the supplied profiler, until set to
+     * <code>null</code>.
+     *
+     * @see org.apache.poi.ss.formula.WorkbookEvaluator#setProfiler(EvaluationProfiler)
+     */
+    public void setProfiler(EvaluationProfiler profiler) {
+        _bookEvaluator.setProfiler(profiler);
+    }
+
 }
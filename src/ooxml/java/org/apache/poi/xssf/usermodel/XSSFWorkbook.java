@@ -26,6 +26,7 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -47,7 +48,10 @@ import org.apache.poi.openxml4j.opc.PackageRelationship;
 import org.apache.poi.openxml4j.opc.PackageRelationshipTypes;
 import org.apache.poi.openxml4j.opc.PackagingURIHelper;
 import org.apache.poi.openxml4j.opc.TargetMode;
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaType;
 import org.apache.poi.ss.formula.SheetNameFormatter;
+import org.apache.poi.ss.formula.ptg.Ptg;
 import org.apache.poi.ss.formula.udf.IndexedUDFFinder;
 import org.apache.poi.ss.formula.udf.UDFFinder;
 import org.apache.poi.ss.usermodel.Row;
@@ -75,6 +79,7 @@ import org.openxmlformats.schemas.officeDocument.x2006.relationships.STRelations
 import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTBookView;
 import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTBookViews;
 import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCalcPr;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCellFormula;
 import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTDefinedName;
 import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTDefinedNames;
 import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTDialogsheet;
@@ -188,6 +193,17 @@ public class XSSFWorkbook extends POIXMLDocument implements Workbook, Iterable<X
      */
     private XSSFCreationHelper _creationHelper;
 
+    /**
+     * parsed formula tokens of formula cells, so that each formula is parsed only once
+     * @see #getFormulaTokens(XSSFCell)
+     */
+    private final Map<XSSFCell, Ptg[]> formulaTokens = new HashMap<XSSFCell, Ptg[]>();
+
+    /**
+     * parsed tokens of shared formula masters, keyed by the master held in {@link XSSFSheet#getSharedFormula(int)}
+     */
+    private final Map<CTCellFormula, Ptg[]> sharedFormulaTokens = new IdentityHashMap<CTCellFormula, Ptg[]>();
+
     /**
      * Create a new SpreadsheetML workbook.
      */
@@ -587,6 +603,7 @@ public class XSSFWorkbook extends POIXMLDocument implements Workbook, Iterable<X
         ctName.setName("");
         XSSFName name = new XSSFName(ctName, this);
         namedRanges.add(name);
+        onFormulasChanged();
         return name;
     }
 
@@ -947,6 +964,7 @@ public class XSSFWorkbook extends POIXMLDocument implements Workbook, Iterable<X
     @Override
     public void removeName(int nameIndex) {
         namedRanges.remove(nameIndex);
+        onFormulasChanged();
     }
 
     @Override
@@ -972,6 +990,7 @@ public class XSSFWorkbook extends POIXMLDocument implements Workbook, Iterable<X
         if (!namedRanges.remove(name)) {
             throw new IllegalArgumentException("Name was not found: " + name);
         }
+        onFormulasChanged();
     }
 
 
@@ -1015,6 +1034,7 @@ public class XSSFWorkbook extends POIXMLDocument implements Workbook, Iterable<X
         XSSFSheet sheet = getSheetAt(index);
         removeRelation(sheet);
         sheets.remove(index);
+        onFormulasChanged();
     }
 
     /**
@@ -1298,6 +1318,7 @@ public class XSSFWorkbook extends POIXMLDocument implements Workbook, Iterable<X
         utils.updateSheetName(sheetIndex, sheetname);
 
         workbook.getSheets().getSheetArray(sheetIndex).setName(sheetname);
+        onFormulasChanged();
     }
 
     /**
@@ -1321,6 +1342,7 @@ public class XSSFWorkbook extends POIXMLDocument implements Workbook, Iterable<X
         for(int i=0; i < sheets.size(); i++) {
             sheets.get(i).sheet = ct.getSheetArray(i);
         }
+        onFormulasChanged();
     }
 
     /**
@@ -1584,12 +1606,69 @@ public class XSSFWorkbook extends POIXMLDocument implements Workbook, Iterable<X
      * @see XSSFCell#setCellFormula(String)
      */
     protected void onDeleteFormula(XSSFCell cell){
+        formulaTokens.remove(cell);
         if(calcChain != null) {
             int sheetId = (int)cell.getSheet().sheet.getSheetId();
             calcChain.removeItem(sheetId, cell.getReference());
         }
     }
 
+    /**
+     * Return the parsed tokens of the formula in the specified cell.
+     * <p>
+     * The tokens are parsed on first access and cached until the formula is changed or
+     * removed, or until {@link #onFormulasChanged()} is called. Shared formulas are
+     * derived from the tokens of their master formula, which is parsed only once.
+     * </p>
+     *
+     * @param cell the formula cell
+     * @return the parsed formula tokens. The returned array is shared and must not be modified.
+     */
+    /* package */ Ptg[] getFormulaTokens(XSSFCell cell) {
+        Ptg[] ptgs = formulaTokens.get(cell);
+        if(ptgs == null) {
+            ptgs = cell.parseFormula();
+            formulaTokens.put(cell, ptgs);
+        }
+        return ptgs;
+    }
+
+    /**
+     * Return the parsed tokens of a shared formula master, parsing it on first access.
+     *
+     * @param master the master formula as returned by {@link XSSFSheet#getSharedFormula(int)}
+     * @param sheetIndex index of the sheet holding the shared formula
+     * @return the parsed formula tokens. The returned array is shared and must not be modified.
+     */
+    /* package */ Ptg[] getSharedFormulaTokens(CTCellFormula master, int sheetIndex) {
+        Ptg[] ptgs = sharedFormulaTokens.get(master);
+        if(ptgs == null) {
+            XSSFEvaluationWorkbook fpb = XSSFEvaluationWorkbook.create(this);
+            ptgs = FormulaParser.parse(master.getStringValue(), fpb, FormulaType.CELL, sheetIndex);
+            sharedFormulaTokens.put(master, ptgs);
+        }
+        return ptgs;
+    }
+
+    /**
+     * Discard the cached formula tokens of the specified cell after its formula was changed.
+     *
+     * @param cell the formula cell
+     */
+    /* package */ void onChangeFormula(XSSFCell cell) {
+        formulaTokens.remove(cell);
+    }
+
+    /**
+     * Discard all cached formula tokens. Called when a change, such as renaming, moving
+     * or deleting a sheet, shifting rows or changing the defined names, may alter
+     * the parsed form of any formula in this workbook.
+     */
+    /* package */ void onFormulasChanged() {
+        formulaTokens.clear();
+        sharedFormulaTokens.clear();
+    }
+
     /**
      * Return the CalculationChain object for this workbook
      * <p>
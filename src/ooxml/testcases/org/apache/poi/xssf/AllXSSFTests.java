@@ -20,6 +20,7 @@ package org.apache.poi.xssf;
 import org.apache.poi.ss.format.TestCellFormatPart;
 import org.apache.poi.ss.util.TestCellReference;
 import org.apache.poi.xssf.eventusermodel.TestXSSFReader;
+import org.apache.poi.xssf.eventusermodel.TestXSSFSheetRowReader;
 import org.apache.poi.xssf.extractor.TestXSSFExcelExtractor;
 import org.apache.poi.xssf.io.TestLoadSaveXSSF;
 import org.apache.poi.xssf.model.TestCommentsTable;
@@ -39,6 +40,7 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({
     AllXSSFUsermodelTests.class,
     TestXSSFReader.class,
+    TestXSSFSheetRowReader.class,
     TestXSSFExcelExtractor.class,
     TestLoadSaveXSSF.class,
     TestCommentsTable.class,
@@ -24,8 +24,13 @@ import org.apache.poi.POIDataSamples;
 import org.apache.poi.openxml4j.opc.OPCPackage;
 import org.apache.poi.openxml4j.opc.PackagePart;
 import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRst;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.List;
 import java.util.regex.Pattern;
 
@@ -55,4 +60,62 @@ public final class TestReadOnlySharedStringsTable extends TestCase {
         }
 
 	}
+
+    public void testTempFile() throws Exception {
+        OPCPackage pkg = OPCPackage.open(_ssTests.openResourceAsStream("SampleSS.xlsx"));
+        ReadOnlySharedStringsTable expected = new ReadOnlySharedStringsTable(pkg);
+        TempFileReadOnlySharedStringsTable actual = new TempFileReadOnlySharedStringsTable(pkg);
+        confirmSameStrings(expected, actual);
+        actual.close();
+
+        // strings outside of ASCII and of several runs
+        XSSFWorkbook wb = new XSSFWorkbook();
+        XSSFSheet sheet = wb.createSheet();
+        String[] values = { "", "plain", "\u00e4\u00f6\u00fc \u20ac", "\u65e5\u672c\u8a9e", "more", "plain" };
+        for (int i = 0; i < values.length; i++) {
+            XSSFRow row = sheet.createRow(i);
+            row.createCell(0).setCellValue(values[i]);
+        }
+        sheet.createRow(values.length).createCell(0).setCellValue(
+                wb.getCreationHelper().createRichTextString("rich text"));
+        sheet.getRow(values.length).getCell(0).getRichStringCellValue().applyFont(0, 4, wb.createFont());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        wb.write(out);
+        pkg = OPCPackage.open(new ByteArrayInputStream(out.toByteArray()));
+
+        expected = new ReadOnlySharedStringsTable(pkg);
+        actual = new TempFileReadOnlySharedStringsTable(pkg, true);
+        confirmSameStrings(expected, actual);
+        assertEquals(6, actual.getUniqueCount());
+        assertEquals(7, actual.getCount());
+        assertEquals("\u65e5\u672c\u8a9e", actual.getEntryAt(3));
+        assertEquals("rich text", actual.getEntryAt(5));
+        try {
+            actual.getEntryAt(6);
+            fail("expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+        actual.close();
+    }
+
+    public void testTempFileWithoutStrings() throws Exception {
+        OPCPackage pkg = OPCPackage.open(_ssTests.openResourceAsStream("SampleSS.xlsx"));
+        // Some workbooks have no shared strings table
+        pkg.removePart(pkg.getPartsByName(Pattern.compile("/xl/sharedStrings.xml")).get(0));
+        TempFileReadOnlySharedStringsTable table = new TempFileReadOnlySharedStringsTable(pkg, true);
+        assertEquals(0, table.getCount());
+        assertEquals(0, table.getUniqueCount());
+        assertTrue(table.getItems().isEmpty());
+        table.close();
+    }
+
+    private static void confirmSameStrings(ReadOnlySharedStringsTable expected, ReadOnlySharedStringsTable actual) {
+        assertEquals(expected.getCount(), actual.getCount());
+        assertEquals(expected.getUniqueCount(), actual.getUniqueCount());
+        assertEquals(expected.getItems(), actual.getItems());
+        for (int i = 0; i < expected.getItems().size(); i++) {
+            assertEquals(expected.getEntryAt(i), actual.getEntryAt(i));
+        }
+    }
 }
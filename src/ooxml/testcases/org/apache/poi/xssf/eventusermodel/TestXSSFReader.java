@@ -17,20 +17,31 @@
 
 package org.apache.poi.xssf.eventusermodel;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import junit.framework.TestCase;
 
 import org.apache.poi.openxml4j.opc.OPCPackage;
 import org.apache.poi.util.IOUtils;
 import org.apache.poi.xssf.XSSFTestDataSamples;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetRowReader.SheetCell;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetRowReader.SheetRow;
 import org.apache.poi.xssf.model.CommentsTable;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFRichTextString;
 import org.apache.poi.xssf.usermodel.XSSFShape;
 import org.apache.poi.xssf.usermodel.XSSFSimpleShape;
 import org.apache.poi.POIDataSamples;
+import org.apache.poi.POIXMLException;
 
 /**
  * Tests for {@link XSSFReader}
@@ -196,4 +207,80 @@ public final class TestXSSFReader extends TestCase {
        assertTrue(text.indexOf("Line 3") > -1);
 
    }
+
+    public void testProcessSheets() throws Exception {
+        XSSFWorkbook wb = new XSSFWorkbook();
+        for (int s = 0; s < 6; s++) {
+            XSSFSheet sheet = wb.createSheet("Sheet " + s);
+            for (int r = 0; r < 100 * s; r++) {
+                XSSFRow row = sheet.createRow(r);
+                row.createCell(0).setCellValue(r * 1.5);
+                row.createCell(1).setCellValue("text " + (r % 50) + " of sheet " + s);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        wb.write(out);
+        OPCPackage pkg = OPCPackage.open(new ByteArrayInputStream(out.toByteArray()));
+        XSSFReader reader = new XSSFReader(pkg);
+        final ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+
+        List<String> expected = new ArrayList<String>();
+        XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) reader.getSheetsData();
+        while (it.hasNext()) {
+            XSSFSheetRowReader rows = new XSSFSheetRowReader(it.next(), strings);
+            expected.add(it.getSheetName() + ": " + readCells(rows));
+            rows.close();
+        }
+
+        final String[] actual = new String[expected.size()];
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            reader.processSheets(executor, new XSSFReader.SheetProcessor() {
+                public void processSheet(int sheetIndex, String sheetName, InputStream sheetData) throws Exception {
+                    actual[sheetIndex] = sheetName + ": " + readCells(new XSSFSheetRowReader(sheetData, strings));
+                }
+            });
+        } finally {
+            executor.shutdown();
+        }
+        for (int i = 0; i < actual.length; i++) {
+            assertEquals(expected.get(i), actual[i]);
+        }
+        assertTrue(actual[5].contains("text 49 of sheet 5"));
+    }
+
+    private static String readCells(XSSFSheetRowReader rows) {
+        StringBuilder sb = new StringBuilder();
+        while (rows.hasNext()) {
+            SheetRow row = rows.next();
+            for (SheetCell cell : row.getCells()) {
+                sb.append(cell.getReference()).append('=');
+                switch (cell.getType()) {
+                    case SHARED_STRING: sb.append(cell.getStringValue()); break;
+                    default: sb.append(cell.getRawValue()); break;
+                }
+                sb.append(' ');
+            }
+        }
+        return sb.toString();
+    }
+
+    public void testProcessSheetsFailure() throws Exception {
+        OPCPackage pkg = OPCPackage.open(_ssTests.openResourceAsStream("SampleSS.xlsx"));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            new XSSFReader(pkg).processSheets(executor, new XSSFReader.SheetProcessor() {
+                public void processSheet(int sheetIndex, String sheetName, InputStream sheetData) throws Exception {
+                    if (sheetIndex == 1) {
+                        throw new Exception("failed");
+                    }
+                }
+            });
+            fail("expected POIXMLException");
+        } catch (POIXMLException e) {
+            assertEquals("failed", e.getCause().getMessage());
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
@@ -0,0 +1,252 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.xssf.eventusermodel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetRowReader.CellFormulaType;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetRowReader.CellValueType;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetRowReader.SheetCell;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetRowReader.SheetRow;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * Tests for {@link XSSFSheetRowReader}
+ */
+public final class TestXSSFSheetRowReader extends TestCase {
+
+    private static XSSFSheetRowReader createReader(String sheetData) throws Exception {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                + "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+                + "<dimension ref=\"A1:C3\"/><sheetData>" + sheetData + "</sheetData>"
+                + "<pageMargins left=\"0.7\" right=\"0.7\" top=\"0.75\" bottom=\"0.75\" header=\"0.3\" footer=\"0.3\"/>"
+                + "</worksheet>";
+        return new XSSFSheetRowReader(new ByteArrayInputStream(xml.getBytes("UTF-8")), null);
+    }
+
+    public void testWorkbook() throws Exception {
+        XSSFWorkbook wb = new XSSFWorkbook();
+        XSSFSheet sheet = wb.createSheet("Data");
+        XSSFCellStyle style = wb.createCellStyle();
+        style.setDataFormat(wb.createDataFormat().getFormat("0.00"));
+        XSSFRow row = sheet.createRow(0);
+        row.createCell(0).setCellValue(1.5);
+        row.createCell(1).setCellValue("text");
+        row.createCell(2).setCellValue(true);
+        row.createCell(4).setCellErrorValue(FormulaError.DIV0.getCode());
+        row.getCell(0).setCellStyle(style);
+        row = sheet.createRow(2);
+        row.createCell(0).setCellFormula("Data!A1*2");
+        row.getCell(0).setCellValue(3.0);
+        row.createCell(1).setCellFormula("B1&\"!\"");
+        row.getCell(1).setCellValue("text!");
+        row.createCell(2).setCellStyle(style);
+        sheet.createRow(3).createCell(0).setCellValue("text");
+        wb.createSheet("Empty");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        wb.write(out);
+        OPCPackage pkg = OPCPackage.open(new ByteArrayInputStream(out.toByteArray()));
+        XSSFReader reader = new XSSFReader(pkg);
+        ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+        Iterator<InputStream> sheets = reader.getSheetsData();
+
+        XSSFSheetRowReader rows = new XSSFSheetRowReader(sheets.next(), strings);
+        assertTrue(rows.hasNext());
+        SheetRow r = rows.next();
+        assertEquals(0, r.getRowNum());
+        List<SheetCell> cells = r.getCells();
+        assertEquals(4, cells.size());
+        assertEquals(CellValueType.NUMBER, cells.get(0).getType());
+        assertEquals(1.5, cells.get(0).getNumericValue(), 0.0);
+        assertEquals("1.5", cells.get(0).getRawValue());
+        assertEquals(style.getIndex(), cells.get(0).getStyleIndex());
+        assertNull(cells.get(0).getFormula());
+        assertEquals(CellValueType.SHARED_STRING, cells.get(1).getType());
+        assertEquals(0, cells.get(1).getSharedStringIndex());
+        assertEquals("text", cells.get(1).getStringValue());
+        assertEquals(0, cells.get(1).getStyleIndex());
+        assertEquals(CellValueType.BOOLEAN, cells.get(2).getType());
+        assertTrue(cells.get(2).getBooleanValue());
+        assertEquals(CellValueType.ERROR, cells.get(3).getType());
+        assertEquals("#DIV/0!", cells.get(3).getErrorValue());
+        assertEquals(4, cells.get(3).getColumnIndex());
+        assertEquals("E1", cells.get(3).getReference());
+
+        r = rows.next();
+        assertEquals(2, r.getRowNum());
+        cells = r.getCells();
+        assertEquals(3, cells.size());
+        assertEquals(CellValueType.NUMBER, cells.get(0).getType());
+        assertEquals("Data!A1*2", cells.get(0).getFormula());
+        assertEquals(3.0, cells.get(0).getNumericValue(), 0.0);
+        assertEquals(CellValueType.FORMULA_STRING, cells.get(1).getType());
+        assertEquals("B1&\"!\"", cells.get(1).getFormula());
+        assertEquals("text!", cells.get(1).getStringValue());
+        assertEquals(CellValueType.BLANK, cells.get(2).getType());
+        assertNull(cells.get(2).getRawValue());
+        assertEquals(style.getIndex(), cells.get(2).getStyleIndex());
+
+        r = rows.next();
+        assertEquals(3, r.getRowNum());
+        assertEquals("text", r.getCells().get(0).getStringValue());
+        assertFalse(rows.hasNext());
+        try {
+            rows.next();
+            fail("expected NoSuchElementException");
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+        rows.close();
+
+        rows = new XSSFSheetRowReader(sheets.next(), strings);
+        assertFalse(rows.hasNext());
+        rows.close();
+        assertFalse(sheets.hasNext());
+    }
+
+    public void testInlineStrings() throws Exception {
+        XSSFSheetRowReader rows = createReader(
+                "<row r=\"1\"><c r=\"A1\" t=\"inlineStr\"><is><t>plain</t></is></c>"
+                + "<c r=\"B1\" t=\"inlineStr\"><is><r><rPr><b/></rPr><t>rich</t></r><r><t xml:space=\"preserve\"> text</t></r>"
+                + "<rPh sb=\"0\" eb=\"1\"><t>phonetic</t></rPh></is></c>"
+                + "<c r=\"C1\" t=\"inlineStr\"><is><t>&lt;escaped&amp;&gt;</t></is></c></row>");
+        List<SheetCell> cells = rows.next().getCells();
+        assertEquals(CellValueType.INLINE_STRING, cells.get(0).getType());
+        assertEquals("plain", cells.get(0).getStringValue());
+        assertEquals("rich text", cells.get(1).getStringValue());
+        assertEquals("<escaped&>", cells.get(2).getStringValue());
+        assertFalse(rows.hasNext());
+        rows.close();
+    }
+
+    public void testImpliedReferences() throws Exception {
+        XSSFSheetRowReader rows = createReader(
+                "<row><c><v>1</v></c><c><v>2</v></c><c r=\"E1\"><v>3</v></c><c><v>4</v></c></row>"
+                + "<row><c r=\"AB2\"><v>5</v></c></row><row r=\"10\"/><row/>");
+        SheetRow r = rows.next();
+        assertEquals(0, r.getRowNum());
+        assertEquals(0, r.getCells().get(0).getColumnIndex());
+        assertEquals(1, r.getCells().get(1).getColumnIndex());
+        assertEquals(4, r.getCells().get(2).getColumnIndex());
+        assertEquals(5, r.getCells().get(3).getColumnIndex());
+        r = rows.next();
+        assertEquals(1, r.getRowNum());
+        assertEquals(27, r.getCells().get(0).getColumnIndex());
+        assertEquals("AB2", r.getCells().get(0).getReference());
+        r = rows.next();
+        assertEquals(9, r.getRowNum());
+        assertTrue(r.getCells().isEmpty());
+        assertEquals(10, rows.next().getRowNum());
+        assertFalse(rows.hasNext());
+        rows.close();
+    }
+
+    public void testSharedFormulas() throws Exception {
+        XSSFSheetRowReader rows = createReader(
+                "<row r=\"1\"><c r=\"A1\"><f t=\"shared\" ref=\"A1:A2\" si=\"0\">B1+1</f><v>2</v></c></row>"
+                + "<row r=\"2\"><c r=\"A2\"><f t=\"shared\" si=\"0\"/><v>3</v></c><c r=\"B2\"><f>NOW()</f></c></row>");
+        SheetCell master = rows.next().getCells().get(0);
+        assertEquals("B1+1", master.getFormula());
+        assertEquals(CellFormulaType.SHARED, master.getFormulaType());
+        assertEquals(0, master.getSharedFormulaIndex());
+        assertEquals("A1:A2", master.getFormulaRef());
+        assertSame(master, master.getSharedFormulaMaster());
+        List<SheetCell> cells = rows.next().getCells();
+        assertEquals("", cells.get(0).getFormula());
+        assertEquals(CellFormulaType.SHARED, cells.get(0).getFormulaType());
+        assertEquals(0, cells.get(0).getSharedFormulaIndex());
+        assertNull(cells.get(0).getFormulaRef());
+        assertSame(master, cells.get(0).getSharedFormulaMaster());
+        assertEquals(3.0, cells.get(0).getNumericValue(), 0.0);
+        // no cached result
+        assertEquals("NOW()", cells.get(1).getFormula());
+        assertEquals(CellFormulaType.NORMAL, cells.get(1).getFormulaType());
+        assertEquals(-1, cells.get(1).getSharedFormulaIndex());
+        assertNull(cells.get(1).getSharedFormulaMaster());
+        assertEquals(CellValueType.BLANK, cells.get(1).getType());
+        rows.close();
+    }
+
+    public void testArrayFormulas() throws Exception {
+        XSSFSheetRowReader rows = createReader(
+                "<row r=\"1\"><c r=\"A1\"><f t=\"array\" ref=\"A1:B1\">B2:C2*2</f><v>2</v></c>"
+                + "<c r=\"B1\"><v>4</v></c></row>");
+        List<SheetCell> cells = rows.next().getCells();
+        assertEquals("B2:C2*2", cells.get(0).getFormula());
+        assertEquals(CellFormulaType.ARRAY, cells.get(0).getFormulaType());
+        assertEquals("A1:B1", cells.get(0).getFormulaRef());
+        assertNull(cells.get(0).getSharedFormulaMaster());
+        assertNull(cells.get(1).getFormulaType());
+        rows.close();
+    }
+
+    public void testDateAndUnknownTypes() throws Exception {
+        XSSFSheetRowReader rows = createReader(
+                "<row r=\"1\"><c r=\"A1\" t=\"d\"><v>2014-03-01T12:00:00</v></c>"
+                + "<c r=\"B1\" t=\"x\"><v>abc</v></c><c r=\"C1\"><f t=\"x\">NOW()</f></c></row>"
+                + "<row r=\"2\"><c r=\"A2\"><v>2</v></c></row>");
+        List<SheetCell> cells = rows.next().getCells();
+        assertEquals(CellValueType.DATE, cells.get(0).getType());
+        assertEquals("2014-03-01T12:00:00", cells.get(0).getRawValue());
+        assertEquals(CellValueType.UNKNOWN, cells.get(1).getType());
+        assertEquals("abc", cells.get(1).getRawValue());
+        assertEquals(CellFormulaType.NORMAL, cells.get(2).getFormulaType());
+        assertEquals("NOW()", cells.get(2).getFormula());
+        // the following rows are still read
+        assertEquals(2.0, rows.next().getCells().get(0).getNumericValue(), 0.0);
+        rows.close();
+    }
+
+    public void testTypeMismatch() throws Exception {
+        XSSFSheetRowReader rows = createReader("<row r=\"1\"><c r=\"A1\" t=\"s\"><v>0</v></c><c r=\"B1\"><v>1</v></c></row>");
+        List<SheetCell> cells = rows.next().getCells();
+        try {
+            cells.get(0).getNumericValue();
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("Cannot get a number value from a shared_string cell A1", e.getMessage());
+        }
+        try {
+            // no shared strings table
+            cells.get(0).getStringValue();
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            cells.get(1).getStringValue();
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        rows.close();
+    }
+}
@@ -17,6 +17,8 @@
 
 package org.apache.poi.xssf.extractor;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -25,7 +27,12 @@ import junit.framework.TestCase;
 import org.apache.poi.POITextExtractor;
 import org.apache.poi.hssf.HSSFTestDataSamples;
 import org.apache.poi.hssf.extractor.ExcelExtractor;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.xssf.XSSFTestDataSamples;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 /**
  * Tests for {@link XSSFEventBasedExcelExtractor}
@@ -240,4 +247,43 @@ public class TestXSSFEventBasedExcelExtractor extends TestCase {
         fixture.setIncludeHeadersFooters(false);
         assertEquals(expectedOutputWithoutHeadersAndFooters, fixture.getText());
     }
+
+    /**
+     * Test that we return the same output for numbers of several
+     * styles as the non-event-based XSSFExcelExtractor.
+     */
+    public void testStyledNumbersComparedToNonEventBasedExtractor()
+            throws Exception {
+        String[] formats = { "0.00", "#,##0", "0%", "0.0E+00", "yyyy-mm-dd", "General" };
+        XSSFWorkbook wb = new XSSFWorkbook();
+        CellStyle[] styles = new CellStyle[formats.length];
+        for (int i = 0; i < formats.length; i++) {
+            styles[i] = wb.createCellStyle();
+            styles[i].setDataFormat(wb.createDataFormat().getFormat(formats[i]));
+        }
+        Sheet sheet = wb.createSheet("Numbers");
+        for (int r = 0; r < 20; r++) {
+            Row row = sheet.createRow(r);
+            for (int c = 0; c < formats.length; c++) {
+                row.createCell(c).setCellValue(r * 1234.5678 + c);
+                // reuse the styles in another order on each row
+                row.getCell(c).setCellStyle(styles[(r + c) % formats.length]);
+            }
+            row.createCell(formats.length).setCellValue(r / 3.0);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        wb.write(out);
+
+        XSSFExcelExtractor extractor = new XSSFExcelExtractor(wb);
+        String expectedOutput = extractor.getText();
+        extractor.close();
+
+        XSSFEventBasedExcelExtractor fixture = new XSSFEventBasedExcelExtractor(
+                OPCPackage.open(new ByteArrayInputStream(out.toByteArray())));
+        try {
+            assertEquals(expectedOutput, fixture.getText());
+        } finally {
+            fixture.close();
+        }
+    }
 }
@@ -21,7 +21,13 @@ import junit.framework.TestCase;
 
 import org.apache.poi.xssf.XSSFTestDataSamples;
 import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFFont;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.usermodel.extensions.XSSFCellBorder;
+import org.apache.poi.xssf.usermodel.extensions.XSSFCellFill;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTBorder;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTFill;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTFont;
 
 public final class TestStylesTable extends TestCase {
 	private String testFile = "Formatting.xlsx";
@@ -158,4 +164,66 @@ public final class TestStylesTable extends TestCase {
         
         assertNotNull(XSSFTestDataSamples.writeOutAndReadBack(workbook));
 	}
+
+	public void testPutReusesRegisteredEntries() {
+		XSSFWorkbook wb = new XSSFWorkbook();
+		StylesTable st = wb.getStylesSource();
+
+		// fonts, fills and borders are matched by content
+		XSSFFont font = new XSSFFont(CTFont.Factory.newInstance());
+		font.setBold(true);
+		int fontIdx = st.putFont(font);
+		XSSFFont sameFont = new XSSFFont(CTFont.Factory.newInstance());
+		sameFont.setBold(true);
+		assertEquals(fontIdx, st.putFont(sameFont));
+		assertEquals(fontIdx + 1, st.putFont(sameFont, true));
+		assertEquals(fontIdx, st.putFont(sameFont));
+
+		XSSFCellFill fill = new XSSFCellFill(CTFill.Factory.newInstance());
+		int fillIdx = st.putFill(fill);
+		assertEquals(fillIdx, st.putFill(new XSSFCellFill(CTFill.Factory.newInstance())));
+
+		XSSFCellBorder border = new XSSFCellBorder(CTBorder.Factory.newInstance());
+		int borderIdx = st.putBorder(border);
+		assertEquals(borderIdx, st.putBorder(new XSSFCellBorder(CTBorder.Factory.newInstance())));
+
+		// a font modified after registration is not matched by its old content
+		XSSFFont italic = wb.createFont();
+		int italicIdx = italic.getIndex();
+		italic.setItalic(true);
+		XSSFFont plain = new XSSFFont(CTFont.Factory.newInstance());
+		plain.setFontName(XSSFFont.DEFAULT_FONT_NAME);
+		plain.setFontHeight((double)XSSFFont.DEFAULT_FONT_SIZE);
+		int plainIdx = st.putFont(plain);
+		assertTrue(italicIdx != plainIdx);
+		assertFalse(st.getFontAt(plainIdx).getItalic());
+
+		// cell styles are matched by identity
+		XSSFCellStyle style = wb.createCellStyle();
+		int styleIdx = st.putStyle(style);
+		assertEquals(style.getIndex(), styleIdx);
+		XSSFCellStyle otherStyle = wb.createCellStyle();
+		assertEquals(styleIdx + 1, st.putStyle(otherStyle));
+		assertEquals(styleIdx, st.putStyle(style));
+	}
+
+	public void testPutFontMatchesChangedFont() {
+		XSSFWorkbook wb = new XSSFWorkbook();
+		StylesTable st = wb.getStylesSource();
+
+		XSSFFont font = wb.createFont();
+		font.setBold(true);
+		font.setFontHeightInPoints((short) 17);
+		int nFonts = st.getFonts().size();
+
+		// equal to the font as it is now, not as it was registered
+		XSSFFont same = new XSSFFont(CTFont.Factory.newInstance());
+		same.setFontName(XSSFFont.DEFAULT_FONT_NAME);
+		same.setFontHeightInPoints((short) 17);
+		same.setBold(true);
+		assertEquals(font, same);
+		assertEquals(font.getIndex(), st.putFont(same));
+		assertEquals(font.getIndex(), st.putFont(same));
+		assertEquals(nFonts, st.getFonts().size());
+	}
 }
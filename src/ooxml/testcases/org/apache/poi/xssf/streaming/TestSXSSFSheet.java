@@ -20,9 +20,14 @@
 package org.apache.poi.xssf.streaming;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
+import java.util.Iterator;
+
 import org.apache.poi.ss.usermodel.BaseTestSheet;
+import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.xssf.SXSSFITestDataProvider;
@@ -131,4 +136,48 @@ public class TestSXSSFSheet extends BaseTestSheet {
         sheet.createRow(2);
 
     }
+
+    @Test
+    public void rowWindowOutOfOrder() throws Exception {
+        SXSSFWorkbook wb = new SXSSFWorkbook(5);
+        SXSSFSheet sheet = (SXSSFSheet) wb.createSheet();
+
+        // appended rows, enough to wrap around the window
+        for (int i = 0; i < 40; i += 2) {
+            sheet.createRow(i);
+        }
+        assertEquals(30, sheet.getRow(30).getRowNum());
+        assertEquals(38, sheet.getLastRowNum());
+        assertNull(sheet.getRow(28));
+        assertNull(sheet.getRow(31));
+
+        // rows created in the gaps and in front of the window
+        Row r35 = sheet.createRow(35);
+        Row r33 = sheet.createRow(33);
+        assertNull(sheet.getRow(30));
+        assertSame(r35, sheet.getRow(35));
+        assertEquals(33, r33.getRowNum());
+
+        int[] expected = {33, 34, 35, 36};
+        Row r36 = sheet.getRow(36);
+        Row r38 = sheet.getRow(38);
+        sheet.removeRow(r38);
+        assertEquals(-1, r38.getRowNum());
+        int i = 0;
+        for (Iterator<Row> it = sheet.rowIterator(); it.hasNext(); ) {
+            assertEquals(expected[i++], it.next().getRowNum());
+        }
+        assertEquals(expected.length, i);
+
+        r36.setRowNum(37);
+        assertNull(sheet.getRow(36));
+        assertSame(r36, sheet.getRow(37));
+        assertEquals(37, sheet.getLastRowNum());
+
+        sheet.flushRows();
+        assertEquals(-1, r35.getRowNum());
+        assertEquals(0, sheet.getLastRowNum());
+
+        wb.dispose();
+    }
 }
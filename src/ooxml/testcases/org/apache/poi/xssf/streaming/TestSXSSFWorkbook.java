@@ -26,18 +26,28 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.apache.poi.ss.usermodel.BaseTestWorkbook;
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.FormulaError;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.WorkbookFactory;
 import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.TempFile;
 import org.apache.poi.xssf.SXSSFITestDataProvider;
 import org.apache.poi.xssf.model.SharedStringsTable;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
@@ -141,6 +151,145 @@ public final class TestSXSSFWorkbook extends BaseTestWorkbook {
         assertEquals("A", cell.getStringCellValue());
     }
 
+    @Test
+    public void useTempFileSharedStringsTable() throws Exception {
+        XSSFWorkbook template = new XSSFWorkbook();
+        Row templateRow = template.createSheet("S1").createRow(0);
+        templateRow.createCell(0).setCellValue("T");
+        templateRow.createCell(1).setCellValue(" with spaces ");
+
+        // a tiny index, so that evicted strings are stored again
+        TempFileSharedStringsTable sst = new TempFileSharedStringsTable(2);
+        SXSSFWorkbook wb = new SXSSFWorkbook(template, 10, false, sst);
+        assertEquals(2, sst.getUniqueCount());
+
+        Sheet sheet = wb.getSheet("S1");
+        for (int i = 1; i < 50; i++) {
+            Row row = sheet.createRow(i);
+            row.createCell(0).setCellValue("A");
+            row.createCell(1).setCellValue("B" + i);
+            row.createCell(2).setCellValue("<&> \"" + (i % 5) + "\"");
+        }
+
+        XSSFWorkbook xssfWorkbook = (XSSFWorkbook) SXSSFITestDataProvider.instance.writeOutAndReadBack(wb);
+        assertTrue(wb.dispose());
+        // strings are added as the rows are flushed
+        assertTrue(sst.getUniqueCount() < 2 + 3*49);
+        assertEquals(2 + 3*49, sst.getCount());
+        assertEquals(sst.getUniqueCount(), xssfWorkbook.getSharedStringSource().getUniqueCount());
+
+        Sheet sheet1 = xssfWorkbook.getSheetAt(0);
+        assertEquals("T", sheet1.getRow(0).getCell(0).getStringCellValue());
+        assertEquals(" with spaces ", sheet1.getRow(0).getCell(1).getStringCellValue());
+        for (int i = 1; i < 50; i++) {
+            Row row = sheet1.getRow(i);
+            assertEquals("A", row.getCell(0).getStringCellValue());
+            assertEquals("B" + i, row.getCell(1).getStringCellValue());
+            assertEquals("<&> \"" + (i % 5) + "\"", row.getCell(2).getStringCellValue());
+        }
+    }
+
+    @Test
+    public void useUTF8SheetDataWriter() throws Exception {
+        String[] strings = {"plain", " with spaces ", "<&>\"'", "line\nbreak\ttab", "\u00e9\u00a0\u20ac\u4e2d", "bad\u0001\ud800"};
+        String[] expectedStrings = {"plain", " with spaces ", "<&>\"'", "line\nbreak\ttab", "\u00e9\u00a0\u20ac\u4e2d", "bad??"};
+        double[] numbers = {0, 5, -3, 0.1, 1.0/3, 1e20, -1e-20, 123456789012345.0, -0.0};
+
+        for (boolean useSharedStringsTable : new boolean[]{false, true}) {
+            SXSSFWorkbook wb = new SXSSFWorkbook(null, 2, false, useSharedStringsTable);
+            wb.setUseUTF8SheetDataWriter(true);
+            Sheet sheet = wb.createSheet();
+            assertTrue(((SXSSFSheet)sheet)._writer instanceof UTF8SheetDataWriter);
+
+            for (int i = 0; i < numbers.length; i++) {
+                Row row = sheet.createRow(i * 3);
+                row.createCell(0).setCellValue(numbers[i]);
+                row.createCell(27).setCellValue(strings[i % strings.length]);
+                row.createCell(16383).setCellValue(i % 2 == 0);
+                row.createCell(5).setCellFormula("A" + (i * 3 + 1) + "*2");
+                row.createCell(6).setCellErrorValue(FormulaError.DIV0.getCode());
+                row.createCell(7);
+            }
+
+            XSSFWorkbook xssfWorkbook = (XSSFWorkbook) SXSSFITestDataProvider.instance.writeOutAndReadBack(wb);
+            assertTrue(wb.dispose());
+            Sheet sheet1 = xssfWorkbook.getSheetAt(0);
+            for (int i = 0; i < numbers.length; i++) {
+                Row row = sheet1.getRow(i * 3);
+                assertEquals(numbers[i], row.getCell(0).getNumericCellValue(), 0);
+                assertEquals("AB" + (i * 3 + 1), new CellReference(row.getCell(27)).formatAsString());
+                assertEquals(expectedStrings[i % strings.length], row.getCell(27).getStringCellValue());
+                assertEquals(i % 2 == 0, row.getCell(16383).getBooleanCellValue());
+                assertEquals("XFD" + (i * 3 + 1), new CellReference(row.getCell(16383)).formatAsString());
+                assertEquals("A" + (i * 3 + 1) + "*2", row.getCell(5).getCellFormula());
+                assertEquals(FormulaError.DIV0.getCode(), row.getCell(6).getErrorCellValue());
+                assertEquals(Cell.CELL_TYPE_BLANK, row.getCell(7).getCellType());
+            }
+        }
+    }
+
+    @Test
+    public void writeWithExecutor() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            SXSSFWorkbook wb = new SXSSFWorkbook(null, 10, false, new TempFileSharedStringsTable());
+            wb.setWriteExecutor(executor);
+            for (int s = 0; s < 5; s++) {
+                Sheet sheet = wb.createSheet("S" + s);
+                for (int i = 0; i < 100; i++) {
+                    Row row = sheet.createRow(i);
+                    row.createCell(0).setCellValue(s * 1000 + i);
+                    row.createCell(1).setCellValue("Sheet " + s + " row " + (i % 10));
+                }
+            }
+
+            File file = TempFile.createTempFile("TestSXSSFWorkbook", ".xlsx");
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                wb.write(out);
+            } finally {
+                out.close();
+            }
+
+            // the entries are the ones of a sequentially written workbook
+            ZipFile zip = new ZipFile(file);
+            List<String> names = new ArrayList<String>();
+            try {
+                for (Enumeration<? extends ZipEntry> en = zip.entries(); en.hasMoreElements(); ) {
+                    names.add(en.nextElement().getName());
+                }
+            } finally {
+                zip.close();
+            }
+            assertTrue(names.contains("xl/worksheets/sheet5.xml"));
+            assertTrue(names.contains("xl/sharedStrings.xml"));
+
+            assertTrue(wb.dispose());
+
+            // read through the local file headers
+            FileInputStream in = new FileInputStream(file);
+            XSSFWorkbook xssfWorkbook;
+            try {
+                xssfWorkbook = new XSSFWorkbook(in);
+            } finally {
+                in.close();
+            }
+            assertEquals(5, xssfWorkbook.getNumberOfSheets());
+            for (int s = 0; s < 5; s++) {
+                Sheet sheet = xssfWorkbook.getSheet("S" + s);
+                assertEquals(99, sheet.getLastRowNum());
+                for (int i = 0; i < 100; i++) {
+                    Row row = sheet.getRow(i);
+                    assertEquals(s * 1000 + i, row.getCell(0).getNumericCellValue(), 0);
+                    assertEquals("Sheet " + s + " row " + (i % 10), row.getCell(1).getStringCellValue());
+                }
+            }
+            assertTrue(file.delete());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     public void addToExistingWorkbook() {
     	XSSFWorkbook xssfWorkbook = new XSSFWorkbook();
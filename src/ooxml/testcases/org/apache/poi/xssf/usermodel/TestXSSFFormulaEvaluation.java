@@ -17,6 +17,13 @@
 
 package org.apache.poi.xssf.usermodel;
 
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.poi.ss.formula.eval.ErrorEval;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.formula.ptg.RefPtg;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellReference;
 import org.apache.poi.xssf.XSSFITestDataProvider;
@@ -86,4 +93,163 @@ public final class TestXSSFFormulaEvaluation extends BaseTestFormulaEvaluator {
         }
 
     }
+
+    /**
+     * Formula tokens are parsed once and re-parsed only after a change that affects them
+     */
+    public void testFormulaTokensCache() {
+        XSSFWorkbook wb = new XSSFWorkbook();
+        XSSFSheet sheet = wb.createSheet("Sheet1");
+        XSSFRow row = sheet.createRow(0);
+        row.createCell(0).setCellValue(2.0);
+        row.createCell(1).setCellValue(3.0);
+        XSSFCell cell = row.createCell(2);
+        cell.setCellFormula("A1*B1");
+
+        XSSFEvaluationWorkbook fpb = XSSFEvaluationWorkbook.create(wb);
+        XSSFEvaluationCell evalCell = new XSSFEvaluationCell(cell);
+        Ptg[] ptgs = fpb.getFormulaTokens(evalCell);
+        assertSame(ptgs, fpb.getFormulaTokens(evalCell));
+        assertSame(ptgs, XSSFEvaluationWorkbook.create(wb).getFormulaTokens(evalCell));
+
+        FormulaEvaluator evaluator = wb.getCreationHelper().createFormulaEvaluator();
+        assertEquals(6.0, evaluator.evaluate(cell).getNumberValue());
+
+        // changing the formula discards the cached tokens
+        cell.setCellFormula("A1+B1");
+        Ptg[] ptgs2 = fpb.getFormulaTokens(evalCell);
+        assertNotSame(ptgs, ptgs2);
+        evaluator.notifyUpdateCell(cell);
+        assertEquals(5.0, evaluator.evaluate(cell).getNumberValue());
+
+        // shifting rows rewrites formulas
+        sheet.shiftRows(0, 0, 1);
+        assertEquals("A2+B2", cell.getCellFormula());
+        Ptg[] ptgs3 = fpb.getFormulaTokens(evalCell);
+        assertNotSame(ptgs2, ptgs3);
+        assertEquals(1, ((RefPtg)ptgs3[0]).getRow());
+        evaluator.clearAllCachedResultValues();
+        assertEquals(5.0, evaluator.evaluate(cell).getNumberValue());
+
+        // renaming a sheet discards all cached tokens
+        wb.setSheetName(0, "Renamed");
+        assertNotSame(ptgs3, fpb.getFormulaTokens(evalCell));
+
+        // removing the formula discards the cached tokens
+        cell.setCellType(Cell.CELL_TYPE_NUMERIC);
+        try {
+            fpb.getFormulaTokens(evalCell);
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testFormulaTokensCache_sharedFormulas() {
+        XSSFWorkbook wb = (XSSFWorkbook)_testDataProvider.openSampleWorkbook("49872.xlsx");
+        XSSFSheet sheet = wb.getSheetAt(0);
+        XSSFEvaluationWorkbook fpb = XSSFEvaluationWorkbook.create(wb);
+
+        // C3 and D3 are dependents of the shared formula B1+B2 in B3
+        XSSFCell c3 = sheet.getRow(2).getCell(2);
+        XSSFCell d3 = sheet.getRow(2).getCell(3);
+        Ptg[] c3Ptgs = fpb.getFormulaTokens(new XSSFEvaluationCell(c3));
+        Ptg[] d3Ptgs = fpb.getFormulaTokens(new XSSFEvaluationCell(d3));
+        assertEquals(2, ((RefPtg)c3Ptgs[0]).getColumn());
+        assertEquals(3, ((RefPtg)d3Ptgs[0]).getColumn());
+        assertSame(c3Ptgs, fpb.getFormulaTokens(new XSSFEvaluationCell(c3)));
+        assertEquals("C1+C2", c3.getCellFormula());
+        assertEquals("D1+D2", d3.getCellFormula());
+    }
+
+    public void testEvaluateAllParallel() {
+        XSSFWorkbook wb = new XSSFWorkbook();
+        XSSFSheet sheet = wb.createSheet("Sheet1");
+        XSSFSheet other = wb.createSheet("Sheet2");
+        for (int r = 0; r < 500; r++) {
+            int n = r + 1;
+            XSSFRow row = sheet.createRow(r);
+            row.createCell(0).setCellValue(r % 13);
+            row.createCell(1).setCellFormula("A" + n + "*3");
+            row.createCell(2).setCellFormula(r == 0 ? "B1" : "C" + r + "+B" + n);
+            row.createCell(3).setCellFormula("IF(C" + n + ">1000,\"large\",\"small\")");
+            other.createRow(r).createCell(0).setCellFormula("SUM(Sheet1!$B$1:B" + n + ")-Sheet1!C" + n);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            wb.getCreationHelper().createFormulaEvaluator().evaluateAll(executor);
+        } finally {
+            executor.shutdown();
+        }
+        for (int r = 0; r < 500; r++) {
+            XSSFRow row = sheet.getRow(r);
+            int total = 0;
+            for (int i = 0; i <= r; i++) {
+                total += (i % 13) * 3;
+            }
+            assertEquals((r % 13) * 3.0, row.getCell(1).getNumericCellValue());
+            assertEquals((double) total, row.getCell(2).getNumericCellValue());
+            assertEquals(total > 1000 ? "large" : "small", row.getCell(3).getStringCellValue());
+            assertEquals(0.0, other.getRow(r).getCell(0).getNumericCellValue());
+        }
+    }
+
+    public void testSheetSnapshots() {
+        XSSFWorkbook wb = new XSSFWorkbook();
+        XSSFSheet sheet = wb.createSheet("Sheet1");
+        for (int r = 0; r < 2000; r++) {
+            XSSFRow row = sheet.createRow(r);
+            row.createCell(0).setCellValue(r);
+            row.createCell(1).setCellValue("Key " + r);
+        }
+        XSSFCell sum = sheet.getRow(0).createCell(2);
+        sum.setCellFormula("SUM(A1:A2000)");
+        XSSFCell lookup = sheet.getRow(0).createCell(3);
+        lookup.setCellFormula("MATCH(\"key 1500\",B1:B2000,0)");
+
+        XSSFFormulaEvaluator evaluator = new XSSFFormulaEvaluator(wb);
+        evaluator.setUseSheetSnapshots(true);
+        assertEquals(1999000.0, evaluator.evaluate(sum).getNumberValue());
+        assertEquals(1501.0, evaluator.evaluate(lookup).getNumberValue());
+
+        XSSFCell cell = sheet.getRow(1500).getCell(1);
+        cell.setCellValue("Other");
+        evaluator.notifyUpdateCell(cell);
+        cell = sheet.getRow(1999).getCell(0);
+        cell.setCellValue(1);
+        evaluator.notifyUpdateCell(cell);
+        assertEquals(1997002.0, evaluator.evaluate(sum).getNumberValue());
+        assertEquals(ErrorEval.NA.getErrorCode(), evaluator.evaluate(lookup).getErrorValue());
+    }
+
+    public void testRecalculateDirtyCells() {
+        XSSFWorkbook wb = new XSSFWorkbook();
+        XSSFSheet sheet = wb.createSheet("Sheet1");
+        XSSFRow row = sheet.createRow(0);
+        XSSFCell input = row.createCell(0);
+        input.setCellValue(2);
+        XSSFCell price = row.createCell(1);
+        price.setCellFormula("A1*10");
+        XSSFCell total = row.createCell(2);
+        total.setCellFormula("B1+A2");
+        XSSFCell other = row.createCell(3);
+        other.setCellFormula("A2*2");
+
+        XSSFFormulaEvaluator evaluator = new XSSFFormulaEvaluator(wb);
+        evaluator.evaluateAll();
+        evaluator.evaluate(price);
+        evaluator.evaluate(total);
+        evaluator.evaluate(other);
+        assertTrue(evaluator.recalculateDirtyCells().isEmpty());
+
+        input.setCellValue(3);
+        evaluator.notifyUpdateCell(input);
+        List<Cell> changed = evaluator.recalculateDirtyCells();
+        assertEquals(2, changed.size());
+        assertTrue(changed.contains(price));
+        assertTrue(changed.contains(total));
+        assertEquals(30.0, price.getNumericCellValue());
+        assertEquals(30.0, total.getNumericCellValue());
+    }
 }
@@ -32,6 +32,7 @@ public class AllEventUserModelTests {
 		result.addTestSuite(TestEventWorkbookBuilder.class);
 		result.addTestSuite(TestFormatTrackingHSSFListener.class);
 		result.addTestSuite(TestHSSFEventFactory.class);
+		result.addTestSuite(TestHSSFRandomAccessReader.class);
 		result.addTestSuite(TestMissingRecordAwareHSSFListener.class);
 		return result;
 	}
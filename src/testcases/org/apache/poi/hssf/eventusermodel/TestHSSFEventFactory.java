@@ -16,13 +16,22 @@
 ==================================================================== */
 
 package org.apache.poi.hssf.eventusermodel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import junit.framework.TestCase;
 
+import org.apache.poi.EncryptedDocumentException;
 import org.apache.poi.hssf.HSSFTestDataSamples;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
 import org.apache.poi.hssf.record.ContinueRecord;
 import org.apache.poi.hssf.record.DVALRecord;
 import org.apache.poi.hssf.record.DVRecord;
@@ -31,6 +40,9 @@ import org.apache.poi.hssf.record.FeatHdrRecord;
 import org.apache.poi.hssf.record.Record;
 import org.apache.poi.hssf.record.SelectionRecord;
 import org.apache.poi.hssf.record.WindowTwoRecord;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.poifs.filesystem.POIFSFileSystem;
 /**
  * 
@@ -111,6 +123,165 @@ public final class TestHSSFEventFactory extends TestCase {
 		assertTrue("no errors while processing the file", true);
 	}
 
+	public void testParallelSheets() throws Exception {
+		HSSFWorkbook wb = new HSSFWorkbook();
+		for (int s = 0; s < 6; s++) {
+			HSSFSheet sheet = wb.createSheet("Sheet " + s);
+			for (int r = 0; r < 200 * s; r++) {
+				HSSFRow row = sheet.createRow(r);
+				row.createCell(0).setCellValue(r * 1.5);
+				row.createCell(1).setCellValue("text " + (r % 50));
+				row.createCell(2).setCellFormula("A" + (r + 1) + "*2");
+			}
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		wb.write(out);
+		confirmParallelSameAsSequential(new POIFSFileSystem(new ByteArrayInputStream(out.toByteArray())));
+
+		// with embedded charts, which have nested BOF/EOF records
+		confirmParallelSameAsSequential(new POIFSFileSystem(openSample("SimpleChart.xls")));
+		confirmParallelSameAsSequential(new POIFSFileSystem(openSample("WithThreeCharts.xls")));
+		confirmParallelSameAsSequential(new POIFSFileSystem(openSample("ContinueRecordProblem.xls")));
+	}
+
+	private static void confirmParallelSameAsSequential(POIFSFileSystem fs) throws Exception {
+		// the records of each sheet, split by the BOF records of the top level
+		HSSFRequest req = new HSSFRequest();
+		MockHSSFListener mockListen = new MockHSSFListener();
+		req.addListenerForAllRecords(mockListen);
+		new HSSFEventFactory().processWorkbookEvents(req, fs);
+		List<List<String>> expected = new ArrayList<List<String>>();
+		int bofDepth = 0;
+		for (Record r : mockListen.getRecords()) {
+			if (r instanceof BOFRecord && bofDepth++ == 0) {
+				expected.add(new ArrayList<String>());
+			} else if (r instanceof EOFRecord) {
+				bofDepth--;
+			}
+			expected.get(expected.size() - 1).add(r.toString());
+		}
+		List<String> expectedGlobals = expected.remove(0);
+
+		final List<MockHSSFListener> sheetListeners = new ArrayList<MockHSSFListener>();
+		MockHSSFListener globalsListener = new MockHSSFListener();
+		req = new HSSFRequest();
+		req.addListenerForAllRecords(globalsListener);
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			new HSSFEventFactory().processWorkbookEvents(req, new HSSFEventFactory.SheetRequestFactory() {
+				public HSSFRequest createSheetRequest(int sheetIndex, BoundSheetRecord sheet) {
+					assertEquals(sheetListeners.size(), sheetIndex);
+					HSSFRequest result = new HSSFRequest();
+					MockHSSFListener listener = new MockHSSFListener();
+					result.addListenerForAllRecords(listener);
+					sheetListeners.add(listener);
+					return result;
+				}
+			}, fs.getRoot(), executor);
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(expectedGlobals, toStrings(globalsListener.getRecords()));
+		assertEquals(expected.size(), sheetListeners.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i), toStrings(sheetListeners.get(i).getRecords()));
+		}
+	}
+
+	private static List<String> toStrings(Record[] records) {
+		List<String> result = new ArrayList<String>();
+		for (Record r : records) {
+			result.add(r.toString());
+		}
+		return result;
+	}
+
+	public void testParallelSheetsFailure() throws Exception {
+		POIFSFileSystem fs = new POIFSFileSystem(openSample("ContinueRecordProblem.xls"));
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			new HSSFEventFactory().processWorkbookEvents(new HSSFRequest(), new HSSFEventFactory.SheetRequestFactory() {
+				public HSSFRequest createSheetRequest(int sheetIndex, BoundSheetRecord sheet) {
+					HSSFRequest result = new HSSFRequest();
+					result.addListener(new HSSFListener() {
+						public void processRecord(Record record) {
+							throw new IllegalStateException("failed");
+						}
+					}, BOFRecord.sid);
+					return result;
+				}
+			}, fs.getRoot(), executor);
+			fail("expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			assertEquals("failed", e.getMessage());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * The sheets already being processed are finished when a sheet request fails
+	 */
+	public void testParallelSheetsRequestFailure() throws Exception {
+		HSSFWorkbook wb = new HSSFWorkbook();
+		wb.createSheet("Sheet 0").createRow(0).createCell(0).setCellValue(1);
+		wb.createSheet("Sheet 1").createRow(0).createCell(0).setCellValue(2);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		wb.write(out);
+		POIFSFileSystem fs = new POIFSFileSystem(new ByteArrayInputStream(out.toByteArray()));
+
+		final CountDownLatch started = new CountDownLatch(1);
+		final AtomicBoolean finished = new AtomicBoolean();
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			new HSSFEventFactory().processWorkbookEvents(new HSSFRequest(), new HSSFEventFactory.SheetRequestFactory() {
+				public HSSFRequest createSheetRequest(int sheetIndex, BoundSheetRecord sheet) {
+					if (sheetIndex > 0) {
+						try {
+							started.await();
+						} catch (InterruptedException e) {
+							throw new RuntimeException(e);
+						}
+						throw new IllegalStateException("failed");
+					}
+					HSSFRequest result = new HSSFRequest();
+					result.addListener(new HSSFListener() {
+						public void processRecord(Record record) {
+							started.countDown();
+							try {
+								Thread.sleep(200);
+							} catch (InterruptedException e) {
+								throw new RuntimeException(e);
+							}
+							finished.set(true);
+						}
+					}, EOFRecord.sid);
+					return result;
+				}
+			}, fs.getRoot(), executor);
+			fail("expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			assertEquals("failed", e.getMessage());
+			assertTrue(finished.get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public void testParallelSheetsEncrypted() throws Exception {
+		POIFSFileSystem fs = new POIFSFileSystem(openSample("xor-encryption-abc.xls"));
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			new HSSFEventFactory().processWorkbookEvents(new HSSFRequest(), null, fs.getRoot(), executor);
+			fail("expected EncryptedDocumentException");
+		} catch (EncryptedDocumentException e) {
+			// expected
+		} finally {
+			executor.shutdown();
+		}
+	}
+
 	private static class MockHSSFListener implements HSSFListener {
 		private final List<Record> records = new ArrayList<Record>();
 
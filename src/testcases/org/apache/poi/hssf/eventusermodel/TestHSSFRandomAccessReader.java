@@ -0,0 +1,293 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.hssf.eventusermodel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.EncryptedDocumentException;
+import org.apache.poi.hssf.HSSFTestDataSamples;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RowRecord;
+import org.apache.poi.hssf.record.SharedValueRecordBase;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.hssf.usermodel.HSSFCellStyle;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.DirectoryNode;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+
+/**
+ * Tests {@link HSSFRandomAccessReader}
+ */
+public final class TestHSSFRandomAccessReader extends TestCase {
+
+	private static final class RecordCollector implements HSSFListener {
+		private final List<Record> _records = new ArrayList<Record>();
+
+		public void processRecord(Record record) {
+			_records.add(record);
+		}
+
+		public List<Record> getRecords() {
+			return _records;
+		}
+	}
+
+	private static HSSFRequest createRequest(RecordCollector collector) {
+		HSSFRequest req = new HSSFRequest();
+		req.addListenerForAllRecords(collector);
+		return req;
+	}
+
+	/**
+	 * A workbook with a small sheet, a large sheet with gaps, strings, formulas with string
+	 * results and runs of blank cells, and an empty sheet
+	 */
+	private static byte[] createWorkbook() throws IOException {
+		HSSFWorkbook wb = new HSSFWorkbook();
+		HSSFSheet small = wb.createSheet("Small");
+		for (int r = 0; r < 5; r++) {
+			small.createRow(r).createCell(0).setCellValue(r);
+		}
+		HSSFSheet data = wb.createSheet("Data");
+		HSSFCellStyle style = wb.createCellStyle();
+		for (int r = 0; r < 3000; r++) {
+			if (r % 7 == 3) {
+				continue;
+			}
+			HSSFRow row = data.createRow(r);
+			row.createCell(0).setCellValue(r);
+			row.createCell(1).setCellValue("Text " + (r % 50));
+			if (r % 3 == 0) {
+				row.createCell(2).setCellFormula("\"F\"&A" + (r + 1));
+				row.getCell(2).setCellValue("F" + r);
+			}
+			if (r % 5 == 0) {
+				row.createCell(3).setCellStyle(style);
+				row.createCell(4).setCellStyle(style);
+			}
+		}
+		wb.createSheet("Empty");
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		wb.write(out);
+		return out.toByteArray();
+	}
+
+	private static DirectoryNode[] openBoth(byte[] data) throws IOException {
+		return new DirectoryNode[] {
+			new POIFSFileSystem(new ByteArrayInputStream(data)).getRoot(),
+			new NPOIFSFileSystem(new ByteArrayInputStream(data)).getRoot(),
+		};
+	}
+
+	/**
+	 * @return the records of the sheet, read from the start of the stream
+	 */
+	private static List<Record> readSheetSequentially(DirectoryNode dir, int sheetIndex) throws IOException {
+		RecordCollector collector = new RecordCollector();
+		new HSSFEventFactory().processWorkbookEvents(createRequest(collector), dir);
+		List<Record> result = new ArrayList<Record>();
+		int substream = -1;
+		int bofDepth = 0;
+		for (Record r : collector.getRecords()) {
+			if (r instanceof BOFRecord && bofDepth++ == 0) {
+				substream++;
+			}
+			if (substream == sheetIndex + 1) {
+				result.add(r);
+			}
+			if (r instanceof EOFRecord) {
+				bofDepth--;
+			}
+		}
+		return result;
+	}
+
+	private static int getRow(Record r) {
+		if (r instanceof RowRecord) {
+			return ((RowRecord) r).getRowNumber();
+		}
+		if (r instanceof CellValueRecordInterface) {
+			return ((CellValueRecordInterface) r).getRow();
+		}
+		if (r instanceof MulBlankRecord) {
+			return ((MulBlankRecord) r).getRow();
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the row and cell records of the rows in the range, with the records of their formulas
+	 */
+	private static List<String> filterRows(List<Record> records, int firstRow, int lastRow) {
+		List<String> result = new ArrayList<String>();
+		boolean inRange = false;
+		for (Record r : records) {
+			int row = getRow(r);
+			if (row >= 0) {
+				inRange = row >= firstRow && row <= lastRow;
+				if (inRange) {
+					result.add(r.toString());
+				}
+			} else if (inRange && (r instanceof StringRecord || r instanceof SharedValueRecordBase)) {
+				result.add(r.toString());
+			}
+		}
+		return result;
+	}
+
+	private static List<String> toStrings(List<Record> records) {
+		List<String> result = new ArrayList<String>();
+		for (Record r : records) {
+			result.add(r.toString());
+		}
+		return result;
+	}
+
+	private static void confirmRows(HSSFRandomAccessReader reader, List<Record> sheetRecords,
+			int sheetIndex, int firstRow, int lastRow) throws Exception {
+		RecordCollector collector = new RecordCollector();
+		assertEquals(0, reader.processRowEvents(createRequest(collector), sheetIndex, firstRow, lastRow));
+		assertEquals("rows " + firstRow + ".." + lastRow, filterRows(sheetRecords, firstRow, lastRow),
+				toStrings(collector.getRecords()));
+	}
+
+	public void testRowRanges() throws Exception {
+		byte[] data = createWorkbook();
+		for (DirectoryNode dir : openBoth(data)) {
+			List<Record> sheetRecords = readSheetSequentially(dir, 1);
+			HSSFRandomAccessReader reader = new HSSFRandomAccessReader(dir);
+			assertEquals(3, reader.getSheets().size());
+			assertEquals("Data", reader.getSheets().get(1).getSheetname());
+			assertNotNull(reader.getSSTRecord());
+
+			int[][] ranges = {
+				{ 0, 0 }, { 0, 31 }, { 31, 32 }, { 500, 600 }, { 2990, 5000 }, { 1700, 1700 },
+				{ 3, 3 }, { 1000, 999999 }, { 2999, 2999 }, { 3000, 4000 }, { 0, 65535 },
+			};
+			// in random order, so that the reader seeks backwards as well
+			for (int i = ranges.length - 1; i >= 0; i--) {
+				confirmRows(reader, sheetRecords, 1, ranges[i][0], ranges[i][1]);
+			}
+			for (int[] range : ranges) {
+				confirmRows(reader, sheetRecords, 1, range[0], range[1]);
+			}
+
+			RecordCollector collector = new RecordCollector();
+			reader.processRowEvents(createRequest(collector), 1, 500, 600);
+			int rows = 0;
+			for (Record r : collector.getRecords()) {
+				if (r instanceof RowRecord) {
+					rows++;
+				}
+				int row = getRow(r);
+				assertTrue(row < 0 || (row >= 500 && row <= 600));
+			}
+			// without the rows 500, 507, ... 598
+			assertEquals(101 - 15, rows);
+
+			confirmRows(reader, readSheetSequentially(dir, 0), 0, 1, 3);
+			confirmRows(reader, readSheetSequentially(dir, 2), 2, 0, 10);
+			reader.close();
+		}
+	}
+
+	public void testSheetEvents() throws Exception {
+		byte[] data = createWorkbook();
+		for (DirectoryNode dir : openBoth(data)) {
+			HSSFRandomAccessReader reader = new HSSFRandomAccessReader(dir);
+			for (int i = 2; i >= 0; i--) {
+				RecordCollector collector = new RecordCollector();
+				reader.processSheetEvents(createRequest(collector), i);
+				assertEquals(toStrings(readSheetSequentially(dir, i)), toStrings(collector.getRecords()));
+			}
+
+			RecordCollector collector = new RecordCollector();
+			reader.processGlobalEvents(createRequest(collector));
+			assertEquals(toStrings(readSheetSequentially(dir, -1)), toStrings(collector.getRecords()));
+
+			try {
+				reader.processSheetEvents(createRequest(collector), 3);
+				fail("expected IllegalArgumentException");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+			reader.close();
+		}
+	}
+
+	public void testUserCode() throws Exception {
+		DirectoryNode dir = new NPOIFSFileSystem(new ByteArrayInputStream(createWorkbook())).getRoot();
+		HSSFRandomAccessReader reader = new HSSFRandomAccessReader(dir);
+		final List<Record> records = new ArrayList<Record>();
+		HSSFRequest req = new HSSFRequest();
+		req.addListenerForAllRecords(new AbortableHSSFListener() {
+			public short abortableProcessRecord(Record record) {
+				records.add(record);
+				return (short) (record instanceof LabelSSTRecord ? 7 : 0);
+			}
+		});
+		assertEquals(7, reader.processRowEvents(req, 1, 1000, 1100));
+		assertEquals(LabelSSTRecord.class, records.get(records.size() - 1).getClass());
+		assertEquals(1000, ((LabelSSTRecord) records.get(records.size() - 1)).getRow());
+	}
+
+	/**
+	 * Workbooks written by Excel, whose sheets have their INDEX and DBCELL records
+	 */
+	public void testSamples() throws Exception {
+		String[] samples = { "SampleSS.xls", "SimpleMultiCell.xls", "45365.xls", "ContinueRecordProblem.xls", };
+		for (String sample : samples) {
+			byte[] data = HSSFTestDataSamples.getTestDataFileContent(sample);
+			for (DirectoryNode dir : openBoth(data)) {
+				HSSFRandomAccessReader reader = new HSSFRandomAccessReader(dir);
+				for (int i = 0; i < reader.getSheets().size(); i++) {
+					List<Record> sheetRecords = readSheetSequentially(dir, i);
+					confirmRows(reader, sheetRecords, i, 0, 65535);
+					confirmRows(reader, sheetRecords, i, 1, 1);
+					confirmRows(reader, sheetRecords, i, 20, 40);
+				}
+				reader.close();
+			}
+		}
+	}
+
+	public void testEncrypted() throws Exception {
+		byte[] data = HSSFTestDataSamples.getTestDataFileContent("xor-encryption-abc.xls");
+		try {
+			new HSSFRandomAccessReader(new NPOIFSFileSystem(new ByteArrayInputStream(data)).getRoot());
+			fail("expected EncryptedDocumentException");
+		} catch (EncryptedDocumentException e) {
+			// expected
+		}
+	}
+}
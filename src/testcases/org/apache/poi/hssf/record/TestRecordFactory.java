@@ -29,6 +29,7 @@ import java.util.List;
 import junit.framework.AssertionFailedError;
 import junit.framework.TestCase;
 
+import org.apache.poi.EncryptedDocumentException;
 import org.apache.poi.poifs.filesystem.POIFSFileSystem;
 import org.apache.poi.util.HexRead;
 
@@ -250,4 +251,27 @@ public final class TestRecordFactory extends TestCase {
 		}
 		assertEquals(5, outRecs.size());
 	}
+
+	/**
+	 * Every known sid must be created by its record class rather than fall back to {@link UnknownRecord}
+	 */
+	public void testAllKnownRecordsCreated() {
+		short[] sids = RecordFactory.getAllKnownRecordSIDs();
+		assertTrue(sids.length > 100);
+		for (short sid : sids) {
+			Record record;
+			try {
+				record = RecordFactory.createSingleRecord(TestcaseRecordInputStream.create(sid, new byte[0]));
+			} catch (RecordFormatException e) {
+				// the record class rejected the empty record body
+				continue;
+			} catch (EncryptedDocumentException e) {
+				continue;
+			}
+			String sidText = "sid 0x" + Integer.toHexString(sid);
+			assertFalse(sidText, record instanceof UnknownRecord);
+			assertTrue(sidText, RecordFactory.getRecordClass(sid).isInstance(record)
+					|| sid == InterfaceEndRecord.sid);
+		}
+	}
 }
@@ -17,6 +17,7 @@
 
 package org.apache.poi.hssf.usermodel;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -57,6 +58,7 @@ import org.apache.poi.ss.formula.ptg.Area3DPtg;
 import org.apache.poi.ss.usermodel.BaseTestWorkbook;
 import org.apache.poi.ss.usermodel.Name;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.util.IOUtils;
 import org.apache.poi.util.LittleEndian;
 import org.apache.poi.util.TempFile;
 import org.junit.Test;
@@ -1070,4 +1072,41 @@ public final class TestHSSFWorkbook extends BaseTestWorkbook {
 	private void expectName(HSSFWorkbook wb, String name, String expect) {
 		assertEquals(expect, wb.getName(name).getRefersToFormula());
 	}
+
+    /**
+     * write() streams the Workbook records into the POIFS document,
+     * the result must be identical to the bytes returned by getBytes()
+     */
+    @Test
+    public void writeStreamsWorkbookRecords() throws IOException {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        for (int i = 0; i < 3; i++) {
+            HSSFSheet sheet = wb.createSheet("Sheet" + i);
+            for (int r = 0; r < 200; r++) {
+                HSSFRow row = sheet.createRow(r);
+                row.createCell(0).setCellValue(r);
+                row.createCell(1).setCellValue("text " + r + " on sheet " + i);
+                row.createCell(2).setCellFormula("A" + (r+1) + "*2");
+            }
+        }
+        // a small workbook ends up in the small block store
+        assertStreamedWorkbook(new HSSFWorkbook());
+        assertStreamedWorkbook(wb);
+        assertStreamedWorkbook(HSSFTestDataSamples.openSampleWorkbook("SampleSS.xls"));
+    }
+
+    private static void assertStreamedWorkbook(HSSFWorkbook wb) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        wb.write(out);
+        byte[] expected = wb.getBytes();
+
+        POIFSFileSystem fs = new POIFSFileSystem(new ByteArrayInputStream(out.toByteArray()));
+        InputStream is = fs.createDocumentInputStream("Workbook");
+        byte[] actual = IOUtils.toByteArray(is);
+        is.close();
+        assertArrayEquals(expected, actual);
+
+        HSSFWorkbook wb2 = new HSSFWorkbook(fs);
+        assertEquals(wb.getNumberOfSheets(), wb2.getNumberOfSheets());
+    }
 }
@@ -503,6 +503,41 @@ public final class TestDocumentInputStream extends TestCase {
        }
     }
     
+    /**
+     * Test that the data after a skip over several blocks is read, and that
+     *  mark and reset still work after it
+     */
+    public void testSkipBlocks() throws IOException {
+       DocumentInputStream[] streams = new DocumentInputStream[] {
+             new DocumentInputStream(_workbook_o),
+             new NDocumentInputStream(_workbook_n)
+       };
+       for(DocumentInputStream stream : streams) {
+          int[] skips = { 1500, 512, 1024, 3, 509 };
+          int position = 0;
+          for(int skip : skips) {
+             assertEquals(skip, stream.skip(skip));
+             position += skip;
+             assertEquals(_workbook_size - position, stream.available());
+             assertEquals((byte)(position * position), stream.readByte());
+             position++;
+          }
+
+          stream.mark(0);
+          assertEquals(1024, stream.skip(1024));
+          assertEquals((byte)((position + 1024) * (position + 1024)), stream.readByte());
+          stream.reset();
+          assertEquals(_workbook_size - position, stream.available());
+          assertEquals((byte)(position * position), stream.readByte());
+
+          stream.reset();
+          stream.skip(_workbook_size - position);
+          assertEquals(0, stream.available());
+          stream.reset();
+          assertEquals((byte)(position * position), stream.readByte());
+       }
+    }
+
     /**
      * Test that we can read files at multiple levels down the tree
      */
@@ -21,6 +21,7 @@ import static org.hamcrest.core.IsCollectionContaining.hasItem;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
@@ -36,6 +37,7 @@ import org.apache.poi.hpsf.PropertySet;
 import org.apache.poi.hpsf.PropertySetFactory;
 import org.apache.poi.hpsf.SummaryInformation;
 import org.apache.poi.poifs.common.POIFSConstants;
+import org.apache.poi.poifs.nio.FileBackedDataSource;
 import org.apache.poi.poifs.property.NPropertyTable;
 import org.apache.poi.poifs.property.Property;
 import org.apache.poi.poifs.property.RootProperty;
@@ -101,6 +103,51 @@ public final class TestNPOIFSFileSystem {
        return new NPOIFSFileSystem(new ByteArrayInputStream(baos.toByteArray()));
    }
    
+   protected void assertSameContents(DirectoryEntry expected, DirectoryEntry actual) throws IOException {
+       assertEquals(expected.getEntryCount(), actual.getEntryCount());
+       for (Iterator<Entry> it = expected.getEntries(); it.hasNext(); ) {
+           Entry entry = it.next();
+           Entry other = actual.getEntry(entry.getName());
+           if (entry instanceof DirectoryEntry) {
+               assertSameContents((DirectoryEntry)entry, (DirectoryEntry)other);
+           } else {
+               DocumentInputStream inp = new NDocumentInputStream((DocumentEntry)entry);
+               byte[] contents = IOUtils.toByteArray(inp);
+               inp.close();
+               assertContentsMatches(contents, (DocumentEntry)other);
+           }
+       }
+   }
+
+   /**
+    * Memory-mapped file systems hand out slices of the mapped file,
+    *  both for big blocks and through the mini store
+    */
+   @Test
+   public void memoryMapped() throws Exception {
+      for (String name : new String[] {"BlockSize512.zvi", "BlockSize4096.zvi", "Notes.ole2", "ShortLastBlock.qwp"}) {
+         File file = _inst.getFile(name);
+         FileBackedDataSource read = new FileBackedDataSource(file, true);
+         FileBackedDataSource mapped = FileBackedDataSource.createMapped(file);
+         assertTrue(mapped.isMapped());
+         for (long pos = 0; pos < read.size(); pos += 512) {
+            assertEquals(read.read(512, pos), mapped.read(512, pos));
+         }
+         read.close();
+         mapped.close();
+
+         NPOIFSFileSystem fsA = new NPOIFSFileSystem(_inst.openResourceAsStream(name));
+         NPOIFSFileSystem fsB = new NPOIFSFileSystem(file, true, true);
+
+         assertSameContents(fsA.getRoot(), fsB.getRoot());
+         // and again, now that the mini stream chain is known
+         assertSameContents(fsA.getRoot(), fsB.getRoot());
+
+         fsA.close();
+         fsB.close();
+      }
+   }
+
    @Test
    public void basicOpen() throws Exception {
       NPOIFSFileSystem fsA, fsB;
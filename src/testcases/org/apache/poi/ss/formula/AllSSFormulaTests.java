@@ -31,6 +31,13 @@ public final class AllSSFormulaTests {
 		TestSuite result = new TestSuite(AllSSFormulaTests.class.getName());
 		result.addTestSuite(TestCellCacheEntry.class);
 		result.addTestSuite(TestEvaluationCache.class);
+		result.addTestSuite(TestLookupIndex.class);
+		result.addTestSuite(TestParallelEvaluator.class);
+		result.addTestSuite(TestSheetSnapshot.class);
+		result.addTestSuite(TestAreaValues.class);
+		result.addTestSuite(TestFormulaPlan.class);
+		result.addTestSuite(TestRecalculateDirtyCells.class);
+		result.addTestSuite(TestEvaluationProfiler.class);
 		result.addTestSuite(TestWorkbookEvaluator.class);
 		result.addTestSuite(TestForkedEvaluator.class);
 		return result;
@@ -0,0 +1,239 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFFormulaEvaluator;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.formula.eval.AreaEval;
+import org.apache.poi.ss.formula.eval.BlankEval;
+import org.apache.poi.ss.formula.eval.BoolEval;
+import org.apache.poi.ss.formula.eval.ErrorEval;
+import org.apache.poi.ss.formula.eval.NumberEval;
+import org.apache.poi.ss.formula.eval.StringEval;
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.formula.functions.AggregateFunction;
+import org.apache.poi.ss.formula.functions.EvalFactory;
+import org.apache.poi.ss.formula.functions.Sumproduct;
+import org.apache.poi.ss.usermodel.CellValue;
+import org.apache.poi.ss.usermodel.FormulaError;
+
+/**
+ * Tests {@link BulkTwoDEval#getValues(int, int, byte[], double[])} and the aggregate functions using it
+ */
+public final class TestAreaValues extends TestCase {
+
+	private static final int ROWS = 2500;
+
+	public void testGetValues() {
+		ValueEval[] cells = {
+			new NumberEval(2.5), BoolEval.TRUE, new StringEval("x"),
+			ErrorEval.DIV_ZERO, BlankEval.instance, BoolEval.FALSE,
+		};
+		BulkTwoDEval ae = (BulkTwoDEval) EvalFactory.createAreaEval("B2:D3", cells);
+		byte[] types = new byte[6];
+		double[] values = new double[6];
+		ae.getValues(0, 2, types, values);
+		assertEquals(BulkTwoDEval.VALUE_NUMBER, types[0]);
+		assertEquals(2.5, values[0], 0.0);
+		assertEquals(BulkTwoDEval.VALUE_BOOLEAN, types[1]);
+		assertEquals(1.0, values[1], 0.0);
+		assertEquals(BulkTwoDEval.VALUE_STRING, types[2]);
+		assertEquals(BulkTwoDEval.VALUE_ERROR, types[3]);
+		assertEquals(ErrorEval.DIV_ZERO.getErrorCode(), (int) values[3]);
+		assertEquals(BulkTwoDEval.VALUE_BLANK, types[4]);
+		assertEquals(BulkTwoDEval.VALUE_BOOLEAN, types[5]);
+		assertEquals(0.0, values[5], 0.0);
+
+		// the second row only, stored from index 0
+		ae.getValues(1, 1, types, values);
+		assertEquals(BulkTwoDEval.VALUE_ERROR, types[0]);
+		assertEquals(BulkTwoDEval.VALUE_BLANK, types[1]);
+	}
+
+	/**
+	 * A {@link TwoDEval} which cannot be read in bulk
+	 */
+	private static final class PlainTwoDEval implements TwoDEval {
+		private final AreaEval _ae;
+
+		public PlainTwoDEval(AreaEval ae) {
+			_ae = ae;
+		}
+		public ValueEval getValue(int rowIndex, int columnIndex) {
+			return _ae.getValue(rowIndex, columnIndex);
+		}
+		public int getWidth() {
+			return _ae.getWidth();
+		}
+		public int getHeight() {
+			return _ae.getHeight();
+		}
+		public boolean isRow() {
+			return _ae.isRow();
+		}
+		public boolean isColumn() {
+			return _ae.isColumn();
+		}
+		public TwoDEval getRow(int rowIndex) {
+			return new PlainTwoDEval((AreaEval) _ae.getRow(rowIndex));
+		}
+		public TwoDEval getColumn(int columnIndex) {
+			return new PlainTwoDEval((AreaEval) _ae.getColumn(columnIndex));
+		}
+		public boolean isSubTotal(int rowIndex, int columnIndex) {
+			return _ae.isSubTotal(rowIndex, columnIndex);
+		}
+	}
+
+	/**
+	 * Areas which do not implement {@link BulkTwoDEval} are read cell by cell
+	 */
+	public void testPlainTwoDEval() {
+		ValueEval[] cells = {
+			new NumberEval(2.5), BoolEval.TRUE, new StringEval("x"),
+			new NumberEval(4), BlankEval.instance, BoolEval.FALSE,
+		};
+		AreaEval ae = EvalFactory.createAreaEval("B2:D3", cells);
+		ValueEval[] args = { new PlainTwoDEval(ae), };
+		assertEquals(6.5, ((NumberEval) AggregateFunction.SUM.evaluate(args, 0, 0)).getNumberValue(), 0.0);
+		ValueEval[] pairs = { new PlainTwoDEval(ae), ae, };
+		assertEquals(6.25 + 1 + 16, ((NumberEval) new Sumproduct().evaluate(pairs, 0, 0)).getNumberValue(), 0.0);
+
+		cells[4] = ErrorEval.DIV_ZERO;
+		ae = EvalFactory.createAreaEval("B2:D3", cells);
+		args[0] = new PlainTwoDEval(ae);
+		assertEquals(ErrorEval.DIV_ZERO, AggregateFunction.SUM.evaluate(args, 0, 0));
+	}
+
+	/**
+	 * Numbers and formulas over several blocks of rows, with booleans, strings, blank cells and an
+	 * error in other columns
+	 */
+	private static HSSFWorkbook createWorkbook() {
+		HSSFWorkbook wb = new HSSFWorkbook();
+		HSSFSheet data = wb.createSheet("Data");
+		for (int r = 0; r < ROWS; r++) {
+			HSSFRow row = data.createRow(r);
+			if (r % 10 != 9) {
+				row.createCell(0).setCellValue(r * 0.25);
+			}
+			row.createCell(1).setCellFormula("A" + (r + 1) + "*2+1");
+			if (r % 3 == 0) {
+				row.createCell(2).setCellValue(r % 2 == 0);
+			} else if (r % 3 == 1) {
+				row.createCell(2).setCellValue("5");
+			}
+		}
+		data.getRow(ROWS - 1).createCell(3).setCellErrorValue(FormulaError.NA.getCode());
+		return wb;
+	}
+
+	private static double[] getColumnValues(HSSFWorkbook wb, int columnIndex) {
+		HSSFSheet data = wb.getSheet("Data");
+		double[] result = new double[ROWS];
+		for (int r = 0; r < ROWS; r++) {
+			HSSFCell cell = data.getRow(r).getCell(columnIndex);
+			result[r] = cell == null ? Double.NaN : cell.getNumericCellValue();
+		}
+		return result;
+	}
+
+	private static void confirm(HSSFFormulaEvaluator evaluator, HSSFCell cell, String formula, double expected) {
+		cell.setCellFormula(formula);
+		evaluator.notifyUpdateCell(cell);
+		CellValue cv = evaluator.evaluate(cell);
+		assertEquals(formula, expected, cv.getNumberValue(), Math.abs(expected) * 1E-12);
+	}
+
+	private static void confirmAggregates(boolean useSheetSnapshots) {
+		HSSFWorkbook wb = createWorkbook();
+		HSSFFormulaEvaluator evaluator = new HSSFFormulaEvaluator(wb);
+		evaluator.setUseSheetSnapshots(useSheetSnapshots);
+		HSSFFormulaEvaluator.evaluateAllFormulaCells(wb);
+		double[] a = getColumnValues(wb, 0);
+		double[] b = getColumnValues(wb, 1);
+
+		double sum = 0;
+		double sumProduct = 0;
+		double max = Double.NEGATIVE_INFINITY;
+		int count = 0;
+		for (int r = 0; r < ROWS; r++) {
+			sum += b[r];
+			max = Math.max(max, b[r]);
+			if (!Double.isNaN(a[r])) {
+				sum += a[r];
+				sumProduct += a[r] * b[r];
+				count++;
+			}
+		}
+		count += ROWS;
+
+		double sumSquares = 0;
+		for (int r = 0; r < ROWS; r++) {
+			sumSquares += (b[r] - sum / count) * (b[r] - sum / count);
+			if (!Double.isNaN(a[r])) {
+				sumSquares += (a[r] - sum / count) * (a[r] - sum / count);
+			}
+		}
+
+		HSSFCell cell = wb.createSheet("Calc").createRow(0).createCell(0);
+		String area = "Data!A1:C" + ROWS;
+		confirm(evaluator, cell, "SUM(" + area + ")", sum);
+		confirm(evaluator, cell, "AVERAGE(" + area + ")", sum / count);
+		confirm(evaluator, cell, "MAX(" + area + ")", max);
+		confirm(evaluator, cell, "MIN(" + area + ")", 0.0);
+		confirm(evaluator, cell, "VAR(" + area + ")", sumSquares / (count - 1));
+		confirm(evaluator, cell, "STDEV(" + area + ")", Math.sqrt(sumSquares / (count - 1)));
+		confirm(evaluator, cell, "SUMPRODUCT(Data!A1:A" + ROWS + ",Data!B1:B" + ROWS + ")", sumProduct);
+		// booleans count as 1 or 0, blank cells and strings as 0
+		confirm(evaluator, cell, "SUMPRODUCT(Data!C1:C" + ROWS + ",Data!C1:C" + ROWS + ")", (ROWS + 5) / 6);
+
+		cell.setCellFormula("SUM(Data!A1:D" + ROWS + ")");
+		evaluator.notifyUpdateCell(cell);
+		assertEquals(FormulaError.NA.getCode(), evaluator.evaluate(cell).getErrorValue());
+		cell.setCellFormula("SUMPRODUCT(Data!A1:D" + ROWS + ",Data!A1:D" + ROWS + ")");
+		evaluator.notifyUpdateCell(cell);
+		assertEquals(FormulaError.NA.getCode(), evaluator.evaluate(cell).getErrorValue());
+
+		// the dependencies on the cells are still recorded
+		confirm(evaluator, cell, "SUM(" + area + ")", sum);
+		HSSFCell changed = wb.getSheet("Data").getRow(2000).getCell(0);
+		changed.setCellValue(changed.getNumericCellValue() + 100);
+		evaluator.notifyUpdateCell(changed);
+		// the formula in column B follows
+		assertEquals(sum + 300, evaluator.evaluate(cell).getNumberValue(), sum * 1E-12);
+		// a blank cell getting a value
+		changed = wb.getSheet("Data").getRow(1009).createCell(0);
+		changed.setCellValue(1000);
+		evaluator.notifyUpdateCell(changed);
+		assertEquals(sum + 3300, evaluator.evaluate(cell).getNumberValue(), sum * 1E-12);
+	}
+
+	public void testAggregates() {
+		confirmAggregates(false);
+	}
+
+	public void testAggregatesWithSheetSnapshots() {
+		confirmAggregates(true);
+	}
+}
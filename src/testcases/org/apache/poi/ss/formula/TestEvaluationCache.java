@@ -91,20 +91,20 @@ public class TestEvaluationCache extends TestCase {
 		private final List<String> _logList;
 		private final HSSFWorkbook _book;
 		private Map<ICacheEntry,EvaluationCell> _formulaCellsByCacheEntry;
-		private Map<ICacheEntry,Loc> _plainCellLocsByCacheEntry;
+		private Map<ICacheEntry,Long> _plainCellLocsByCacheEntry;
 
 		public EvalListener(HSSFWorkbook wb) {
 			_book = wb;
 			_logList = new ArrayList<String>();
 			_formulaCellsByCacheEntry = new HashMap<ICacheEntry,EvaluationCell>();
-			_plainCellLocsByCacheEntry = new HashMap<ICacheEntry, Loc>();
+			_plainCellLocsByCacheEntry = new HashMap<ICacheEntry, Long>();
 		}
 		public void onCacheHit(int sheetIndex, int rowIndex, int columnIndex, ValueEval result) {
 			log("hit", rowIndex, columnIndex, result);
 		}
 		public void onReadPlainValue(int sheetIndex, int rowIndex, int columnIndex, ICacheEntry entry) {
-			Loc loc = new Loc(0, sheetIndex, rowIndex, columnIndex);
-			_plainCellLocsByCacheEntry.put(entry, loc);
+			long loc = Loc.toLocation(0, sheetIndex, rowIndex, columnIndex);
+			_plainCellLocsByCacheEntry.put(entry, Long.valueOf(loc));
 			log("value", rowIndex, columnIndex, entry.getValue());
 		}
 		public void onStartEvaluate(EvaluationCell cell, ICacheEntry entry) {
@@ -121,12 +121,12 @@ public class TestEvaluationCache extends TestCase {
 			int columnIndex;
 			EvaluationCell cell = _formulaCellsByCacheEntry.get(entry);
 			if (cell == null) {
-				Loc loc = _plainCellLocsByCacheEntry.get(entry);
+				Long loc = _plainCellLocsByCacheEntry.get(entry);
 				if (loc == null) {
 					throw new IllegalStateException("can't find cell or location");
 				}
-				rowIndex = loc.getRowIndex();
-				columnIndex = loc.getColumnIndex();
+				rowIndex = Loc.getRowIndex(loc.longValue());
+				columnIndex = Loc.getColumnIndex(loc.longValue());
 			} else {
 				rowIndex = cell.getRowIndex();
 				columnIndex = cell.getColumnIndex();
@@ -148,8 +148,8 @@ public class TestEvaluationCache extends TestCase {
 				// perhaps the API could be improved: onChangeFromBlankToValue, onChangeFromBlankToFormula
 				_formulaCellsByCacheEntry.put(entry, cell);
 			} else {
-				Loc loc = new Loc(0, sheetIndex, rowIndex, columnIndex);
-				_plainCellLocsByCacheEntry.put(entry, loc);
+				long loc = Loc.toLocation(0, sheetIndex, rowIndex, columnIndex);
+				_plainCellLocsByCacheEntry.put(entry, Long.valueOf(loc));
 			}
 		}
 		private void log(String tag, int rowIndex, int columnIndex, Object value) {
@@ -0,0 +1,172 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.usermodel.HSSFFormulaEvaluator;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.formula.EvaluationProfiler.CellStatistics;
+import org.apache.poi.ss.formula.EvaluationProfiler.FunctionStatistics;
+import org.apache.poi.ss.formula.EvaluationProfiler.Statistics;
+
+/**
+ * Tests {@link EvaluationProfiler}
+ */
+public final class TestEvaluationProfiler extends TestCase {
+
+	private HSSFSheet _sheet;
+	private HSSFFormulaEvaluator _evaluator;
+	private EvaluationProfiler _profiler;
+
+	protected void setUp() {
+		HSSFWorkbook wb = new HSSFWorkbook();
+		_sheet = wb.createSheet("Sheet1");
+		HSSFRow row = _sheet.createRow(0);
+		row.createCell(0).setCellValue(1);
+		row.createCell(1).setCellFormula("A1*2");
+		row.createCell(2).setCellFormula("B1+1");
+		row.createCell(3).setCellFormula("SUM(C1,B1)");
+		row.createCell(4).setCellFormula("-A1+INDIRECT(\"B1\")");
+		_evaluator = new HSSFFormulaEvaluator(wb);
+		_profiler = new EvaluationProfiler();
+		_evaluator.setProfiler(_profiler);
+	}
+
+	private double evaluate(int column) {
+		return _evaluator.evaluate(_sheet.getRow(0).getCell(column)).getNumberValue();
+	}
+
+	private static List<String> toRefs(List<CellStatistics> cells) {
+		List<String> result = new ArrayList<String>();
+		for (CellStatistics cell : cells) {
+			result.add(cell.formatAsString());
+		}
+		return result;
+	}
+
+	public void testCells() {
+		assertEquals(5.0, evaluate(3), 0.0);
+		List<CellStatistics> cells = _profiler.getCellStatistics();
+		assertEquals(3, cells.size());
+		for (CellStatistics cell : cells) {
+			assertEquals(1, cell.getCount());
+			assertEquals("Sheet1", cell.getSheetName());
+			assertEquals(0, cell.getRowIndex());
+			assertTrue(cell.getSelfNanos() <= cell.getTotalNanos());
+		}
+		confirmSortedBySelfTime(cells);
+		// D1 includes the time of C1, which includes that of B1
+		CellStatistics d1 = findCell(cells, "Sheet1!D1");
+		CellStatistics c1 = findCell(cells, "Sheet1!C1");
+		CellStatistics b1 = findCell(cells, "Sheet1!B1");
+		assertTrue(d1.getTotalNanos() >= c1.getTotalNanos() + d1.getSelfNanos());
+		assertTrue(c1.getTotalNanos() >= b1.getTotalNanos() + c1.getSelfNanos());
+		assertEquals(1, b1.getColumnIndex());
+	}
+
+	private static CellStatistics findCell(List<CellStatistics> cells, String ref) {
+		for (CellStatistics cell : cells) {
+			if (cell.formatAsString().equals(ref)) {
+				return cell;
+			}
+		}
+		throw new AssertionError("cell " + ref + " not found");
+	}
+
+	private static void confirmSortedBySelfTime(List<? extends Statistics> list) {
+		for (int i = 1; i < list.size(); i++) {
+			assertTrue(list.get(i - 1).getSelfNanos() >= list.get(i).getSelfNanos());
+		}
+	}
+
+	public void testFunctions() {
+		evaluate(3);
+		evaluate(4);
+		List<FunctionStatistics> functions = _profiler.getFunctionStatistics();
+		confirmSortedBySelfTime(functions);
+		assertEquals(1, _profiler.getFunctionStatistics("SUM").getCount());
+		assertEquals(1, _profiler.getFunctionStatistics("x*x").getCount());
+		assertEquals(2, _profiler.getFunctionStatistics("x+x").getCount());
+		assertEquals(1, _profiler.getFunctionStatistics("-x").getCount());
+		assertEquals(1, _profiler.getFunctionStatistics("INDIRECT").getCount());
+		assertNull(_profiler.getFunctionStatistics("AVERAGE"));
+		assertEquals(5, functions.size());
+	}
+
+	public void testInterpreted() {
+		_evaluator.setDebugEvaluationOutputForNextEval(true);
+		assertEquals(5.0, evaluate(3), 0.0);
+		assertEquals(1, _profiler.getFunctionStatistics("SUM").getCount());
+		assertEquals(1, _profiler.getFunctionStatistics("x*x").getCount());
+		assertEquals(1, _profiler.getFunctionStatistics("x+x").getCount());
+	}
+
+	public void testCache() {
+		evaluate(3);
+		// D1, C1 and B1 evaluated, then B1 taken from the cache for the SUM
+		assertEquals(3, _profiler.getCacheMisses());
+		assertEquals(1, _profiler.getCacheHits());
+		evaluate(3);
+		assertEquals(3, _profiler.getCacheMisses());
+		assertEquals(2, _profiler.getCacheHits());
+		assertEquals(0.4, _profiler.getCacheHitRate(), 0.0);
+
+		_sheet.getRow(0).getCell(0).setCellValue(2);
+		_evaluator.notifyUpdateCell(_sheet.getRow(0).getCell(0));
+		assertEquals(9.0, evaluate(3), 0.0);
+		assertEquals(6, _profiler.getCacheMisses());
+		assertEquals(2, findCell(_profiler.getCellStatistics(), "Sheet1!B1").getCount());
+	}
+
+	public void testDeepestChain() {
+		assertTrue(_profiler.getDeepestChain().isEmpty());
+		evaluate(1);
+		assertEquals(Arrays.asList("Sheet1!B1"), toRefs(_profiler.getDeepestChain()));
+		evaluate(3);
+		assertEquals(Arrays.asList("Sheet1!D1", "Sheet1!C1"), toRefs(_profiler.getDeepestChain()));
+		_evaluator.clearAllCachedResultValues();
+		evaluate(3);
+		assertEquals(Arrays.asList("Sheet1!D1", "Sheet1!C1", "Sheet1!B1"), toRefs(_profiler.getDeepestChain()));
+
+		String report = _profiler.formatReport(2);
+		assertTrue(report, report.contains("Deepest chain: 3 cells, from Sheet1!D1 to Sheet1!B1"));
+	}
+
+	public void testReset() {
+		evaluate(3);
+		_profiler.reset();
+		assertTrue(_profiler.getCellStatistics().isEmpty());
+		assertTrue(_profiler.getFunctionStatistics().isEmpty());
+		assertTrue(_profiler.getDeepestChain().isEmpty());
+		assertEquals(0, _profiler.getCacheHits());
+		assertEquals(0, _profiler.getCacheMisses());
+		assertEquals(0.0, _profiler.getCacheHitRate(), 0.0);
+
+		_evaluator.setProfiler(null);
+		_evaluator.clearAllCachedResultValues();
+		evaluate(3);
+		assertTrue(_profiler.getCellStatistics().isEmpty());
+	}
+}
@@ -0,0 +1,181 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.model.HSSFFormulaParser;
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFFormulaEvaluator;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.formula.ptg.AttrPtg;
+import org.apache.poi.ss.formula.ptg.IntPtg;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellValue;
+import org.apache.poi.ss.usermodel.Name;
+
+/**
+ * Tests {@link FormulaPlan}
+ */
+public final class TestFormulaPlan extends TestCase {
+
+	/**
+	 * Formulas of column B, with the numbers 1 to 5 in column A, a text in C1 and an error in D1
+	 */
+	private static final String[] FORMULAS = {
+		"IF(A1>2,\"big\",\"small\")",
+		"IF(A1>2,A1*10)",
+		"IF(A1>2,,A1)",
+		"IF(A1>2,A1)&\"x\"",
+		"IF(D1,1,2)",
+		"IF(C1,1,2)",
+		"IF(A1=1,IF(A2=2,\"both\",\"first\"),IF(A3=3,\"third\",CHOOSE(A1,\"a\",\"b\",\"c\")))",
+		"CHOOSE(A2,A1,A2,A3)",
+		"CHOOSE(A5,1,2,3)",
+		"CHOOSE(D1,1,2)",
+		"CHOOSE(2,A1,,A3)",
+		"CHOOSE(A1,IF(A2>1,CHOOSE(A3,1,2,3),0),\"x\")*2",
+		"1+2*3",
+		"\"a\"&\"b\"&A1",
+		"1/0",
+		"-(2^3)%",
+		"SUM(A1:A5)",
+		"SUM(A1:A5,10)/COUNT($A$1:A3)",
+		"SUM(Numbers)+MAX(Data!A1:A5)",
+		"Data!A2+A3",
+		"INDIRECT(\"A\"&A2)*2",
+		"VLOOKUP(3,A1:B5,1,FALSE)",
+		"ISERROR(D1)",
+		"#REF!",
+		"SUM(A1:A2:A4)",
+		"ROW()+COLUMN()",
+		"OFFSET(A1,2,0)",
+		"IF(A1<0,1,)",
+	};
+
+	private static HSSFWorkbook createWorkbook() {
+		HSSFWorkbook wb = new HSSFWorkbook();
+		HSSFSheet sheet = wb.createSheet("Data");
+		for (int r = 0; r < 5; r++) {
+			sheet.createRow(r).createCell(0).setCellValue(r + 1);
+		}
+		sheet.getRow(0).createCell(2).setCellValue("text");
+		sheet.getRow(0).createCell(3).setCellFormula("1/0");
+		Name name = wb.createName();
+		name.setNameName("Numbers");
+		name.setRefersToFormula("Data!$A$1:$A$5");
+		for (int i = 0; i < FORMULAS.length; i++) {
+			HSSFRow row = sheet.getRow(i);
+			if (row == null) {
+				row = sheet.createRow(i);
+			}
+			row.createCell(1).setCellFormula(FORMULAS[i]);
+		}
+		return wb;
+	}
+
+	private static String toString(CellValue value) {
+		return value.getCellType() + " " + value.formatAsString();
+	}
+
+	public void testSameResultsAsInterpreter() {
+		HSSFWorkbook wb = createWorkbook();
+		HSSFSheet sheet = wb.getSheetAt(0);
+		HSSFFormulaEvaluator fe = new HSSFFormulaEvaluator(wb);
+		for (int i = 0; i < FORMULAS.length; i++) {
+			HSSFCell cell = sheet.getRow(i).getCell(1);
+			CellValue actual = fe.evaluate(cell);
+
+			// the formulas are interpreted while debug output is written
+			HSSFFormulaEvaluator interpreter = new HSSFFormulaEvaluator(wb);
+			interpreter.setDebugEvaluationOutputForNextEval(true);
+			CellValue expected = interpreter.evaluate(cell);
+			assertEquals(FORMULAS[i], toString(expected), toString(actual));
+		}
+	}
+
+	public void testCompile() {
+		HSSFWorkbook wb = createWorkbook();
+		for (int i = 0; i < FORMULAS.length; i++) {
+			Ptg[] ptgs = HSSFFormulaParser.parse(FORMULAS[i], wb);
+			assertTrue(FORMULAS[i], FormulaPlan.compile(ptgs, i, 1).isCompiled());
+		}
+		// too many operands
+		assertFalse(FormulaPlan.compile(new Ptg[] { new IntPtg(1), new IntPtg(2) }, 0, 0).isCompiled());
+		// a skip outside of IF and CHOOSE
+		AttrPtg skip = AttrPtg.createSkip(0);
+		assertFalse(FormulaPlan.compile(new Ptg[] { new IntPtg(1), skip }, 0, 0).isCompiled());
+	}
+
+	public void testKey() {
+		HSSFWorkbook wb = createWorkbook();
+		Ptg[] b1 = HSSFFormulaParser.parse("A1*2+$C$1+SUM(A$1:A1)", wb);
+		Ptg[] b2 = HSSFFormulaParser.parse("A2*2+$C$1+SUM(A$1:A2)", wb);
+		Ptg[] b3 = HSSFFormulaParser.parse("A3*2+$C$2+SUM(A$1:A3)", wb);
+		String key = FormulaPlan.createKey(b1, 0, 1);
+		assertNotNull(key);
+		// the same formula in R1C1 notation
+		assertEquals(key, FormulaPlan.createKey(b2, 1, 1));
+		assertEquals(key, FormulaPlan.createKey(b1, 0, 1));
+		assertFalse(key.equals(FormulaPlan.createKey(b3, 2, 1)));
+		assertFalse(key.equals(FormulaPlan.createKey(b1, 1, 1)));
+		assertFalse(key.equals(FormulaPlan.createKey(HSSFFormulaParser.parse("A1*3+$C$1+SUM(A$1:A1)", wb), 0, 1)));
+		// the values of arrays are not part of the key
+		assertNull(FormulaPlan.createKey(HSSFFormulaParser.parse("SUM({1,2,3})", wb), 0, 1));
+	}
+
+	/**
+	 * A plan shared by the cells of a column evaluates the references relative to each cell
+	 */
+	public void testFilledDown() {
+		HSSFWorkbook wb = new HSSFWorkbook();
+		HSSFSheet sheet = wb.createSheet();
+		for (int r = 0; r < 100; r++) {
+			HSSFRow row = sheet.createRow(r);
+			row.createCell(0).setCellValue(r);
+			row.createCell(1).setCellFormula("A" + (r + 1) + "*2+SUM($A$1:A" + (r + 1) + ")");
+		}
+		HSSFFormulaEvaluator fe = new HSSFFormulaEvaluator(wb);
+		for (int r = 0; r < 100; r++) {
+			assertEquals(r * 2 + r * (r + 1) / 2, fe.evaluate(sheet.getRow(r).getCell(1)).getNumberValue(), 0.0);
+		}
+		sheet.getRow(0).getCell(0).setCellValue(1000);
+		fe.notifyUpdateCell(sheet.getRow(0).getCell(0));
+		assertEquals(2000 + 1000, fe.evaluate(sheet.getRow(0).getCell(1)).getNumberValue(), 0.0);
+		assertEquals(198 + 1000 + 99 * 100 / 2, fe.evaluate(sheet.getRow(99).getCell(1)).getNumberValue(), 0.0);
+	}
+
+	public void testChangedFormula() {
+		HSSFWorkbook wb = createWorkbook();
+		HSSFCell cell = wb.getSheetAt(0).getRow(0).getCell(1);
+		HSSFFormulaEvaluator fe = new HSSFFormulaEvaluator(wb);
+		assertEquals("small", fe.evaluate(cell).getStringValue());
+
+		cell.setCellFormula("IF(A1>0,\"positive\",\"negative\")");
+		fe.notifyUpdateCell(cell);
+		assertEquals("positive", fe.evaluate(cell).getStringValue());
+
+		cell.setCellFormula("A5*3");
+		fe.clearAllCachedResultValues();
+		assertEquals(Cell.CELL_TYPE_NUMERIC, fe.evaluate(cell).getCellType());
+		assertEquals(15.0, fe.evaluate(cell).getNumberValue(), 0.0);
+	}
+}
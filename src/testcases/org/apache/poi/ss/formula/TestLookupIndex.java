@@ -0,0 +1,317 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFEvaluationTestHelper;
+import org.apache.poi.hssf.usermodel.HSSFFormulaEvaluator;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.formula.eval.BlankEval;
+import org.apache.poi.ss.formula.eval.BoolEval;
+import org.apache.poi.ss.formula.eval.ErrorEval;
+import org.apache.poi.ss.formula.eval.NumberEval;
+import org.apache.poi.ss.formula.eval.StringEval;
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.formula.functions.Countif;
+import org.apache.poi.ss.formula.functions.EvalFactory;
+import org.apache.poi.ss.formula.functions.Sumif;
+import org.apache.poi.ss.formula.functions.Sumifs;
+import org.apache.poi.ss.usermodel.CellValue;
+
+/**
+ * Tests {@link LookupIndex}, and the lookup functions using it
+ */
+public final class TestLookupIndex extends TestCase {
+
+	private static final String TABLE = "Table!$A$1:$B$100";
+
+	private HSSFWorkbook _wb;
+	private HSSFSheet _table;
+	private HSSFSheet _calc;
+	private HSSFFormulaEvaluator _evaluator;
+
+	/**
+	 * Column A of sheet 'Table' has numbers, strings, booleans, a duplicate, blanks, an error and
+	 * a formula. Column B has the names of the rows, and sheet 'Row' has a horizontal table.
+	 */
+	protected void setUp() {
+		_wb = new HSSFWorkbook();
+		_table = _wb.createSheet("Table");
+		for (int r = 0; r < 100; r++) {
+			HSSFRow row = _table.createRow(r);
+			if (r < 50) {
+				row.createCell(0).setCellValue(r);
+			} else if (r < 90) {
+				row.createCell(0).setCellValue("Key" + r);
+			} else if (r == 90 || r == 91) {
+				row.createCell(0).setCellValue(r == 90);
+			} else if (r == 92) {
+				row.createCell(0).setCellValue(10);
+			} else if (r == 95) {
+				row.createCell(0).setCellFormula("1/0");
+			} else if (r == 96) {
+				row.createCell(0).setCellFormula("A3+1000");
+			}
+			row.createCell(1).setCellValue("Name " + r);
+		}
+		HSSFSheet rowTable = _wb.createSheet("Row");
+		HSSFRow keys = rowTable.createRow(0);
+		HSSFRow names = rowTable.createRow(1);
+		for (int c = 0; c < 40; c++) {
+			keys.createCell(c).setCellValue(c * 2);
+			names.createCell(c).setCellValue("Col " + c);
+		}
+		_calc = _wb.createSheet("Calc");
+		_evaluator = new HSSFFormulaEvaluator(_wb);
+	}
+
+	private CellValue evaluate(String formula) {
+		HSSFRow row = _calc.createRow(_calc.getPhysicalNumberOfRows());
+		HSSFCell cell = row.createCell(0);
+		cell.setCellFormula(formula);
+		return _evaluator.evaluate(cell);
+	}
+
+	private void confirmString(String expected, String formula) {
+		CellValue cv = evaluate(formula);
+		assertEquals(formula, expected, cv.getStringValue());
+	}
+
+	private void confirmNA(String formula) {
+		CellValue cv = evaluate(formula);
+		assertEquals(formula, ErrorEval.NA.getErrorCode(), cv.getErrorValue());
+	}
+
+	public void testLookups() {
+		confirmString("Name 10", "VLOOKUP(10," + TABLE + ",2,FALSE)");
+		confirmString("Name 60", "VLOOKUP(\"kEY60\"," + TABLE + ",2,FALSE)");
+		confirmString("Name 90", "VLOOKUP(TRUE," + TABLE + ",2,FALSE)");
+		confirmString("Name 91", "VLOOKUP(FALSE," + TABLE + ",2,FALSE)");
+		confirmString("Name 61", "VLOOKUP(\"k*61\"," + TABLE + ",2,FALSE)");
+		confirmString("Name 96", "VLOOKUP(1002," + TABLE + ",2,FALSE)");
+		confirmNA("VLOOKUP(12.5," + TABLE + ",2,FALSE)");
+		confirmNA("VLOOKUP(\"10\"," + TABLE + ",2,FALSE)");
+		confirmString("Name 33", "VLOOKUP(33.5,Table!$A$1:$B$50,2,TRUE)");
+		assertEquals(71.0, evaluate("MATCH(\"KEY70\",Table!$A$1:$A$100,0)").getNumberValue(), 0.0);
+		assertEquals(4.0, evaluate("MATCH(\"*3\",Table!$A$51:$A$100,0)").getNumberValue(), 0.0);
+		confirmString("Col 10", "HLOOKUP(20,Row!$A$1:$AN$2,2,FALSE)");
+		confirmString("Col 12", "LOOKUP(25,Row!$A$1:$AN$1,Row!$A$2:$AN$2)");
+	}
+
+	public void testUpdateCell() {
+		HSSFCell lookup = _calc.createRow(0).createCell(0);
+		lookup.setCellFormula("VLOOKUP(500," + TABLE + ",2,FALSE)");
+		HSSFCell lookupFormulaValue = _calc.getRow(0).createCell(1);
+		lookupFormulaValue.setCellFormula("VLOOKUP(1002," + TABLE + ",2,FALSE)");
+		HSSFCell lookupBlank = _calc.getRow(0).createCell(2);
+		lookupBlank.setCellFormula("VLOOKUP(777," + TABLE + ",2,FALSE)");
+		assertEquals(ErrorEval.NA.getErrorCode(), _evaluator.evaluate(lookup).getErrorValue());
+		assertEquals("Name 96", _evaluator.evaluate(lookupFormulaValue).getStringValue());
+		assertEquals(ErrorEval.NA.getErrorCode(), _evaluator.evaluate(lookupBlank).getErrorValue());
+
+		// a plain value of the column
+		HSSFCell cell = _table.getRow(5).getCell(0);
+		cell.setCellValue(500);
+		_evaluator.notifyUpdateCell(cell);
+		assertEquals("Name 5", _evaluator.evaluate(lookup).getStringValue());
+
+		// an input of a formula of the column
+		cell = _table.getRow(2).getCell(0);
+		cell.setCellValue(7);
+		_evaluator.notifyUpdateCell(cell);
+		assertEquals(ErrorEval.NA.getErrorCode(), _evaluator.evaluate(lookupFormulaValue).getErrorValue());
+
+		// a blank cell of the column
+		cell = _table.getRow(93).createCell(0);
+		cell.setCellValue(777);
+		_evaluator.notifyUpdateCell(cell);
+		assertEquals("Name 93", _evaluator.evaluate(lookupBlank).getStringValue());
+		assertEquals("Name 5", _evaluator.evaluate(lookup).getStringValue());
+	}
+
+	/**
+	 * Compares COUNTIF, SUMIF and SUMIFS over the cached index of a range of a sheet, for all kinds
+	 * of criteria, to the functions called with the same values directly
+	 */
+	public void testCriteria() {
+		HSSFSheet data = _wb.createSheet("Data");
+		ValueEval[] values = new ValueEval[40];
+		ValueEval[] addends = new ValueEval[values.length];
+		for (int r = 0; r < values.length; r++) {
+			HSSFRow row = data.createRow(r);
+			HSSFCell cell = row.createCell(0);
+			switch (r % 8) {
+				case 3:
+					values[r] = new StringEval("a" + r % 3);
+					break;
+				case 4:
+					values[r] = new StringEval(r % 16 == 4 ? "3" : "B");
+					break;
+				case 5:
+					values[r] = BoolEval.valueOf(r % 2 == 0);
+					break;
+				case 6:
+					values[r] = r == 14 ? new StringEval("") : BlankEval.instance;
+					break;
+				case 7:
+					if (r == 15) {
+						cell.setCellFormula("1/0");
+						values[r] = ErrorEval.DIV_ZERO;
+					} else {
+						values[r] = new NumberEval(r * 3 % 7 - 2);
+					}
+					break;
+				default:
+					values[r] = new NumberEval(r * 3 % 7 - 2);
+			}
+			if (values[r] instanceof NumberEval) {
+				cell.setCellValue(((NumberEval) values[r]).getNumberValue());
+			} else if (values[r] instanceof StringEval) {
+				cell.setCellValue(((StringEval) values[r]).getStringValue());
+			} else if (values[r] instanceof BoolEval) {
+				cell.setCellValue(((BoolEval) values[r]).getBooleanValue());
+			}
+			row.createCell(1).setCellValue(r);
+			addends[r] = new NumberEval(r);
+		}
+		String range = "Data!$A$1:$A$40";
+		String sumRange = "Data!$B$1:$B$40";
+		ValueEval area = EvalFactory.createAreaEval("A1:A40", values);
+		ValueEval sumArea = EvalFactory.createAreaEval("B1:B40", addends);
+		OperationEvaluationContext ec = new OperationEvaluationContext(null, null, 0, 1, 0, null);
+
+		String[] strings = {
+			"<3", "<=3", ">3", ">=3", "<>3", "3", "=3", "<-0.5", ">=0", ">b", "a1", "A*", "?2", "<>a1",
+			"", "=", "<>", "TRUE", "<>TRUE", "#DIV/0!",
+		};
+		ValueEval[] criteria = new ValueEval[strings.length + 4];
+		String[] criteriaText = new String[criteria.length];
+		for (int i = 0; i < strings.length; i++) {
+			criteria[i] = new StringEval(strings[i]);
+			criteriaText[i] = "\"" + strings[i] + "\"";
+		}
+		criteria[strings.length] = new NumberEval(3);
+		criteriaText[strings.length] = "3";
+		criteria[strings.length + 1] = NumberEval.ZERO;
+		criteriaText[strings.length + 1] = "0";
+		criteria[strings.length + 2] = BoolEval.TRUE;
+		criteriaText[strings.length + 2] = "TRUE";
+		criteria[strings.length + 3] = BoolEval.FALSE;
+		criteriaText[strings.length + 3] = "FALSE";
+
+		// twice, the second time with the cached matches
+		for (int pass = 0; pass < 2; pass++) {
+			for (int i = 0; i < criteria.length; i++) {
+				String countif = "COUNTIF(" + range + "," + criteriaText[i] + ")";
+				ValueEval expected = new Countif().evaluate(new ValueEval[] { area, criteria[i], }, 0, 0);
+				confirmNumber(expected, countif);
+
+				String sumif = "SUMIF(" + range + "," + criteriaText[i] + "," + sumRange + ")";
+				expected = new Sumif().evaluate(new ValueEval[] { area, criteria[i], sumArea, }, 0, 0);
+				confirmNumber(expected, sumif);
+
+				String sumifs = "SUMIFS(" + sumRange + "," + range + "," + criteriaText[i] + "," + sumRange + ",\">10\")";
+				expected = Sumifs.instance.evaluate(new ValueEval[] { sumArea, area, criteria[i], sumArea, new StringEval(">10"), }, ec);
+				confirmNumber(expected, sumifs);
+			}
+		}
+
+		HSSFCell countif = _calc.createRow(_calc.getPhysicalNumberOfRows()).createCell(0);
+		countif.setCellFormula("COUNTIF(" + range + ",\"a1\")");
+		double count = _evaluator.evaluate(countif).getNumberValue();
+		HSSFCell cell = data.getRow(0).getCell(0);
+		cell.setCellValue("A1");
+		_evaluator.notifyUpdateCell(cell);
+		assertEquals(count + 1, _evaluator.evaluate(countif).getNumberValue(), 0.0);
+	}
+
+	private void confirmNumber(ValueEval expected, String formula) {
+		assertEquals(formula, ((NumberEval) expected).getNumberValue(), evaluate(formula).getNumberValue(), 0.0);
+	}
+
+	/**
+	 * Areas get an index when they are requested again, up to the maximum number of cells
+	 */
+	public void testCreateIndex() {
+		EvaluationCache cache = new EvaluationCache(null);
+		// a running range, a different area each time
+		for (int r = 20; r < 100; r++) {
+			assertNull(cache.getOrCreateLookupIndex(0, 0, 0, 0, r, 0));
+		}
+		LookupIndex index = cache.getOrCreateLookupIndex(0, 0, 0, 0, 20, 0);
+		assertNotNull(index);
+		assertSame(index, cache.getOrCreateLookupIndex(0, 0, 0, 0, 20, 0));
+
+		int tooMany = EvaluationCache.MAX_LOOKUP_INDEX_CELLS;
+		assertNull(cache.getOrCreateLookupIndex(0, 1, 0, 0, tooMany - 1, 0));
+		assertNull(cache.getOrCreateLookupIndex(0, 1, 0, 0, tooMany - 1, 0));
+		cache.clear();
+		assertNull(cache.getOrCreateLookupIndex(0, 1, 0, 0, tooMany - 1, 0));
+		assertNotNull(cache.getOrCreateLookupIndex(0, 1, 0, 0, tooMany - 1, 0));
+	}
+
+	/**
+	 * An index whose cells failed to be read is not read again until a cell is updated
+	 */
+	public void testFailedIndex() {
+		EvaluationCache cache = new EvaluationCache(null);
+		cache.getOrCreateLookupIndex(0, 0, 0, 0, 99, 0);
+		LookupIndex index = cache.getOrCreateLookupIndex(0, 0, 0, 0, 99, 0);
+		cache.setLookupIndexFailed(index);
+		assertNull(cache.getOrCreateLookupIndex(0, 0, 0, 0, 99, 0));
+		cache.notifyUpdateCell(0, 0, HSSFEvaluationTestHelper.wrapCell(_table.getRow(0).getCell(0)));
+		assertSame(index, cache.getOrCreateLookupIndex(0, 0, 0, 0, 99, 0));
+
+		// a cell of the table which cannot be evaluated, as long as it is not needed
+		String function = WorkbookEvaluator.getNotSupportedFunctionNames().iterator().next();
+		_table.getRow(97).createCell(0).setCellFormula(function + "(1)");
+		confirmString("Name 10", "VLOOKUP(10," + TABLE + ",2,FALSE)");
+		confirmString("Name 11", "VLOOKUP(11," + TABLE + ",2,FALSE)");
+		confirmString("Name 12", "VLOOKUP(12," + TABLE + ",2,FALSE)");
+	}
+
+	public void testIndexOf() {
+		LookupIndex index = new LookupIndex();
+		index.setValues(new ValueEval[] {
+			new StringEval("abc"),
+			new NumberEval(1.0),
+			BlankEval.instance,
+			new NumberEval(-0.0),
+			ErrorEval.NA,
+			new StringEval("\u0131"), // dotless i
+			BoolEval.TRUE,
+			new StringEval("ABC"),
+		});
+		assertEquals(0, index.indexOf(new StringEval("ABC")));
+		assertEquals(0, index.indexOf(new StringEval("aBc")));
+		assertEquals(1, index.indexOf(new NumberEval(1.0)));
+		assertEquals(-1, index.indexOf(new StringEval("1")));
+		// Double.compare() tells 0.0 from -0.0
+		assertEquals(-1, index.indexOf(NumberEval.ZERO));
+		assertEquals(3, index.indexOf(new NumberEval(-0.0)));
+		// "I".compareToIgnoreCase("\u0131") is zero
+		assertEquals(5, index.indexOf(new StringEval("I")));
+		assertEquals(6, index.indexOf(BoolEval.TRUE));
+		assertEquals(-1, index.indexOf(BoolEval.FALSE));
+		assertEquals(-1, index.indexOf(ErrorEval.NA));
+	}
+}
@@ -0,0 +1,236 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFEvaluationTestHelper;
+import org.apache.poi.hssf.usermodel.HSSFEvaluationWorkbook;
+import org.apache.poi.hssf.usermodel.HSSFFormulaEvaluator;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.formula.eval.ErrorEval;
+import org.apache.poi.ss.formula.eval.NotImplementedException;
+import org.apache.poi.ss.formula.eval.NumberEval;
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Name;
+import org.apache.poi.ss.usermodel.Row;
+
+/**
+ * Tests {@link ParallelEvaluator}
+ */
+public final class TestParallelEvaluator extends TestCase {
+
+	private ExecutorService _executor;
+
+	protected void setUp() {
+		_executor = Executors.newFixedThreadPool(4);
+	}
+
+	protected void tearDown() {
+		_executor.shutdown();
+	}
+
+	/**
+	 * A workbook with long chains, wide levels, areas, names, cross sheet references, INDIRECT and
+	 * circular references
+	 */
+	private static HSSFWorkbook createWorkbook(int rows) {
+		HSSFWorkbook wb = new HSSFWorkbook();
+		HSSFSheet data = wb.createSheet("Data");
+		HSSFSheet calc = wb.createSheet("Calc");
+		for (int r = 0; r < rows; r++) {
+			int n = r + 1;
+			HSSFRow row = data.createRow(r);
+			row.createCell(0).setCellValue(r % 17);
+			row.createCell(1).setCellFormula("A" + n + "*2+1");
+			row.createCell(2).setCellFormula(r == 0 ? "B1" : "C" + r + "+B" + n);
+			row.createCell(3).setCellFormula("SUM($B$1:B" + n + ")-C" + n);
+		}
+		Name name = wb.createName();
+		name.setNameName("Totals");
+		name.setRefersToFormula("Data!$C$1:$C$" + rows);
+
+		for (int r = 0; r < rows; r++) {
+			int n = r + 1;
+			HSSFRow row = calc.createRow(r);
+			row.createCell(0).setCellFormula("Data!B" + n + "+Data!D" + n);
+			row.createCell(1).setCellFormula("IF(A" + n + ">20,\"big\",TEXT(A" + n + ",\"0.0\"))");
+			row.createCell(2).setCellFormula("MAX(Totals)-Data!C" + n);
+			row.createCell(3).setCellFormula("INDIRECT(\"Data!C\"&" + n + ")+A" + n);
+			row.createCell(4).setCellFormula("D" + n + "*2");
+			row.createCell(5).setCellFormula("VLOOKUP(" + (r % 17) + ",Data!$A$1:$C$" + rows + ",3,FALSE)");
+		}
+		// a circular reference, where the results depend on the order of evaluation
+		HSSFRow row = calc.getRow(0);
+		row.createCell(6).setCellFormula("IF(ISERROR(H1),1,H1+1)");
+		row.createCell(7).setCellFormula("IF(ISERROR(G1),10,G1+10)");
+		row.createCell(8).setCellFormula("G1+H1+A1");
+		row.createCell(9).setCellFormula("J1+1");
+		return wb;
+	}
+
+	private static List<Cell> getFormulaCells(HSSFWorkbook wb) {
+		List<Cell> result = new ArrayList<Cell>();
+		for (int i = 0; i < wb.getNumberOfSheets(); i++) {
+			for (Row row : wb.getSheetAt(i)) {
+				for (Cell cell : row) {
+					if (cell.getCellType() == Cell.CELL_TYPE_FORMULA) {
+						result.add(cell);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	private static EvaluationCell[] toEvaluationCells(List<Cell> cells) {
+		EvaluationCell[] result = new EvaluationCell[cells.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = HSSFEvaluationTestHelper.wrapCell((HSSFCell) cells.get(i));
+		}
+		return result;
+	}
+
+	private static WorkbookEvaluator createEvaluator(HSSFWorkbook wb) {
+		return new WorkbookEvaluator(HSSFEvaluationWorkbook.create(wb), null, null);
+	}
+
+	private void confirmSameAsSerial(HSSFWorkbook wb, int parallelism) {
+		EvaluationCell[] cells = toEvaluationCells(getFormulaCells(wb));
+		WorkbookEvaluator serial = createEvaluator(wb);
+		ValueEval[] expected = new ValueEval[cells.length];
+		for (int i = 0; i < cells.length; i++) {
+			expected[i] = serial.evaluate(cells[i]);
+		}
+
+		ValueEval[] actual = new ParallelEvaluator(createEvaluator(wb), _executor, parallelism).evaluate(cells);
+		assertEquals(cells.length, actual.length);
+		for (int i = 0; i < cells.length; i++) {
+			String cellRef = cells[i].getSheet() + " " + cells[i].getRowIndex() + "/" + cells[i].getColumnIndex();
+			assertEquals(cellRef, expected[i].getClass(), actual[i].getClass());
+			assertEquals(cellRef, expected[i].toString(), actual[i].toString());
+		}
+	}
+
+	public void testSameResultsAsSerial() {
+		HSSFWorkbook wb = createWorkbook(500);
+		confirmSameAsSerial(wb, 4);
+		confirmSameAsSerial(wb, 1);
+	}
+
+	public void testSmallWorkbook() {
+		confirmSameAsSerial(createWorkbook(3), 4);
+	}
+
+	/**
+	 * The formula cells of the Data sheet are referred to but not given
+	 */
+	public void testCellsNotGiven() {
+		HSSFWorkbook wb = createWorkbook(500);
+		List<Cell> cells = new ArrayList<Cell>();
+		for (Cell cell : getFormulaCells(wb)) {
+			if (cell.getSheet().getSheetName().equals("Calc")) {
+				cells.add(cell);
+			}
+		}
+		EvaluationCell[] calcCells = toEvaluationCells(cells);
+		WorkbookEvaluator serial = createEvaluator(wb);
+		ValueEval[] actual = new ParallelEvaluator(createEvaluator(wb), _executor, 4).evaluate(calcCells);
+		for (int i = 0; i < calcCells.length; i++) {
+			assertEquals(serial.evaluate(calcCells[i]).toString(), actual[i].toString());
+		}
+	}
+
+	public void testCircularReference() {
+		HSSFWorkbook wb = createWorkbook(3);
+		EvaluationCell[] cells = toEvaluationCells(getFormulaCells(wb));
+		ValueEval[] results = new ParallelEvaluator(createEvaluator(wb), _executor, 4).evaluate(cells);
+		List<Cell> formulaCells = getFormulaCells(wb);
+		for (int i = 0; i < cells.length; i++) {
+			Cell cell = formulaCells.get(i);
+			if (cell.getSheet().getSheetName().equals("Calc") && cell.getRowIndex() == 0) {
+				switch (cell.getColumnIndex()) {
+					case 6: assertEquals(11.0, ((NumberEval) results[i]).getNumberValue(), 0.0); break;
+					case 7: assertEquals(10.0, ((NumberEval) results[i]).getNumberValue(), 0.0); break;
+					case 9: assertEquals(ErrorEval.CIRCULAR_REF_ERROR, results[i]); break;
+				}
+			}
+		}
+	}
+
+	public void testEvaluateAll() {
+		HSSFWorkbook expected = createWorkbook(300);
+		HSSFFormulaEvaluator.evaluateAllFormulaCells(expected);
+		HSSFWorkbook actual = createWorkbook(300);
+		new HSSFFormulaEvaluator(actual).evaluateAll(_executor);
+
+		List<Cell> expectedCells = getFormulaCells(expected);
+		List<Cell> actualCells = getFormulaCells(actual);
+		assertEquals(expectedCells.size(), actualCells.size());
+		for (int i = 0; i < expectedCells.size(); i++) {
+			Cell e = expectedCells.get(i);
+			Cell a = actualCells.get(i);
+			assertEquals(e.getCachedFormulaResultType(), a.getCachedFormulaResultType());
+			assertEquals(e.toString(), getCachedResult(e), getCachedResult(a));
+		}
+	}
+
+	private static String getCachedResult(Cell cell) {
+		switch (cell.getCachedFormulaResultType()) {
+			case Cell.CELL_TYPE_NUMERIC: return String.valueOf(cell.getNumericCellValue());
+			case Cell.CELL_TYPE_STRING: return cell.getStringCellValue();
+			case Cell.CELL_TYPE_BOOLEAN: return String.valueOf(cell.getBooleanCellValue());
+			case Cell.CELL_TYPE_ERROR: return String.valueOf(cell.getErrorCellValue());
+		}
+		throw new IllegalStateException("Unexpected cached result type " + cell.getCachedFormulaResultType());
+	}
+
+	public void testCellGivenTwice() {
+		HSSFWorkbook wb = createWorkbook(3);
+		List<Cell> cells = getFormulaCells(wb);
+		cells.add(cells.get(0));
+		try {
+			new ParallelEvaluator(createEvaluator(wb), _executor, 4).evaluate(toEvaluationCells(cells));
+			fail("expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testFailure() {
+		HSSFWorkbook wb = createWorkbook(300);
+		String function = WorkbookEvaluator.getNotSupportedFunctionNames().iterator().next();
+		// on the first level, which is evaluated by several tasks
+		wb.getSheet("Data").getRow(150).createCell(5).setCellFormula(function + "(1)");
+		try {
+			new ParallelEvaluator(createEvaluator(wb), _executor, 4).evaluate(toEvaluationCells(getFormulaCells(wb)));
+			fail("expected NotImplementedException");
+		} catch (NotImplementedException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("Data!F151"));
+		}
+	}
+}
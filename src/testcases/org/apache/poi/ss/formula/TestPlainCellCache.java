@@ -19,6 +19,10 @@
 
 package org.apache.poi.ss.formula;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
 import junit.framework.TestCase;
 import org.apache.poi.ss.formula.PlainCellCache.Loc;
 import org.apache.poi.ss.formula.eval.*;
@@ -37,15 +41,11 @@ public class TestPlainCellCache extends TestCase {
             for (int sheetIndex = 0; sheetIndex < 0x1000; sheetIndex += 0x100) {
                 for (int rowIndex = 0; rowIndex < 0x100000; rowIndex += 0x1000) {
                     for (int columnIndex = 0; columnIndex < 0x4000; columnIndex += 0x100) {
-                        Loc loc = new Loc(bookIndex, sheetIndex, rowIndex, columnIndex);
-                        assertEquals(bookIndex, loc.getBookIndex());
-                        assertEquals(sheetIndex, loc.getSheetIndex());
-                        assertEquals(rowIndex, loc.getRowIndex());
-                        assertEquals(columnIndex, loc.getColumnIndex());
-
-                        Loc sameLoc = new Loc(bookIndex, sheetIndex, rowIndex, columnIndex);
-                        assertEquals(loc.hashCode(), sameLoc.hashCode());
-                        assertTrue(loc.equals(sameLoc));
+                        long loc = Loc.toLocation(bookIndex, sheetIndex, rowIndex, columnIndex);
+                        assertEquals(bookIndex, Loc.getBookIndex(loc));
+                        assertEquals(sheetIndex, Loc.getSheetIndex(loc));
+                        assertEquals(rowIndex, Loc.getRowIndex(loc));
+                        assertEquals(columnIndex, Loc.getColumnIndex(loc));
 
                         assertNull(cache.get(loc));
                         PlainValueCellCacheEntry entry = new PlainValueCellCacheEntry(new NumberEval(0));
@@ -62,4 +62,36 @@ public class TestPlainCellCache extends TestCase {
 
         }
     }
+
+    /**
+     * Compares the open addressing map with a {@link HashMap}, with many colliding and removed keys
+     */
+    public void testManyEntries() {
+        CellLocationMap<PlainValueCellCacheEntry> map = new CellLocationMap<PlainValueCellCacheEntry>();
+        Map<Long, PlainValueCellCacheEntry> expected = new HashMap<Long, PlainValueCellCacheEntry>();
+        Random random = new Random(12345);
+        for (int i = 0; i < 100000; i++) {
+            long loc = Loc.toLocation(random.nextInt(2), random.nextInt(3), random.nextInt(200), random.nextInt(20));
+            if (random.nextInt(3) == 0) {
+                assertSame(expected.remove(loc), map.remove(loc));
+            } else {
+                PlainValueCellCacheEntry entry = new PlainValueCellCacheEntry(new NumberEval(i));
+                assertSame(expected.put(loc, entry), map.put(loc, entry));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (Map.Entry<Long, PlainValueCellCacheEntry> entry : expected.entrySet()) {
+            assertSame(entry.getValue(), map.get(entry.getKey()));
+        }
+        int count = 0;
+        for (int i = 0; i < map.getCapacity(); i++) {
+            if (map.getValueAt(i) != null) {
+                count++;
+            }
+        }
+        assertEquals(expected.size(), count);
+        map.clear();
+        assertEquals(0, map.size());
+        assertNull(map.get(Loc.toLocation(0, 0, 0, 0)));
+    }
 }
@@ -0,0 +1,189 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFEvaluationTestHelper;
+import org.apache.poi.hssf.usermodel.HSSFEvaluationWorkbook;
+import org.apache.poi.hssf.usermodel.HSSFFormulaEvaluator;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.util.CellReference;
+
+/**
+ * Tests {@link WorkbookEvaluator#recalculateDirtyCells()} through
+ * {@link HSSFFormulaEvaluator#recalculateDirtyCells()}
+ */
+public final class TestRecalculateDirtyCells extends TestCase {
+
+	private HSSFSheet _sheet;
+	private HSSFFormulaEvaluator _evaluator;
+
+	protected void setUp() {
+		HSSFWorkbook wb = new HSSFWorkbook();
+		_sheet = wb.createSheet("Sheet1");
+		HSSFRow row = _sheet.createRow(0);
+		row.createCell(0).setCellValue(1);
+		row.createCell(1).setCellFormula("A1*2");
+		row.createCell(2).setCellFormula("B1+1");
+		row.createCell(3).setCellFormula("IF(A1>5,\"big\",\"small\")");
+		row.createCell(4).setCellFormula("A2+1");
+		row.createCell(5).setCellFormula("SUM(A1:A3)+C1");
+		row.createCell(6).setCellFormula("A1+100");
+		_sheet.createRow(1).createCell(0).setCellValue(10);
+		_evaluator = new HSSFFormulaEvaluator(wb);
+		// all but G1
+		for (int c = 1; c <= 5; c++) {
+			_evaluator.evaluateFormulaCell(row.getCell(c));
+		}
+	}
+
+	private HSSFCell getCell(String ref) {
+		CellReference cr = new CellReference(ref);
+		HSSFRow row = _sheet.getRow(cr.getRow());
+		if (row == null) {
+			row = _sheet.createRow(cr.getRow());
+		}
+		HSSFCell cell = row.getCell((int) cr.getCol());
+		return cell == null ? row.createCell((int) cr.getCol()) : cell;
+	}
+
+	private static List<String> toRefs(List<Cell> cells) {
+		List<String> result = new ArrayList<String>();
+		for (Cell cell : cells) {
+			result.add(new CellReference(cell).formatAsString());
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	private void confirmRecalculated(String... expectedRefs) {
+		List<Cell> cells = _evaluator.recalculateDirtyCells();
+		assertEquals(Arrays.asList(expectedRefs), toRefs(cells));
+	}
+
+	public void testChangedValue() {
+		getCell("A1").setCellValue(2);
+		_evaluator.notifyUpdateCell(getCell("A1"));
+		// D1 is re-evaluated but does not change, E1 does not depend on A1, G1 was not evaluated
+		confirmRecalculated("B1", "C1", "F1");
+		// the results are saved in the cells
+		assertEquals(4.0, getCell("B1").getNumericCellValue(), 0.0);
+		assertEquals(5.0, getCell("C1").getNumericCellValue(), 0.0);
+		assertEquals(17.0, getCell("F1").getNumericCellValue(), 0.0);
+
+		// nothing changed since
+		confirmRecalculated();
+
+		getCell("A1").setCellValue(8);
+		_evaluator.notifyUpdateCell(getCell("A1"));
+		confirmRecalculated("B1", "C1", "D1", "F1");
+		assertEquals("big", getCell("D1").getStringCellValue());
+	}
+
+	public void testBatch() {
+		getCell("A1").setCellValue(3);
+		_evaluator.notifyUpdateCell(getCell("A1"));
+		getCell("A2").setCellValue(20);
+		_evaluator.notifyUpdateCell(getCell("A2"));
+		getCell("A1").setCellValue(4);
+		_evaluator.notifyUpdateCell(getCell("A1"));
+		confirmRecalculated("B1", "C1", "E1", "F1");
+		assertEquals(21.0, getCell("E1").getNumericCellValue(), 0.0);
+		assertEquals(20 + 4 + 9, getCell("F1").getNumericCellValue(), 0.0);
+	}
+
+	public void testSameResult() {
+		// the results of the cells depending on A1 end up the same
+		getCell("A1").setCellValue(5);
+		_evaluator.notifyUpdateCell(getCell("A1"));
+		getCell("A1").setCellValue(1);
+		_evaluator.notifyUpdateCell(getCell("A1"));
+		confirmRecalculated();
+	}
+
+	public void testEvaluatedBeforeRecalculation() {
+		getCell("A1").setCellValue(2);
+		_evaluator.notifyUpdateCell(getCell("A1"));
+		assertEquals(4.0, _evaluator.evaluate(getCell("B1")).getNumberValue(), 0.0);
+		// still reported as changed since the last recalculation
+		confirmRecalculated("B1", "C1", "F1");
+	}
+
+	public void testChangedFormula() {
+		getCell("B1").setCellFormula("A1*3");
+		_evaluator.notifyUpdateCell(getCell("B1"));
+		confirmRecalculated("B1", "C1", "F1");
+		assertEquals(4.0, getCell("C1").getNumericCellValue(), 0.0);
+	}
+
+	public void testDeletedCell() {
+		HSSFCell b1 = getCell("B1");
+		_evaluator.notifyDeleteCell(b1);
+		b1.getRow().removeCell(b1);
+		confirmRecalculated("C1", "F1");
+		assertEquals(1.0, getCell("C1").getNumericCellValue(), 0.0);
+	}
+
+	public void testBlankCell() {
+		// A3 was blank when F1 was evaluated
+		HSSFCell a3 = getCell("A3");
+		a3.setCellValue(100);
+		_evaluator.notifyUpdateCell(a3);
+		confirmRecalculated("F1");
+		assertEquals(114.0, getCell("F1").getNumericCellValue(), 0.0);
+	}
+
+	public void testClearAll() {
+		getCell("A1").setCellValue(2);
+		_evaluator.notifyUpdateCell(getCell("A1"));
+		_evaluator.clearAllCachedResultValues();
+		confirmRecalculated();
+	}
+
+	/**
+	 * The cleared results are not kept for cells which are no longer formula cells, when
+	 * {@link WorkbookEvaluator#recalculateDirtyCells()} is never called
+	 */
+	public void testDirtyCellsNotRecalculated() {
+		WorkbookEvaluator evaluator = new WorkbookEvaluator(
+				HSSFEvaluationWorkbook.create(_sheet.getWorkbook()), null, null);
+		HSSFCell a1 = getCell("A1");
+		HSSFCell b1 = getCell("B1");
+		for (int i = 0; i < 100; i++) {
+			b1.setCellFormula("A1*2");
+			evaluator.notifyUpdateCell(HSSFEvaluationTestHelper.wrapCell(b1));
+			evaluator.evaluate(HSSFEvaluationTestHelper.wrapCell(b1));
+			a1.setCellValue(i);
+			evaluator.notifyUpdateCell(HSSFEvaluationTestHelper.wrapCell(a1));
+			b1.setCellType(Cell.CELL_TYPE_NUMERIC);
+			b1.setCellValue(i);
+			evaluator.notifyUpdateCell(HSSFEvaluationTestHelper.wrapCell(b1));
+		}
+		assertEquals(0, evaluator.getCache().getDirtyFormulaCellCount());
+	}
+}
@@ -0,0 +1,145 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.ss.formula;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFFormulaEvaluator;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.CellValue;
+import org.apache.poi.ss.usermodel.FormulaError;
+
+/**
+ * Tests {@link SheetSnapshot}
+ */
+public final class TestSheetSnapshot extends TestCase {
+
+	private static final String[] FORMULAS = {
+		"SUM(Data!A1:A3000)",
+		"COUNTA(Data!A1:B3000)",
+		"COUNTBLANK(Data!A1:A3000)",
+		"SUMPRODUCT(Data!A1:A3000,Data!C1:C3000)",
+		"VLOOKUP(\"Text 2040\",Data!B1:C3000,2,FALSE)",
+		"Data!B2500&Data!B3",
+		"COUNTIF(Data!D1:D3000,TRUE)",
+		"ISERROR(Data!E7)",
+		"Data!A2999",
+	};
+
+	/**
+	 * Numbers, strings and formulas in more than one block of rows, some booleans and errors,
+	 * and blank rows
+	 */
+	private static HSSFWorkbook createWorkbook() {
+		HSSFWorkbook wb = new HSSFWorkbook();
+		HSSFSheet data = wb.createSheet("Data");
+		for (int r = 0; r < 3000; r++) {
+			if (r >= 1100 && r < 2300) {
+				continue;
+			}
+			HSSFRow row = data.createRow(r);
+			row.createCell(0).setCellValue(r * 0.5);
+			row.createCell(1).setCellValue("Text " + r);
+			row.createCell(2).setCellFormula("A" + (r + 1) + "*2");
+			if (r % 7 == 0) {
+				row.createCell(3).setCellValue(r % 2 == 0);
+				row.createCell(4).setCellErrorValue(FormulaError.NA.getCode());
+			}
+		}
+		HSSFSheet calc = wb.createSheet("Calc");
+		for (int i = 0; i < FORMULAS.length; i++) {
+			calc.createRow(i).createCell(0).setCellFormula(FORMULAS[i]);
+		}
+		return wb;
+	}
+
+	private static String[] evaluate(HSSFWorkbook wb, HSSFFormulaEvaluator evaluator) {
+		HSSFSheet calc = wb.getSheet("Calc");
+		String[] result = new String[FORMULAS.length];
+		for (int i = 0; i < FORMULAS.length; i++) {
+			CellValue cv = evaluator.evaluate(calc.getRow(i).getCell(0));
+			result[i] = cv.formatAsString();
+		}
+		return result;
+	}
+
+	private static HSSFFormulaEvaluator createEvaluator(HSSFWorkbook wb) {
+		HSSFFormulaEvaluator result = new HSSFFormulaEvaluator(wb);
+		result.setUseSheetSnapshots(true);
+		return result;
+	}
+
+	public void testSameResults() {
+		HSSFWorkbook wb = createWorkbook();
+		String[] expected = evaluate(wb, new HSSFFormulaEvaluator(wb));
+		String[] actual = evaluate(wb, createEvaluator(wb));
+		for (int i = 0; i < FORMULAS.length; i++) {
+			assertEquals(FORMULAS[i], expected[i], actual[i]);
+		}
+	}
+
+	public void testNotifyUpdateCell() {
+		HSSFWorkbook wb = createWorkbook();
+		HSSFFormulaEvaluator evaluator = createEvaluator(wb);
+		HSSFSheet data = wb.getSheet("Data");
+		HSSFCell sum = wb.getSheet("Calc").getRow(0).getCell(0);
+		double total = evaluator.evaluate(sum).getNumberValue();
+
+		// a cell of a block read already
+		HSSFCell cell = data.getRow(10).getCell(0);
+		cell.setCellValue(1005);
+		evaluator.notifyUpdateCell(cell);
+		total += 1000;
+		assertEquals(total, evaluator.evaluate(sum).getNumberValue(), 0.0);
+
+		// a new cell in a block of blank cells
+		cell = data.createRow(1500).createCell(0);
+		cell.setCellValue(7);
+		evaluator.notifyUpdateCell(cell);
+		total += 7;
+		assertEquals(total, evaluator.evaluate(sum).getNumberValue(), 0.0);
+
+		// a plain cell changed to a formula
+		cell = data.getRow(20).getCell(0);
+		cell.setCellFormula("3+8");
+		evaluator.notifyUpdateCell(cell);
+		total += 1;
+		assertEquals(total, evaluator.evaluate(sum).getNumberValue(), 0.0);
+
+		// a deleted cell
+		cell = data.getRow(30).getCell(0);
+		evaluator.notifyDeleteCell(cell);
+		data.getRow(30).removeCell(cell);
+		total -= 15;
+		assertEquals(total, evaluator.evaluate(sum).getNumberValue(), 0.0);
+	}
+
+	public void testClearAllCachedResultValues() {
+		HSSFWorkbook wb = createWorkbook();
+		HSSFFormulaEvaluator evaluator = createEvaluator(wb);
+		HSSFCell sum = wb.getSheet("Calc").getRow(0).getCell(0);
+		double total = evaluator.evaluate(sum).getNumberValue();
+
+		wb.getSheet("Data").getRow(40).getCell(0).setCellValue(1020);
+		evaluator.clearAllCachedResultValues();
+		assertEquals(total + 1000, evaluator.evaluate(sum).getNumberValue(), 0.0);
+	}
+}
@@ -17,14 +17,33 @@
 
 package org.apache.poi.ss.formula.eval.forked;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import junit.framework.AssertionFailedError;
 import junit.framework.TestCase;
 
+import org.apache.poi.ss.formula.eval.EvaluationException;
 import org.apache.poi.ss.formula.eval.NumberEval;
+import org.apache.poi.ss.formula.eval.OperandResolver;
+import org.apache.poi.ss.formula.eval.ValueEval;
+import org.apache.poi.ss.formula.functions.FreeRefFunction;
+import org.apache.poi.ss.formula.udf.DefaultUDFFinder;
+import org.apache.poi.hssf.usermodel.HSSFEvaluationTestHelper;
+import org.apache.poi.hssf.usermodel.HSSFEvaluationWorkbook;
 import org.apache.poi.hssf.usermodel.HSSFRow;
 import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.formula.BaseEvaluationResults;
+import org.apache.poi.ss.formula.EvaluationCell;
 import org.apache.poi.ss.formula.IStabilityClassifier;
+import org.apache.poi.ss.formula.OperationEvaluationContext;
+import org.apache.poi.ss.formula.WorkbookEvaluator;
 
 /**
  * @author Josh Micich
@@ -115,4 +134,159 @@ public final class TestForkedEvaluator extends TestCase {
 			}
 		}
 	}
+
+	/**
+	 * Counts its calls, and returns its argument
+	 */
+	private static final class CountedFunction implements FreeRefFunction {
+		private final AtomicInteger _calls = new AtomicInteger();
+
+		public ValueEval evaluate(ValueEval[] args, OperationEvaluationContext ec) {
+			_calls.incrementAndGet();
+			try {
+				return OperandResolver.getSingleValue(args[0], ec.getRowIndex(), ec.getColumnIndex());
+			} catch (EvaluationException e) {
+				return e.getErrorEval();
+			}
+		}
+	}
+
+	/**
+	 * Inputs in column A of "Inputs", and formulas in columns A and B of "Calculations", with
+	 * C1 of "Calculations" depending on all of them. The formulas of column B read the next row
+	 * of column A only if their input is above 100.
+	 */
+	private static HSSFWorkbook createWorkbook(CountedFunction function, int rows) {
+		HSSFWorkbook wb = new HSSFWorkbook();
+		wb.addToolPack(new DefaultUDFFinder(new String[] { "COUNTED", },
+				new FreeRefFunction[] { function, }));
+		HSSFSheet inputs = wb.createSheet("Inputs");
+		HSSFSheet calculations = wb.createSheet("Calculations");
+		for (int r = 0; r < rows; r++) {
+			int n = r + 1;
+			inputs.createRow(r).createCell(0).setCellValue(r);
+			HSSFRow row = calculations.createRow(r);
+			row.createCell(0).setCellFormula("COUNTED(Inputs!A" + n + ")*2");
+			row.createCell(1).setCellFormula("IF(Inputs!A" + n + ">100,A" + (n + 1) + ",-1)");
+		}
+		calculations.getRow(0).createCell(2).setCellFormula("SUM(A1:B" + rows + ")");
+		// a blank input cell
+		inputs.getRow(0).createCell(1);
+		calculations.getRow(0).createCell(3).setCellFormula("COUNTED(Inputs!B1)+1");
+		return wb;
+	}
+
+	private static double evaluate(ForkedEvaluator fe, int rowIndex, int columnIndex) {
+		return ((NumberEval) fe.evaluate("Calculations", rowIndex, columnIndex)).getNumberValue();
+	}
+
+	public void testBaseResults() {
+		CountedFunction function = new CountedFunction();
+		HSSFWorkbook wb = createWorkbook(function, 50);
+		BaseEvaluationResults base = ForkedEvaluator.createBaseResults(wb, null, null);
+		assertEquals(51, function._calls.get());
+
+		ForkedEvaluator fe = ForkedEvaluator.create(base, null, null);
+		// not affected by any update
+		assertEquals(4.0, evaluate(fe, 2, 0), 0.0);
+		assertEquals(1.0, evaluate(fe, 0, 3), 0.0);
+		assertEquals(2450.0 - 50, evaluate(fe, 0, 2), 0.0);
+		assertEquals(51, function._calls.get());
+
+		fe.updateCell("Inputs", 4, 0, new NumberEval(1000));
+		assertEquals(2000.0, evaluate(fe, 4, 0), 0.0);
+		assertEquals(10.0, evaluate(fe, 4, 1), 0.0);
+		assertEquals(2450.0 - 50 + 1992 + 11, evaluate(fe, 0, 2), 0.0);
+		for (int r = 0; r < 50; r++) {
+			evaluate(fe, r, 0);
+		}
+		// only A5 was evaluated again
+		assertEquals(52, function._calls.get());
+
+		// the blank input cell
+		fe.updateCell("Inputs", 0, 1, new NumberEval(7));
+		assertEquals(8.0, evaluate(fe, 0, 3), 0.0);
+		assertEquals(53, function._calls.get());
+
+		// other forks are not affected
+		ForkedEvaluator fe2 = ForkedEvaluator.create(base, null, null);
+		assertEquals(8.0, evaluate(fe2, 4, 0), 0.0);
+		assertEquals(-1.0, evaluate(fe2, 4, 1), 0.0);
+		assertEquals(1.0, evaluate(fe2, 0, 3), 0.0);
+	}
+
+	/**
+	 * A formula cell which reads the base result of another formula cell after an update, although
+	 * it did not for the base results, is evaluated again when that cell is affected by a later update
+	 */
+	public void testChangedDependencies() {
+		CountedFunction function = new CountedFunction();
+		HSSFWorkbook wb = createWorkbook(function, 10);
+		BaseEvaluationResults base = ForkedEvaluator.createBaseResults(wb, null, null);
+		ForkedEvaluator fe = ForkedEvaluator.create(base, null, null);
+
+		// B3 now reads the base result of A4
+		fe.updateCell("Inputs", 2, 0, new NumberEval(200));
+		assertEquals(6.0, evaluate(fe, 2, 1), 0.0);
+		// which B3 did not depend on for the base results
+		fe.updateCell("Inputs", 3, 0, new NumberEval(50));
+		assertEquals(100.0, evaluate(fe, 2, 1), 0.0);
+		assertEquals(100.0, evaluate(fe, 3, 0), 0.0);
+	}
+
+	/**
+	 * A formula cell of a fork whose formula differs from the base is evaluated, as are the cells
+	 * depending on it
+	 */
+	public void testChangedFormula() {
+		HSSFWorkbook wb = createWorkbook();
+		wb.getSheet("Calculations").getRow(0).createCell(2).setCellFormula("A1*2");
+		BaseEvaluationResults base = ForkedEvaluator.createBaseResults(wb, null, null);
+
+		HSSFWorkbook fork = createWorkbook();
+		HSSFRow row = fork.getSheet("Calculations").getRow(0);
+		row.createCell(2).setCellFormula("A1*2");
+		row.getCell(0).setCellFormula("B1+Inputs!B1");
+		WorkbookEvaluator evaluator = new WorkbookEvaluator(HSSFEvaluationWorkbook.create(fork), null, null);
+		evaluator.setBaseResults(base);
+		EvaluationCell a1 = HSSFEvaluationTestHelper.wrapCell(row.getCell(0));
+		evaluator.notifyUpdateCell(a1);
+		assertEquals(8.0, ((NumberEval) evaluator.evaluate(a1)).getNumberValue(), 0.0);
+		EvaluationCell c1 = HSSFEvaluationTestHelper.wrapCell(row.getCell(2));
+		assertEquals(16.0, ((NumberEval) evaluator.evaluate(c1)).getNumberValue(), 0.0);
+	}
+
+	public void testSameResultsAsWithoutBase() throws Exception {
+		final HSSFWorkbook wb = createWorkbook(new CountedFunction(), 30);
+		final BaseEvaluationResults base = ForkedEvaluator.createBaseResults(wb, null, null);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int i = 0; i < 20; i++) {
+				final int request = i;
+				futures.add(executor.submit(new Callable<Object>() {
+					public Object call() {
+						ForkedEvaluator expected = ForkedEvaluator.create(wb, null, null);
+						ForkedEvaluator actual = ForkedEvaluator.create(base, null, null);
+						for (ForkedEvaluator fe : new ForkedEvaluator[] { expected, actual, }) {
+							fe.updateCell("Inputs", request, 0, new NumberEval(request * 17));
+							fe.updateCell("Inputs", (request * 7) % 30, 0, new NumberEval(-request));
+						}
+						for (int r = 0; r < 30; r++) {
+							for (int c = 0; c < 2; c++) {
+								assertEquals(evaluate(expected, r, c), evaluate(actual, r, c), 0.0);
+							}
+						}
+						assertEquals(evaluate(expected, 0, 2), evaluate(actual, 0, 2), 0.0);
+						return null;
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
 }
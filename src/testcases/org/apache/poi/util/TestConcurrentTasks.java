@@ -0,0 +1,128 @@
+/* ====================================================================
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+==================================================================== */
+
+package org.apache.poi.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link ConcurrentTasks}
+ */
+public final class TestConcurrentTasks extends TestCase {
+
+	private static Callable<Void> createTask(final List<Integer> done, final int value,
+			final Exception failure) {
+		return new Callable<Void>() {
+			public Void call() throws Exception {
+				Thread.sleep(10 * (3 - value));
+				synchronized (done) {
+					done.add(Integer.valueOf(value));
+				}
+				if (failure != null) {
+					throw failure;
+				}
+				return null;
+			}
+		};
+	}
+
+	public void testAwaitAll() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			List<Integer> done = new ArrayList<Integer>();
+			ConcurrentTasks tasks = new ConcurrentTasks(executor);
+			for (int i = 0; i < 3; i++) {
+				tasks.execute(createTask(done, i, null));
+			}
+			tasks.awaitAll();
+			assertEquals(3, done.size());
+			tasks.throwFailure(IOException.class);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public void testRejected() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(1);
+		executor.shutdown();
+		List<Integer> done = new ArrayList<Integer>();
+		ConcurrentTasks tasks = new ConcurrentTasks(executor);
+		tasks.execute(createTask(done, 1, null));
+		// run by the calling thread
+		assertEquals(1, done.size());
+		tasks.throwFailure(IOException.class);
+	}
+
+	public void testFirstFailure() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			List<Integer> done = new ArrayList<Integer>();
+			ConcurrentTasks tasks = new ConcurrentTasks(executor);
+			tasks.execute(createTask(done, 0, null));
+			tasks.execute(createTask(done, 1, new IOException("first")));
+			tasks.execute(createTask(done, 2, new IllegalStateException("second")));
+			try {
+				tasks.throwFailure(IOException.class);
+				fail("expected IOException");
+			} catch (IOException e) {
+				assertEquals("first", e.getMessage());
+			}
+			assertEquals(3, done.size());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public void testOtherCheckedFailure() {
+		ExecutorService executor = Executors.newFixedThreadPool(1);
+		try {
+			ConcurrentTasks tasks = new ConcurrentTasks(executor);
+			tasks.execute(createTask(new ArrayList<Integer>(), 0, new IOException("failed")));
+			try {
+				tasks.throwFailure(RuntimeException.class);
+				fail("expected RuntimeException");
+			} catch (RuntimeException e) {
+				assertTrue(e.getCause() instanceof IOException);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public void testInterrupted() {
+		ExecutorService executor = Executors.newFixedThreadPool(1);
+		try {
+			List<Integer> done = new ArrayList<Integer>();
+			ConcurrentTasks tasks = new ConcurrentTasks(executor);
+			tasks.execute(createTask(done, 0, null));
+			Thread.currentThread().interrupt();
+			tasks.awaitAll();
+			// waited for the task, and the interruption is kept
+			assertEquals(1, done.size());
+			assertTrue(Thread.interrupted());
+		} finally {
+			executor.shutdown();
+		}
+	}
+}